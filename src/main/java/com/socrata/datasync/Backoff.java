@@ -0,0 +1,44 @@
+package com.socrata.datasync;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Exponentially growing delays between retries, jittered so that many clients failing together
+ * don't all retry in lockstep.  Each delay is drawn between half and all of the exponential one.
+ */
+public class Backoff {
+    public static final Backoff DEFAULT = new Backoff(1000, 2.0, 30000);
+
+    private final long initialMillis;
+    private final double multiplier;
+    private final long maxMillis;
+
+    /**
+     * @param initialMillis the delay before the first retry
+     * @param multiplier the factor each delay grows by
+     * @param maxMillis the longest a delay grows to
+     */
+    public Backoff(long initialMillis, double multiplier, long maxMillis) {
+        this.initialMillis = initialMillis;
+        this.multiplier = multiplier;
+        this.maxMillis = maxMillis;
+    }
+
+    /**
+     * @param retry the number of retries made already
+     * @return the delay before the next, without jitter
+     */
+    public long ceilingMillis(int retry) {
+        return (long) Math.min(maxMillis, initialMillis * Math.pow(multiplier, retry));
+    }
+
+    /**
+     * @param retry the number of retries made already
+     * @return the delay before the next
+     */
+    public long delayMillis(int retry) {
+        long ceiling = ceilingMillis(retry);
+        long half = ceiling / 2;
+        return half + (ceiling - half > 0 ? ThreadLocalRandom.current().nextLong(ceiling - half + 1) : 0);
+    }
+}
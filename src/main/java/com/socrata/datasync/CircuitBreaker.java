@@ -0,0 +1,69 @@
+package com.socrata.datasync;
+
+/**
+ * Stops requests to a host that keeps failing.  After enough consecutive failures the breaker
+ * opens and requests fail at once, without being sent; once it has been open a while, a single
+ * trial request is let through, which closes it again if it succeeds or reopens it if not.
+ */
+public class CircuitBreaker {
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final String host;
+    private final int failureThreshold;
+    private final long openMillis;
+    private State state = State.CLOSED;
+    private int consecutiveFailures = 0;
+    private long openedAt = 0L;
+    private boolean trialInFlight = false;
+
+    /**
+     * @param host the host whose requests the breaker guards
+     * @param failureThreshold the number of consecutive failures that opens the breaker
+     * @param openMillis how long the breaker stays open before a trial request is let through
+     */
+    public CircuitBreaker(String host, int failureThreshold, long openMillis) {
+        this.host = host;
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+    }
+
+    /**
+     * @return whether a request may be sent now; if it is, its outcome must be recorded
+     */
+    public synchronized boolean allowRequest() {
+        switch (state) {
+            case OPEN:
+                if (System.currentTimeMillis() - openedAt < openMillis) return false;
+                state = State.HALF_OPEN;
+                trialInFlight = true;
+                return true;
+            case HALF_OPEN:
+                if (trialInFlight) return false;
+                trialInFlight = true;
+                return true;
+            default:
+                return true;
+        }
+    }
+
+    public synchronized void recordSuccess() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        trialInFlight = false;
+    }
+
+    public synchronized void recordFailure() {
+        consecutiveFailures += 1;
+        trialInFlight = false;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            if (state != State.OPEN)
+                System.err.println("Too many failed requests to " + host + "; sending it none for " + openMillis / 1000 + " seconds");
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+}
@@ -0,0 +1,116 @@
+package com.socrata.datasync;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts of the requests made to one endpoint, e.g. the posting of blobs; updated concurrently by
+ * whichever threads make the requests.
+ */
+public class EndpointMetrics implements EndpointMetricsMXBean {
+    private final String endpoint;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong bytesOut = new AtomicLong();
+    private final AtomicLong bytesIn = new AtomicLong();
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final ConcurrentMap<Integer, AtomicLong> statusCounts = new ConcurrentHashMap<>();
+
+    EndpointMetrics(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    void recordRequest(long contentLength) {
+        requests.incrementAndGet();
+        if (contentLength > 0) bytesOut.addAndGet(contentLength);
+    }
+
+    void recordResponse(int status, long nanos) {
+        latency.record(nanos);
+        AtomicLong counter = statusCounts.get(status);
+        if (counter == null) {
+            AtomicLong fresh = new AtomicLong();
+            counter = statusCounts.putIfAbsent(status, fresh);
+            if (counter == null) counter = fresh;
+        }
+        counter.incrementAndGet();
+    }
+
+    void recordFailure() {
+        failures.incrementAndGet();
+    }
+
+    void recordRetry() {
+        retries.incrementAndGet();
+    }
+
+    void recordBytesIn(long n) {
+        bytesIn.addAndGet(n);
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * @return the number of responses with each status code, in order of the code
+     */
+    public Map<Integer, Long> getStatusCodeCounts() {
+        Map<Integer, Long> counts = new TreeMap<>();
+        for (Map.Entry<Integer, AtomicLong> entry : statusCounts.entrySet())
+            counts.put(entry.getKey(), entry.getValue().get());
+        return counts;
+    }
+
+    @Override
+    public String getEndpoint() { return endpoint; }
+
+    /** @return the number of attempts at a request, each retry counting again */
+    @Override
+    public long getRequests() { return requests.get(); }
+
+    /** @return the number of attempts that got no response at all, e.g. for a timeout */
+    @Override
+    public long getFailures() { return failures.get(); }
+
+    /** @return the number of times a request was sent again after failing */
+    @Override
+    public long getRetries() { return retries.get(); }
+
+    @Override
+    public long getBytesOut() { return bytesOut.get(); }
+
+    /** @return the bytes of response bodies read, as they came over the wire */
+    @Override
+    public long getBytesIn() { return bytesIn.get(); }
+
+    @Override
+    public double getMeanLatencyMillis() {
+        long count = latency.getCount();
+        return count == 0 ? 0.0 : latency.getSumNanos() / 1e6 / count;
+    }
+
+    @Override
+    public double getP50LatencyMillis() { return latency.getQuantileMillis(0.5); }
+
+    @Override
+    public double getP95LatencyMillis() { return latency.getQuantileMillis(0.95); }
+
+    @Override
+    public double getP99LatencyMillis() { return latency.getQuantileMillis(0.99); }
+
+    @Override
+    public double getMaxLatencyMillis() { return latency.getMaxNanos() / 1e6; }
+
+    @Override
+    public Map<String, Long> getStatusCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        for (Map.Entry<Integer, Long> entry : getStatusCodeCounts().entrySet())
+            counts.put(entry.getKey().toString(), entry.getValue());
+        return counts;
+    }
+}
@@ -0,0 +1,32 @@
+package com.socrata.datasync;
+
+import java.util.Map;
+
+/**
+ * What JMX shows of the requests made to one endpoint; see {@link HttpMetrics}.
+ */
+public interface EndpointMetricsMXBean {
+    public String getEndpoint();
+
+    public long getRequests();
+
+    public long getFailures();
+
+    public long getRetries();
+
+    public long getBytesOut();
+
+    public long getBytesIn();
+
+    public double getMeanLatencyMillis();
+
+    public double getP50LatencyMillis();
+
+    public double getP95LatencyMillis();
+
+    public double getP99LatencyMillis();
+
+    public double getMaxLatencyMillis();
+
+    public Map<String, Long> getStatusCounts();
+}
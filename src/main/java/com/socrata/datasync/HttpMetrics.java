@@ -0,0 +1,303 @@
+package com.socrata.datasync;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.protocol.HttpContext;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Measures the requests HttpUtility makes, per logical endpoint (blob posts, commits, status
+ * polls, directory listings, views, imports2...): how many there were, how long they took to be
+ * answered, the bytes sent and received, the failures retried and the status codes returned.
+ * Each endpoint is registered with JMX as com.socrata.datasync:type=HttpEndpoint,name=[endpoint]
+ * once first requested, and everything can be written out in the Prometheus text format.
+ */
+public class HttpMetrics {
+    public static final String JMX_DOMAIN = "com.socrata.datasync";
+
+    private static final HttpMetrics instance = new HttpMetrics();
+    private static final String endpointAttribute = "datasync.metrics.endpoint";
+    private static final String startAttribute = "datasync.metrics.start";
+
+    private final ConcurrentMap<String, EndpointMetrics> endpoints = new ConcurrentHashMap<>();
+
+    public static HttpMetrics get() {
+        return instance;
+    }
+
+    /**
+     * @return the metrics of the given endpoint, which are created (and registered with JMX) if
+     * there are none yet
+     */
+    public EndpointMetrics forEndpoint(String endpoint) {
+        EndpointMetrics metrics = endpoints.get(endpoint);
+        if (metrics == null) {
+            EndpointMetrics fresh = new EndpointMetrics(endpoint);
+            metrics = endpoints.putIfAbsent(endpoint, fresh);
+            if (metrics == null) {
+                metrics = fresh;
+                register(fresh);
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * @return the metrics of every endpoint requested so far, by name
+     */
+    public Map<String, EndpointMetrics> getEndpoints() {
+        return new TreeMap<>(endpoints);
+    }
+
+    private static void register(EndpointMetrics metrics) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics,
+                    new ObjectName(JMX_DOMAIN + ":type=HttpEndpoint,name=" + metrics.getEndpoint()));
+        } catch (JMException | SecurityException e) {
+            // the metrics are still kept and written out; they just can't be watched live
+            System.out.println("Unable to register HTTP metrics with JMX: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Names the endpoint a request is made to, so that, e.g., posting the blobs of every dataset
+     * counts toward the same "blob" endpoint.
+     * @param method the request's method
+     * @param uri the request's uri, absolute or just a path and query
+     */
+    public static String endpointOf(String method, String uri) {
+        String path = pathOf(uri);
+        String datasetPrefix = "/datasync/id/";
+        if (path.startsWith(datasetPrefix)) {
+            int slash = path.indexOf('/', datasetPrefix.length());
+            if (slash < 0) return "POST".equals(method) ? "blob" : "datasync";
+            String rest = path.substring(slash);
+            if (rest.startsWith("/commit")) return "commit";
+            if (rest.startsWith("/copy_from")) return "copy";
+            if (rest.startsWith("/status/")) return "status";
+            if (rest.startsWith("/log/")) return "log";
+            if (rest.endsWith(".ssig")) return "signature";
+            return "ls";
+        }
+        if (path.startsWith("/datasync/")) return "datasync";
+        if (path.startsWith("/api/views")) return "views";
+        if (path.startsWith("/api/imports2")) return "imports2";
+        if (path.startsWith("/api/version")) return "version";
+        if (path.startsWith("/resource/")) return "POST".equals(method) ? "upsert" : "resource";
+        return "other";
+    }
+
+    private static String pathOf(String uri) {
+        String path = uri;
+        int scheme = path.indexOf("://");
+        if (scheme >= 0) {
+            int slash = path.indexOf('/', scheme + 3);
+            path = slash < 0 ? "/" : path.substring(slash);
+        }
+        int query = path.indexOf('?');
+        return query < 0 ? path : path.substring(0, query);
+    }
+
+    private EndpointMetrics forRequest(HttpRequest request, HttpContext context) {
+        String endpoint = (String) context.getAttribute(endpointAttribute);
+        if (endpoint == null) {
+            endpoint = endpointOf(request.getRequestLine().getMethod(), request.getRequestLine().getUri());
+            context.setAttribute(endpointAttribute, endpoint);
+        }
+        return forEndpoint(endpoint);
+    }
+
+    final HttpRequestInterceptor requestInterceptor = new HttpRequestInterceptor() {
+        @Override
+        public void process(HttpRequest request, HttpContext context) {
+            long contentLength = -1;
+            if (request instanceof HttpEntityEnclosingRequest) {
+                HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+                if (entity != null) contentLength = entity.getContentLength();
+            }
+            forRequest(request, context).recordRequest(contentLength);
+            context.setAttribute(startAttribute, System.nanoTime());
+        }
+    };
+
+    final HttpResponseInterceptor responseInterceptor = new HttpResponseInterceptor() {
+        @Override
+        public void process(HttpResponse response, HttpContext context) {
+            String endpoint = (String) context.getAttribute(endpointAttribute);
+            Long start = (Long) context.getAttribute(startAttribute);
+            if (endpoint == null || start == null) return;
+            final EndpointMetrics metrics = forEndpoint(endpoint);
+            metrics.recordResponse(response.getStatusLine().getStatusCode(), System.nanoTime() - start);
+            HttpEntity entity = response.getEntity();
+            if (entity == null) return;
+            // a body of known length is drained to reuse the connection even if not read
+            if (entity.getContentLength() >= 0)
+                metrics.recordBytesIn(entity.getContentLength());
+            else
+                response.setEntity(new CountingEntity(entity, metrics));
+        }
+    };
+
+    /**
+     * Records an attempt at a request that got no response; called by the retry handler.
+     */
+    void recordFailure(HttpRequest request, HttpContext context) {
+        if (request == null) return;
+        forRequest(request, context).recordFailure();
+    }
+
+    /**
+     * Records that a request is being sent again after failing.
+     */
+    public void recordRetry(String method, String uri) {
+        forEndpoint(endpointOf(method, uri)).recordRetry();
+    }
+
+    /**
+     * Counts the bytes of a chunked response body as they are read.
+     */
+    private static class CountingEntity extends HttpEntityWrapper {
+        private final EndpointMetrics metrics;
+
+        CountingEntity(HttpEntity wrapped, EndpointMetrics metrics) {
+            super(wrapped);
+            this.metrics = metrics;
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            return new FilterInputStream(super.getContent()) {
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b != -1) metrics.recordBytesIn(1);
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] bs, int off, int len) throws IOException {
+                    int n = super.read(bs, off, len);
+                    if (n > 0) metrics.recordBytesIn(n);
+                    return n;
+                }
+            };
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            try (InputStream in = getContent()) {
+                byte[] buffer = new byte[8192];
+                int n;
+                while ((n = in.read(buffer)) != -1) out.write(buffer, 0, n);
+            }
+        }
+    }
+
+    /**
+     * @return every endpoint's metrics in the Prometheus text exposition format
+     */
+    public String toPrometheus() {
+        Map<String, EndpointMetrics> all = getEndpoints();
+        StringBuilder sb = new StringBuilder();
+        counter(sb, all, "requests", "HTTP requests sent, counting each retry", new Stat() {
+            long of(EndpointMetrics m) { return m.getRequests(); }
+        });
+        counter(sb, all, "failures", "HTTP requests that got no response", new Stat() {
+            long of(EndpointMetrics m) { return m.getFailures(); }
+        });
+        counter(sb, all, "retries", "HTTP requests sent again after failing", new Stat() {
+            long of(EndpointMetrics m) { return m.getRetries(); }
+        });
+        counter(sb, all, "request_bytes", "Bytes of HTTP request bodies sent", new Stat() {
+            long of(EndpointMetrics m) { return m.getBytesOut(); }
+        });
+        counter(sb, all, "response_bytes", "Bytes of HTTP response bodies received", new Stat() {
+            long of(EndpointMetrics m) { return m.getBytesIn(); }
+        });
+
+        sb.append("# HELP datasync_http_responses_total HTTP responses received, by status code\n");
+        sb.append("# TYPE datasync_http_responses_total counter\n");
+        for (EndpointMetrics m : all.values()) {
+            for (Map.Entry<Integer, Long> entry : m.getStatusCodeCounts().entrySet())
+                sb.append("datasync_http_responses_total{endpoint=\"").append(m.getEndpoint())
+                        .append("\",code=\"").append(entry.getKey()).append("\"} ").append(entry.getValue()).append('\n');
+        }
+
+        String histogram = "datasync_http_request_duration_seconds";
+        sb.append("# HELP ").append(histogram).append(" Time from sending an HTTP request to receiving its response headers\n");
+        sb.append("# TYPE ").append(histogram).append(" histogram\n");
+        for (EndpointMetrics m : all.values()) {
+            LatencyHistogram latency = m.getLatency();
+            long[] counts = latency.getBucketCounts();
+            long cumulative = 0;
+            for (int i = 0; i < counts.length; i++) {
+                cumulative += counts[i];
+                String le = i < LatencyHistogram.BOUNDS_MILLIS.length ?
+                        Double.toString(LatencyHistogram.BOUNDS_MILLIS[i] / 1000.0) : "+Inf";
+                sb.append(histogram).append("_bucket{endpoint=\"").append(m.getEndpoint())
+                        .append("\",le=\"").append(le).append("\"} ").append(cumulative).append('\n');
+            }
+            sb.append(histogram).append("_sum{endpoint=\"").append(m.getEndpoint()).append("\"} ")
+                    .append(latency.getSumNanos() / 1e9).append('\n');
+            sb.append(histogram).append("_count{endpoint=\"").append(m.getEndpoint()).append("\"} ")
+                    .append(cumulative).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private abstract static class Stat {
+        abstract long of(EndpointMetrics m);
+    }
+
+    private static void counter(StringBuilder sb, Map<String, EndpointMetrics> all, String name, String help, Stat stat) {
+        String metric = "datasync_http_" + name + "_total";
+        sb.append("# HELP ").append(metric).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(metric).append(" counter\n");
+        for (EndpointMetrics m : all.values())
+            sb.append(metric).append("{endpoint=\"").append(m.getEndpoint()).append("\"} ").append(stat.of(m)).append('\n');
+    }
+
+    /**
+     * Writes the metrics to the given file, e.g. for a Prometheus node exporter's textfile
+     * collector, replacing it whole so a scrape never sees half of it.  Does nothing if no file is
+     * given; failing to write is reported but otherwise ignored.
+     */
+    public void writePrometheusFile(String path) {
+        if (path == null || path.trim().isEmpty()) return;
+        File target = new File(path.trim());
+        try {
+            File directory = target.getAbsoluteFile().getParentFile();
+            File temp = File.createTempFile(target.getName(), ".tmp", directory);
+            try {
+                try (Writer out = new OutputStreamWriter(new FileOutputStream(temp), "UTF-8")) {
+                    out.write(toPrometheus());
+                }
+                Utils.replaceFile(temp, target);
+            } finally {
+                if (temp.exists()) temp.delete();
+            }
+        } catch (IOException e) {
+            System.out.println("Unable to write HTTP metrics to " + target + ": " + e.getMessage());
+        }
+    }
+}
@@ -1,12 +1,18 @@
 package com.socrata.datasync;
 
 import com.google.common.net.HttpHeaders;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.socrata.datasync.config.userpreferences.UserPreferences;
 import org.apache.commons.net.util.Base64;
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
 import org.apache.http.HttpHost;
-import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
@@ -16,40 +22,88 @@ import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.config.RegistryBuilder;
 import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.conn.ssl.SSLContexts;
 import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
 import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
 
 import javax.net.ssl.SSLContext;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.URI;
 import java.nio.charset.Charset;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import static org.apache.http.conn.ssl.SSLConnectionSocketFactory.BROWSER_COMPATIBLE_HOSTNAME_VERIFIER;
 
+/**
+ * Makes requests with a user's credentials, proxy and retry policy.  Instances are lightweight:
+ * every one of them sends its requests through a single client shared by the whole process, so
+ * connections, and the TLS sessions they were established with, are pooled and reused across
+ * instances instead of being negotiated afresh by each one.
+ *
+ * Requests are made on the calling thread, or, by the async variants of the methods, on a pool
+ * of threads shared by the whole process that is no larger than the connection pool, so that
+ * callers with many requests in flight needn't each keep threads of their own for them.  The
+ * futures those return may be given callbacks with {@link Futures#addCallback}; any retries
+ * wait without holding one of the pool's threads.
+ *
+ * Every request waits its turn in the {@link RateLimiter}.  One the host throttles is sent again
+ * once the host's Retry-After has passed, unless it may not safely be sent twice.
+ *
+ * What is shared is sized from the user's preferences by {@link #configure}, once they are loaded;
+ * constructing an instance leaves it as it is.
+ */
 public class HttpUtility {
 
-    private CloseableHttpClient httpClient = null;
+    private final CloseableHttpClient httpClient;
+    private CredentialsProvider credentialsProvider = null;
     private RequestConfig proxyConfig = null;
     private RequestConfig noProxyConfig = null;
     private String authHeader;
     private String appToken;
     private boolean authRequired = false;
     private final int maxRetries;
-    private final double retryDelayFactor;
+    private final Backoff backoff;
+    // per instance, so one job's user agent isn't sent with another's requests
+    private String userAgent = "datasync";
 
     private static final String datasyncVersionHeader = "X-Socrata-DataSync-Version";
     private static final String appHeader = "X-App-Token";
-    private static String userAgent = "datasync";
+    // enough connections for concurrent blob uploads to a single host (HttpClient defaults to 2 per route)
+    private static final int defaultMaxConnectionsPerRoute = 32;
+    private static final int defaultMaxConnections = 64;
+    // connections idle this long are closed by the evictor, rather than found dead when next leased
+    private static final long maxIdleMillis = 30 * 1000;
+    private static final long evictionPeriodMillis = 5 * 1000;
+    private static final long maxRetryDelayMillis = 30 * 1000;
+    private static final long engineKeepAliveMillis = 60 * 1000;
+
+    private static PoolingHttpClientConnectionManager connectionManager = null;
+    private static CloseableHttpClient sharedClient = null;
+    private static ScheduledExecutorService evictor = null;
+    private static ThreadPoolExecutor engineThreads = null;
+    private static ListeningExecutorService engine = null;
 
 
     public HttpUtility() { this(null, false); }
@@ -66,9 +120,9 @@ public class HttpUtility {
 
     public HttpUtility(UserPreferences userPrefs, boolean useAuth, int maxRetries, double retryDelayFactor) {
         this.maxRetries = maxRetries;
-        this.retryDelayFactor = retryDelayFactor;
+        // the first retry waits about retryDelayFactor seconds, and each after that retryDelayFactor times longer
+        this.backoff = new Backoff((long) (retryDelayFactor * 1000), retryDelayFactor, maxRetryDelayMillis);
 
-        HttpClientBuilder clientBuilder = HttpClients.custom();
         if (useAuth) {
             authHeader = getAuthHeader(userPrefs.getUsername(), userPrefs.getPassword());
             appToken = userPrefs.getConnectionInfo().getToken();
@@ -87,15 +141,101 @@ public class HttpUtility {
                 HttpHost proxy = new HttpHost(proxyHost, Integer.valueOf(proxyPort));
                 proxyConfig = RequestConfig.copy(noProxyConfig).setProxy(proxy).build();
                 if (canUse(userPrefs.getProxyUsername()) && canUse(userPrefs.getProxyPassword())) {
-                    CredentialsProvider credsProvider = new BasicCredentialsProvider();
-                    credsProvider.setCredentials(
+                    credentialsProvider = new BasicCredentialsProvider();
+                    credentialsProvider.setCredentials(
                         new AuthScope(proxyHost, Integer.valueOf(proxyPort)),
                         new UsernamePasswordCredentials(userPrefs.getProxyUsername(), userPrefs.getProxyPassword()));
-                    clientBuilder.setDefaultCredentialsProvider(credsProvider);
                 }
             }
         }
 
+        httpClient = sharedClient();
+    }
+
+    /**
+     * Applies the settings of the given preferences that the whole process shares: the size of the
+     * connection pool and of the threads the async variants run on, the {@link RateLimiter}'s requests
+     * per second and whether request bodies are compressed.  Made where preferences are loaded, by
+     * the command line and the GUI; a program using DataSync as a library calls it itself.
+     */
+    public static synchronized void configure(UserPreferences userPrefs) {
+        sharedClient();
+        int perRoute = parsePoolSize(userPrefs.getHttpMaxConnectionsPerRoute(), defaultMaxConnectionsPerRoute);
+        int total = Math.max(perRoute, parsePoolSize(userPrefs.getHttpMaxConnections(), defaultMaxConnections));
+        if (connectionManager.getMaxTotal() != total) connectionManager.setMaxTotal(total);
+        if (connectionManager.getDefaultMaxPerRoute() != perRoute) connectionManager.setDefaultMaxPerRoute(perRoute);
+        if (engineThreads.getMaximumPoolSize() != total) {
+            // the core size may never exceed the maximum, so which moves first depends on the direction
+            if (total > engineThreads.getMaximumPoolSize()) {
+                engineThreads.setMaximumPoolSize(total);
+                engineThreads.setCorePoolSize(total);
+            } else {
+                engineThreads.setCorePoolSize(total);
+                engineThreads.setMaximumPoolSize(total);
+            }
+        }
+        RateLimiter.get().setMaxRate(parsePoolSize(userPrefs.getHttpRequestsPerSecond(),
+            (int) RateLimiter.DEFAULT_REQUESTS_PER_SECOND));
+        RequestCompression.get().setMode(userPrefs.getRequestCompression());
+    }
+
+    /**
+     * Returns the client shared by every instance, building it, with the default limits, the first
+     * time it is needed.
+     */
+    private static synchronized CloseableHttpClient sharedClient() {
+        if (sharedClient == null) {
+            connectionManager = new PoolingHttpClientConnectionManager(
+                RegistryBuilder.<ConnectionSocketFactory>create().
+                    register("http", PlainConnectionSocketFactory.getSocketFactory()).
+                    register("https", sslSocketFactory()).
+                    build());
+            connectionManager.setMaxTotal(defaultMaxConnections);
+            connectionManager.setDefaultMaxPerRoute(defaultMaxConnectionsPerRoute);
+
+            sharedClient = HttpClients.custom().
+                setConnectionManager(connectionManager).
+                addInterceptorFirst(HttpMetrics.get().requestInterceptor).
+                addInterceptorFirst(HttpMetrics.get().responseInterceptor).
+                setRetryHandler(datasyncDefaultHandler).
+                setKeepAliveStrategy(datasyncDefaultKeepAliveStrategy).
+                setDefaultRequestConfig(RequestConfig.custom().
+                    setConnectTimeout(15000). // 15s
+                    setSocketTimeout(60000). // 1m
+                    build()).
+                build();
+
+            // HttpClient 4.3 only notices a connection the server has closed when it next leases it
+            evictor = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("HTTP connection evictor %d").build());
+            evictor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    connectionManager.closeExpiredConnections();
+                    connectionManager.closeIdleConnections(maxIdleMillis, TimeUnit.MILLISECONDS);
+                }
+            }, evictionPeriodMillis, evictionPeriodMillis, TimeUnit.MILLISECONDS);
+
+            // a thread per connection; more would only wait for one.  Idle threads exit, so the pool costs nothing unused
+            engineThreads = new ThreadPoolExecutor(defaultMaxConnections, defaultMaxConnections,
+                engineKeepAliveMillis, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("HTTP engine %d").build());
+            engineThreads.allowCoreThreadTimeOut(true);
+            engine = MoreExecutors.listeningDecorator(engineThreads);
+        }
+        return sharedClient;
+    }
+
+    private static int parsePoolSize(String size, int defaultSize) {
+        try {
+            int n = Integer.parseInt(size);
+            return n > 0 ? n : defaultSize;
+        } catch (NumberFormatException e) {
+            return defaultSize;
+        }
+    }
+
+    private static SSLConnectionSocketFactory sslSocketFactory() {
         SSLContext sslContext;
         try {
             sslContext = SSLContexts.custom().useTLS().build();
@@ -105,19 +245,38 @@ public class HttpUtility {
             throw new RuntimeException(e);
         }
 
-        SSLConnectionSocketFactory factory = new SSLConnectionSocketFactory(
+        // one context for the whole process, so its session cache lets new connections resume TLS sessions
+        return new SSLConnectionSocketFactory(
             sslContext,
             new String[] { "TLSv1.1", "TLSv1.2" },
             null,
             BROWSER_COMPATIBLE_HOSTNAME_VERIFIER
         );
+    }
 
-        httpClient = clientBuilder.
-            setSSLSocketFactory(factory).
-            setRetryHandler(datasyncDefaultHandler).
-            setKeepAliveStrategy(datasyncDefaultKeepAliveStrategy).
-            setDefaultRequestConfig(noProxyConfig).
-            build();
+    /**
+     * @return the number of connections leased, idle and awaited in the shared pool
+     */
+    public static synchronized PoolStats getPoolStats() {
+        return connectionManager == null ? null : connectionManager.getTotalStats();
+    }
+
+    /**
+     * @return the threads the async variants make their requests on, to which work that makes
+     * requests of its own, through the blocking methods, may also be submitted
+     */
+    public Executor getExecutor() {
+        return engine;
+    }
+
+    /**
+     * Carries what differs between instances to the shared client for a single attempt at a request.
+     */
+    private HttpClientContext newContext() {
+        HttpClientContext context = HttpClientContext.create();
+        if (credentialsProvider != null)
+            context.setCredentialsProvider(credentialsProvider);
+        return context;
     }
 
     /**
@@ -128,12 +287,47 @@ public class HttpUtility {
      */
     public CloseableHttpResponse get(URI uri, String contentType) throws IOException {
         HttpGet httpGet = buildHttpGet(uri,contentType);
-        return httpClient.execute(httpGet);
+        return execute(httpGet);
+    }
+
+    /**
+     * Conducts a get with additional headers, e.g. to make it conditional.
+     */
+    public CloseableHttpResponse get(URI uri, String contentType, Header... headers) throws IOException {
+        HttpGet httpGet = buildHttpGet(uri,contentType);
+        for (Header header : headers) httpGet.setHeader(header);
+        return execute(httpGet);
+    }
+
+    /**
+     * Conducts a head request, passing the auth information in the header.
+     * @param uri the uri of the resource to check
+     * @return the response, which has no entity
+     */
+    public CloseableHttpResponse head(URI uri) throws IOException {
+        return execute(buildHttpHead(uri));
+    }
+
+    private HttpHead buildHttpHead(URI uri) {
+        HttpHead httpHead = new HttpHead(uri);
+        httpHead.setHeader(HttpHeaders.USER_AGENT, userAgent);
+        httpHead.addHeader(datasyncVersionHeader, VersionProvider.getThisVersion());
+        if (proxyConfig != null)
+            httpHead.setConfig(proxyConfig);
+        if (authRequired) {
+            httpHead.setHeader(appHeader, appToken);
+            httpHead.setHeader(HttpHeaders.AUTHORIZATION, authHeader);
+        }
+        return httpHead;
     }
 
     public <T> T get(URI uri, String contentType, ResponseHandler<T> handler) throws IOException {
         HttpGet httpGet = buildHttpGet(uri,contentType);
-        return httpClient.execute(httpGet,handler);
+        try (CloseableHttpResponse response = execute(httpGet)) {
+            T result = handler.handleResponse(response);
+            EntityUtils.consume(response.getEntity());
+            return result;
+        }
     }
 
     private HttpGet buildHttpGet(URI uri, String contentType){
@@ -157,14 +351,27 @@ public class HttpUtility {
      * @return the unprocessed results of the post
      */
     public CloseableHttpResponse post(URI uri, HttpEntity entity) throws IOException {
-        return doPost(uri, entity, null);
+        return doPost(uri, entity, null, true);
     }
 
     public CloseableHttpResponse post(URI uri, HttpEntity entity, int timeoutMS) throws IOException {
-        return doPost(uri, entity, timeoutMS);
+        return doPost(uri, entity, timeoutMS, true);
     }
 
-    private CloseableHttpResponse doPost(URI uri, HttpEntity entity, Integer timeoutMS) throws IOException {
+    /**
+     * Posts the given entity just once, for callers that retry through the Retrier themselves; a
+     * throttled post is returned like any other response.
+     */
+    public CloseableHttpResponse postOnce(URI uri, HttpEntity entity) throws IOException {
+        return doPost(uri, entity, null, false);
+    }
+
+    private CloseableHttpResponse doPost(URI uri, HttpEntity entity, Integer timeoutMS, boolean retry) throws IOException {
+        HttpPost httpPost = buildHttpPost(uri, entity, timeoutMS);
+        return retry ? execute(httpPost) : send(httpPost);
+    }
+
+    private HttpPost buildHttpPost(URI uri, HttpEntity entity, Integer timeoutMS) {
         HttpPost httpPost = new HttpPost(uri);
         httpPost.setHeader(HttpHeaders.USER_AGENT, userAgent);
         httpPost.setHeader(entity.getContentType());
@@ -184,7 +391,151 @@ public class HttpUtility {
             httpPost.setHeader(HttpHeaders.AUTHORIZATION, authHeader);
             httpPost.setHeader(appHeader, appToken);
         }
-        return httpClient.execute(httpPost);
+        return httpPost;
+    }
+
+    /**
+     * Conducts a get on the shared threads, with any additional headers.
+     * @return a future completed with the unprocessed response, which the caller must close
+     */
+    public ListenableFuture<CloseableHttpResponse> getAsync(URI uri, String contentType, Header... headers) {
+        HttpGet httpGet = buildHttpGet(uri,contentType);
+        for (Header header : headers) httpGet.setHeader(header);
+        return executeAsync(httpGet);
+    }
+
+    /**
+     * Conducts a get on the shared threads, handling the response there too.
+     * @return a future completed with what the handler made of the response
+     */
+    public <T> ListenableFuture<T> getAsync(URI uri, String contentType, ResponseHandler<T> handler) {
+        return handle(executeAsync(buildHttpGet(uri, contentType)), handler);
+    }
+
+    /**
+     * Conducts a head request on the shared threads.
+     * @return a future completed with the response, which has no entity
+     */
+    public ListenableFuture<CloseableHttpResponse> headAsync(URI uri) {
+        return executeAsync(buildHttpHead(uri));
+    }
+
+    /**
+     * Posts the given entity on the shared threads.
+     * @return a future completed with the unprocessed response, which the caller must close
+     */
+    public ListenableFuture<CloseableHttpResponse> postAsync(URI uri, HttpEntity entity) {
+        return executeAsync(buildHttpPost(uri, entity, null));
+    }
+
+    /**
+     * Posts the given entity on the shared threads, handling the response there too.
+     * @return a future completed with what the handler made of the response
+     */
+    public <T> ListenableFuture<T> postAsync(URI uri, HttpEntity entity, ResponseHandler<T> handler) {
+        return handle(executeAsync(buildHttpPost(uri, entity, null)), handler);
+    }
+
+    /**
+     * Sends a request, retrying it through the shared Retrier if it fails without a response and
+     * may safely be sent again.
+     */
+    private CloseableHttpResponse execute(HttpUriRequest request) throws IOException {
+        URI uri = request.getURI();
+        int retries = isRetryable(request) ? maxRetries - 1 : 0;
+        try {
+            return Retrier.get().call(uri.getHost(), retries, backoff, attempt(request));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry " + uri);
+        }
+    }
+
+    /**
+     * Sends a request on the shared threads, retrying it as {@link #execute} would.
+     */
+    private ListenableFuture<CloseableHttpResponse> executeAsync(HttpUriRequest request) {
+        int retries = isRetryable(request) ? maxRetries - 1 : 0;
+        return Retrier.get().submit(request.getURI().getHost(), retries, backoff, attempt(request), engine);
+    }
+
+    private Retrier.Attempt<CloseableHttpResponse, IOException> attempt(final HttpUriRequest request) {
+        final boolean retryable = isRetryable(request);
+        return new Retrier.Attempt<CloseableHttpResponse, IOException>() {
+            private boolean retrying = false;
+
+            @Override
+            public CloseableHttpResponse run() throws IOException {
+                if (retrying) HttpMetrics.get().recordRetry(request.getMethod(), request.getURI().toString());
+                retrying = true;
+                CloseableHttpResponse response = send(request);
+                if (retryable && RateLimiter.isThrottled(response)) {
+                    long retryAfter = RateLimiter.retryAfterMillis(response);
+                    String status = response.getStatusLine().toString();
+                    response.close();
+                    throw new Retrier.ThrottledException(status, retryAfter);
+                }
+                return response;
+            }
+        };
+    }
+
+    /**
+     * Sends a request once, when the RateLimiter lets it through, and tells the limiter how it was answered.
+     */
+    private CloseableHttpResponse send(HttpUriRequest request) throws IOException {
+        String host = request.getURI().getHost();
+        try {
+            RateLimiter.get().acquire(host);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to send " + request.getURI());
+        }
+        CloseableHttpResponse response = httpClient.execute(request, newContext());
+        RateLimiter.get().recordResponse(host, response);
+        return response;
+    }
+
+    /**
+     * Applies a handler to a response once it arrives, on the thread that received it, closing the
+     * response afterwards.  As with the blocking variant, a failure of the handler isn't retried.
+     */
+    private static <T> ListenableFuture<T> handle(ListenableFuture<CloseableHttpResponse> response,
+                                                  final ResponseHandler<T> handler) {
+        return Futures.transform(response, new AsyncFunction<CloseableHttpResponse, T>() {
+            @Override
+            public ListenableFuture<T> apply(CloseableHttpResponse response) throws Exception {
+                try {
+                    T result = handler.handleResponse(response);
+                    EntityUtils.consume(response.getEntity());
+                    return Futures.immediateFuture(result);
+                } finally {
+                    response.close();
+                }
+            }
+        }, MoreExecutors.sameThreadExecutor());
+    }
+
+    private static boolean isRetryable(HttpUriRequest request) {
+        // Do not retry calls to the github api
+        String host = request.getURI().getHost();
+        if (host == null || host.contains("github"))
+            return false;
+
+        // Do not retry calls that are not idempotent - posts in our case
+        // currently, we make 2 types of posts:
+        //  1) posting blobs - this is idempotent
+        //  2) posting commit of blob ids - this is not idempotent and we need to fall back to the logic
+        //     in DeltaImporter2Publisher.commitBlobPostings
+        if (request.getURI().getPath().contains("commit"))
+            return false;
+
+        // a streamed body can't be sent twice
+        if (request instanceof HttpEntityEnclosingRequest) {
+            HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+            return entity == null || entity.isRepeatable();
+        }
+        return true;
     }
 
     private static RequestConfig.Builder addTimeout(RequestConfig.Builder base, Integer timeoutMS) {
@@ -197,8 +548,11 @@ public class HttpUtility {
         }
     }
 
+    /**
+     * Kept so callers may release an instance as before; the shared client's pooled connections
+     * outlive any one instance, so there is nothing to close.
+     */
     public void close() throws IOException {
-        httpClient.close();
     }
 
     private String getAuthHeader(String username, String password) {
@@ -211,45 +565,20 @@ public class HttpUtility {
         return option != null && !option.isEmpty();
     }
 
-    HttpRequestRetryHandler datasyncDefaultHandler = new HttpRequestRetryHandler() {
+    /**
+     * Retrying is left to the Retrier, which backs off without holding the client's connection;
+     * this only counts the attempts that got no response.
+     */
+    private static final HttpRequestRetryHandler datasyncDefaultHandler = new HttpRequestRetryHandler() {
 
         public boolean retryRequest(IOException exception, int executionCount, HttpContext context) {
-            // Do not retry if over max retry count
-            if (executionCount >= maxRetries) {
-                return false;
-            }
-
-            // Do not retry calls to the github api
-            HttpClientContext clientContext = HttpClientContext.adapt(context);
-            HttpRequest request = clientContext.getRequest();
-            for (Header header : request.getHeaders("Host")) {
-                if (header.getValue().contains("github"))
-                    return false;
-            }
-
-            // Do not retry calls that are not idempotent - posts in our case
-            // currently, we make 2 types of posts:
-            //  1) posting blobs - this is idempotent
-            //  2) posting commit of blob ids - this is not idempotent and we need to fall back to the logic
-            //     in DeltaImporter2Publisher.commitBlobPostings
-            boolean idempotent = !(request.getRequestLine().getUri().contains("commit"));
-            if (idempotent) { // Retry if the request is considered idempotent
-                double wait = Math.pow(retryDelayFactor, executionCount);
-                System.err.println("Request failed. Retrying request in " + Math.round(wait) + " seconds");
-                try {
-                    Thread.sleep((long) wait*1000);
-                    return true;
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                    return false;
-                }
-            }
+            HttpMetrics.get().recordFailure(HttpClientContext.adapt(context).getRequest(), context);
             return false;
         }
 
     };
 
-    ConnectionKeepAliveStrategy datasyncDefaultKeepAliveStrategy = new ConnectionKeepAliveStrategy() {
+    private static final ConnectionKeepAliveStrategy datasyncDefaultKeepAliveStrategy = new ConnectionKeepAliveStrategy() {
         @Override
         public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
             return 30 * 1000;
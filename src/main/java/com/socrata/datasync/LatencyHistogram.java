@@ -0,0 +1,70 @@
+package com.socrata.datasync;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies over fixed buckets.  Recording is a couple of atomic increments, so
+ * the threads of concurrent uploads never wait on one another to record a request.
+ */
+public class LatencyHistogram {
+    // the upper bounds of the buckets, in milliseconds; a last, unbounded bucket follows them
+    static final long[] BOUNDS_MILLIS = {
+            5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000, 60000, 120000 };
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS_MILLIS.length + 1);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sumNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public void record(long nanos) {
+        long millis = nanos / 1000000;
+        int bucket = 0;
+        while (bucket < BOUNDS_MILLIS.length && millis > BOUNDS_MILLIS[bucket]) bucket++;
+        buckets.incrementAndGet(bucket);
+        sumNanos.addAndGet(nanos);
+        count.incrementAndGet();
+        long max;
+        while (nanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, nanos)) { }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getSumNanos() {
+        return sumNanos.get();
+    }
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     * @return the number of latencies recorded in each bucket, the last being the unbounded one
+     */
+    public long[] getBucketCounts() {
+        long[] counts = new long[buckets.length()];
+        for (int i = 0; i < counts.length; i++) counts[i] = buckets.get(i);
+        return counts;
+    }
+
+    /**
+     * @param quantile between 0 and 1
+     * @return the upper bound of the bucket holding the given quantile, in milliseconds, or the
+     * largest latency recorded if that is in the unbounded bucket; 0 if nothing has been recorded
+     */
+    public double getQuantileMillis(double quantile) {
+        long[] counts = getBucketCounts();
+        long total = 0;
+        for (long c : counts) total += c;
+        if (total == 0) return 0.0;
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BOUNDS_MILLIS.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) return BOUNDS_MILLIS[i];
+        }
+        return maxNanos.get() / 1e6;
+    }
+}
@@ -2,7 +2,7 @@ package com.socrata.datasync;
 
 import com.socrata.datasync.job.IntegrationJob;
 import com.socrata.datasync.config.userpreferences.UserPreferencesLib;
-import com.socrata.datasync.job.JobStatus;
+import com.socrata.datasync.job.JobResult;
 
 import java.io.IOException;
 
@@ -32,6 +32,9 @@ public class LibraryExample {
         //userPrefs.setFilesizeChunkingCutoffMB("10");
         //userPrefs.setNumRowsPerChunk("10000");
 
+        // Apply the preferences shared by every job in the process (connection pool, rate limit, compression)
+        HttpUtility.configure(userPrefs);
+
         // Set up job parameters
         IntegrationJob jobToRun = new IntegrationJob(userPrefs);
         jobToRun.setDatasetID("abcd-1234");
@@ -43,7 +46,7 @@ public class LibraryExample {
         //jobToRun.setPublishViaFTP(true);
         //jobToRun.setPathToFTPControlFile("control.json");
 
-        JobStatus status = jobToRun.run();
+        JobResult status = jobToRun.run();
         if(status.isError()) {
             System.err.println("Job failed: " + status.getMessage());
         } else {
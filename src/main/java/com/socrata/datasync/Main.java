@@ -38,6 +38,7 @@ public class Main {
             } else {
                 // Run a job file (.sij) in command-line mode
                 String jobFileToRun = args[0];
+                HttpUtility.configure(new UserPreferencesJava());
 
                 new SimpleIntegrationRunner(jobFileToRun);
             }
@@ -124,6 +125,7 @@ public class Main {
             // load user preferences from Java preferences class
             userPrefs = new UserPreferencesJava();
         }
+        HttpUtility.configure(userPrefs);
         return userPrefs;
     }
 }
@@ -2,10 +2,12 @@ package com.socrata.datasync;
 
 import com.socrata.api.DatasetDestination;
 import com.socrata.api.HttpLowLevel;
+import com.socrata.api.Soda2Base;
 import com.socrata.api.Soda2Consumer;
 import com.socrata.api.Soda2Producer;
 import com.socrata.api.SodaDdl;
 import com.socrata.builders.SoqlQueryBuilder;
+import com.socrata.datasync.job.JobResult;
 import com.socrata.datasync.job.JobStatus;
 import com.socrata.exceptions.LongRunningQueryException;
 import com.socrata.exceptions.SodaError;
@@ -99,47 +101,59 @@ public class PortUtility {
         }
     }
 
-    private static void upsertContents(Soda2Consumer streamExporter, Soda2Producer streamUpserter,
-                                       String sourceSetID, String sinkSetID)
+    private static void upsertContents(final Soda2Consumer streamExporter, final Soda2Producer streamUpserter,
+                                       final String sourceSetID, final String sinkSetID)
         throws InterruptedException, LongRunningQueryException, SodaError, IOException
     {
         System.out.println("Upserting contents of dataset " + sourceSetID + " into dataset " + sinkSetID);
 
         int retryLimit = 10;
-        int retryPause = 10000; // sleep 10 seconds before retrying on errors
+        // wait about 10 seconds before the first retry on errors, longer before later ones
+        Backoff backoff = new Backoff(10000, 1.5, 60000);
+        String sourceHost = hostOf(streamExporter);
+        String sinkHost = hostOf(streamUpserter);
 
         // Limit of 1000 rows per export, so page through dataset using $offset
         int offset = 0;
         int rowsUpserted = 0;
-        Response response;
-        ObjectMapper mapper = new ObjectMapper();
+        final ObjectMapper mapper = new ObjectMapper();
         List<Map<String, Object>> rowSet;
 
         do {
-            SoqlQuery myQuery =new SoqlQueryBuilder().setOffset(offset).build();
-            for(int retries = 0;; ++retries) {
-                try {
-                    response = streamExporter.query(sourceSetID, HttpLowLevel.JSON_TYPE, myQuery);
-                    rowSet = mapper.readValue(response.readEntity(InputStream.class), new TypeReference<List<Map<String,Object>>>() {});
-                    break;
-                } catch(SodaError|IOException e) {
-                    if(retries == retryLimit) throw e;
-                    System.out.println("Caught an error, waiting a bit then retrying.  Error was: " + e.getMessage());
-                    Thread.sleep(retryPause);
-                }
+            final SoqlQuery myQuery =new SoqlQueryBuilder().setOffset(offset).build();
+            try {
+                rowSet = Retrier.get().call(sourceHost, retryLimit, backoff,
+                        new Retrier.Attempt<List<Map<String, Object>>, LongRunningQueryException>() {
+                    @Override
+                    public List<Map<String, Object>> run() throws LongRunningQueryException, IOException {
+                        try {
+                            Response response = streamExporter.query(sourceSetID, HttpLowLevel.JSON_TYPE, myQuery);
+                            return mapper.readValue(response.readEntity(InputStream.class), new TypeReference<List<Map<String,Object>>>() {});
+                        } catch (SodaError e) {
+                            throw RateLimiter.retryable(e);
+                        }
+                    }
+                });
+            } catch (Retrier.RetryableException e) {
+                throw sodaErrorOrSelf(e);
             }
             if (rowSet.size() > 0) {
                 offset += rowSet.size();
                 UpsertResult result;
-                for(int retries = 0;; ++retries) {
-                    try {
-                        result = streamUpserter.upsert(sinkSetID, rowSet);
-                        break;
-                    } catch(SodaError e) {
-                        if(retries == retryLimit) throw e;
-                        System.out.println("Caught an error, waiting a bit then retrying.  Error was: " + e.getMessage());
-                        Thread.sleep(retryPause);
-                    }
+                final List<Map<String, Object>> rows = rowSet;
+                try {
+                    result = Retrier.get().call(sinkHost, retryLimit, backoff, new Retrier.Attempt<UpsertResult, InterruptedException>() {
+                        @Override
+                        public UpsertResult run() throws InterruptedException, IOException {
+                            try {
+                                return streamUpserter.upsert(sinkSetID, rows);
+                            } catch (SodaError e) {
+                                throw RateLimiter.retryable(e);
+                            }
+                        }
+                    });
+                } catch (Retrier.RetryableException e) {
+                    throw sodaErrorOrSelf(e);
                 }
                 rowsUpserted += result.getRowsCreated() + result.getRowsUpdated();
                 System.out.println("\tUpserted " + rowsUpserted + " rows.");
@@ -147,6 +161,18 @@ public class PortUtility {
         } while (rowSet.size() > 0);
     }
 
+    /**
+     * @return the exception that made the Retrier give up, unless it was a SodaError, which is thrown
+     */
+    private static IOException sodaErrorOrSelf(Retrier.RetryableException e) throws SodaError {
+        if (e.getCause() instanceof SodaError) throw (SodaError) e.getCause();
+        return e;
+    }
+
+    private static String hostOf(Soda2Base soda) {
+        return soda.getHttpLowLevel().uriBuilder().build().getHost();
+    }
+
     private static void replaceContents(Soda2Consumer streamExporter, Soda2Producer streamUpserter,
                                         String sourceSetID, String sinkSetID)
         throws InterruptedException, LongRunningQueryException, SodaError, IOException
@@ -188,12 +214,21 @@ public class PortUtility {
         }
 
         System.out.print("\tReplacing data . . .");
-        FileInputStream replacementFile = new FileInputStream(tempFile);
-        streamUpserter.replaceStream(sinkSetID, HttpLowLevel.JSON_TYPE, replacementFile);
+        String sinkHost = hostOf(streamUpserter);
+        boolean compressed = RequestCompression.get().shouldCompress(sinkHost);
+        try (FileInputStream replacementFile = new FileInputStream(tempFile)) {
+            streamUpserter.replaceStream(sinkSetID, HttpLowLevel.JSON_TYPE, replacementFile);
+        } catch (SodaError e) {
+            // refused for being gzipped; the refusal was noted, so this time it goes uncompressed
+            if (!compressed || RequestCompression.get().shouldCompress(sinkHost)) throw e;
+            try (FileInputStream replacementFile = new FileInputStream(tempFile)) {
+                streamUpserter.replaceStream(sinkSetID, HttpLowLevel.JSON_TYPE, replacementFile);
+            }
+        }
         System.out.println();
     }
 
-    public static JobStatus assertSchemasAreAlike(SodaDdl sourceChecker, SodaDdl sinkChecker, String sourceSetID, String sinkSetID)
+    public static JobResult assertSchemasAreAlike(SodaDdl sourceChecker, SodaDdl sinkChecker, String sourceSetID, String sinkSetID)
         throws SodaError, InterruptedException
     {
         // We don't need to test metadata; we're only concerned with the columns...
@@ -209,13 +244,13 @@ public class PortUtility {
                 // The aspects of the columns that we care about are the API field names and their data types
                 if(!sourceColumns.get(i).getFieldName().equals(sinkColumns.get(i).getFieldName()) ||
                    !sourceColumns.get(i).getDataTypeName().equals(sinkColumns.get(i).getDataTypeName())){
-                    return JobStatus.INVALID_SCHEMAS;
+                    return JobResult.of(JobStatus.INVALID_SCHEMAS);
                 }
             }
         } else {
-            return JobStatus.INVALID_SCHEMAS;
+            return JobResult.of(JobStatus.INVALID_SCHEMAS);
         }
-        return JobStatus.SUCCESS;
+        return JobResult.of(JobStatus.SUCCESS);
     }
 
     /**
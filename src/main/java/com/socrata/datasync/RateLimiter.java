@@ -0,0 +1,280 @@
+package com.socrata.datasync;
+
+import com.socrata.api.HttpLowLevel;
+import com.socrata.exceptions.SodaError;
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.utils.DateUtils;
+
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientRequestFilter;
+import javax.ws.rs.client.ClientResponseContext;
+import javax.ws.rs.client.ClientResponseFilter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits the rate of requests sent to each domain by every job in the process together, so that
+ * jobs run side by side don't get themselves throttled.  Each domain has a token bucket; requests
+ * wait their turn for a token, first come first served, rather than failing.  When a domain
+ * throttles a request anyway (a 429, or a 503 with a Retry-After), its rate is halved and nothing
+ * more is sent to it until the Retry-After has passed; each request it then accepts raises the
+ * rate again, by about one request a second every second, up to the configured ceiling.
+ */
+public class RateLimiter {
+    public static final double DEFAULT_REQUESTS_PER_SECOND = 20;
+    public static final int SC_TOO_MANY_REQUESTS = 429;
+    private static final double minRequestsPerSecond = 0.1;
+    private static final long maxRetryAfterMillis = 5 * 60 * 1000;
+
+    private static final RateLimiter instance = new RateLimiter(DEFAULT_REQUESTS_PER_SECOND);
+
+    private final ConcurrentMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private volatile double maxRate;
+
+    /**
+     * @return the limiter shared by the whole process
+     */
+    public static RateLimiter get() {
+        return instance;
+    }
+
+    /**
+     * @param requestsPerSecond the most requests a second sent to any one domain
+     */
+    public RateLimiter(double requestsPerSecond) {
+        this.maxRate = requestsPerSecond;
+    }
+
+    /**
+     * Changes the most requests a second sent to any one domain, e.g. when preferences are loaded.
+     */
+    public void setMaxRate(double requestsPerSecond) {
+        if (requestsPerSecond <= 0 || requestsPerSecond == maxRate) return;
+        maxRate = requestsPerSecond;
+        for (Bucket bucket : buckets.values()) bucket.cap(requestsPerSecond);
+    }
+
+    /**
+     * @return the requests a second currently allowed to the given host
+     */
+    public double getRate(String host) {
+        return bucketFor(host).getRate();
+    }
+
+    /**
+     * Waits until a request may be sent to the given host.  Requests are let through in the order
+     * they began waiting, whichever jobs they belong to.
+     */
+    public void acquire(String host) throws InterruptedException {
+        if (host == null) return;
+        long waitNanos = bucketFor(host).reserve();
+        if (waitNanos > 0) TimeUnit.NANOSECONDS.sleep(waitNanos);
+    }
+
+    /**
+     * Notes the response to a request to the given host, slowing the requests sent it if it was
+     * throttled, or speeding them back up if not.
+     */
+    public void recordResponse(String host, HttpResponse response) {
+        if (host == null) return;
+        int status = response.getStatusLine().getStatusCode();
+        if (isThrottled(status, response.getFirstHeader(HttpHeaders.RETRY_AFTER) != null))
+            bucketFor(host).throttle(retryAfterMillis(response));
+        else if (status < HttpStatus.SC_INTERNAL_SERVER_ERROR)
+            bucketFor(host).recordSuccess();
+    }
+
+    /**
+     * Limits the requests a SODA2 client sends by the same buckets, since they don't go through
+     * HttpUtility.
+     */
+    public void limit(HttpLowLevel soda) {
+        soda.getClient().register(new SodaFilter());
+    }
+
+    /**
+     * @return whether a response with the given status asks for its request to be sent later
+     */
+    public static boolean isThrottled(int status, boolean hasRetryAfter) {
+        return status == SC_TOO_MANY_REQUESTS || (status == HttpStatus.SC_SERVICE_UNAVAILABLE && hasRetryAfter);
+    }
+
+    public static boolean isThrottled(HttpResponse response) {
+        return isThrottled(response.getStatusLine().getStatusCode(), response.getFirstHeader(HttpHeaders.RETRY_AFTER) != null);
+    }
+
+    /**
+     * @return how long the response asks its request be put off for, or -1 if it doesn't say
+     */
+    public static long retryAfterMillis(HttpResponse response) {
+        Header retryAfter = response.getFirstHeader(HttpHeaders.RETRY_AFTER);
+        return retryAfter == null ? -1 : parseRetryAfter(retryAfter.getValue());
+    }
+
+    /**
+     * @param value a Retry-After header's value: either a number of seconds or an HTTP date
+     * @return the delay it asks for, at most a few minutes, or -1 if it can't be made sense of
+     */
+    static long parseRetryAfter(String value) {
+        if (value == null) return -1;
+        value = value.trim();
+        long millis;
+        try {
+            millis = Long.parseLong(value) * 1000;
+        } catch (NumberFormatException e) {
+            Date date = DateUtils.parseDate(value);
+            if (date == null) return -1;
+            millis = date.getTime() - System.currentTimeMillis();
+        }
+        return Math.min(maxRetryAfterMillis, Math.max(0, millis));
+    }
+
+    /**
+     * @return the failure of a SODA2 call as an exception the Retrier retries; one the domain
+     * throttled is waited out without counting as a retry
+     */
+    public static Retrier.RetryableException retryable(SodaError e) {
+        if (isThrottled(e.getStatus(), false)) return new Retrier.ThrottledException(e.getMessage(), -1, e);
+        return new Retrier.RetryableException(e.getMessage(), e);
+    }
+
+    private Bucket bucketFor(String host) {
+        Bucket bucket = buckets.get(host);
+        if (bucket == null) {
+            Bucket fresh = new Bucket(host, maxRate);
+            bucket = buckets.putIfAbsent(host, fresh);
+            if (bucket == null) bucket = fresh;
+        }
+        return bucket;
+    }
+
+    /**
+     * The tokens of one domain.  Rather than waiting for a token while holding the (fair) lock,
+     * each request reserves the next one, so later requests reserve the ones after it and all of
+     * them wait at once, each until its own token is due.
+     */
+    private static class Bucket {
+        private final String host;
+        // fair, so reservations are handed out in the order they were asked for
+        private final ReentrantLock lock = new ReentrantLock(true);
+        private double ceiling;
+        private double rate;
+        private double storedTokens;
+        private long nextFreeNanos = System.nanoTime();
+
+        Bucket(String host, double rate) {
+            this.host = host;
+            this.ceiling = rate;
+            this.rate = rate;
+            // a full second's worth may be sent at once
+            this.storedTokens = rate;
+        }
+
+        /**
+         * @return how long to wait before sending the request the token is reserved for
+         */
+        long reserve() {
+            lock.lock();
+            try {
+                long now = System.nanoTime();
+                refill(now);
+                long wait = Math.max(0, nextFreeNanos - now);
+                double fromStore = Math.min(1.0, storedTokens);
+                storedTokens -= fromStore;
+                nextFreeNanos += (long) ((1.0 - fromStore) * 1e9 / rate);
+                return wait;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void throttle(long retryAfterMillis) {
+            lock.lock();
+            try {
+                long now = System.nanoTime();
+                refill(now);
+                double slower = Math.max(minRequestsPerSecond, rate / 2);
+                if (slower < rate)
+                    System.err.println(host + " is throttling requests; sending it at most " +
+                            String.format("%.1f", slower) + " a second");
+                rate = slower;
+                storedTokens = 0;
+                if (retryAfterMillis > 0)
+                    nextFreeNanos = Math.max(nextFreeNanos, now + TimeUnit.MILLISECONDS.toNanos(retryAfterMillis));
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void recordSuccess() {
+            lock.lock();
+            try {
+                // 1/rate per request is about one more request a second for every second of them
+                if (rate < ceiling) rate = Math.min(ceiling, rate + 1.0 / rate);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void cap(double newCeiling) {
+            lock.lock();
+            try {
+                ceiling = newCeiling;
+                rate = Math.min(rate, newCeiling);
+                storedTokens = Math.min(storedTokens, newCeiling);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        double getRate() {
+            lock.lock();
+            try {
+                return rate;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Stores the tokens accrued while nothing was reserved, up to a second's worth.
+         */
+        private void refill(long now) {
+            if (now > nextFreeNanos) {
+                storedTokens = Math.min(rate, storedTokens + (now - nextFreeNanos) * rate / 1e9);
+                nextFreeNanos = now;
+            }
+        }
+    }
+
+    private class SodaFilter implements ClientRequestFilter, ClientResponseFilter {
+        @Override
+        public void filter(ClientRequestContext request) throws IOException {
+            try {
+                acquire(request.getUri().getHost());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting to send " + request.getUri());
+            }
+        }
+
+        @Override
+        public void filter(ClientRequestContext request, ClientResponseContext response) {
+            String host = request.getUri().getHost();
+            if (host == null) return;
+            String retryAfter = response.getHeaderString(HttpHeaders.RETRY_AFTER);
+            if (isThrottled(response.getStatus(), retryAfter != null))
+                bucketFor(host).throttle(parseRetryAfter(retryAfter));
+            else if (response.getStatus() < HttpStatus.SC_INTERNAL_SERVER_ERROR)
+                bucketFor(host).recordSuccess();
+        }
+    }
+}
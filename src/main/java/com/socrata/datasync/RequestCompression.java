@@ -0,0 +1,130 @@
+package com.socrata.datasync;
+
+import com.socrata.api.HttpLowLevel;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.client.entity.GzipCompressingEntity;
+import org.glassfish.jersey.message.GZipEncoder;
+
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientRequestFilter;
+import javax.ws.rs.client.ClientResponseContext;
+import javax.ws.rs.client.ClientResponseFilter;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Whether the bodies of requests sent to each domain are gzipped (sent with Content-Encoding: gzip),
+ * for every job in the process together.  Rows of JSON shrink several times over, so upserts and
+ * commits spend far less time on the wire.  The body is compressed as it's written, so the
+ * uncompressed body is never held in memory as well.
+ *
+ * By default ("none") bodies are sent as they are, since not every server in front of a domain
+ * accepts the encoding.  With "auto" bodies are gzipped until a domain refuses one with a 415
+ * Unsupported Media Type, as a server not accepting the encoding is to; from then on bodies sent to
+ * that domain are not, and the refused request should be sent again.  "gzip" always compresses.
+ */
+public class RequestCompression {
+    public enum Mode { auto, gzip, none }
+
+    public static final String GZIP = "gzip";
+    public static final int SC_UNSUPPORTED_MEDIA_TYPE = 415;
+
+    private static final RequestCompression instance = new RequestCompression(Mode.none);
+
+    private final Set<String> refusingHosts = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private volatile Mode mode;
+
+    /**
+     * @return the choices shared by the whole process
+     */
+    public static RequestCompression get() {
+        return instance;
+    }
+
+    public RequestCompression(Mode mode) {
+        this.mode = mode;
+    }
+
+    /**
+     * Sets whether bodies are compressed from the user's preference, e.g. when preferences are loaded;
+     * anything but "auto" or "gzip" means "none".
+     */
+    public void setMode(String configured) {
+        Mode parsed = Mode.none;
+        if (configured != null && !configured.trim().isEmpty()) {
+            try {
+                parsed = Mode.valueOf(configured.trim().toLowerCase());
+            } catch (IllegalArgumentException e) {
+                System.out.println("Ignoring invalid request compression '" + configured + "'");
+            }
+        }
+        mode = parsed;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * @return whether the body of a request to the given host should be gzipped
+     */
+    public boolean shouldCompress(String host) {
+        switch (mode) {
+            case gzip: return true;
+            case none: return false;
+            default: return host == null || !refusingHosts.contains(host);
+        }
+    }
+
+    /**
+     * Notes the response to a request to the given host with a gzipped body.
+     * @return true if the host refused the body for being gzipped, in which case the request should
+     * be sent again, and bodies sent the host from now on aren't compressed (unless always asked to be)
+     */
+    public boolean recordResponse(String host, int status) {
+        if (status != SC_UNSUPPORTED_MEDIA_TYPE || host == null || mode != Mode.auto) return false;
+        if (refusingHosts.add(host))
+            System.out.println(host + " doesn't accept compressed requests; sending it them uncompressed");
+        return true;
+    }
+
+    /**
+     * @return the entity, gzipped if bodies sent to the given host should be
+     */
+    public HttpEntity compress(String host, HttpEntity entity) {
+        return shouldCompress(host) ? new GzipCompressingEntity(entity) : entity;
+    }
+
+    /**
+     * @return whether the entity is to be sent gzipped
+     */
+    public static boolean isCompressed(HttpEntity entity) {
+        return entity.getContentEncoding() != null && GZIP.equalsIgnoreCase(entity.getContentEncoding().getValue());
+    }
+
+    /**
+     * Has a SODA2 client gzip the bodies of its requests in the same way, since they don't go through
+     * HttpUtility.
+     */
+    public void compress(HttpLowLevel soda) {
+        // GZipEncoder compresses any body whose Content-Encoding is gzip as it's written
+        soda.getClient().register(GZipEncoder.class);
+        soda.getClient().register(new SodaFilter());
+    }
+
+    private class SodaFilter implements ClientRequestFilter, ClientResponseFilter {
+        @Override
+        public void filter(ClientRequestContext request) {
+            if (request.hasEntity() && shouldCompress(request.getUri().getHost()))
+                request.getHeaders().putSingle(HttpHeaders.CONTENT_ENCODING, GZIP);
+        }
+
+        @Override
+        public void filter(ClientRequestContext request, ClientResponseContext response) {
+            if (GZIP.equals(request.getHeaderString(HttpHeaders.CONTENT_ENCODING)))
+                recordResponse(request.getUri().getHost(), response.getStatus());
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package com.socrata.datasync;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Retries requests the same way wherever they are made: with jittered exponential backoff, within
+ * a retry budget shared by every request in the process, and never to a host whose circuit breaker
+ * is open, for which requests fail at once with a {@link CircuitOpenException}.  Attempts signal
+ * a failure worth retrying by throwing an IOException, e.g. a {@link RetryableException} for a
+ * response that says to try again; any other exception fails the request at once.  A request
+ * the host throttled, signalled by a {@link ThrottledException}, is waited out and sent again
+ * without counting as a retry or a failure: the host is up, just busy.
+ */
+public class Retrier {
+    private static final double retryRatio = 0.2;
+    private static final int retryReserve = 10;
+    private static final int retryCap = 100;
+    private static final int breakerFailureThreshold = 5;
+    private static final long breakerOpenMillis = 30000;
+    // how many times a single request is let wait out throttling before giving up on it
+    private static final int maxThrottledWaits = 20;
+
+    private static final Retrier instance = new Retrier(new RetryBudget(retryRatio, retryReserve, retryCap),
+            breakerFailureThreshold, breakerOpenMillis);
+    private static ScheduledExecutorService scheduler = null;
+
+    /**
+     * A request, or anything else that may be retried.
+     * @param <E> the exception it fails with when it isn't worth retrying
+     */
+    public interface Attempt<T, E extends Exception> {
+        T run() throws E, IOException;
+    }
+
+    /**
+     * Thrown by an attempt whose request was answered, but in a way that says to try it again.
+     */
+    public static class RetryableException extends IOException {
+        public RetryableException(String message) {
+            super(message);
+        }
+
+        public RetryableException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    /**
+     * Thrown by an attempt whose request the host asked to be sent later, e.g. with a 429.
+     */
+    public static class ThrottledException extends RetryableException {
+        private final long retryAfterMillis;
+
+        /**
+         * @param retryAfterMillis how long the host asked to wait, or -1 if it didn't say
+         */
+        public ThrottledException(String message, long retryAfterMillis) {
+            super(message);
+            this.retryAfterMillis = retryAfterMillis;
+        }
+
+        public ThrottledException(String message, long retryAfterMillis, Throwable cause) {
+            super(message, cause);
+            this.retryAfterMillis = retryAfterMillis;
+        }
+
+        public long getRetryAfterMillis() {
+            return retryAfterMillis;
+        }
+    }
+
+    /**
+     * Thrown instead of making a request to a host whose circuit breaker is open.
+     */
+    public static class CircuitOpenException extends IOException {
+        public CircuitOpenException(String host) {
+            super("Not sending requests to " + host + " for a while, since too many have failed");
+        }
+    }
+
+    private final RetryBudget budget;
+    private final int failureThreshold;
+    private final long openMillis;
+    private final ConcurrentMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    /**
+     * @return the retrier shared by the whole process
+     */
+    public static Retrier get() {
+        return instance;
+    }
+
+    public Retrier(RetryBudget budget, int failureThreshold, long openMillis) {
+        this.budget = budget;
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+    }
+
+    public CircuitBreaker breakerFor(String host) {
+        CircuitBreaker breaker = breakers.get(host);
+        if (breaker == null) {
+            CircuitBreaker fresh = new CircuitBreaker(host, failureThreshold, openMillis);
+            breaker = breakers.putIfAbsent(host, fresh);
+            if (breaker == null) breaker = fresh;
+        }
+        return breaker;
+    }
+
+    public RetryBudget getBudget() {
+        return budget;
+    }
+
+    /**
+     * Makes an attempt, retrying it on the calling thread until it succeeds, fails in a way not
+     * worth retrying, or may be retried no more.
+     * @param host the host the attempt makes its request to
+     * @param maxRetries the most times to retry the attempt
+     * @param backoff the delays between retries
+     * @return what the successful attempt returned
+     * @throws IOException the last failure, if the attempt may be retried no more
+     */
+    public <T, E extends Exception> T call(String host, int maxRetries, Backoff backoff, Attempt<T, E> attempt)
+            throws E, IOException, InterruptedException {
+        CircuitBreaker breaker = breakerFor(host);
+        budget.recordRequest();
+        int throttledWaits = 0;
+        for (int retry = 0; ; ) {
+            if (!breaker.allowRequest()) throw new CircuitOpenException(host);
+            boolean failed = false;
+            try {
+                return attempt.run();
+            } catch (ThrottledException e) {
+                breaker.recordSuccess();
+                long delay = throttledDelay(throttledWaits++, backoff, e);
+                if (delay < 0 || Thread.currentThread().isInterrupted()) throw e;
+                Thread.sleep(delay);
+            } catch (IOException e) {
+                failed = true;
+                breaker.recordFailure();
+                long delay = retryDelay(breaker, retry++, maxRetries, backoff, e);
+                if (delay < 0 || Thread.currentThread().isInterrupted()) throw e;
+                Thread.sleep(delay);
+            } finally {
+                // a request answered, even with a failure not worth retrying, shows the host is up
+                if (!failed) breaker.recordSuccess();
+            }
+        }
+    }
+
+    /**
+     * Makes an attempt on the given executor, retrying it there until it succeeds, fails in a way
+     * not worth retrying, or may be retried no more.  No thread waits out the delays between
+     * retries: each retry is scheduled, then handed to the executor when it is due.
+     * @return a future completed with what the successful attempt returned, or failed with the
+     * exception that ended the retrying
+     */
+    public <T, E extends Exception> ListenableFuture<T> submit(String host, int maxRetries, Backoff backoff,
+                                                               Attempt<T, E> attempt, Executor executor) {
+        budget.recordRequest();
+        AsyncAttempt<T> async = new AsyncAttempt<>(breakerFor(host), host, maxRetries, backoff, attempt, executor);
+        async.dispatch();
+        return async.result;
+    }
+
+    /**
+     * @return how long to wait before retrying after the given failure, or -1 not to retry
+     */
+    private long retryDelay(CircuitBreaker breaker, int retry, int maxRetries, Backoff backoff, IOException failure) {
+        if (retry >= maxRetries || failure instanceof CircuitOpenException) return -1;
+        if (breaker.getState() == CircuitBreaker.State.OPEN) return -1;
+        if (!budget.tryRetry()) {
+            System.err.println("Request failed: " + failure.getMessage() + ".  Not retrying it; too many requests are being retried");
+            return -1;
+        }
+        long delay = backoff.delayMillis(retry);
+        System.err.println("Request failed: " + failure.getMessage() + ".  Retrying request in " + delay + " ms");
+        return delay;
+    }
+
+    /**
+     * @return how long to wait before sending a throttled request again, or -1 to give up on it
+     */
+    private static long throttledDelay(int throttledWaits, Backoff backoff, ThrottledException throttled) {
+        if (throttledWaits >= maxThrottledWaits) return -1;
+        // the RateLimiter holds back every request to the host for the Retry-After; this waits at least as long
+        long delay = Math.max(throttled.getRetryAfterMillis(), backoff.delayMillis(throttledWaits));
+        System.err.println("Request throttled: " + throttled.getMessage() + ".  Sending it again in " + delay + " ms");
+        return delay;
+    }
+
+    private static synchronized ScheduledExecutorService scheduler() {
+        if (scheduler == null)
+            scheduler = Executors.newSingleThreadScheduledExecutor(
+                    new ThreadFactoryBuilder().setDaemon(true).setNameFormat("Retry scheduler %d").build());
+        return scheduler;
+    }
+
+    private class AsyncAttempt<T> implements Runnable {
+        final SettableFuture<T> result = SettableFuture.create();
+        private final CircuitBreaker breaker;
+        private final String host;
+        private final int maxRetries;
+        private final Backoff backoff;
+        private final Attempt<T, ?> attempt;
+        private final Executor executor;
+        private int retry = 0;
+        private int throttledWaits = 0;
+
+        AsyncAttempt(CircuitBreaker breaker, String host, int maxRetries, Backoff backoff, Attempt<T, ?> attempt,
+                     Executor executor) {
+            this.breaker = breaker;
+            this.host = host;
+            this.maxRetries = maxRetries;
+            this.backoff = backoff;
+            this.attempt = attempt;
+            this.executor = executor;
+        }
+
+        void dispatch() {
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                result.setException(e);
+            }
+        }
+
+        @Override
+        public void run() {
+            if (result.isCancelled()) return;
+            if (!breaker.allowRequest()) {
+                result.setException(new CircuitOpenException(host));
+                return;
+            }
+            T value;
+            try {
+                value = attempt.run();
+            } catch (IOException e) {
+                long delay;
+                if (e instanceof ThrottledException) {
+                    breaker.recordSuccess();
+                    delay = throttledDelay(throttledWaits++, backoff, (ThrottledException) e);
+                } else {
+                    breaker.recordFailure();
+                    delay = retryDelay(breaker, retry++, maxRetries, backoff, e);
+                }
+                if (delay < 0) {
+                    result.setException(e);
+                    return;
+                }
+                try {
+                    scheduler().schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            dispatch();
+                        }
+                    }, delay, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException re) {
+                    result.setException(e);
+                }
+                return;
+            } catch (Throwable e) {
+                breaker.recordSuccess();
+                result.setException(e);
+                return;
+            }
+            breaker.recordSuccess();
+            // nobody will get a value the future was cancelled before receiving, e.g. a response holding a connection
+            if (!result.set(value) && value instanceof Closeable) {
+                try {
+                    ((Closeable) value).close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+}
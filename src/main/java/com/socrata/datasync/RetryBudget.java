@@ -0,0 +1,56 @@
+package com.socrata.datasync;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caps retries at a fraction of requests, so that when a host is failing the requests made to it
+ * don't multiply into a storm of retries.  Every request deposits a fraction of a retry; every
+ * retry withdraws a whole one, and is refused if there isn't one to withdraw.  A small reserve
+ * lets the first few failures be retried before much has been requested.
+ */
+public class RetryBudget {
+    // balances are kept in thousandths of a retry, so deposits needn't be whole
+    private static final long unit = 1000;
+
+    private final long deposit;
+    private final long cap;
+    private final AtomicLong balance;
+
+    /**
+     * @param ratio the retries allowed per request, e.g. 0.2 for one retry in five requests
+     * @param reserve the retries allowed before anything has been requested
+     * @param cap the most retries that can be saved up by requests that didn't need them
+     */
+    public RetryBudget(double ratio, int reserve, int cap) {
+        this.deposit = (long) (ratio * unit);
+        this.cap = Math.max(reserve, cap) * unit;
+        this.balance = new AtomicLong(reserve * unit);
+    }
+
+    public void recordRequest() {
+        long current;
+        do {
+            current = balance.get();
+            if (current >= cap) return;
+        } while (!balance.compareAndSet(current, Math.min(cap, current + deposit)));
+    }
+
+    /**
+     * @return whether a retry may be made, having withdrawn it if so
+     */
+    public boolean tryRetry() {
+        long current;
+        do {
+            current = balance.get();
+            if (current < unit) return false;
+        } while (!balance.compareAndSet(current, current - unit));
+        return true;
+    }
+
+    /**
+     * @return the number of retries that may be made now
+     */
+    public double getAvailable() {
+        return balance.get() / (double) unit;
+    }
+}
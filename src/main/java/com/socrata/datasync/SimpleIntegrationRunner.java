@@ -2,6 +2,7 @@ package com.socrata.datasync;
 
 import com.socrata.datasync.job.IntegrationJob;
 import com.socrata.datasync.job.Job;
+import com.socrata.datasync.job.JobResult;
 import com.socrata.datasync.job.JobStatus;
 import com.socrata.datasync.job.PortJob;
 import com.socrata.datasync.job.GISJob;
@@ -37,7 +38,7 @@ public class SimpleIntegrationRunner {
                 } else {
                     job = new IntegrationJob(jobFileToRun);
                 }
-                JobStatus status = job.run();
+                JobResult status = job.run();
                 if(status.isError()) {
                     System.err.print("Job completed with errors: ");
                     System.err.println(status.getMessage());
@@ -46,7 +47,7 @@ public class SimpleIntegrationRunner {
                     // job ran successfully!
                     System.out.println("Job completed successfully");
                     if(job.getClass() == PortJob.class) {
-                        if(status == JobStatus.SUCCESS) System.out.print("Success. ");
+                        if(status.getStatus() == JobStatus.SUCCESS) System.out.print("Success. ");
                         System.out.println("Your newly created dataset is at:\n" +
                                            ((PortJob)job).getSinkSiteDomain() + "/d/" + ((PortJob)job).getSinkSetID());
                     }
@@ -64,7 +65,7 @@ public class SimpleIntegrationRunner {
     }
 
     public SimpleIntegrationRunner(Job job) {
-        JobStatus status;
+        JobResult status;
         try {
             status = job.run();
             if(status.isError()) {
@@ -74,7 +75,7 @@ public class SimpleIntegrationRunner {
             } else {
                 System.out.println("Job completed successfully");
                 if(job.getClass() == PortJob.class) {
-                    if(status == JobStatus.SUCCESS) System.out.print("Success. ");
+                    if(status.getStatus() == JobStatus.SUCCESS) System.out.print("Success. ");
                     System.out.println("Your newly created dataset is at:\n" +
                         ((PortJob)job).getSinkSiteDomain() + "/d/" + ((PortJob)job).getSinkSetID());
                     }
@@ -17,7 +17,10 @@ import java.net.URISyntaxException;
 import java.net.URLDecoder;
 import java.nio.charset.Charset;
 import java.nio.charset.UnsupportedCharsetException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.Arrays;
 import java.util.ArrayList;
 import java.util.UUID;
@@ -223,6 +226,30 @@ public class Utils {
         return (s == null || s.equals(""));
     }
 
+    /**
+     * Returns (creating it if need be) a directory under ~/.datasync in which DataSync can keep
+     * state between runs
+     * @param name the name of the subdirectory
+     */
+    public static File getLocalStateDirectory(String name) throws IOException {
+        File dir = new File(new File(System.getProperty("user.home"), ".datasync"), name);
+        if (!dir.isDirectory() && !dir.mkdirs())
+            throw new IOException("Unable to create directory " + dir.getAbsolutePath());
+        return dir;
+    }
+
+    /**
+     * Moves a file over another, atomically where the filesystem allows it, so that readers of the
+     * destination see either its old or its new contents
+     */
+    public static void replaceFile(File from, File to) throws IOException {
+        try {
+            Files.move(from.toPath(), to.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
     public static String getUserAgentString(String agentName) {
         try {
             String osName = System.getProperty("os.name");
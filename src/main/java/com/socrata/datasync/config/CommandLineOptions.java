@@ -29,6 +29,9 @@ public class CommandLineOptions {
     public static final String PATH_TO_CONTROL_FILE_FLAG = "pathToControlFile";
     public static final String PROXY_USERNAME_FLAG = "proxyUsername";
     public static final String PROXY_PASSWORD_FLAG = "proxyPassword";
+    public static final String BLOB_UPLOAD_CONCURRENCY_FLAG = "blobUploadConcurrency";
+    public static final String DRY_RUN_FLAG = "dryRun";
+    public static final String PREVIOUS_SIGNATURE_FLAG = "previousSignature";
 
     public static final String PORT_METHOD_FLAG = "portMethod";
     public static final String SOURCE_DOMAIN_FLAG = "sourceDomain";
@@ -42,6 +45,7 @@ public class CommandLineOptions {
     public static final String DEFAULT_JOBTYPE = Jobs.INTEGRATION_JOB.toString();
     public static final String DEFAULT_PUBLISH_VIA_FTP = "false";
     public static final String DEFAULT_PUBLISH_VIA_DI2 = "false";
+    public static final String DEFAULT_DRY_RUN = "false";
     public static final String DEFAULT_PORT_PUBLISH_METHOD = PublishMethod.upsert.toString();
     public static final String DEFAULT_PUBLISH_DESTINATION_DATASET = "false";
 
@@ -65,6 +69,12 @@ public class CommandLineOptions {
                 "if set overrides job parameters [IntegrationJob]");
         options.addOption("pun", PROXY_USERNAME_FLAG, true, "The username to supply to connect to the proxy server [IntegrationJob]");
         options.addOption("ppw", PROXY_PASSWORD_FLAG, true, "The password to supply to connect to the proxy server [IntegrationJob]");
+        options.addOption("buc", BLOB_UPLOAD_CONCURRENCY_FLAG, true, "Number of diff chunks to upload at once when publishing via HTTP; " +
+                "overrides the value in the preferences (optional) [IntegrationJob]");
+        options.addOption("dr", DRY_RUN_FLAG, true, "Compute the patch and report its size and estimated upload time " +
+                "without publishing anything (true or false) (default: " + DEFAULT_DRY_RUN + "); requires -ph true [IntegrationJob]");
+        options.addOption("psig", PREVIOUS_SIGNATURE_FLAG, true, "Local copy of the dataset's latest .ssig signature for a " +
+                "dry run to diff against, instead of the server's (optional) [IntegrationJob]");
 
         // PortJob params
         options.addOption("pm", PORT_METHOD_FLAG, true, "Port method (" + Arrays.toString(PortMethod.values()) + ") [PortJob]");
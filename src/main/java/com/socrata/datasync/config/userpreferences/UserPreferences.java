@@ -50,6 +50,30 @@ public interface UserPreferences {
 
     public String getNumRowsPerChunk();
 
+    public String getBlobUploadConcurrency();
+
+    public String getSignatureCacheSizeMB();
+
+    public String getCompressionThreads();
+
+    public String getPatchCompression();
+
+    public String getHttpMaxConnections();
+
+    public String getHttpMaxConnectionsPerRoute();
+
+    public String getHttpMetricsFile();
+
+    public String getHttpRequestsPerSecond();
+
+    public String getRequestCompression();
+
+    public String getUpsertConcurrency();
+
+    public String getMaxChunkSizeMB();
+
+    public String getChunkTargetSeconds();
+
     public SocrataConnectionInfo getConnectionInfo();
 
     public void setProxyPassword(String password);
@@ -37,10 +37,22 @@ public class UserPreferencesFile implements UserPreferences {
     private String smtpPassword;
     private String filesizeChunkingCutoffMB;
     private String numRowsPerChunk;
+    private String blobUploadConcurrency;
+    private String signatureCacheSizeMB;
+    private String compressionThreads;
+    private String patchCompression;
+    private String httpMaxConnections;
+    private String httpMaxConnectionsPerRoute;
+    private String httpMetricsFile;
+    private String httpRequestsPerSecond;
+    private String requestCompression;
+    private String upsertConcurrency;
+    private String maxChunkSizeMB;
+    private String chunkTargetSeconds;
     private List<String> timeFormats;
 
     // Anytime a @JsonProperty is added/removed/updated in this class add 1 to this value
-    private static final long fileVersionUID = 5L;
+    private static final long fileVersionUID = 16L;
 
     @JsonProperty("domain")
     public String getDomain() {
@@ -153,6 +165,66 @@ public class UserPreferencesFile implements UserPreferences {
         return numRowsPerChunk;
     }
 
+    @JsonProperty("blobUploadConcurrency")
+    public String getBlobUploadConcurrency() {
+        return blobUploadConcurrency;
+    }
+
+    @JsonProperty("signatureCacheSizeMB")
+    public String getSignatureCacheSizeMB() {
+        return signatureCacheSizeMB;
+    }
+
+    @JsonProperty("compressionThreads")
+    public String getCompressionThreads() {
+        return compressionThreads;
+    }
+
+    @JsonProperty("patchCompression")
+    public String getPatchCompression() {
+        return patchCompression;
+    }
+
+    @JsonProperty("httpMaxConnections")
+    public String getHttpMaxConnections() {
+        return httpMaxConnections;
+    }
+
+    @JsonProperty("httpMaxConnectionsPerRoute")
+    public String getHttpMaxConnectionsPerRoute() {
+        return httpMaxConnectionsPerRoute;
+    }
+
+    @JsonProperty("httpMetricsFile")
+    public String getHttpMetricsFile() {
+        return httpMetricsFile;
+    }
+
+    @JsonProperty("httpRequestsPerSecond")
+    public String getHttpRequestsPerSecond() {
+        return httpRequestsPerSecond;
+    }
+
+    @JsonProperty("requestCompression")
+    public String getRequestCompression() {
+        return requestCompression;
+    }
+
+    @JsonProperty("upsertConcurrency")
+    public String getUpsertConcurrency() {
+        return upsertConcurrency;
+    }
+
+    @JsonProperty("maxChunkSizeMB")
+    public String getMaxChunkSizeMB() {
+        return maxChunkSizeMB;
+    }
+
+    @JsonProperty("chunkTargetSeconds")
+    public String getChunkTargetSeconds() {
+        return chunkTargetSeconds;
+    }
+
     @JsonProperty("proxyUsername")
     public void setProxyUsername(String username) { proxyUsername = username; }
 
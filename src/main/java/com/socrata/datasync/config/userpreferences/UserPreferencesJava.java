@@ -43,11 +43,47 @@ public class UserPreferencesJava implements UserPreferences {
 
     private static final String FILESIZE_CHUNKING_CUTOFF_MB = "filesize_chunking_cutoff_mb";
     private static final String NUM_ROWS_PER_CHUNK = "num_rows_per_chunk";
+    private static final String BLOB_UPLOAD_CONCURRENCY = "blob_upload_concurrency";
+    private static final String SIGNATURE_CACHE_SIZE_MB = "signature_cache_size_mb";
+    private static final String COMPRESSION_THREADS = "compression_threads";
+    private static final String PATCH_COMPRESSION = "patch_compression";
+    private static final String HTTP_MAX_CONNECTIONS = "http_max_connections";
+    private static final String HTTP_MAX_CONNECTIONS_PER_ROUTE = "http_max_connections_per_route";
+    private static final String HTTP_METRICS_FILE = "http_metrics_file";
+    private static final String HTTP_REQUESTS_PER_SECOND = "http_requests_per_second";
+    private static final String REQUEST_COMPRESSION = "request_compression";
+    private static final String UPSERT_CONCURRENCY = "upsert_concurrency";
+    private static final String MAX_CHUNK_SIZE_MB = "max_chunk_size_mb";
+    private static final String CHUNK_TARGET_SECONDS = "chunk_target_seconds";
 
     // When a file to be published is larger than this value (in MB), file is chunked
     private static final String DEFAULT_FILESIZE_CHUNK_CUTOFF_MB = "10";
     // During chunking files are uploaded NUM_ROWS_PER_CHUNK rows per chunk
     private static final String DEFAULT_NUM_ROWS_PER_CHUNK = "10000";
+    // When publishing via delta-importer-2, up to this many chunks of the diff are uploaded at once
+    private static final String DEFAULT_BLOB_UPLOAD_CONCURRENCY = "4";
+    // Signatures of files published via delta-importer-2 are kept locally, up to this many MB in total (0 disables)
+    private static final String DEFAULT_SIGNATURE_CACHE_SIZE_MB = "2048";
+    // delta-importer-2 patches are gzipped on this many threads (0 means one per processor)
+    private static final String DEFAULT_COMPRESSION_THREADS = "0";
+    // How delta-importer-2 patches are compressed: "auto", "none", "gzip[-level]" or "xz[-preset]"
+    private static final String DEFAULT_PATCH_COMPRESSION = "auto";
+    // Requests to all hosts share a pool of up to this many connections
+    private static final String DEFAULT_HTTP_MAX_CONNECTIONS = "64";
+    // Of which up to this many may be to any one host
+    private static final String DEFAULT_HTTP_MAX_CONNECTIONS_PER_ROUTE = "32";
+    // If set, HTTP request metrics are written to this file in the Prometheus text format when a job ends
+    private static final String DEFAULT_HTTP_METRICS_FILE = "";
+    // The most requests a second sent to any one domain, by every job together
+    private static final String DEFAULT_HTTP_REQUESTS_PER_SECOND = "20";
+    // Whether request bodies are gzipped: auto (unless the domain refuses them), gzip or none
+    private static final String DEFAULT_REQUEST_COMPRESSION = "none";
+    // When upserting via SODA2, up to this many chunks of rows are upserted at once
+    private static final String DEFAULT_UPSERT_CONCURRENCY = "4";
+    // Most MB of JSON rows in each chunk of a SODA2 upsert (0 chunks by numRowsPerChunk instead)
+    private static final String DEFAULT_MAX_CHUNK_SIZE_MB = "16";
+    // Seconds each chunk of a SODA2 upsert should take; chunk sizes are tuned toward it (0 doesn't tune them)
+    private static final String DEFAULT_CHUNK_TARGET_SECONDS = "20";
 
     private static final String TIME_FORMATS = "time_formats";
 
@@ -118,6 +154,54 @@ public class UserPreferencesJava implements UserPreferences {
         saveKeyValuePair(NUM_ROWS_PER_CHUNK, Integer.toString(numRows));
     }
 
+    public void saveBlobUploadConcurrency(int numConcurrentUploads) {
+        saveKeyValuePair(BLOB_UPLOAD_CONCURRENCY, Integer.toString(numConcurrentUploads));
+    }
+
+    public void saveSignatureCacheSizeMB(int sizeMB) {
+        saveKeyValuePair(SIGNATURE_CACHE_SIZE_MB, Integer.toString(sizeMB));
+    }
+
+    public void saveCompressionThreads(int threads) {
+        saveKeyValuePair(COMPRESSION_THREADS, Integer.toString(threads));
+    }
+
+    public void savePatchCompression(String compression) {
+        saveKeyValuePair(PATCH_COMPRESSION, compression);
+    }
+
+    public void saveHttpMaxConnections(int value) {
+        saveKeyValuePair(HTTP_MAX_CONNECTIONS, Integer.toString(value));
+    }
+
+    public void saveHttpMaxConnectionsPerRoute(int value) {
+        saveKeyValuePair(HTTP_MAX_CONNECTIONS_PER_ROUTE, Integer.toString(value));
+    }
+
+    public void saveHttpMetricsFile(String value) {
+        saveKeyValuePair(HTTP_METRICS_FILE, value);
+    }
+
+    public void saveHttpRequestsPerSecond(int value) {
+        saveKeyValuePair(HTTP_REQUESTS_PER_SECOND, Integer.toString(value));
+    }
+
+    public void saveRequestCompression(String value) {
+        saveKeyValuePair(REQUEST_COMPRESSION, value);
+    }
+
+    public void saveUpsertConcurrency(int value) {
+        saveKeyValuePair(UPSERT_CONCURRENCY, Integer.toString(value));
+    }
+
+    public void saveMaxChunkSizeMB(int value) {
+        saveKeyValuePair(MAX_CHUNK_SIZE_MB, Integer.toString(value));
+    }
+
+    public void saveChunkTargetSeconds(int value) {
+        saveKeyValuePair(CHUNK_TARGET_SECONDS, Integer.toString(value));
+    }
+
     public void saveSMTPUsername(String username) {
         saveKeyValuePair(SMTP_USERNAME, username);
     }
@@ -216,6 +300,54 @@ public class UserPreferencesJava implements UserPreferences {
         return userPrefs.get(NUM_ROWS_PER_CHUNK, DEFAULT_NUM_ROWS_PER_CHUNK);
     }
 
+    public String getBlobUploadConcurrency() {
+        return userPrefs.get(BLOB_UPLOAD_CONCURRENCY, DEFAULT_BLOB_UPLOAD_CONCURRENCY);
+    }
+
+    public String getSignatureCacheSizeMB() {
+        return userPrefs.get(SIGNATURE_CACHE_SIZE_MB, DEFAULT_SIGNATURE_CACHE_SIZE_MB);
+    }
+
+    public String getCompressionThreads() {
+        return userPrefs.get(COMPRESSION_THREADS, DEFAULT_COMPRESSION_THREADS);
+    }
+
+    public String getPatchCompression() {
+        return userPrefs.get(PATCH_COMPRESSION, DEFAULT_PATCH_COMPRESSION);
+    }
+
+    public String getHttpMaxConnections() {
+        return userPrefs.get(HTTP_MAX_CONNECTIONS, DEFAULT_HTTP_MAX_CONNECTIONS);
+    }
+
+    public String getHttpMaxConnectionsPerRoute() {
+        return userPrefs.get(HTTP_MAX_CONNECTIONS_PER_ROUTE, DEFAULT_HTTP_MAX_CONNECTIONS_PER_ROUTE);
+    }
+
+    public String getHttpMetricsFile() {
+        return userPrefs.get(HTTP_METRICS_FILE, DEFAULT_HTTP_METRICS_FILE);
+    }
+
+    public String getHttpRequestsPerSecond() {
+        return userPrefs.get(HTTP_REQUESTS_PER_SECOND, DEFAULT_HTTP_REQUESTS_PER_SECOND);
+    }
+
+    public String getRequestCompression() {
+        return userPrefs.get(REQUEST_COMPRESSION, DEFAULT_REQUEST_COMPRESSION);
+    }
+
+    public String getUpsertConcurrency() {
+        return userPrefs.get(UPSERT_CONCURRENCY, DEFAULT_UPSERT_CONCURRENCY);
+    }
+
+    public String getMaxChunkSizeMB() {
+        return userPrefs.get(MAX_CHUNK_SIZE_MB, DEFAULT_MAX_CHUNK_SIZE_MB);
+    }
+
+    public String getChunkTargetSeconds() {
+        return userPrefs.get(CHUNK_TARGET_SECONDS, DEFAULT_CHUNK_TARGET_SECONDS);
+    }
+
     /**
      * This preference is for testing usage only (returns empty string because
      * portDestinationDomainAppToken should only be set when DataSync is run
@@ -261,6 +393,18 @@ public class UserPreferencesJava implements UserPreferences {
                 "smtpPassword: " + getSmtpPassword().replaceAll(".", "*") + "\n" +
                 "filesizeChunkingCutoffMB: " + getFilesizeChunkingCutoffMB() + "\n" +
                 "numRowsPerChunk: " + getNumRowsPerChunk() + "\n" +
+                "blobUploadConcurrency: " + getBlobUploadConcurrency() + "\n" +
+                "signatureCacheSizeMB: " + getSignatureCacheSizeMB() + "\n" +
+                "compressionThreads: " + getCompressionThreads() + "\n" +
+                "patchCompression: " + getPatchCompression() + "\n" +
+                "httpMaxConnections: " + getHttpMaxConnections() + "\n" +
+                "httpMaxConnectionsPerRoute: " + getHttpMaxConnectionsPerRoute() + "\n" +
+                "httpMetricsFile: " + getHttpMetricsFile() + "\n" +
+                "httpRequestsPerSecond: " + getHttpRequestsPerSecond() + "\n" +
+                "requestCompression: " + getRequestCompression() + "\n" +
+                "upsertConcurrency: " + getUpsertConcurrency() + "\n" +
+                "maxChunkSizeMB: " + getMaxChunkSizeMB() + "\n" +
+                "chunkTargetSeconds: " + getChunkTargetSeconds() + "\n" +
                 "defaultTimeFormats: " + getDefaultTimeFormats() + "\n";
     }
 
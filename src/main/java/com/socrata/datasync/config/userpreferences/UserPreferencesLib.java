@@ -33,6 +33,18 @@ public class UserPreferencesLib implements UserPreferences {
     private String smtpPassword;
     private String filesizeChunkingCutoffMB;
     private String numRowsPerChunk;
+    private String blobUploadConcurrency;
+    private String signatureCacheSizeMB;
+    private String compressionThreads;
+    private String patchCompression;
+    private String httpMaxConnections;
+    private String httpMaxConnectionsPerRoute;
+    private String httpMetricsFile;
+    private String httpRequestsPerSecond;
+    private String requestCompression;
+    private String upsertConcurrency;
+    private String maxChunkSizeMB;
+    private String chunkTargetSeconds;
     private boolean useNewBackend;
     private List<String> defaultTimeFormats;
 
@@ -40,6 +52,30 @@ public class UserPreferencesLib implements UserPreferences {
     private static final String DEFAULT_FILESIZE_CHUNK_CUTOFF_MB = "10";
     // During chunking files are uploaded NUM_ROWS_PER_CHUNK rows per chunk
     private static final String DEFAULT_NUM_ROWS_PER_CHUNK = "10000";
+    // When publishing via delta-importer-2, up to this many chunks of the diff are uploaded at once
+    private static final String DEFAULT_BLOB_UPLOAD_CONCURRENCY = "4";
+    // Signatures of files published via delta-importer-2 are kept locally, up to this many MB in total (0 disables)
+    private static final String DEFAULT_SIGNATURE_CACHE_SIZE_MB = "2048";
+    // delta-importer-2 patches are gzipped on this many threads (0 means one per processor)
+    private static final String DEFAULT_COMPRESSION_THREADS = "0";
+    // How delta-importer-2 patches are compressed: "auto", "none", "gzip[-level]" or "xz[-preset]"
+    private static final String DEFAULT_PATCH_COMPRESSION = "auto";
+    // Requests to all hosts share a pool of up to this many connections
+    private static final String DEFAULT_HTTP_MAX_CONNECTIONS = "64";
+    // Of which up to this many may be to any one host
+    private static final String DEFAULT_HTTP_MAX_CONNECTIONS_PER_ROUTE = "32";
+    // If set, HTTP request metrics are written to this file in the Prometheus text format when a job ends
+    private static final String DEFAULT_HTTP_METRICS_FILE = "";
+    // The most requests a second sent to any one domain, by every job together
+    private static final String DEFAULT_HTTP_REQUESTS_PER_SECOND = "20";
+    // Whether request bodies are gzipped: auto (unless the domain refuses them), gzip or none
+    private static final String DEFAULT_REQUEST_COMPRESSION = "none";
+    // When upserting via SODA2, up to this many chunks of rows are upserted at once
+    private static final String DEFAULT_UPSERT_CONCURRENCY = "4";
+    // Most MB of JSON rows in each chunk of a SODA2 upsert (0 chunks by numRowsPerChunk instead)
+    private static final String DEFAULT_MAX_CHUNK_SIZE_MB = "16";
+    // Seconds each chunk of a SODA2 upsert should take; chunk sizes are tuned toward it (0 doesn't tune them)
+    private static final String DEFAULT_CHUNK_TARGET_SECONDS = "20";
 
     public UserPreferencesLib() {
         adminEmail = "";
@@ -52,6 +88,18 @@ public class UserPreferencesLib implements UserPreferences {
         smtpPassword = "";
         filesizeChunkingCutoffMB = DEFAULT_FILESIZE_CHUNK_CUTOFF_MB;
         numRowsPerChunk = DEFAULT_NUM_ROWS_PER_CHUNK;
+        blobUploadConcurrency = DEFAULT_BLOB_UPLOAD_CONCURRENCY;
+        signatureCacheSizeMB = DEFAULT_SIGNATURE_CACHE_SIZE_MB;
+        compressionThreads = DEFAULT_COMPRESSION_THREADS;
+        patchCompression = DEFAULT_PATCH_COMPRESSION;
+        httpMaxConnections = DEFAULT_HTTP_MAX_CONNECTIONS;
+        httpMaxConnectionsPerRoute = DEFAULT_HTTP_MAX_CONNECTIONS_PER_ROUTE;
+        httpMetricsFile = DEFAULT_HTTP_METRICS_FILE;
+        httpRequestsPerSecond = DEFAULT_HTTP_REQUESTS_PER_SECOND;
+        requestCompression = DEFAULT_REQUEST_COMPRESSION;
+        upsertConcurrency = DEFAULT_UPSERT_CONCURRENCY;
+        maxChunkSizeMB = DEFAULT_MAX_CHUNK_SIZE_MB;
+        chunkTargetSeconds = DEFAULT_CHUNK_TARGET_SECONDS;
         defaultTimeFormats = Arrays.asList(DEFAULT_TIME_FORMATS);
     }
 
@@ -219,6 +267,126 @@ public class UserPreferencesLib implements UserPreferences {
 
     public UserPreferencesLib numRowsPerChunk(String numRows) { setNumRowsPerChunk(numRows); return this; }
 
+    public String getBlobUploadConcurrency() {
+        return blobUploadConcurrency;
+    }
+
+    public void setBlobUploadConcurrency(String blobUploadConcurrency) {
+        this.blobUploadConcurrency = blobUploadConcurrency;
+    }
+
+    public UserPreferencesLib blobUploadConcurrency(String concurrency) { setBlobUploadConcurrency(concurrency); return this; }
+
+    public String getSignatureCacheSizeMB() {
+        return signatureCacheSizeMB;
+    }
+
+    public void setSignatureCacheSizeMB(String signatureCacheSizeMB) {
+        this.signatureCacheSizeMB = signatureCacheSizeMB;
+    }
+
+    public UserPreferencesLib signatureCacheSizeMB(String sizeMB) { setSignatureCacheSizeMB(sizeMB); return this; }
+
+    public String getCompressionThreads() {
+        return compressionThreads;
+    }
+
+    public void setCompressionThreads(String compressionThreads) {
+        this.compressionThreads = compressionThreads;
+    }
+
+    public UserPreferencesLib compressionThreads(String threads) { setCompressionThreads(threads); return this; }
+
+    public String getPatchCompression() {
+        return patchCompression;
+    }
+
+    public void setPatchCompression(String patchCompression) {
+        this.patchCompression = patchCompression;
+    }
+
+    public UserPreferencesLib patchCompression(String compression) { setPatchCompression(compression); return this; }
+
+    public String getHttpMaxConnections() {
+        return httpMaxConnections;
+    }
+
+    public void setHttpMaxConnections(String httpMaxConnections) {
+        this.httpMaxConnections = httpMaxConnections;
+    }
+
+    public UserPreferencesLib httpMaxConnections(String value) { setHttpMaxConnections(value); return this; }
+
+    public String getHttpMaxConnectionsPerRoute() {
+        return httpMaxConnectionsPerRoute;
+    }
+
+    public void setHttpMaxConnectionsPerRoute(String httpMaxConnectionsPerRoute) {
+        this.httpMaxConnectionsPerRoute = httpMaxConnectionsPerRoute;
+    }
+
+    public UserPreferencesLib httpMaxConnectionsPerRoute(String value) { setHttpMaxConnectionsPerRoute(value); return this; }
+
+    public String getHttpMetricsFile() {
+        return httpMetricsFile;
+    }
+
+    public void setHttpMetricsFile(String httpMetricsFile) {
+        this.httpMetricsFile = httpMetricsFile;
+    }
+
+    public UserPreferencesLib httpMetricsFile(String value) { setHttpMetricsFile(value); return this; }
+
+    public String getHttpRequestsPerSecond() {
+        return httpRequestsPerSecond;
+    }
+
+    public void setHttpRequestsPerSecond(String httpRequestsPerSecond) {
+        this.httpRequestsPerSecond = httpRequestsPerSecond;
+    }
+
+    public UserPreferencesLib httpRequestsPerSecond(String value) { setHttpRequestsPerSecond(value); return this; }
+
+    public String getRequestCompression() {
+        return requestCompression;
+    }
+
+    public void setRequestCompression(String requestCompression) {
+        this.requestCompression = requestCompression;
+    }
+
+    public UserPreferencesLib requestCompression(String value) { setRequestCompression(value); return this; }
+
+    public String getUpsertConcurrency() {
+        return upsertConcurrency;
+    }
+
+    public void setUpsertConcurrency(String upsertConcurrency) {
+        this.upsertConcurrency = upsertConcurrency;
+    }
+
+    public UserPreferencesLib upsertConcurrency(String value) { setUpsertConcurrency(value); return this; }
+
+    public String getMaxChunkSizeMB() {
+        return maxChunkSizeMB;
+    }
+
+    public void setMaxChunkSizeMB(String maxChunkSizeMB) {
+        this.maxChunkSizeMB = maxChunkSizeMB;
+    }
+
+    public UserPreferencesLib maxChunkSizeMB(String value) { setMaxChunkSizeMB(value); return this; }
+
+    public String getChunkTargetSeconds() {
+        return chunkTargetSeconds;
+    }
+
+    public void setChunkTargetSeconds(String chunkTargetSeconds) {
+        this.chunkTargetSeconds = chunkTargetSeconds;
+    }
+
+    public UserPreferencesLib chunkTargetSeconds(String value) { setChunkTargetSeconds(value); return this; }
+
     public boolean getUseNewBackend() {
         return useNewBackend;
     }
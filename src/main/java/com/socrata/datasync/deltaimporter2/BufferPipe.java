@@ -0,0 +1,230 @@
+package com.socrata.datasync.deltaimporter2;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A bounded hand-off between two pipeline stages running on different threads.  The producer fills
+ * buffers taken from a fixed pool and queues them; the consumer drains them and returns them to the
+ * pool.  Once every buffer is queued the producer blocks, so memory use is bounded by the pool.
+ *
+ * A failure on the producing side is rethrown to the consumer once it has read everything queued
+ * before the failure.  Closing the consuming side makes the producer's next write fail, so an
+ * abandoned pipeline winds itself down.
+ */
+class BufferPipe {
+    private static final Buffer EOF = new Buffer(new byte[0]);
+
+    private static class Buffer {
+        final byte[] bytes;
+        int length = 0;
+
+        Buffer(byte[] bytes) {
+            this.bytes = bytes;
+        }
+    }
+
+    private final BlockingQueue<Buffer> free;
+    private final BlockingQueue<Buffer> full;
+    private final int capacity;
+    private final StageStats producer;
+    private final StageStats consumer;
+    private volatile Throwable producerFailure = null;
+    private volatile boolean consumerClosed = false;
+
+    private final OutputStream sink = new Sink();
+    private final InputStream source = new Source();
+
+    /**
+     * @param bufferSize the size of each pooled buffer
+     * @param buffers the number of buffers in the pool
+     * @param producer the stats of the stage writing into this pipe
+     * @param consumer the stats of the stage reading out of this pipe
+     */
+    BufferPipe(int bufferSize, int buffers, StageStats producer, StageStats consumer) {
+        this.capacity = buffers;
+        this.free = new ArrayBlockingQueue<>(buffers);
+        // one extra slot so that end-of-stream can always be queued without blocking
+        this.full = new ArrayBlockingQueue<>(buffers + 1);
+        for (int i = 0; i < buffers; i++) free.add(new Buffer(new byte[bufferSize]));
+        this.producer = producer;
+        this.consumer = consumer;
+        producer.setOutput(this);
+    }
+
+    OutputStream sink() { return sink; }
+
+    InputStream source() { return source; }
+
+    int getQueueDepth() {
+        int depth = full.size();
+        return depth > capacity ? capacity : depth;
+    }
+
+    int getCapacity() { return capacity; }
+
+    /**
+     * Ends the stream normally, once everything written so far has been queued.  Closing the sink only
+     * flushes it, so a stage whose output stream gets closed while it is failing (e.g. by a
+     * try-with-resources block) cannot end the stream cleanly by accident.
+     */
+    void finish() throws IOException {
+        sink.flush();
+        full.offer(EOF);
+    }
+
+    /**
+     * Ends the stream abnormally; the consumer will see the given failure once it has drained the queue.
+     */
+    void fail(Throwable t) {
+        producerFailure = t;
+        full.offer(EOF);
+    }
+
+    private class Sink extends OutputStream {
+        private Buffer current = null;
+
+        @Override
+        public void write(int b) throws IOException {
+            ensureBuffer();
+            current.bytes[current.length++] = (byte) b;
+            producer.addBytes(1);
+            if (current.length == current.bytes.length) pass();
+        }
+
+        @Override
+        public void write(byte[] bs, int off, int len) throws IOException {
+            while (len > 0) {
+                ensureBuffer();
+                int n = Math.min(len, current.bytes.length - current.length);
+                System.arraycopy(bs, off, current.bytes, current.length, n);
+                current.length += n;
+                producer.addBytes(n);
+                off += n;
+                len -= n;
+                if (current.length == current.bytes.length) pass();
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (current != null && current.length > 0) pass();
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+
+        private void ensureBuffer() throws IOException {
+            if (consumerClosed) throw new IOException("Pipe has been closed by its reader");
+            if (current == null) {
+                long start = System.nanoTime();
+                try {
+                    current = free.take();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException("Interrupted while waiting for a free buffer");
+                } finally {
+                    producer.addOutputWait(System.nanoTime() - start);
+                }
+                if (consumerClosed) throw new IOException("Pipe has been closed by its reader");
+                current.length = 0;
+            }
+        }
+
+        private void pass() throws IOException {
+            Buffer b = current;
+            current = null;
+            try {
+                full.put(b);
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("Interrupted while queueing a buffer");
+            }
+        }
+    }
+
+    private class Source extends InputStream {
+        private Buffer current = null;
+        private int position = 0;
+        private boolean atEof = false;
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) return -1;
+            int b = current.bytes[position++] & 0xff;
+            consumer.addBytes(1);
+            release();
+            return b;
+        }
+
+        @Override
+        public int read(byte[] bs, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (!fill()) return -1;
+            int n = Math.min(len, current.length - position);
+            System.arraycopy(current.bytes, position, bs, off, n);
+            position += n;
+            consumer.addBytes(n);
+            release();
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return current == null ? 0 : current.length - position;
+        }
+
+        @Override
+        public void close() {
+            consumerClosed = true;
+            if (current != null) {
+                free.offer(current);
+                current = null;
+            }
+            // hand every queued buffer back so a producer blocked waiting for one wakes up and notices
+            Buffer b;
+            while ((b = full.poll()) != null) {
+                if (b != EOF) free.offer(b);
+            }
+        }
+
+        private boolean fill() throws IOException {
+            if (consumerClosed) throw new IOException("Pipe has been closed");
+            if (current != null) return true;
+            if (atEof) return endOfStream();
+            long start = System.nanoTime();
+            Buffer b;
+            try {
+                b = full.take();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("Interrupted while waiting for data");
+            } finally {
+                consumer.addInputWait(System.nanoTime() - start);
+            }
+            if (b == EOF) {
+                atEof = true;
+                return endOfStream();
+            }
+            current = b;
+            position = 0;
+            return true;
+        }
+
+        private boolean endOfStream() throws IOException {
+            Throwable failure = producerFailure;
+            if (failure != null) throw new IOException("Pipeline stage failed", failure);
+            return false;
+        }
+
+        private void release() {
+            if (position == current.length) {
+                free.offer(current);
+                current = null;
+            }
+        }
+    }
+}
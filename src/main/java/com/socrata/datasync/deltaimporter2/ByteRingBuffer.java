@@ -0,0 +1,155 @@
+package com.socrata.datasync.deltaimporter2;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A fixed-size circular byte buffer between exactly one writing thread and one reading thread,
+ * replacing PipedInputStream/PipedOutputStream.  Neither side takes a lock: each owns one of the
+ * two positions, and a side only parks when the buffer is full (or empty) and is unparked by the
+ * other side as soon as there is room (or data), rather than polling once a second.
+ *
+ * A failure on the writing side is rethrown to the reader once it has read everything written
+ * before the failure.  Closing the reading side makes the writer's next write fail.
+ */
+class ByteRingBuffer {
+    private final byte[] buffer;
+    private final int capacity;
+
+    // total bytes ever read and written; only the reader advances readPosition, only the writer writePosition
+    private volatile long readPosition = 0L;
+    private volatile long writePosition = 0L;
+
+    private volatile Thread parkedReader = null;
+    private volatile Thread parkedWriter = null;
+    private volatile boolean writerFinished = false;
+    private volatile boolean readerClosed = false;
+    private volatile Throwable writerFailure = null;
+
+    private final OutputStream sink = new Sink();
+    private final InputStream source = new Source();
+
+    ByteRingBuffer(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be positive");
+        this.capacity = capacity;
+        this.buffer = new byte[capacity];
+    }
+
+    OutputStream sink() { return sink; }
+
+    InputStream source() { return source; }
+
+    /**
+     * Ends the stream normally.  Closing the sink does not, so that a writer closed by a
+     * try-with-resources block on its way out with a failure cannot end the stream cleanly.
+     */
+    void finish() {
+        writerFinished = true;
+        LockSupport.unpark(parkedReader);
+    }
+
+    /**
+     * Ends the stream abnormally; the reader sees the failure once it has read what came before it.
+     */
+    void fail(Throwable t) {
+        writerFailure = t;
+        writerFinished = true;
+        LockSupport.unpark(parkedReader);
+    }
+
+    private class Sink extends OutputStream {
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bs, int off, int len) throws IOException {
+            long written = writePosition;
+            while (len > 0) {
+                int free = awaitSpace(written);
+                int index = (int) (written % capacity);
+                int n = Math.min(len, Math.min(free, capacity - index));
+                System.arraycopy(bs, off, buffer, index, n);
+                written += n;
+                off += n;
+                len -= n;
+                writePosition = written;
+                LockSupport.unpark(parkedReader);
+            }
+        }
+
+        private int awaitSpace(long written) throws IOException {
+            while (true) {
+                if (readerClosed) throw new IOException("Ring buffer has been closed by its reader");
+                int free = capacity - (int) (written - readPosition);
+                if (free > 0) return free;
+                parkedWriter = Thread.currentThread();
+                // re-check after advertising ourselves, so a reader that drained in between is not missed
+                if (!readerClosed && capacity - (int) (written - readPosition) == 0) LockSupport.park(this);
+                parkedWriter = null;
+                if (Thread.interrupted()) throw new InterruptedIOException("Interrupted while waiting for space");
+            }
+        }
+    }
+
+    private class Source extends InputStream {
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] bs, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            long read = readPosition;
+            int available = awaitData(read);
+            if (available == 0) return -1;
+            int index = (int) (read % capacity);
+            int n = Math.min(len, Math.min(available, capacity - index));
+            System.arraycopy(buffer, index, bs, off, n);
+            // take the second half of a wrapped region in the same call
+            if (n < len && n < available) {
+                int m = Math.min(len - n, available - n);
+                System.arraycopy(buffer, 0, bs, off + n, m);
+                n += m;
+            }
+            readPosition = read + n;
+            LockSupport.unpark(parkedWriter);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return (int) (writePosition - readPosition);
+        }
+
+        @Override
+        public void close() {
+            readerClosed = true;
+            LockSupport.unpark(parkedWriter);
+        }
+
+        private int awaitData(long read) throws IOException {
+            if (readerClosed) throw new IOException("Ring buffer has been closed");
+            while (true) {
+                boolean finished = writerFinished;
+                int available = (int) (writePosition - read);
+                if (available > 0) return available;
+                if (finished) {
+                    Throwable failure = writerFailure;
+                    if (failure != null) throw new IOException("Writer failed", failure);
+                    return 0;
+                }
+                parkedReader = Thread.currentThread();
+                if (!writerFinished && writePosition == read) LockSupport.park(this);
+                parkedReader = null;
+                if (Thread.interrupted()) throw new InterruptedIOException("Interrupted while waiting for data");
+            }
+        }
+    }
+}
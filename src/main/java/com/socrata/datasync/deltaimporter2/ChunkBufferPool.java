@@ -0,0 +1,51 @@
+package com.socrata.datasync.deltaimporter2;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Buffers for the chunks of a patch being posted, reused from one chunk to the next rather than
+ * allocated afresh for each of the thousands of chunks in a large patch.  Buffers are handed out
+ * whenever asked for, so a caller is never held up by the pool; how many are in use at once is
+ * bounded by the caller's own window of uploads.  At most maxRetained returned buffers are kept
+ * for reuse, and the rest are left to the garbage collector.
+ */
+public class ChunkBufferPool {
+    private final int maxRetained;
+    private final Deque<byte[]> free = new ArrayDeque<>();
+    private long allocations = 0L;
+
+    /**
+     * @param maxRetained the most buffers kept for reuse, e.g. the number of chunks posted at once
+     */
+    public ChunkBufferPool(int maxRetained) {
+        this.maxRetained = Math.max(1, maxRetained);
+    }
+
+    /**
+     * @return a buffer of at least the given size, whose contents are whatever it was last used for
+     */
+    public synchronized byte[] acquire(int size) {
+        byte[] buffer;
+        while ((buffer = free.poll()) != null) {
+            // left over from a larger chunk size, or else it's too small to be of use any more
+            if (buffer.length >= size) return buffer;
+        }
+        allocations++;
+        return new byte[size];
+    }
+
+    /**
+     * Returns a buffer to the pool.  The caller mustn't touch it again.
+     */
+    public synchronized void release(byte[] buffer) {
+        if (buffer != null && free.size() < maxRetained) free.push(buffer);
+    }
+
+    /**
+     * @return how many buffers the pool has had to allocate
+     */
+    public synchronized long getAllocations() {
+        return allocations;
+    }
+}
@@ -0,0 +1,164 @@
+package com.socrata.datasync.deltaimporter2;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.socrata.datasync.Utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Picks how to compress a delta-importer-2 patch so that it gets to the server soonest.  Since
+ * compressing and uploading overlap, a patch moves at the slower of the rate it can be compressed
+ * and the rate its compressed bytes can be uploaded.  A fast link wants cheap compression (or
+ * none) and a slow one wants as much as the CPU can keep up with.
+ *
+ * Each candidate is timed compressing a sample of the file, which stands in for the patch: the
+ * literal data in a patch is taken from the file, and it is what dominates the patch's size.  The
+ * upload bandwidth is the one measured by the last publish to the same domain.
+ */
+public class CompressionPolicy {
+    public static final int sampleSize = 4 * 1024 * 1024;
+    // below this there is too little to save for the sampling to pay for itself
+    public static final long minimumFileSize = 16L * 1024 * 1024;
+    private static final String bandwidthFileName = "bandwidth.json";
+    private static final double bandwidthSmoothing = 0.5;
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * The outcome of weighing every candidate against a sample.
+     */
+    public static class Decision {
+        private final PatchCompression choice;
+        private final PatchCompression baseline;
+        private final Map<PatchCompression, Double> throughputs;
+        private final Map<PatchCompression, Double> ratios;
+        private final double bandwidth;
+
+        Decision(PatchCompression choice, PatchCompression baseline, Map<PatchCompression, Double> throughputs,
+                 Map<PatchCompression, Double> ratios, double bandwidth) {
+            this.choice = choice;
+            this.baseline = baseline;
+            this.throughputs = throughputs;
+            this.ratios = ratios;
+            this.bandwidth = bandwidth;
+        }
+
+        public PatchCompression getChoice() { return choice; }
+
+        /** @return the estimated rate, in bytes of patch per second, at which the patch would reach the server */
+        public double getThroughput(PatchCompression compression) { return throughputs.get(compression); }
+
+        /** @return the fraction of the time the default compression would take that the choice saves */
+        public double getEstimatedSavings() {
+            return 1.0 - throughputs.get(baseline) / throughputs.get(choice);
+        }
+
+        public String report() {
+            return String.format("Compressing the patch with %s: the sample compresses to %.0f%%, for an estimated " +
+                            "%.1f MB/s given %.1f MB/s of upload bandwidth; %s would manage %.1f MB/s, " +
+                            "so this should take about %.0f%% less time",
+                    choice, ratios.get(choice) * 100, throughputs.get(choice) / (1024 * 1024), bandwidth / (1024 * 1024),
+                    baseline, throughputs.get(baseline) / (1024 * 1024), getEstimatedSavings() * 100);
+        }
+    }
+
+    /**
+     * Weighs every candidate compression against the sample.
+     * @param sample the start of the file being published
+     * @param bandwidth the upload bandwidth, in bytes per second
+     * @param threads the number of threads gzip may use
+     */
+    public static Decision choose(byte[] sample, double bandwidth, int threads) throws IOException {
+        Map<PatchCompression, Double> throughputs = new LinkedHashMap<>();
+        Map<PatchCompression, Double> ratios = new HashMap<>();
+        PatchCompression best = null;
+        for (PatchCompression candidate : PatchCompression.candidates()) {
+            double ratio = 1.0;
+            double cpuRate = Double.POSITIVE_INFINITY;
+            if (candidate.getType() != PatchCompression.Type.NONE) {
+                long start = System.nanoTime();
+                long compressedSize = compressedSize(candidate, sample);
+                long elapsed = Math.max(1L, System.nanoTime() - start);
+                ratio = sample.length == 0 ? 1.0 : (double) compressedSize / sample.length;
+                cpuRate = sample.length * 1e9 / elapsed;
+                if (candidate.isParallel()) cpuRate *= Math.max(1, threads);
+            }
+            double throughput = Math.min(cpuRate, bandwidth / ratio);
+            throughputs.put(candidate, throughput);
+            ratios.put(candidate, ratio);
+            if (best == null || throughput > throughputs.get(best)) best = candidate;
+        }
+        return new Decision(best, PatchCompression.GZIP, throughputs, ratios, bandwidth);
+    }
+
+    private static long compressedSize(PatchCompression compression, byte[] sample) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(sample.length / 2 + 64);
+        try (OutputStream out = compression.compress(compressed, 1)) {
+            out.write(sample);
+        }
+        return compressed.size();
+    }
+
+    /**
+     * @param file the file being published
+     * @param skip the number of bytes at its start that aren't published (e.g. a BOM)
+     * @return up to sampleSize bytes from the start of the file
+     */
+    public static byte[] readSample(File file, int skip) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            long skipped = 0;
+            while (skipped < skip) skipped += in.skip(skip - skipped);
+            byte[] sample = new byte[sampleSize];
+            int n = Utils.readChunk(in, sample, 0, sample.length);
+            return n == -1 ? new byte[0] : Arrays.copyOf(sample, n);
+        }
+    }
+
+    /**
+     * @return the upload bandwidth last measured to the given domain, in bytes per second, or null if there's none
+     */
+    public static synchronized Double getKnownBandwidth(String domain) {
+        return loadBandwidths().get(domain);
+    }
+
+    /**
+     * Folds a new measurement of the upload bandwidth to the given domain into the one remembered for it.
+     */
+    public static synchronized void recordBandwidth(String domain, double bytesPerSecond) {
+        Map<String, Double> bandwidths = loadBandwidths();
+        Double previous = bandwidths.get(domain);
+        bandwidths.put(domain, previous == null ? bytesPerSecond :
+                bandwidthSmoothing * bytesPerSecond + (1 - bandwidthSmoothing) * previous);
+        try {
+            File dir = Utils.getLocalStateDirectory("");
+            File temp = File.createTempFile(bandwidthFileName, ".tmp", dir);
+            try {
+                mapper.writeValue(temp, bandwidths);
+                Utils.replaceFile(temp, new File(dir, bandwidthFileName));
+            } finally {
+                if (temp.exists()) temp.delete();
+            }
+        } catch (IOException e) {
+            System.out.println("Unable to remember the upload bandwidth: " + e.getMessage());
+        }
+    }
+
+    private static Map<String, Double> loadBandwidths() {
+        try {
+            File f = new File(Utils.getLocalStateDirectory(""), bandwidthFileName);
+            if (f.isFile()) return mapper.readValue(f, new TypeReference<HashMap<String, Double>>() {});
+        } catch (IOException e) {
+            System.out.println("Ignoring unreadable upload bandwidth history: " + e.getMessage());
+        }
+        return new HashMap<>();
+    }
+}
@@ -1,12 +1,22 @@
 package com.socrata.datasync.deltaimporter2;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.socrata.datasync.HttpUtility;
+import com.socrata.datasync.Utils;
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpStatus;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.utils.URIBuilder;
 import org.apache.http.entity.ContentType;
+import org.apache.http.message.BasicHeader;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
@@ -15,17 +25,48 @@ import java.net.URLDecoder;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
 
+/**
+ * The datasync directory tree of one dataset.  Instances hold nothing that changes, so any number
+ * of them, for the same dataset or different ones, may be used from any number of threads at once.
+ */
 public class DatasyncDirectory {
-    private static HttpUtility http;
-    private static String datasync = "/datasync/id/";
-    private static String completedFolder = "completed/";
-    private static String signaturesFolder = "signatures/";
-    private static ObjectMapper mapper = new ObjectMapper();
-    private static String baseFolder;
-    private URIBuilder baseUri;
+    private static final String datasync = "/datasync/id/";
+    private static final String completedFolder = "completed/";
+    private static final String signaturesFolder = "signatures/";
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final String stateDirectoryName = "listings";
+    private final HttpUtility http;
+    private final String baseFolder;
+    private final URI baseUri;
+    private final String datasetId;
+
+    /**
+     * What was learned about the directory the last time the most recent signature was looked for.
+     */
+    @JsonIgnoreProperties(ignoreUnknown=true)
+    @JsonSerialize(include=JsonSerialize.Inclusion.NON_NULL)
+    public static class State {
+        public String signaturePath;
+        // the most recent year, month, day and signature file that led to signaturePath
+        public List<String> chain;
+        // keyed by the path relative to this DatasyncDirectory
+        public Map<String, Listing> listings = new HashMap<>();
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown=true)
+    @JsonSerialize(include=JsonSerialize.Inclusion.NON_NULL)
+    public static class Listing {
+        public String etag;
+        public String lastModified;
+        public List<String> entries;
+    }
 
     /**
      * Creates a new DatasyncDirectory object for a given dataset
@@ -34,32 +75,147 @@ public class DatasyncDirectory {
      * @param datasetId the 4x4 id of the dataset
      */
     public DatasyncDirectory(HttpUtility http, String domain, String datasetId) {
+        this(http, URI.create("https://" + domain), datasetId);
+    }
+
+    /**
+     * @param baseUri the scheme and authority the dataset's domain is reached at, e.g. https://opendata.socrata.com
+     */
+    public DatasyncDirectory(HttpUtility http, URI baseUri, String datasetId) {
         this.http = http;
         this.baseFolder = datasync + datasetId + "/";
-        this.baseUri = new URIBuilder()
-            .setScheme("https")
-            .setHost(domain);
+        this.datasetId = datasetId;
+        this.baseUri = baseUri;
+    }
+
+    /**
+     * @return the uri of the given path on the dataset's domain; a fresh builder each time, since they aren't thread-safe
+     */
+    private URI uri(String path) throws URISyntaxException {
+        return new URIBuilder(baseUri).setPath(path).build();
     }
 
     /**
      * Returns the complete path if one exists to the most recent signature file, otherwise null.
      * e.g. /datasync/id/some-4by4/completed/2014/6/3/signatures/02:32:42.567-filename.ssig
+     *
+     * The path found last time, and the listings it was found from, are remembered locally.  If there
+     * is one, the signature is checked with a HEAD request while each listing on its path is
+     * revalidated with a conditional GET, all at once; only if something has changed since is the
+     * directory tree walked again, reusing whichever listings are already known to be current.
      */
     public String getPathToSignature() throws ParseException, IOException, URISyntaxException {
-        List<String> years = lsDirectory(completedFolder);
-        if (years.size() > 0) {
-            StringBuilder path = new StringBuilder(completedFolder);
-            String year = findMostRecentContent(years, new SimpleDateFormat("yyyy"));
-            path.append(year);
-            String month = findMostRecentContent(lsDirectory(path.toString()), new SimpleDateFormat("MM"));
-            path.append(month);
-            String day = findMostRecentContent(lsDirectory(path.toString()), new SimpleDateFormat("dd"));
-            path.append(day).append(signaturesFolder);
-            String file = findMostRecentContent(lsDirectory(path.toString()), new SimpleDateFormat("hh:mm:ss.SSS"));
-            path.append(file);
-            return baseFolder + path.toString();
+        State state = loadState();
+        Map<String, Listing> current = new HashMap<>();
+        if (state.signaturePath != null && state.chain != null && state.chain.size() == 4 &&
+                revalidate(state, current)) {
+            return state.signaturePath;
+        }
+
+        List<String> chain = new ArrayList<>();
+        String path = completedFolder;
+        for (int level = 0; level < 4; level++) {
+            Listing listing = current.get(path);
+            if (listing == null) {
+                listing = list(path, state.listings.get(path));
+                current.put(path, listing);
+            }
+            String mostRecent = findMostRecent(listing.entries);
+            if (mostRecent == null) break;
+            chain.add(mostRecent);
+            path += mostRecent + (level == 2 ? signaturesFolder : "");
+        }
+
+        state.listings = current;
+        if (chain.size() == 4) {
+            state.chain = chain;
+            state.signaturePath = baseFolder + path;
         } else {
-            return null;
+            state.chain = null;
+            state.signaturePath = null;
+        }
+        saveState(state);
+        return state.signaturePath;
+    }
+
+    /**
+     * Checks that the remembered signature still exists and that no newer one has appeared beside it.
+     * @param state the remembered path and listings
+     * @param current filled with the listings fetched, which are current whatever the outcome
+     * @return true if the remembered signature is still the most recent
+     */
+    private boolean revalidate(State state, Map<String, Listing> current) throws URISyntaxException {
+        List<String> directories = chainDirectories(state.chain);
+        // made on HttpUtility's shared threads, which also read each listing as it arrives
+        ListenableFuture<Integer> head = Futures.transform(http.headAsync(uri(state.signaturePath)),
+                new AsyncFunction<CloseableHttpResponse, Integer>() {
+                    @Override
+                    public ListenableFuture<Integer> apply(CloseableHttpResponse response) throws IOException {
+                        try {
+                            return Futures.immediateFuture(response.getStatusLine().getStatusCode());
+                        } finally {
+                            response.close();
+                        }
+                    }
+                });
+        List<ListenableFuture<Listing>> listings = new ArrayList<>();
+        for (String directory : directories) listings.add(listAsync(directory, state.listings.get(directory)));
+        try {
+            boolean valid = true;
+            for (int i = 0; i < directories.size(); i++) {
+                Listing listing = listings.get(i).get();
+                current.put(directories.get(i), listing);
+                valid &= state.chain.get(i).equals(findMostRecent(listing.entries));
+            }
+            int headStatus = head.get();
+            valid &= headStatus != HttpStatus.SC_NOT_FOUND && headStatus != HttpStatus.SC_GONE;
+            return valid;
+        } catch (ExecutionException | IOException | ParseException e) {
+            // the walk will run into the same problem, if it's real, and report it properly
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static List<String> chainDirectories(List<String> chain) {
+        List<String> directories = new ArrayList<>();
+        String path = completedFolder;
+        directories.add(path);
+        for (int level = 0; level < 3; level++) {
+            path += chain.get(level) + (level == 2 ? signaturesFolder : "");
+            directories.add(path);
+        }
+        return directories;
+    }
+
+    private State loadState() {
+        try {
+            File f = new File(Utils.getLocalStateDirectory(stateDirectoryName), datasetId + ".json");
+            if (f.isFile()) {
+                State state = mapper.readValue(f, State.class);
+                if (state.listings == null) state.listings = new HashMap<>();
+                return state;
+            }
+        } catch (IOException e) {
+            System.out.println("Ignoring unreadable directory listings for " + datasetId + ": " + e.getMessage());
+        }
+        return new State();
+    }
+
+    private void saveState(State state) {
+        try {
+            File dir = Utils.getLocalStateDirectory(stateDirectoryName);
+            File temp = File.createTempFile(datasetId, ".tmp", dir);
+            try {
+                mapper.writeValue(temp, state);
+                Utils.replaceFile(temp, new File(dir, datasetId + ".json"));
+            } finally {
+                if (temp.exists()) temp.delete();
+            }
+        } catch (IOException e) {
+            System.out.println("Unable to remember directory listings for " + datasetId + ": " + e.getMessage());
         }
     }
 
@@ -70,19 +226,106 @@ public class DatasyncDirectory {
      * @return a list of the contents within the directory
      */
     public List<String> lsDirectory(String path) throws URISyntaxException, IOException {
-        URI uri = baseUri.setPath(baseFolder + path).build();
-        try(CloseableHttpResponse response = http.get(uri, ContentType.APPLICATION_JSON.getMimeType())) {
+        return list(path, null).entries;
+    }
+
+    /**
+     * Lists a directory, conditionally on it having changed since the given listing if there is one.
+     */
+    private Listing list(String path, Listing previous) throws URISyntaxException, IOException {
+        Header[] conditions = conditions(previous);
+        return toListing(http.get(uri(baseFolder + path), ContentType.APPLICATION_JSON.getMimeType(), conditions),
+                conditions, previous);
+    }
+
+    /**
+     * Lists a directory as {@link #list} does, on HttpUtility's shared threads.
+     */
+    private ListenableFuture<Listing> listAsync(String path, final Listing previous) throws URISyntaxException {
+        final Header[] conditions = conditions(previous);
+        return Futures.transform(http.getAsync(uri(baseFolder + path), ContentType.APPLICATION_JSON.getMimeType(), conditions),
+                new AsyncFunction<CloseableHttpResponse, Listing>() {
+                    @Override
+                    public ListenableFuture<Listing> apply(CloseableHttpResponse response) throws IOException {
+                        return Futures.immediateFuture(toListing(response, conditions, previous));
+                    }
+                });
+    }
+
+    private static Header[] conditions(Listing previous) {
+        List<Header> conditions = new ArrayList<>();
+        if (previous != null && previous.entries != null) {
+            if (previous.etag != null) conditions.add(new BasicHeader(HttpHeaders.IF_NONE_MATCH, previous.etag));
+            if (previous.lastModified != null) conditions.add(new BasicHeader(HttpHeaders.IF_MODIFIED_SINCE, previous.lastModified));
+        }
+        return conditions.toArray(new Header[conditions.size()]);
+    }
+
+    /**
+     * Reads a listing from the response to a (conditional) get of its directory, closing the response.
+     */
+    private static Listing toListing(CloseableHttpResponse res, Header[] conditions, Listing previous) throws IOException {
+        try(CloseableHttpResponse response = res) {
             int status = response.getStatusLine().getStatusCode();
-            if (status == HttpStatus.SC_OK || status == HttpStatus.SC_NOT_MODIFIED) {
+            if (status == HttpStatus.SC_NOT_MODIFIED && conditions.length > 0) {
+                return previous;
+            } else if (status == HttpStatus.SC_OK || status == HttpStatus.SC_NOT_MODIFIED) {
+                Listing listing = new Listing();
                 @SuppressWarnings("unchecked")
                 ArrayList<String> ret =
                     mapper.readValue(response.getEntity().getContent(), ArrayList.class);
-                return ret;
+                listing.entries = ret;
+                Header etag = response.getFirstHeader(HttpHeaders.ETAG);
+                Header lastModified = response.getFirstHeader(HttpHeaders.LAST_MODIFIED);
+                listing.etag = etag == null ? null : etag.getValue();
+                listing.lastModified = lastModified == null ? null : lastModified.getValue();
+                return listing;
             } else {
                 // it isn't a show-stopper to be unable to read directories
-                return new ArrayList<>();
+                return new Listing();
+            }
+        }
+    }
+
+    /**
+     * Finds the most recent item in a directory of the completed tree, by comparing the numbers in
+     * each item's name (the year, month or day, or the time of day of a signature) in order.
+     * @param directoryContents the return value from lsDirectory
+     * @return the url-decoded item in the directory corresponding to the most recent time, or null if there are none
+     */
+    public static String findMostRecent(List<String> directoryContents) throws UnsupportedEncodingException, ParseException {
+        if (directoryContents == null || directoryContents.size() == 0) {
+            return null;
+        }
+
+        int mostRecentIdx = 0;
+        long[] mostRecent = timeKey(directoryContents.get(0));
+        for (int i = 1; i < directoryContents.size(); i++) {
+            long[] key = timeKey(directoryContents.get(i));
+            if (compare(key, mostRecent) > 0) {
+                mostRecent = key;
+                mostRecentIdx = i;
             }
         }
+        return URLDecoder.decode(directoryContents.get(mostRecentIdx), "UTF-8");
+    }
+
+    private static long[] timeKey(String directoryItem) throws UnsupportedEncodingException, ParseException {
+        String[] fields = cleanString(directoryItem).split("[^0-9]+");
+        long[] key = new long[fields.length];
+        int n = 0;
+        for (String field : fields) {
+            if (!field.isEmpty()) key[n++] = Long.parseLong(field);
+        }
+        if (n == 0) throw new ParseException("Unparseable directory item: \"" + directoryItem + "\"", 0);
+        return Arrays.copyOf(key, n);
+    }
+
+    private static int compare(long[] a, long[] b) {
+        for (int i = 0; i < Math.min(a.length, b.length); i++) {
+            if (a[i] != b[i]) return a[i] < b[i] ? -1 : 1;
+        }
+        return a.length - b.length;
     }
 
     /**
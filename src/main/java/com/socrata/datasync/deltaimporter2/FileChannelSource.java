@@ -0,0 +1,116 @@
+package com.socrata.datasync.deltaimporter2;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads a file by memory-mapping it a large window at a time, starting from a given position
+ * (e.g. just past a BOM), which saves the copy through a kernel buffer that a FileInputStream
+ * makes.  The number of bytes read so far is kept in a single field for another thread to sample,
+ * so reading does no timekeeping or reporting of its own.
+ */
+public class FileChannelSource extends InputStream {
+    public static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+    private final FileInputStream file;
+    private final FileChannel channel;
+    private final int windowSize;
+    private final long end;
+    private final long size;
+    private MappedByteBuffer window = null;
+    // the position in the file at which the next window starts
+    private long nextWindow;
+    // written only by the reading thread; volatile so a sampling thread sees it whole
+    private volatile long count = 0L;
+
+    public FileChannelSource(File file, long startPosition) throws IOException {
+        this(file, startPosition, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * @param file the file to read
+     * @param startPosition the number of bytes at the start of the file to skip
+     * @param windowSize the size of each region of the file mapped
+     */
+    public FileChannelSource(File file, long startPosition, int windowSize) throws IOException {
+        this.file = new FileInputStream(file);
+        this.channel = this.file.getChannel();
+        this.windowSize = windowSize;
+        this.end = channel.size();
+        this.nextWindow = Math.min(startPosition, end);
+        this.size = end - nextWindow;
+    }
+
+    /**
+     * @return the number of bytes to be read in all, i.e. the size of the file less the start position
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return the number of bytes read so far; safe to call from any thread
+     */
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) return -1;
+        count += 1;
+        return window.get() & 0xff;
+    }
+
+    @Override
+    public int read(byte[] bs, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        if (!fill()) return -1;
+        int n = Math.min(len, window.remaining());
+        window.get(bs, off, n);
+        count += n;
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0) return 0;
+        long skipped = 0;
+        if (window != null) {
+            skipped = Math.min(n, window.remaining());
+            window.position(window.position() + (int) skipped);
+        }
+        if (skipped < n) {
+            long further = Math.min(n - skipped, end - nextWindow);
+            nextWindow += further;
+            skipped += further;
+        }
+        count += skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return window == null ? 0 : window.remaining();
+    }
+
+    @Override
+    public void close() throws IOException {
+        // the last window is unmapped once it is collected
+        window = null;
+        file.close();
+    }
+
+    private boolean fill() throws IOException {
+        if (window != null && window.hasRemaining()) return true;
+        if (nextWindow >= end) return false;
+        long length = Math.min(windowSize, end - nextWindow);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, nextWindow, length);
+        nextWindow += length;
+        return true;
+    }
+}
@@ -0,0 +1,190 @@
+package com.socrata.datasync.deltaimporter2;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * A gzip compressor that deflates fixed-size blocks of its input on a pool of threads, in the
+ * manner of pigz.  The output is a single ordinary gzip member: each block is deflated raw and
+ * sync-flushed, so the blocks concatenate into one deflate stream, and each block is primed with
+ * the last 32K of the block before it so compression is nearly as good as a serial deflate.
+ *
+ * Blocks are written out in order by whichever thread is writing to this stream, which also keeps
+ * the running CRC.  At most two blocks per thread are in flight at once.
+ */
+public class ParallelGZIPOutputStream extends FilterOutputStream {
+    public static final int DEFAULT_BLOCK_SIZE = 128 * 1024;
+    private static final int dictionarySize = 32 * 1024;
+    private static final byte[] header = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0 };
+
+    private final ExecutorService compressors;
+    private final int level;
+    private final int blockSize;
+    private final int maxInFlight;
+    private final Deque<Future<byte[]>> inFlight = new ArrayDeque<>();
+    private final CRC32 crc = new CRC32();
+    private long totalIn = 0L;
+    private byte[] block;
+    private int blockLength = 0;
+    private byte[] dictionary = null;
+    private boolean closed = false;
+
+    public ParallelGZIPOutputStream(OutputStream out, int threads) throws IOException {
+        this(out, threads, Deflater.DEFAULT_COMPRESSION, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * @param out the stream to write the gzipped data to
+     * @param threads the number of threads to deflate on
+     * @param level the deflate compression level
+     * @param blockSize the size of the blocks of input deflated independently
+     */
+    public ParallelGZIPOutputStream(OutputStream out, int threads, int level, int blockSize) throws IOException {
+        super(out);
+        if (threads < 1) throw new IllegalArgumentException("threads must be positive");
+        this.compressors = Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("Compression thread %d").build());
+        this.level = level;
+        this.blockSize = blockSize;
+        this.maxInFlight = threads * 2;
+        this.block = new byte[blockSize];
+        out.write(header);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bs, int off, int len) throws IOException {
+        if (closed) throw new IOException("Stream closed");
+        crc.update(bs, off, len);
+        totalIn += len;
+        while (len > 0) {
+            int n = Math.min(len, blockSize - blockLength);
+            System.arraycopy(bs, off, block, blockLength, n);
+            blockLength += n;
+            off += n;
+            len -= n;
+            if (blockLength == blockSize) submit(false);
+        }
+    }
+
+    /**
+     * Writes out the blocks that have finished compressing.  A partially filled block stays
+     * buffered, since flushing it would cost compression for no benefit to the reader.
+     */
+    @Override
+    public void flush() throws IOException {
+        while (!inFlight.isEmpty() && inFlight.peekFirst().isDone()) writeCompleted();
+        out.flush();
+    }
+
+    /**
+     * Compresses what remains, writes the gzip trailer and closes the underlying stream.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            submit(true);
+            while (!inFlight.isEmpty()) writeCompleted();
+            writeIntLE((int) crc.getValue());
+            writeIntLE((int) totalIn);
+            out.flush();
+        } finally {
+            compressors.shutdownNow();
+            out.close();
+        }
+    }
+
+    private void submit(boolean last) throws IOException {
+        while (inFlight.size() >= maxInFlight) writeCompleted();
+        final byte[] input = block;
+        final int length = blockLength;
+        final byte[] primer = dictionary;
+        inFlight.addLast(compressors.submit(new BlockDeflater(input, length, primer, last)));
+        if (!last) {
+            // the next block is primed with the tail of this one
+            dictionary = Arrays.copyOfRange(input, Math.max(0, length - dictionarySize), length);
+            block = new byte[blockSize];
+            blockLength = 0;
+        }
+    }
+
+    private void writeCompleted() throws IOException {
+        try {
+            out.write(inFlight.removeFirst().get());
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted while waiting for a block to compress");
+        } catch (ExecutionException e) {
+            throw new IOException("Unable to compress block", e.getCause());
+        }
+    }
+
+    private void writeIntLE(int i) throws IOException {
+        out.write(i & 0xff);
+        out.write((i >> 8) & 0xff);
+        out.write((i >> 16) & 0xff);
+        out.write((i >> 24) & 0xff);
+    }
+
+    private class BlockDeflater implements Callable<byte[]> {
+        private final byte[] input;
+        private final int length;
+        private final byte[] primer;
+        private final boolean last;
+
+        BlockDeflater(byte[] input, int length, byte[] primer, boolean last) {
+            this.input = input;
+            this.length = length;
+            this.primer = primer;
+            this.last = last;
+        }
+
+        @Override
+        public byte[] call() {
+            Deflater deflater = new Deflater(level, true);
+            try {
+                if (primer != null) deflater.setDictionary(primer);
+                deflater.setInput(input, 0, length);
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream(length / 2 + 64);
+                byte[] buffer = new byte[16 * 1024];
+                if (last) {
+                    deflater.finish();
+                    while (!deflater.finished()) {
+                        int n = deflater.deflate(buffer);
+                        compressed.write(buffer, 0, n);
+                    }
+                } else {
+                    // a sync flush ends the block on a byte boundary so the next block can follow it directly
+                    int n;
+                    do {
+                        n = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                        compressed.write(buffer, 0, n);
+                    } while (n == buffer.length);
+                }
+                return compressed.toByteArray();
+            } finally {
+                deflater.end();
+            }
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.socrata.datasync.deltaimporter2;
+
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.XZOutputStream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * How a delta-importer-2 patch is compressed: not at all, with gzip at a given level or with xz at
+ * a given preset.  Written as e.g. "none", "gzip-6" or "xz-3", which is also how the user names
+ * one in the patchCompression preference ("gzip" and "xz" alone mean their default levels).
+ */
+public class PatchCompression {
+    public enum Type { NONE, GZIP, XZ }
+
+    public static final PatchCompression NONE = new PatchCompression(Type.NONE, 0);
+    public static final PatchCompression GZIP = new PatchCompression(Type.GZIP, 6);
+    public static final PatchCompression XZ = new PatchCompression(Type.XZ, LZMA2Options.PRESET_DEFAULT);
+
+    private final Type type;
+    private final int level;
+
+    public PatchCompression(Type type, int level) {
+        this.type = type;
+        this.level = level;
+    }
+
+    public Type getType() { return type; }
+
+    public int getLevel() { return level; }
+
+    /**
+     * @return every choice worth considering: none, each gzip level and a few xz presets
+     * (the higher xz presets are too slow to ever pay for themselves on a patch upload)
+     */
+    public static List<PatchCompression> candidates() {
+        List<PatchCompression> candidates = new ArrayList<>();
+        candidates.add(NONE);
+        for (int level = 1; level <= 9; level++) candidates.add(new PatchCompression(Type.GZIP, level));
+        for (int preset : new int[] { 0, 3, 6 }) candidates.add(new PatchCompression(Type.XZ, preset));
+        return Collections.unmodifiableList(candidates);
+    }
+
+    /**
+     * @param name a compression as written by toString, or "gzip" or "xz"
+     * @return the compression, or null if the name isn't one
+     */
+    public static PatchCompression parse(String name) {
+        if (name == null) return null;
+        String n = name.trim().toLowerCase();
+        if (n.equals("none")) return NONE;
+        if (n.equals("gzip")) return GZIP;
+        if (n.equals("xz")) return XZ;
+        try {
+            if (n.startsWith("gzip-")) {
+                int level = Integer.parseInt(n.substring(5));
+                if (level >= 1 && level <= 9) return new PatchCompression(Type.GZIP, level);
+            } else if (n.startsWith("xz-")) {
+                int preset = Integer.parseInt(n.substring(3));
+                if (preset >= 0 && preset <= 9) return new PatchCompression(Type.XZ, preset);
+            }
+        } catch (NumberFormatException e) {
+            // fall through
+        }
+        return null;
+    }
+
+    /**
+     * @return the extension delta-importer-2 recognizes a patch compressed this way by
+     */
+    public String getExtension() {
+        switch (type) {
+            case GZIP: return ".gz";
+            case XZ: return ".xz";
+            default: return "";
+        }
+    }
+
+    /**
+     * @return whether spreading this compression over more threads makes it faster
+     */
+    public boolean isParallel() {
+        return type == Type.GZIP;
+    }
+
+    /**
+     * Wraps a stream so that what is written to it is compressed this way.  gzip is always done by a
+     * ParallelGZIPOutputStream, so that the compressed bytes don't depend on the number of threads.
+     * @param out the stream to write the compressed bytes to
+     * @param threads the number of threads to compress on, where that helps
+     * @return the compressing stream, or out itself for NONE
+     */
+    public OutputStream compress(OutputStream out, int threads) throws IOException {
+        switch (type) {
+            case GZIP:
+                return new ParallelGZIPOutputStream(out, Math.max(1, threads), level, ParallelGZIPOutputStream.DEFAULT_BLOCK_SIZE);
+            case XZ:
+                return new XZOutputStream(out, new LZMA2Options(level));
+            default:
+                return out;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return type == Type.NONE ? "none" : type.name().toLowerCase() + "-" + level;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof PatchCompression)) return false;
+        PatchCompression that = (PatchCompression) o;
+        return type == that.type && (type == Type.NONE || level == that.level);
+    }
+
+    @Override
+    public int hashCode() {
+        return type == Type.NONE ? 0 : type.hashCode() * 31 + level;
+    }
+}
@@ -0,0 +1,151 @@
+package com.socrata.datasync.deltaimporter2;
+
+import com.google.common.io.CountingOutputStream;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.socrata.ssync.PatchExplorer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * What publishing a file with delta-importer-2 would cost, measured by computing the patch locally
+ * without sending any of it: how big the patch is before and after compression, how much of the
+ * file matched the previous version, and so how many chunks and how long the upload would take.
+ */
+public class PatchEstimate {
+    private static final int bufferSize = 256 * 1024;
+
+    private final long fileSize;
+    private final long patchSize;
+    private final long compressedSize;
+    private final long literalBytes;
+    private final PatchCompression compression;
+    private final int chunkSize;
+    private final Double bandwidth;
+
+    PatchEstimate(long fileSize, long patchSize, long compressedSize, long literalBytes,
+                  PatchCompression compression, int chunkSize, Double bandwidth) {
+        this.fileSize = fileSize;
+        this.patchSize = patchSize;
+        this.compressedSize = compressedSize;
+        this.literalBytes = literalBytes;
+        this.compression = compression;
+        this.chunkSize = chunkSize;
+        this.bandwidth = bandwidth;
+    }
+
+    /**
+     * Reads an uncompressed patch through to its end, measuring it.
+     * @param patch the uncompressed patch, e.g. a PatchPipeline with no compression
+     * @param fileSize the size of the file the patch was computed from
+     * @param compression the compression the patch would be sent with
+     * @param threads the number of threads the compression may use
+     * @param chunkSize the size of the chunks the patch would be posted in
+     * @param bandwidth the upload bandwidth in bytes per second, or null if it isn't known
+     */
+    public static PatchEstimate measure(InputStream patch, long fileSize, PatchCompression compression, int threads,
+                                        int chunkSize, Double bandwidth) throws IOException {
+        final ByteRingBuffer explorerInput = new ByteRingBuffer(bufferSize);
+        ExecutorService explorerThread = Executors.newSingleThreadExecutor(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("Patch explorer %d").build());
+        try {
+            // counting literal bytes needs the patch parsed, which is done alongside reading it
+            Future<Long> literals = explorerThread.submit(new Callable<Long>() {
+                @Override
+                public Long call() throws Exception {
+                    try (InputStream in = explorerInput.source()) {
+                        return countLiteralBytes(in);
+                    }
+                }
+            });
+
+            CountingOutputStream compressed = new CountingOutputStream(new OutputStream() {
+                @Override
+                public void write(int b) { }
+
+                @Override
+                public void write(byte[] bs, int off, int len) { }
+            });
+            long patchSize = 0;
+            try (OutputStream compressor = compression.compress(compressed, threads)) {
+                byte[] buffer = new byte[bufferSize];
+                int n;
+                while ((n = patch.read(buffer)) != -1) {
+                    patchSize += n;
+                    compressor.write(buffer, 0, n);
+                    explorerInput.sink().write(buffer, 0, n);
+                }
+                explorerInput.finish();
+            } catch (IOException | RuntimeException e) {
+                explorerInput.fail(e);
+                throw e;
+            }
+
+            long literalBytes;
+            try {
+                literalBytes = literals.get();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("Interrupted while parsing the patch");
+            } catch (ExecutionException e) {
+                throw new IOException("Unable to parse the patch", e.getCause());
+            }
+            return new PatchEstimate(fileSize, patchSize, compressed.getCount(), literalBytes, compression,
+                    chunkSize, bandwidth);
+        } finally {
+            explorerThread.shutdownNow();
+        }
+    }
+
+    static long countLiteralBytes(InputStream patch) throws Exception {
+        long literalBytes = 0;
+        PatchExplorer explorer = new PatchExplorer(patch);
+        while (explorer.hasNext()) {
+            PatchExplorer.Event event = explorer.next();
+            if (event instanceof PatchExplorer.DataEvent) literalBytes += ((PatchExplorer.DataEvent) event).data.length;
+        }
+        return literalBytes;
+    }
+
+    public long getFileSize() { return fileSize; }
+
+    /** @return the size of the patch before compression */
+    public long getPatchSize() { return patchSize; }
+
+    /** @return the size of the patch as it would be sent */
+    public long getCompressedSize() { return compressedSize; }
+
+    /** @return the bytes of the file that had to be sent as they are, because nothing in the previous version matched them */
+    public long getLiteralBytes() { return literalBytes; }
+
+    public PatchCompression getCompression() { return compression; }
+
+    /** @return the fraction of the file found in the previous version */
+    public double getMatchRatio() {
+        return fileSize == 0 ? 1.0 : Math.max(0.0, 1.0 - (double) literalBytes / fileSize);
+    }
+
+    public long getChunkCount() {
+        return (compressedSize + chunkSize - 1) / chunkSize;
+    }
+
+    /** @return the estimated time to upload the patch in seconds, or null if the bandwidth isn't known */
+    public Double getEstimatedUploadSeconds() {
+        return bandwidth == null ? null : compressedSize / bandwidth;
+    }
+
+    public String report() {
+        Double seconds = getEstimatedUploadSeconds();
+        return String.format("Dry run: the patch for this %d byte file is %d bytes, or %d bytes compressed with %s; " +
+                        "%.1f%% of the file matched the previous version.  It would be posted in %d chunk(s) of up to %d bytes, %s",
+                fileSize, patchSize, compressedSize, compression, getMatchRatio() * 100, getChunkCount(), chunkSize,
+                seconds == null ? "taking an unknown time since no upload bandwidth has been measured to this domain yet" :
+                        String.format("taking about %.0f seconds at %.1f MB/s", seconds, bandwidth / (1024 * 1024)));
+    }
+}
@@ -0,0 +1,242 @@
+package com.socrata.datasync.deltaimporter2;
+
+import com.socrata.ssync.PatchComputer;
+import com.socrata.ssync.SignatureComputer;
+import com.socrata.ssync.SignatureTable;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Computes a (possibly compressed) patch of a file against a previous signature as a chain of stages,
+ * each on its own thread:
+ *
+ *   read -> diff -> compress -> chunk
+ *
+ * The stages are connected by BufferPipes, so reading the next part of the file, diffing it and
+ * compressing it all overlap with each other and with the upload of chunks already read from this
+ * stream.  The "chunk" stage is whoever reads this stream; its stats count the bytes it has taken.
+ *
+ * Optionally, the bytes read are also fed to a "signature" stage which writes the signature of the
+ * new file to disk, so that it can serve as the previous signature of the next publish.  It uses the
+ * previous signature's block size, which is the one delta-importer-2 signs with.  A failure of that
+ * stage doesn't affect the patch.
+ */
+public class PatchPipeline extends InputStream {
+    private static final int stageBufferSize = 256 * 1024;
+    private static final int stageBuffers = 8;
+    private static final int outputBuffers = 3;
+    private static final int patchMaxDataBlockSize = 1024000;
+
+    private final List<StageStats> stats = new ArrayList<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private final InputStream output;
+    private final StageStats chunk = new StageStats("chunk");
+    private Stage signatureStage = null;
+    private Thread signatureWorker = null;
+    private volatile boolean signatureAbandoned = false;
+
+    public PatchPipeline(InputStream newFile, SignatureTable previousSignature, int chunkSize, boolean compress) {
+        this(newFile, previousSignature, chunkSize, compress ? PatchCompression.GZIP : PatchCompression.NONE, 1, null);
+    }
+
+    /**
+     * Starts the pipeline.
+     * @param newFile the file to be diffed
+     * @param previousSignature the signature of the previous version of the file
+     * @param chunkSize the size of the chunks the patch will be read in; the last stage buffers this much at a time
+     * @param compression how to compress the patch
+     * @param compressionThreads the number of threads to compress on, for compressions that can use several
+     * @param signatureTarget if not null, where to write the signature of newFile
+     */
+    public PatchPipeline(final InputStream newFile, final SignatureTable previousSignature, int chunkSize,
+                         final PatchCompression compression, final int compressionThreads, final File signatureTarget) {
+        boolean compress = compression.getType() != PatchCompression.Type.NONE;
+        StageStats read = new StageStats("read");
+        StageStats diff = new StageStats("diff");
+        StageStats compressing = compress ? new StageStats("compress") : null;
+
+        final BufferPipe readOut = new BufferPipe(stageBufferSize, stageBuffers, read, diff);
+        final BufferPipe diffOut = compress ?
+                new BufferPipe(stageBufferSize, stageBuffers, diff, compressing) :
+                new BufferPipe(chunkSize, outputBuffers, diff, chunk);
+        final BufferPipe compressOut = compress ? new BufferPipe(chunkSize, outputBuffers, compressing, chunk) : null;
+
+        stats.add(read);
+        stats.add(diff);
+        if (compress) stats.add(compressing);
+        stats.add(chunk);
+
+        final BufferPipe signatureIn;
+        if (signatureTarget != null) {
+            StageStats signing = new StageStats("signature");
+            stats.add(signing);
+            signatureIn = new BufferPipe(stageBufferSize, stageBuffers, new StageStats("read"), signing);
+            signatureStage = new Stage("signature", signing, signatureIn.source(), null) {
+                @Override
+                void process(InputStream in, OutputStream out) throws Exception {
+                    try (OutputStream file = new BufferedOutputStream(new FileOutputStream(signatureTarget))) {
+                        SignatureComputer.compute("MD5", "MD5", previousSignature.blockSize, in, file);
+                    }
+                }
+            };
+            signatureWorker = start(signatureStage);
+        } else {
+            signatureIn = null;
+        }
+
+        start(new Stage("read", read, newFile, readOut) {
+            @Override
+            void process(InputStream in, OutputStream out) throws Exception {
+                byte[] buffer = new byte[stageBufferSize];
+                int count;
+                try {
+                    while ((count = in.read(buffer)) != -1) {
+                        out.write(buffer, 0, count);
+                        if (signatureIn != null && !signatureAbandoned) {
+                            try {
+                                signatureIn.sink().write(buffer, 0, count);
+                            } catch (IOException e) {
+                                // the signature stage has given up; carry on with the patch regardless
+                                signatureAbandoned = true;
+                            }
+                        }
+                    }
+                } catch (Exception e) {
+                    if (signatureIn != null) signatureIn.fail(e);
+                    throw e;
+                }
+                if (signatureIn != null && !signatureAbandoned) {
+                    try {
+                        signatureIn.finish();
+                    } catch (IOException e) {
+                        signatureAbandoned = true;
+                    }
+                }
+            }
+        });
+        start(new Stage("diff", diff, readOut.source(), diffOut) {
+            @Override
+            void process(InputStream in, OutputStream out) throws Exception {
+                PatchComputer.compute(in, previousSignature, "MD5", patchMaxDataBlockSize, out);
+            }
+        });
+        if (compress) {
+            start(new Stage("compress", compressing, diffOut.source(), compressOut) {
+                @Override
+                void process(InputStream in, OutputStream out) throws Exception {
+                    try (OutputStream compressed = compression.compress(out, compressionThreads)) {
+                        byte[] buffer = new byte[stageBufferSize];
+                        int count;
+                        while ((count = in.read(buffer)) != -1) {
+                            compressed.write(buffer, 0, count);
+                        }
+                    }
+                }
+            });
+            output = compressOut.source();
+        } else {
+            output = diffOut.source();
+        }
+        chunk.started();
+    }
+
+    /**
+     * Waits for the signature stage to finish writing the signature of the new file.
+     * @return true if the complete signature was written to the signature target
+     */
+    public boolean awaitSignature() throws InterruptedException {
+        if (signatureWorker == null) return false;
+        signatureWorker.join();
+        return !signatureAbandoned && signatureStage.failure == null;
+    }
+
+    /**
+     * @return the stats of each stage, in pipeline order
+     */
+    public List<StageStats> getStageStats() {
+        return Collections.unmodifiableList(stats);
+    }
+
+    /**
+     * @return a multi-line summary of each stage's throughput, waits and queue depth
+     */
+    public String report() {
+        StringBuilder sb = new StringBuilder("Patch pipeline:");
+        for (StageStats s : stats) sb.append("\n\t").append(s);
+        return sb.toString();
+    }
+
+    @Override
+    public int read() throws IOException {
+        return output.read();
+    }
+
+    @Override
+    public int read(byte[] bytes, int off, int len) throws IOException {
+        int count = output.read(bytes, off, len);
+        if (count == -1) chunk.finished();
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // closing the last pipe makes each upstream stage fail its next write, closing its own input in turn
+        output.close();
+        for (Thread worker : workers) {
+            if (worker != signatureWorker) worker.interrupt();
+        }
+    }
+
+    private Thread start(Stage stage) {
+        Thread t = new Thread(stage);
+        t.setDaemon(true);
+        t.setName("Patch " + stage.name + " thread");
+        workers.add(t);
+        t.start();
+        return t;
+    }
+
+    private static abstract class Stage implements Runnable {
+        final String name;
+        private final StageStats stats;
+        private final InputStream in;
+        private final BufferPipe out;
+        volatile Throwable failure = null;
+
+        Stage(String name, StageStats stats, InputStream in, BufferPipe out) {
+            this.name = name;
+            this.stats = stats;
+            this.in = in;
+            this.out = out;
+        }
+
+        abstract void process(InputStream in, OutputStream out) throws Exception;
+
+        @Override
+        public void run() {
+            stats.started();
+            try {
+                process(in, out == null ? null : out.sink());
+                if (out != null) out.finish();
+            } catch (Throwable t) {
+                failure = t;
+                if (out != null) out.fail(t);
+            } finally {
+                stats.finished();
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // nothing more we can do with the input
+                }
+            }
+        }
+    }
+}
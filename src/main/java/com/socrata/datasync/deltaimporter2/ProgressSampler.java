@@ -0,0 +1,57 @@
+package com.socrata.datasync.deltaimporter2;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reports how far a FileChannelSource has got from a thread of its own, every so often, so that
+ * the thread reading the file never stops to print or to update the UI.
+ */
+public abstract class ProgressSampler implements AutoCloseable {
+    public static final long DEFAULT_PERIOD_MS = 5000;
+
+    private final ScheduledExecutorService reporter;
+    private final FileChannelSource source;
+    private long lastCount = -1L;
+
+    public ProgressSampler(FileChannelSource source) {
+        this(source, DEFAULT_PERIOD_MS);
+    }
+
+    public ProgressSampler(FileChannelSource source, long periodMs) {
+        this.source = source;
+        this.reporter = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("Progress reporter %d").build());
+        reporter.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                sample();
+            }
+        }, periodMs, periodMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void sample() {
+        long count = source.getCount();
+        if (count == lastCount) return;
+        lastCount = count;
+        try {
+            progress(count);
+        } catch (RuntimeException e) {
+            // a failed report mustn't stop the ones after it
+            System.out.println("Unable to report progress: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Called from the reporting thread with the number of bytes read, whenever it has changed.
+     */
+    protected abstract void progress(long count);
+
+    @Override
+    public void close() {
+        reporter.shutdownNow();
+    }
+}
@@ -0,0 +1,131 @@
+package com.socrata.datasync.deltaimporter2;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.google.common.hash.Hashing;
+import com.socrata.datasync.Utils;
+import com.socrata.datasync.config.controlfile.ControlFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A record, kept on disk, of the last file successfully published to a dataset with
+ * delta-importer-2: its size and MD5, the control file it was published with and the path of the
+ * signature delta-importer-2 stored for it.  If the dataset's latest signature is still that one,
+ * and a file and control file with the same digests are to replace it, publishing would change
+ * nothing and can be skipped.
+ */
+@JsonSerialize(include= JsonSerialize.Inclusion.NON_NULL)
+@JsonIgnoreProperties(ignoreUnknown=true)
+public class PublishRecord {
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    public String datasetId;
+    public String signaturePath;
+    public long fileSize;
+    public String md5;
+    public String control;
+    public long publishedAt;
+
+    /**
+     * @return the record of the last publish to the dataset, or null if there isn't one
+     */
+    public static PublishRecord load(File directory, String datasetId) {
+        File location = new File(directory, datasetId + ".json");
+        if (!location.isFile()) return null;
+        try {
+            return mapper.readValue(location, PublishRecord.class);
+        } catch (IOException e) {
+            System.out.println("Ignoring unreadable publish record " + location + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Remembers a successful publish.  Failing to only means the next identical file is published again.
+     */
+    public static void save(File directory, String datasetId, String signaturePath, long fileSize, String md5,
+                            String control) {
+        PublishRecord record = new PublishRecord();
+        record.datasetId = datasetId;
+        record.signaturePath = signaturePath;
+        record.fileSize = fileSize;
+        record.md5 = md5;
+        record.control = control;
+        record.publishedAt = System.currentTimeMillis();
+        try {
+            File temp = File.createTempFile(datasetId, ".tmp", directory);
+            try {
+                mapper.writeValue(temp, record);
+                Utils.replaceFile(temp, new File(directory, datasetId + ".json"));
+            } finally {
+                if (temp.exists()) temp.delete();
+            }
+        } catch (IOException e) {
+            System.out.println("Unable to save the publish record for " + datasetId + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return whether this is a record of publishing the same bytes with the same control file, and
+     * the latest signature is the one that publish left
+     */
+    public boolean matches(String signaturePath, long fileSize, String md5, String control) {
+        return mightMatch(signaturePath, fileSize, control) && md5 != null && md5.equals(this.md5);
+    }
+
+    /**
+     * @return whether a file of the given size, published with the given control file, could match
+     * this record; worth checking before reading the whole file to digest it
+     */
+    public boolean mightMatch(String signaturePath, long fileSize, String control) {
+        return signaturePath != null && signaturePath.equals(this.signaturePath) && fileSize == this.fileSize &&
+                control != null && control.equals(this.control);
+    }
+
+    /**
+     * @return the digest of a control file, leaving out its opaque id, which differs every publish
+     */
+    public static String controlDigest(ControlFile controlFile) throws JsonProcessingException {
+        String opaque = controlFile.opaque;
+        try {
+            controlFile.opaque = null;
+            return Hashing.md5().hashString(mapper.writeValueAsString(controlFile), Charset.forName("UTF-8")).toString();
+        } finally {
+            controlFile.opaque = opaque;
+        }
+    }
+
+    /**
+     * @return the hex MD5 of everything remaining in the stream, which is read to its end
+     */
+    public static String digest(InputStream in) throws IOException {
+        MessageDigest md5 = newMd5();
+        byte[] buffer = new byte[256 * 1024];
+        int n;
+        while ((n = in.read(buffer)) != -1) md5.update(buffer, 0, n);
+        return hex(md5.digest());
+    }
+
+    public static MessageDigest newMd5() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            // every JVM is required to provide MD5
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static String hex(byte[] digest) {
+        StringBuilder sb = new StringBuilder(digest.length * 2);
+        for (byte b : digest) sb.append(String.format("%02x", b & 0xff));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,264 @@
+package com.socrata.datasync.deltaimporter2;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.google.common.hash.Hashing;
+import com.socrata.datasync.Utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A local, size-bounded cache of the signatures of files published via delta-importer-2, so that
+ * the next publish of the same dataset can diff against the signature on disk rather than
+ * downloading it again.  There is at most one entry per dataset: the signature of the file most
+ * recently published to it, along with the path delta-importer-2 stored its own copy under.  An
+ * entry is only used if that path is still the dataset's latest signature path on the server.
+ *
+ * The index is re-read on every operation and replaced atomically, so several DataSync processes
+ * can share the cache; the worst outcome of a race is a lost entry, which costs one download.
+ */
+public class SignatureCache {
+    private static final String indexFileName = "index.json";
+    private static final String pendingPrefix = "pending-";
+    private static final String signatureExtension = ".ssig";
+    private static final long stalePendingMillis = 24L * 60 * 60 * 1000;
+
+    @JsonSerialize(include= JsonSerialize.Inclusion.NON_NULL)
+    @JsonIgnoreProperties(ignoreUnknown=true)
+    public static class Entry {
+        public String datasetId;
+        public String signaturePath;
+        public String file;
+        public long size;
+        public String md5;
+        public long lastUsed;
+    }
+
+    @JsonSerialize(include= JsonSerialize.Inclusion.NON_NULL)
+    @JsonIgnoreProperties(ignoreUnknown=true)
+    public static class Index {
+        public List<Entry> entries = new ArrayList<>();
+    }
+
+    // every cache on the same directory in this process shares a lock, so publishes running side
+    // by side with their own caches don't lose each other's entries
+    private static final ConcurrentMap<String, Object> locks = new ConcurrentHashMap<>();
+
+    private final File directory;
+    private final long maxBytes;
+    private final Object lock;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * @param directory the directory to keep the signatures and their index in
+     * @param maxBytes the most bytes of signatures to keep; least recently used entries are evicted beyond this
+     */
+    public SignatureCache(File directory, long maxBytes) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Unable to create signature cache directory " + directory.getAbsolutePath());
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.lock = lockFor(directory);
+        removeStrayFiles();
+    }
+
+    /**
+     * Returns the cached signature for the given dataset, if it is the signature stored under the
+     * given path and it is intact.  A corrupt entry is evicted.
+     * @param datasetId the 4x4 of the dataset
+     * @param signaturePath the dataset's latest signature path on the server
+     * @return a stream of the signature, or null if there is no usable cached copy
+     */
+    public InputStream get(String datasetId, String signaturePath) throws IOException {
+        synchronized (lock) {
+            if (signaturePath == null) return null;
+            Index index = loadIndex();
+            Entry entry = find(index, datasetId);
+            if (entry == null || !signaturePath.equals(entry.signaturePath)) return null;
+            if (!isIntact(entry)) {
+                System.out.println("Discarding corrupt cached signature for " + datasetId);
+                remove(index, entry);
+                saveIndex(index);
+                return null;
+            }
+            entry.lastUsed = System.currentTimeMillis();
+            saveIndex(index);
+            return new FileInputStream(new File(directory, entry.file));
+        }
+    }
+
+    /**
+     * @return a new file in the cache directory for a signature to be written to before it is put
+     */
+    public File newPendingFile() throws IOException {
+        synchronized (lock) {
+            return File.createTempFile(pendingPrefix, signatureExtension, directory);
+        }
+    }
+
+    /**
+     * Moves a complete signature (written to a file from newPendingFile) into the cache, replacing
+     * any previous entry for the dataset, then evicts entries until the cache fits its size limit.
+     * @param datasetId the 4x4 of the dataset
+     * @param signaturePath the path delta-importer-2 stored the same signature under
+     * @param signature the signature file; it is moved into place or deleted
+     */
+    public void put(String datasetId, String signaturePath, File signature) throws IOException {
+        synchronized (lock) {
+            try {
+                Index index = loadIndex();
+                Entry previous = find(index, datasetId);
+                if (previous != null) remove(index, previous);
+
+                Entry entry = new Entry();
+                entry.datasetId = datasetId;
+                entry.signaturePath = signaturePath;
+                entry.file = datasetId + signatureExtension;
+                entry.size = signature.length();
+                entry.md5 = md5(signature);
+                entry.lastUsed = System.currentTimeMillis();
+                Utils.replaceFile(signature, new File(directory, entry.file));
+                index.entries.add(entry);
+
+                evict(index);
+                saveIndex(index);
+            } finally {
+                if (signature.exists()) signature.delete();
+            }
+        }
+    }
+
+    /**
+     * Checks every entry against its recorded size and digest, evicting any that don't match.
+     * @return the 4x4s of the datasets whose entries were evicted
+     */
+    public List<String> verify() throws IOException {
+        synchronized (lock) {
+            Index index = loadIndex();
+            List<String> evicted = new ArrayList<>();
+            for (Entry entry : new ArrayList<>(index.entries)) {
+                if (!isIntact(entry)) {
+                    remove(index, entry);
+                    evicted.add(entry.datasetId);
+                }
+            }
+            if (!evicted.isEmpty()) saveIndex(index);
+            return evicted;
+        }
+    }
+
+    /**
+     * @return the total size in bytes of the cached signatures
+     */
+    public long size() throws IOException {
+        synchronized (lock) {
+            long total = 0L;
+            for (Entry entry : loadIndex().entries) total += entry.size;
+            return total;
+        }
+    }
+
+    private static Object lockFor(File directory) throws IOException {
+        String key = directory.getCanonicalPath();
+        Object fresh = new Object();
+        Object existing = locks.putIfAbsent(key, fresh);
+        return existing == null ? fresh : existing;
+    }
+
+    private void evict(Index index) {
+        Collections.sort(index.entries, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry a, Entry b) {
+                return Long.compare(b.lastUsed, a.lastUsed);
+            }
+        });
+        long total = 0L;
+        Iterator<Entry> it = index.entries.iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (total + entry.size > maxBytes) {
+                new File(directory, entry.file).delete();
+                it.remove();
+            } else {
+                total += entry.size;
+            }
+        }
+    }
+
+    private boolean isIntact(Entry entry) throws IOException {
+        File f = new File(directory, entry.file);
+        return f.isFile() && f.length() == entry.size && md5(f).equals(entry.md5);
+    }
+
+    private void remove(Index index, Entry entry) {
+        new File(directory, entry.file).delete();
+        index.entries.remove(entry);
+    }
+
+    private static Entry find(Index index, String datasetId) {
+        for (Entry entry : index.entries) {
+            if (entry.datasetId.equals(datasetId)) return entry;
+        }
+        return null;
+    }
+
+    private static String md5(File f) throws IOException {
+        return com.google.common.io.Files.hash(f, Hashing.md5()).toString();
+    }
+
+    private Index loadIndex() throws IOException {
+        File indexFile = new File(directory, indexFileName);
+        if (!indexFile.isFile()) return new Index();
+        try {
+            Index index = mapper.readValue(indexFile, Index.class);
+            return index.entries == null ? new Index() : index;
+        } catch (IOException e) {
+            // an unreadable index just means an empty cache; its files are cleaned up next time round
+            System.out.println("Ignoring unreadable signature cache index: " + e.getMessage());
+            return new Index();
+        }
+    }
+
+    private void saveIndex(Index index) throws IOException {
+        File temp = File.createTempFile(indexFileName, ".tmp", directory);
+        try {
+            mapper.writeValue(temp, index);
+            Utils.replaceFile(temp, new File(directory, indexFileName));
+        } finally {
+            if (temp.exists()) temp.delete();
+        }
+    }
+
+    /**
+     * Deletes signatures the index no longer refers to and pending files left behind by runs that
+     * died, leaving alone pending files recent enough to belong to a run still in progress.
+     */
+    private void removeStrayFiles() throws IOException {
+        synchronized (lock) {
+            Set<String> referenced = new HashSet<>();
+            for (Entry entry : loadIndex().entries) referenced.add(entry.file);
+            File[] files = directory.listFiles();
+            if (files == null) return;
+            long cutoff = System.currentTimeMillis() - stalePendingMillis;
+            for (File f : files) {
+                String name = f.getName();
+                boolean pending = name.startsWith(pendingPrefix) || name.endsWith(".tmp");
+                if (pending ? f.lastModified() < cutoff : name.endsWith(signatureExtension) && !referenced.contains(name))
+                    f.delete();
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.socrata.datasync.deltaimporter2;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Running counters for one stage of a PatchPipeline.  A stage that spends most of its time waiting
+ * on its output is being held up by the stages after it; a stage that waits on neither its input
+ * nor its output is the bottleneck.
+ */
+public class StageStats {
+    private final String name;
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong inputWaitNanos = new AtomicLong();
+    private final AtomicLong outputWaitNanos = new AtomicLong();
+    private volatile long startedAt = 0L;
+    private volatile long finishedAt = 0L;
+    private volatile BufferPipe output;
+
+    public StageStats(String name) {
+        this.name = name;
+    }
+
+    public String getName() { return name; }
+
+    /** @return the number of bytes this stage has produced (or, for the last stage, consumed) */
+    public long getBytes() { return bytes.get(); }
+
+    public long getInputWaitNanos() { return inputWaitNanos.get(); }
+
+    public long getOutputWaitNanos() { return outputWaitNanos.get(); }
+
+    /** @return the number of filled buffers waiting in this stage's output queue */
+    public int getQueueDepth() {
+        BufferPipe pipe = output;
+        return pipe == null ? 0 : pipe.getQueueDepth();
+    }
+
+    public int getQueueCapacity() {
+        BufferPipe pipe = output;
+        return pipe == null ? 0 : pipe.getCapacity();
+    }
+
+    /** @return the time since this stage started, up to when it finished if it has */
+    public long getElapsedNanos() {
+        if (startedAt == 0L) return 0L;
+        long end = finishedAt == 0L ? System.nanoTime() : finishedAt;
+        return end - startedAt;
+    }
+
+    /** @return bytes per second over the stage's elapsed time */
+    public double getThroughput() {
+        long elapsed = getElapsedNanos();
+        return elapsed == 0L ? 0.0 : bytes.get() * 1e9 / elapsed;
+    }
+
+    void started() { if (startedAt == 0L) startedAt = System.nanoTime(); }
+
+    void finished() { finishedAt = System.nanoTime(); }
+
+    void addBytes(long n) { bytes.addAndGet(n); }
+
+    void addInputWait(long nanos) { inputWaitNanos.addAndGet(nanos); }
+
+    void addOutputWait(long nanos) { outputWaitNanos.addAndGet(nanos); }
+
+    void setOutput(BufferPipe pipe) { output = pipe; }
+
+    @Override
+    public String toString() {
+        long elapsed = getElapsedNanos();
+        StringBuilder sb = new StringBuilder(name).append(": ")
+                .append(bytes.get()).append(" bytes, ")
+                .append(String.format("%.1f", getThroughput() / (1024 * 1024))).append(" MB/s");
+        if (elapsed > 0) {
+            sb.append(", waiting on input ").append(inputWaitNanos.get() * 100 / elapsed).append("%")
+              .append(", on output ").append(outputWaitNanos.get() * 100 / elapsed).append("%");
+        }
+        if (output != null) {
+            sb.append(", queue ").append(getQueueDepth()).append("/").append(getQueueCapacity());
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,219 @@
+package com.socrata.datasync.deltaimporter2;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.google.common.hash.Hashing;
+import com.socrata.datasync.Utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A record, kept on disk, of the chunks of a patch that delta-importer-2 has already acknowledged
+ * and the blob ids it returned for them.  A publish that is restarted (by the retry loop or by
+ * running the job again) against the same file and signature recomputes the same patch, so any
+ * chunk whose hash matches the one recorded at its position can reuse its blob id rather than
+ * being uploaded again.
+ *
+ * The manifest is only reused if the file, signature path and chunk size all match, and only for a
+ * day, after which the blobs it refers to may no longer be around.  It also records how the patch
+ * was compressed, so that a resumed upload compresses it the same way.
+ *
+ * On disk the manifest is a line of JSON describing the upload, followed by a line for each chunk
+ * acknowledged, appended as it is; so recording a chunk costs the same however many came before it.
+ * A line cut short (say by the process being killed as it was written) is skipped when the manifest
+ * is read, which only costs uploading its chunk again.
+ */
+@JsonSerialize(include= JsonSerialize.Inclusion.NON_NULL)
+@JsonIgnoreProperties(ignoreUnknown=true)
+public class UploadManifest {
+    private static final long maxAgeMillis = 24L * 60 * 60 * 1000;
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    @JsonSerialize(include= JsonSerialize.Inclusion.NON_NULL)
+    @JsonIgnoreProperties(ignoreUnknown=true)
+    public static class Chunk {
+        public Integer index;
+        public String md5;
+        public int size;
+        public String blobId;
+    }
+
+    public String datasetId;
+    public String file;
+    public long fileSize;
+    public long fileModified;
+    public String signaturePath;
+    public int chunkSize;
+    public String compression;
+    public long createdAt;
+    @JsonIgnore
+    public List<Chunk> chunks = new ArrayList<>();
+
+    @JsonIgnore
+    private File location;
+    // whether the first line has been written, and whether the upload has been forgotten; guarded by this
+    @JsonIgnore
+    private boolean started = false;
+    @JsonIgnore
+    private boolean deleted = false;
+
+    /**
+     * Loads the manifest of a previous, unfinished upload of the same patch, or starts a new one.
+     * @param directory the directory manifests are kept in
+     * @param datasetId the 4x4 of the dataset being published to
+     * @param source the file being published
+     * @param signaturePath the path of the signature the patch is relative to, or null
+     * @param chunkSize the size of the chunks the patch is posted in
+     */
+    public static UploadManifest open(File directory, String datasetId, File source, String signaturePath,
+                                      int chunkSize) {
+        File location = new File(directory, datasetId + ".json");
+        UploadManifest manifest = null;
+        if (location.isFile()) {
+            try {
+                manifest = read(location);
+            } catch (IOException e) {
+                System.out.println("Ignoring unreadable upload manifest " + location + ": " + e.getMessage());
+            }
+        }
+        if (manifest == null || !manifest.matches(source, signaturePath, chunkSize) ||
+                System.currentTimeMillis() - manifest.createdAt > maxAgeMillis) {
+            manifest = new UploadManifest();
+            manifest.datasetId = datasetId;
+            manifest.file = source.getAbsolutePath();
+            manifest.fileSize = source.length();
+            manifest.fileModified = source.lastModified();
+            manifest.signaturePath = signaturePath;
+            manifest.chunkSize = chunkSize;
+            manifest.createdAt = System.currentTimeMillis();
+        } else {
+            manifest.started = true;
+            System.out.println("Resuming the upload of " + manifest.acknowledged() + " previously acknowledged chunks");
+        }
+        manifest.location = location;
+        return manifest;
+    }
+
+    private static UploadManifest read(File location) throws IOException {
+        try (BufferedReader in = Files.newBufferedReader(location.toPath(), StandardCharsets.UTF_8)) {
+            String header = in.readLine();
+            if (header == null) throw new IOException("The manifest is empty");
+            UploadManifest manifest = mapper.readValue(header, UploadManifest.class);
+            String line;
+            while ((line = in.readLine()) != null) {
+                Chunk c;
+                try {
+                    c = mapper.readValue(line, Chunk.class);
+                } catch (IOException e) {
+                    continue;
+                }
+                if (c.index != null && c.index >= 0) manifest.set(c.index, c);
+            }
+            return manifest;
+        }
+    }
+
+    private void set(int index, Chunk c) {
+        while (chunks.size() <= index) chunks.add(null);
+        chunks.set(index, c);
+    }
+
+    private boolean matches(File source, String signaturePath, int chunkSize) {
+        return source.getAbsolutePath().equals(file) && source.length() == fileSize &&
+                source.lastModified() == fileModified &&
+                (signaturePath == null ? this.signaturePath == null : signaturePath.equals(this.signaturePath)) &&
+                chunkSize == this.chunkSize;
+    }
+
+    private int acknowledged() {
+        int count = 0;
+        for (Chunk c : chunks) if (c != null && c.blobId != null) count++;
+        return count;
+    }
+
+    /**
+     * @param index the position of the chunk in the patch
+     * @param chunk the bytes of the chunk
+     * @param length the number of bytes of chunk in use
+     * @return the blob id delta-importer-2 returned for an identical chunk at this position, or null
+     */
+    public synchronized String blobIdFor(int index, byte[] chunk, int length) {
+        if (index >= chunks.size()) return null;
+        Chunk c = chunks.get(index);
+        if (c == null || c.blobId == null || c.size != length) return null;
+        return c.md5.equals(md5(chunk, length)) ? c.blobId : null;
+    }
+
+    /**
+     * Records that the chunk at the given position has been acknowledged, appending it to the manifest.
+     * Failing to persist it only costs re-uploading the chunk should this upload be restarted.
+     */
+    public void record(int index, byte[] chunk, int length, String blobId) {
+        Chunk c = new Chunk();
+        c.index = index;
+        // hashed before taking the lock, so chunks acknowledged together aren't hashed one after another
+        c.md5 = md5(chunk, length);
+        c.size = length;
+        c.blobId = blobId;
+        synchronized (this) {
+            set(index, c);
+            if (deleted) return;
+            try {
+                if (!started) start();
+                try (OutputStream out = new FileOutputStream(location, true)) {
+                    out.write(line(c));
+                }
+            } catch (IOException e) {
+                System.out.println("Unable to save upload manifest " + location + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Forgets the upload, once its blobs have been committed or can't be.  Chunks acknowledged after
+     * this aren't recorded.
+     */
+    public synchronized void delete() {
+        deleted = true;
+        chunks.clear();
+        location.delete();
+    }
+
+    /**
+     * Writes the first line of the manifest, replacing whatever was there.
+     */
+    private void start() throws IOException {
+        File temp = File.createTempFile(datasetId, ".tmp", location.getParentFile());
+        try {
+            try (OutputStream out = new FileOutputStream(temp)) {
+                out.write(line(this));
+            }
+            Utils.replaceFile(temp, location);
+            started = true;
+        } finally {
+            if (temp.exists()) temp.delete();
+        }
+    }
+
+    private static byte[] line(Object value) throws IOException {
+        byte[] json = mapper.writeValueAsBytes(value);
+        byte[] line = Arrays.copyOf(json, json.length + 1);
+        line[json.length] = '\n';
+        return line;
+    }
+
+    private static String md5(byte[] chunk, int length) {
+        return Hashing.md5().hashBytes(chunk, 0, length).toString();
+    }
+}
@@ -196,13 +196,13 @@ public class GISJob extends Job {
      * @return
      * @throws IOException
      */
-    public JobStatus run() {
+    public JobResult run() {
         SocrataConnectionInfo connectionInfo = userPrefs.getConnectionInfo();
         String publishExceptions = "";
-        JobStatus runStatus = JobStatus.SUCCESS;
+        JobResult runStatus = JobResult.of(JobStatus.SUCCESS);
 
-        JobStatus validationStatus = GISJobValidity.validateJobParams(connectionInfo, this);
-        JobStatus layerMappingStatus = GISJobValidity.validateLayerMapping(this);
+        JobResult validationStatus = GISJobValidity.validateJobParams(connectionInfo, this);
+        JobResult layerMappingStatus = GISJobValidity.validateLayerMapping(this);
         if (validationStatus.isError()) {
             runStatus = validationStatus;
         } else if (layerMappingStatus.isError()) {
@@ -213,7 +213,7 @@ public class GISJob extends Job {
                 if (publishMethod == PublishMethod.replace) {
                     runStatus = GISPublisher.replaceGeo(fileToPublishFile, connectionInfo, datasetID, layerMap, userPrefs);
                 } else {
-                    runStatus = JobStatus.INVALID_PUBLISH_METHOD;
+                    runStatus = JobResult.of(JobStatus.INVALID_PUBLISH_METHOD);
                 }
             } catch (Exception e) {
                 publishExceptions = e.getMessage();
@@ -223,10 +223,10 @@ public class GISJob extends Job {
 
 
         if (publishExceptions.length() > 0) {
-            runStatus = JobStatus.PUBLISH_ERROR;
-            runStatus.setMessage(publishExceptions);
+            runStatus = JobResult.of(JobStatus.PUBLISH_ERROR, publishExceptions);
         }
 
+        HttpMetrics.get().writePrometheusFile(userPrefs.getHttpMetricsFile());
         emailAdmin(runStatus);
         return runStatus;
     }
@@ -303,7 +303,7 @@ public class GISJob extends Job {
 
     private void sendErrorNotificationEmail(final String adminEmail,
                                             final SocrataConnectionInfo connectionInfo,
-                                            final JobStatus runStatus,
+                                            final JobResult runStatus,
                                             final String runErrorMessage,
                                             final String logDatasetID) {
         String errorEmailMessage = "";
@@ -326,7 +326,7 @@ public class GISJob extends Job {
         }
     }
 
-    private void emailAdmin(JobStatus status) {
+    private void emailAdmin(JobResult status) {
         String adminEmail = userPrefs.getAdminEmail();
         String logDatasetID = userPrefs.getLogDatasetID();
         SocrataConnectionInfo connectionInfo = userPrefs.getConnectionInfo();
@@ -3,7 +3,13 @@ package com.socrata.datasync.job;
 import com.google.common.collect.ImmutableMap;
 import com.socrata.api.Soda2Producer;
 import com.socrata.api.SodaImporter;
+import com.socrata.datasync.Backoff;
+import com.socrata.datasync.DatasetUtils;
+import com.socrata.datasync.HttpMetrics;
 import com.socrata.datasync.PublishMethod;
+import com.socrata.datasync.RateLimiter;
+import com.socrata.datasync.RequestCompression;
+import com.socrata.datasync.Retrier;
 import com.socrata.datasync.SMTPMailer;
 import com.socrata.datasync.SocrataConnectionInfo;
 import com.socrata.datasync.Utils;
@@ -12,6 +18,8 @@ import com.socrata.datasync.config.CommandLineOptions;
 import com.socrata.datasync.config.controlfile.ControlFile;
 import com.socrata.datasync.config.userpreferences.UserPreferences;
 import com.socrata.datasync.config.userpreferences.UserPreferencesJava;
+import com.socrata.datasync.deltaimporter2.PatchEstimate;
+import com.socrata.datasync.publishers.ChunkSizer;
 import com.socrata.datasync.publishers.DeltaImporter2Publisher;
 import com.socrata.datasync.publishers.FTPDropbox2Publisher;
 import com.socrata.datasync.publishers.Soda2Publisher;
@@ -20,6 +28,7 @@ import com.socrata.exceptions.SodaError;
 import com.socrata.model.UpsertError;
 import com.socrata.model.UpsertResult;
 import org.apache.commons.cli.CommandLine;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.DeserializationConfig;
@@ -43,6 +52,7 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 @JsonIgnoreProperties(ignoreUnknown=true)
@@ -70,6 +80,12 @@ public class IntegrationJob extends Job {
     private boolean publishViaFTP = false;
     private boolean publishViaDi2Http = false;
     private ControlFile controlFile = null;
+    // set from the command line only; otherwise the value in the user preferences is used
+    private Integer blobUploadConcurrency = null;
+    // set from the command line or library only; a dry run computes the DI2 patch and publishes nothing
+    private boolean dryRun = false;
+    private String pathToPreviousSignature = null;
+    private PatchEstimate patchEstimate = null;
 
     // Ok, so this is awful.  What we're trying to do is change the
     // eagerness of the way columns get fuzzy-matched going forward.
@@ -252,6 +268,30 @@ public class IntegrationJob extends Job {
     @JsonProperty("isPostNbeification")
     public void setIsPostNbeification(boolean newIsPostNbeification) { isPostNbeification = newIsPostNbeification; }
 
+    @JsonIgnore
+    public Integer getBlobUploadConcurrency() { return blobUploadConcurrency; }
+
+    @JsonIgnore
+    public void setBlobUploadConcurrency(Integer concurrency) { blobUploadConcurrency = concurrency; }
+
+    @JsonIgnore
+    public boolean getDryRun() { return dryRun; }
+
+    @JsonIgnore
+    public void setDryRun(boolean newDryRun) { dryRun = newDryRun; }
+
+    @JsonIgnore
+    public String getPathToPreviousSignature() { return pathToPreviousSignature; }
+
+    @JsonIgnore
+    public void setPathToPreviousSignature(String path) { pathToPreviousSignature = path; }
+
+    /**
+     * @return what the last dry run found, or null if the last run wasn't a dry run
+     */
+    @JsonIgnore
+    public PatchEstimate getPatchEstimate() { return patchEstimate; }
+
     public String getDefaultJobName() { return defaultJobName; }
 
     public void setUserAgent(String usrAgentName) {
@@ -295,6 +335,11 @@ public class IntegrationJob extends Job {
         if (controlFilePath == null)
             controlFilePath = cmd.getOptionValue(options.PATH_TO_FTP_CONTROL_FILE_FLAG);
         setPathToControlFile(controlFilePath);
+        String concurrency = cmd.getOptionValue(options.BLOB_UPLOAD_CONCURRENCY_FLAG);
+        if (concurrency != null)
+            setBlobUploadConcurrency(Integer.parseInt(concurrency));
+        setDryRun(Boolean.parseBoolean(cmd.getOptionValue(options.DRY_RUN_FLAG, options.DEFAULT_DRY_RUN)));
+        setPathToPreviousSignature(cmd.getOptionValue(options.PREVIOUS_SIGNATURE_FLAG));
 
         String userAgentName = cmd.getOptionValue(options.USER_AGENT_FLAG);
         if(Utils.nullOrEmpty(userAgentName)) {
@@ -309,31 +354,44 @@ public class IntegrationJob extends Job {
      * @return
      * @throws IOException
      */
-    public JobStatus run() {
+    public JobResult run() {
         SocrataConnectionInfo connectionInfo = userPrefs.getConnectionInfo();
         UpsertResult result = null;
         String publishExceptions = "";
-        JobStatus runStatus = JobStatus.SUCCESS;
+        JobResult runStatus = JobResult.of(JobStatus.SUCCESS);
+        patchEstimate = null;
+        long validationStart = System.nanoTime();
+        long publishStart = validationStart;
 
-        JobStatus controlDeserialization = deserializeControlFile();
+        JobResult controlDeserialization = deserializeControlFile();
         if (controlDeserialization.isError() && (publishViaDi2Http || publishViaFTP)) {
             runStatus = controlDeserialization;
         } else {
-            JobStatus validationStatus = IntegrationJobValidity.validateJobParams(userPrefs, this);
+            JobResult validationStatus = IntegrationJobValidity.validateJobParams(userPrefs, this);
             if (validationStatus.isError()) {
                 runStatus = validationStatus;
             } else {
+                publishStart = System.nanoTime();
                 Soda2Producer producer = null;
                 try {
                     File fileToPublishFile = new File(fileToPublish);
                     if (publishViaDi2Http) {
-                        try (DeltaImporter2Publisher publisher = new DeltaImporter2Publisher(userPrefs, userAgent)) {
+                        int uploadConcurrency = blobUploadConcurrency != null ? blobUploadConcurrency :
+                                userPrefs.getBlobUploadConcurrency() == null ? DeltaImporter2Publisher.DEFAULT_BLOB_UPLOAD_CONCURRENCY :
+                                Integer.parseInt(userPrefs.getBlobUploadConcurrency());
+                        try (DeltaImporter2Publisher publisher = new DeltaImporter2Publisher(userPrefs, userAgent, uploadConcurrency)) {
                             String action = controlFile.action == null ? publishMethod.name() : controlFile.action;
                             // "upsert" == "append" in di2
                             if ("upsert".equalsIgnoreCase(action))
                                 action = "Append";
                             controlFile.action = Utils.capitalizeFirstLetter(action);
-                            runStatus = publisher.publishWithDi2OverHttp(datasetID, fileToPublishFile, controlFile);
+                            if (dryRun) {
+                                patchEstimate = publisher.estimatePatchWithDi2(datasetID, fileToPublishFile, controlFile,
+                                        pathToPreviousSignature == null ? null : new File(pathToPreviousSignature));
+                                runStatus = runStatus.withMessage(patchEstimate.report());
+                            } else {
+                                runStatus = publisher.publishWithDi2OverHttp(datasetID, fileToPublishFile, controlFile);
+                            }
                         }
                     } else if (publishViaFTP) {
                         runStatus = doPublishViaFTPv2(fileToPublishFile);
@@ -343,6 +401,9 @@ public class IntegrationJob extends Job {
                         producer = Soda2Producer.newProducerWithRequestId(
                                 connectionInfo.getUrl(), connectionInfo.getUser(), connectionInfo.getPassword(), connectionInfo.getToken(), jobRequestId);
                         final SodaImporter importer = SodaImporter.newImporter(connectionInfo.getUrl(), connectionInfo.getUser(), connectionInfo.getPassword(), connectionInfo.getToken());
+                        RateLimiter.get().limit(producer.getHttpLowLevel());
+                        RateLimiter.get().limit(importer.getHttpLowLevel());
+                        RequestCompression.get().compress(producer.getHttpLowLevel());
                         int filesizeChunkingCutoffBytes = userPrefs.getFilesizeChunkingCutoffMB() == null ? 10 * NUM_BYTES_PER_MB :
                                 Integer.parseInt(userPrefs.getFilesizeChunkingCutoffMB()) * NUM_BYTES_PER_MB;
                         int numRowsPerChunk = userPrefs.getNumRowsPerChunk() == null ? 10000 :
@@ -362,7 +423,7 @@ public class IntegrationJob extends Job {
                                         producer, importer, fileToPublishFile, filesizeChunkingCutoffBytes, numRowsPerChunk);
                                 break;
                             default:
-                                runStatus = JobStatus.INVALID_PUBLISH_METHOD;
+                                runStatus = JobResult.of(JobStatus.INVALID_PUBLISH_METHOD);
                         }
                     }
 
@@ -375,16 +436,32 @@ public class IntegrationJob extends Job {
             }
         }
 
+        long publishEnd = System.nanoTime();
         if (publishExceptions.length() > 0) {
-            runStatus = JobStatus.PUBLISH_ERROR;
-            runStatus.setMessage(publishExceptions);
+            runStatus = JobResult.of(JobStatus.PUBLISH_ERROR, publishExceptions);
         } else if (result != null && result.errorCount() > 0) {  // Check for [row-level] SODA 2 errors
             runStatus = craftSoda2PublishError(result);
         }
+        if (result != null)
+            runStatus = runStatus.withRowCounts((int) result.getRowsCreated(), (int) result.getRowsUpdated(),
+                    (int) result.getRowsDeleted(), (int) result.errorCount());
+        runStatus = runStatus
+                .withPhase("validation", millisBetween(validationStart, publishStart))
+                .withPhase("publish", millisBetween(publishStart, publishEnd));
+
+        HttpMetrics.get().writePrometheusFile(userPrefs.getHttpMetricsFile());
+
+        // an estimate published nothing, so there's nothing to log or tell the admin about; a dry run
+        // that was refused or failed is logged like any other job
+        if (patchEstimate != null) return runStatus;
 
         String logPublishingErrorMessage = logRunResults(runStatus, result);
         emailAdmin(runStatus, logPublishingErrorMessage);
-        return runStatus;
+        return runStatus.withPhase("logging", millisBetween(publishEnd, System.nanoTime()));
+    }
+
+    private static long millisBetween(long startNanos, long endNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(endNanos - startNanos);
     }
 
 
@@ -394,9 +471,11 @@ public class IntegrationJob extends Job {
      * @return null if log entry was added successfully, otherwise return an error message as a String
      */
     public static String addLogEntry(final String logDatasetID, final SocrataConnectionInfo connectionInfo,
-                                     final IntegrationJob job, final JobStatus status, final UpsertResult result) {
+                                     final IntegrationJob job, final JobResult status, final UpsertResult result) {
         final Soda2Producer producer = Soda2Producer.newProducer(connectionInfo.getUrl(), connectionInfo.getUser(),
                 connectionInfo.getPassword(), connectionInfo.getToken());
+        RateLimiter.get().limit(producer.getHttpLowLevel());
+        RequestCompression.get().compress(producer.getHttpLowLevel());
 
         List<Map<String, Object>> upsertObjects = new ArrayList<>();
         Map<String, Object> newCols = new HashMap<>();
@@ -414,9 +493,9 @@ public class IntegrationJob extends Job {
             newCols.put("RowsCreated", result.rowsCreated);
             newCols.put("RowsDeleted", result.rowsDeleted);
         } else {
-            newCols.put("RowsUpdated", (status.rowsUpdated == null ? 0 : status.rowsUpdated));
-            newCols.put("RowsCreated", (status.rowsCreated == null ? 0 : status.rowsCreated));
-            newCols.put("RowsDeleted", (status.rowsDeleted == null ? 0 : status.rowsDeleted));
+            newCols.put("RowsUpdated", (status.getRowsUpdated() == null ? 0 : status.getRowsUpdated()));
+            newCols.put("RowsCreated", (status.getRowsCreated() == null ? 0 : status.getRowsCreated()));
+            newCols.put("RowsDeleted", (status.getRowsDeleted() == null ? 0 : status.getRowsDeleted()));
         }
         if(status.isError()) {
             newCols.put("Errors", status.getMessage());
@@ -429,36 +508,35 @@ public class IntegrationJob extends Job {
         String logPublishingErrorMessage = null;
 
         int retryLimit = 10;
-        boolean retry;
-        do {
-            retry = false;
-            try {
-                producer.upsert(logDatasetID, upsertObjects);
-            }
-            catch (SodaError | InterruptedException e) {
-                e.printStackTrace();
-                logPublishingErrorMessage = e.getMessage();
-            }
-            catch (ProcessingException e) {
-                if(e.getCause() instanceof SocketException) {
-                    System.out.println("Socket exception while updating logging dataset: " + e.getCause().getMessage());
-                    if(retryLimit-- > 0) {
-                        System.out.println("Retrying");
-                        retry = true;
-                    } else {
-                        e.printStackTrace();
-                        logPublishingErrorMessage = e.getMessage();
+        final List<Map<String, Object>> rows = upsertObjects;
+        try {
+            Retrier.get().call(DatasetUtils.getDomainWithoutScheme(connectionInfo.getUrl()), retryLimit, Backoff.DEFAULT,
+                    new Retrier.Attempt<UpsertResult, Exception>() {
+                @Override
+                public UpsertResult run() throws SodaError, InterruptedException, IOException {
+                    try {
+                        return producer.upsert(logDatasetID, rows);
+                    } catch (SodaError e) {
+                        if (RateLimiter.isThrottled(e.getStatus(), false)) throw RateLimiter.retryable(e);
+                        throw e;
+                    } catch (ProcessingException e) {
+                        if (!(e.getCause() instanceof SocketException)) throw e;
+                        System.out.println("Socket exception while updating logging dataset: " + e.getCause().getMessage());
+                        throw new Retrier.RetryableException(e.getMessage(), e);
                     }
-                } else {
-                    throw e;
                 }
-            }
-        } while(retry);
+            });
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            e.printStackTrace();
+            logPublishingErrorMessage = e.getMessage();
+        }
 
         return logPublishingErrorMessage;
     }
 
-    private JobStatus doPublishViaFTPv2(File fileToPublishFile) {
+    private JobResult doPublishViaFTPv2(File fileToPublishFile) {
         if((pathToControlFile != null && !pathToControlFile.equals(""))) {
             return FTPDropbox2Publisher.publishViaFTPDropboxV2(
                     userPrefs, datasetID, fileToPublishFile, new File(pathToControlFile));
@@ -468,7 +546,7 @@ public class IntegrationJob extends Job {
         }
     }
 
-    private void sendErrorNotificationEmail(final String adminEmail, final SocrataConnectionInfo connectionInfo, final JobStatus runStatus, final String runErrorMessage, final String logDatasetID, final String logPublishingErrorMessage) {
+    private void sendErrorNotificationEmail(final String adminEmail, final SocrataConnectionInfo connectionInfo, final JobResult runStatus, final String runErrorMessage, final String logDatasetID, final String logPublishingErrorMessage) {
         String errorEmailMessage = "";
         String urlToLogDataset = connectionInfo.getUrl() + "/d/" + logDatasetID;
         if(runStatus.isError()) {
@@ -497,8 +575,17 @@ public class IntegrationJob extends Job {
 
     private UpsertResult doAppendOrUpsertViaHTTP(Soda2Producer producer, SodaImporter importer, File fileToPublishFile, int filesizeChunkingCutoffBytes, int numRowsPerChunk) throws SodaError, InterruptedException, IOException {
         int numberOfRows = numRowsPerChunk(fileToPublishFile, filesizeChunkingCutoffBytes, numRowsPerChunk);
-        UpsertResult result = Soda2Publisher.appendUpsert(
-                producer, importer, datasetID, fileToPublishFile, numberOfRows, fileToPublishHasHeaderRow);
+        int upsertConcurrency = userPrefs.getUpsertConcurrency() == null ? Soda2Publisher.DEFAULT_UPSERT_CONCURRENCY :
+                Integer.parseInt(userPrefs.getUpsertConcurrency());
+        int maxChunkSizeMB = userPrefs.getMaxChunkSizeMB() == null ? 16 :
+                Integer.parseInt(userPrefs.getMaxChunkSizeMB());
+        int chunkTargetSeconds = userPrefs.getChunkTargetSeconds() == null ? 20 :
+                Integer.parseInt(userPrefs.getChunkTargetSeconds());
+        // chunks hold as many rows as fit a budget of bytes, tuned toward the target duration, if there is one
+        ChunkSizer chunkSizer = maxChunkSizeMB > 0 ?
+                new ChunkSizer((long) maxChunkSizeMB * NUM_BYTES_PER_MB, chunkTargetSeconds * 1000L) : null;
+        UpsertResult result = Soda2Publisher.appendUpsert(producer, importer, datasetID, fileToPublishFile,
+                numberOfRows, fileToPublishHasHeaderRow, upsertConcurrency, chunkSizer);
         return result;
     }
 
@@ -521,20 +608,20 @@ public class IntegrationJob extends Job {
         return numberOfRows;
     }
 
-    private JobStatus craftSoda2PublishError(UpsertResult result) {
-        JobStatus error = JobStatus.PUBLISH_ERROR;
+    private JobResult craftSoda2PublishError(UpsertResult result) {
+        JobResult error = JobResult.of(JobStatus.PUBLISH_ERROR);
         if(result != null && result.errorCount() > 0) {
             int lineIndexOffset = (fileToPublishHasHeaderRow) ? 2 : 1;
             String errMsg = "";
             for (UpsertError upsertErr : result.getErrors()) {
                 errMsg += upsertErr.getError() + " (line " + (upsertErr.getIndex() + lineIndexOffset) + " of file) \n";
             }
-            error.setMessage(errMsg);
+            error = error.withMessage(errMsg);
         }
         return error;
     }
 
-    private String logRunResults(JobStatus runStatus, UpsertResult result) {
+    private String logRunResults(JobResult runStatus, UpsertResult result) {
         String logDatasetID = userPrefs.getLogDatasetID();
         String logPublishingErrorMessage = null;
         SocrataConnectionInfo connectionInfo = userPrefs.getConnectionInfo();
@@ -552,7 +639,7 @@ public class IntegrationJob extends Job {
         return logPublishingErrorMessage;
     }
 
-    private void emailAdmin(JobStatus status, String logPublishingErrorMessage) {
+    private void emailAdmin(JobResult status, String logPublishingErrorMessage) {
         String adminEmail = userPrefs.getAdminEmail();
         String logDatasetID = userPrefs.getLogDatasetID();
         SocrataConnectionInfo connectionInfo = userPrefs.getConnectionInfo();
@@ -563,11 +650,11 @@ public class IntegrationJob extends Job {
         }
     }
 
-    private JobStatus deserializeControlFile() {
+    private JobResult deserializeControlFile() {
         if (controlFile != null)
-            return JobStatus.VALID;
+            return JobResult.of(JobStatus.VALID);
 
-        JobStatus controlDeserialization = null;
+        JobResult controlDeserialization = null;
         if (controlFileContent != null && !controlFileContent.equals(""))
             controlDeserialization = deserializeControlFile(controlFileContent);
 
@@ -575,35 +662,29 @@ public class IntegrationJob extends Job {
             controlDeserialization = deserializeControlFile(new File(pathToControlFile));
 
         if (controlDeserialization == null) {
-            JobStatus noControl = JobStatus.PUBLISH_ERROR;
-            noControl.setMessage("You must generate or select a Control file if publishing via FTP SmartUpdate or delta-importer-2 over HTTP");
-            return noControl;
+            return JobResult.of(JobStatus.PUBLISH_ERROR, "You must generate or select a Control file if publishing via FTP SmartUpdate or delta-importer-2 over HTTP");
         } else if (controlDeserialization.isError()) {
             return controlDeserialization;
         }
-        return JobStatus.VALID;
+        return JobResult.of(JobStatus.VALID);
     }
 
 
-    private JobStatus deserializeControlFile(String contents) {
+    private JobResult deserializeControlFile(String contents) {
         try {
             controlFile = controlFileMapper.readValue(contents, ControlFile.class);
-            return JobStatus.SUCCESS;
+            return JobResult.of(JobStatus.SUCCESS);
         } catch (Exception e) {
-            JobStatus status = JobStatus.PUBLISH_ERROR;
-            status.setMessage("Unable to interpret control file contents: " + e);
-            return status;
+            return JobResult.of(JobStatus.PUBLISH_ERROR, "Unable to interpret control file contents: " + e);
         }
     }
 
-    private JobStatus deserializeControlFile(File controlFilePath) {
+    private JobResult deserializeControlFile(File controlFilePath) {
         try {
             controlFile = controlFileMapper.readValue(controlFilePath, ControlFile.class);
-            return JobStatus.SUCCESS;
+            return JobResult.of(JobStatus.SUCCESS);
         } catch (Exception e) {
-            JobStatus status = JobStatus.PUBLISH_ERROR;
-            status.setMessage("Unable to read in and interpret control file contents: " + e);
-            return status;
+            return JobResult.of(JobStatus.PUBLISH_ERROR, "Unable to read in and interpret control file contents: " + e);
         }
     }
 
@@ -15,7 +15,7 @@ public abstract class Job {
     public abstract String getDefaultJobName();
     public abstract boolean validateArgs(CommandLine cmd);
     public abstract void configure(CommandLine cmd);
-    public abstract JobStatus run() throws IOException;
+    public abstract JobResult run() throws IOException;
 
     public void writeToFile(String filepath) throws IOException {
         ObjectMapper mapper = new ObjectMapper();
@@ -0,0 +1,122 @@
+package com.socrata.datasync.job;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The outcome of running (or validating) a job: its status, the message that goes with it and,
+ * where rows were published, what was done to them, along with how long each phase of the job
+ * took.  Results are immutable; the with* methods return a copy with the one thing changed, so a
+ * result can be handed between threads, and jobs run side by side never see each other's messages.
+ */
+public final class JobResult {
+    private static final Map<JobStatus, JobResult> plain = new EnumMap<>(JobStatus.class);
+    static {
+        for (JobStatus status : JobStatus.values())
+            plain.put(status, new JobResult(status, null, null, null, null, null, Collections.<String, Long>emptyMap()));
+    }
+
+    private final JobStatus status;
+    private final String message;
+    private final Integer rowsCreated;
+    private final Integer rowsUpdated;
+    private final Integer rowsDeleted;
+    private final Integer errors;
+    private final Map<String, Long> phaseMillis;
+
+    private JobResult(JobStatus status, String message, Integer rowsCreated, Integer rowsUpdated,
+                      Integer rowsDeleted, Integer errors, Map<String, Long> phaseMillis) {
+        this.status = status;
+        this.message = message;
+        this.rowsCreated = rowsCreated;
+        this.rowsUpdated = rowsUpdated;
+        this.rowsDeleted = rowsDeleted;
+        this.errors = errors;
+        this.phaseMillis = phaseMillis;
+    }
+
+    /**
+     * @return a result with just the given status, and so its standard message
+     */
+    public static JobResult of(JobStatus status) {
+        return plain.get(status);
+    }
+
+    /**
+     * @return a result with the given status and a message particular to it
+     */
+    public static JobResult of(JobStatus status, String message) {
+        return of(status).withMessage(message);
+    }
+
+    public JobResult withMessage(String newMessage) {
+        return new JobResult(status, newMessage, rowsCreated, rowsUpdated, rowsDeleted, errors, phaseMillis);
+    }
+
+    /**
+     * @return a copy with the counts of rows created, updated and deleted and of rows in error;
+     * any may be null if unknown
+     */
+    public JobResult withRowCounts(Integer created, Integer updated, Integer deleted, Integer errorCount) {
+        return new JobResult(status, message, created, updated, deleted, errorCount, phaseMillis);
+    }
+
+    /**
+     * @return a copy that also records how long the named phase of the job took
+     */
+    public JobResult withPhase(String phase, long millis) {
+        Map<String, Long> phases = new LinkedHashMap<>(phaseMillis);
+        phases.put(phase, millis);
+        return new JobResult(status, message, rowsCreated, rowsUpdated, rowsDeleted, errors,
+                Collections.unmodifiableMap(phases));
+    }
+
+    public JobStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * @return the message particular to this result, or else its status's standard message
+     */
+    public String getMessage() {
+        return message == null ? status.getMessage() : message;
+    }
+
+    /**
+     * @return true if the result is an error, false otherwise
+     */
+    public boolean isError() {
+        return status.isError();
+    }
+
+    public Integer getRowsCreated() {
+        return rowsCreated;
+    }
+
+    public Integer getRowsUpdated() {
+        return rowsUpdated;
+    }
+
+    public Integer getRowsDeleted() {
+        return rowsDeleted;
+    }
+
+    public Integer getErrors() {
+        return errors;
+    }
+
+    /**
+     * @return how many milliseconds each phase of the job took, in the order they were recorded;
+     * a phase recorded by a step of the job comes before the phase of the job that includes it
+     */
+    public Map<String, Long> getPhaseMillis() {
+        return phaseMillis;
+    }
+
+    @Override
+    public String toString() {
+        return status + ": " + getMessage();
+    }
+}
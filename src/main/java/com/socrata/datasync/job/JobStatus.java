@@ -1,6 +1,9 @@
 package com.socrata.datasync.job;
 
 /**
+ * The possible outcomes of a job.  These are shared by every job in the process, so they carry
+ * nothing particular to any one run; that goes in the JobResult of the run.
+ *
  * @author Adrian Laurenzi
  */
 public enum JobStatus {
@@ -9,6 +12,11 @@ public enum JobStatus {
      */
     SUCCESS("Success", false),
 
+    /**
+     * Job had nothing to do, since the file is identical to the one last published
+     */
+    UNCHANGED("The file is unchanged since it was last published; nothing was uploaded", false),
+
     /**
      * Job details are valid
      */
@@ -16,13 +24,13 @@ public enum JobStatus {
 
     /**
      * This is when an error is returned from the publish API call.
-     * The error message varies so it is set with setMessage()
+     * The error message varies so it is given by the JobResult
      */
     PUBLISH_ERROR("", true),
 
     /**
      * This is when an error is returned upon running a DataPort job.
-     * The error message varies so it is set with setMessage()
+     * The error message varies so it is given by the JobResult
      */
     PORT_ERROR("", true),
 
@@ -40,6 +48,8 @@ public enum JobStatus {
 
     INVALID_PUBLISH_METHOD("Invalid publish method", true),
 
+    INVALID_DRY_RUN("A dry run can only be done when publishing via delta-importer-2", true),
+
     INVALID_PORT_METHOD("Invalid port method", true),
 
     INVALID_SCHEMAS("Schemas do not match; cannot port rows.", true),
@@ -61,17 +71,12 @@ public enum JobStatus {
     /**
      * The human-readable message to store.
      */
-    private String message;
+    private final String message;
 
     /**
      * Whether this status indicates an error condition.
      */
-    private boolean isError;
-
-    public Integer rowsUpdated;
-    public Integer rowsCreated;
-    public Integer rowsDeleted;
-    public Integer errors;
+    private final boolean isError;
 
     /**
      * Private constructor (to prevent re-construction).
@@ -88,13 +93,8 @@ public enum JobStatus {
     }
 
 
-
-    public void setMessage(final String newMessage) {
-        message = newMessage;
-    }
-
     /**
-     * @return a human-readable message for this enum value
+     * @return the standard human-readable message for this enum value
      */
     public String getMessage() {
         return message;
@@ -47,7 +47,7 @@ public class LoadPreferencesJob extends Job {
         }
     }
 
-    public JobStatus run() {
+    public JobResult run() {
         UserPreferencesJava newUserPrefs = new UserPreferencesJava();
         try {
             newUserPrefs.clear();
@@ -73,9 +73,33 @@ public class LoadPreferencesJob extends Job {
             newUserPrefs.saveFilesizeChunkingCutoffMB(Integer.parseInt(userPrefs.getFilesizeChunkingCutoffMB()));
         if (userPrefs.getNumRowsPerChunk() != null)
             newUserPrefs.saveNumRowsPerChunk(Integer.parseInt(userPrefs.getNumRowsPerChunk()));
+        if (userPrefs.getBlobUploadConcurrency() != null)
+            newUserPrefs.saveBlobUploadConcurrency(Integer.parseInt(userPrefs.getBlobUploadConcurrency()));
+        if (userPrefs.getSignatureCacheSizeMB() != null)
+            newUserPrefs.saveSignatureCacheSizeMB(Integer.parseInt(userPrefs.getSignatureCacheSizeMB()));
+        if (userPrefs.getCompressionThreads() != null)
+            newUserPrefs.saveCompressionThreads(Integer.parseInt(userPrefs.getCompressionThreads()));
+        if (userPrefs.getPatchCompression() != null)
+            newUserPrefs.savePatchCompression(userPrefs.getPatchCompression());
+        if (userPrefs.getHttpMaxConnections() != null)
+            newUserPrefs.saveHttpMaxConnections(Integer.parseInt(userPrefs.getHttpMaxConnections()));
+        if (userPrefs.getHttpMaxConnectionsPerRoute() != null)
+            newUserPrefs.saveHttpMaxConnectionsPerRoute(Integer.parseInt(userPrefs.getHttpMaxConnectionsPerRoute()));
+        if (userPrefs.getHttpMetricsFile() != null)
+            newUserPrefs.saveHttpMetricsFile(userPrefs.getHttpMetricsFile());
+        if (userPrefs.getHttpRequestsPerSecond() != null)
+            newUserPrefs.saveHttpRequestsPerSecond(Integer.parseInt(userPrefs.getHttpRequestsPerSecond()));
+        if (userPrefs.getRequestCompression() != null)
+            newUserPrefs.saveRequestCompression(userPrefs.getRequestCompression());
+        if (userPrefs.getUpsertConcurrency() != null)
+            newUserPrefs.saveUpsertConcurrency(Integer.parseInt(userPrefs.getUpsertConcurrency()));
+        if (userPrefs.getMaxChunkSizeMB() != null)
+            newUserPrefs.saveMaxChunkSizeMB(Integer.parseInt(userPrefs.getMaxChunkSizeMB()));
+        if (userPrefs.getChunkTargetSeconds() != null)
+            newUserPrefs.saveChunkTargetSeconds(Integer.parseInt(userPrefs.getChunkTargetSeconds()));
 
         System.out.println("Preferences saved:\n\n" + newUserPrefs.toString());
-        return JobStatus.SUCCESS;
+        return JobResult.of(JobStatus.SUCCESS);
     }
 
     public UserPreferences getUserPrefs() { return userPrefs; }
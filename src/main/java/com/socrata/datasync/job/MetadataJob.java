@@ -123,30 +123,30 @@ public class MetadataJob extends Job {
 
     /**
      *
-     * @return an error JobStatus if any input is invalid, otherwise JobStatus.VALID
+     * @return an error JobResult if any input is invalid, otherwise one of JobStatus.VALID
      */
     //TODO: Need to get info on max sizes on fields and validate here.
-    public JobStatus validate(SocrataConnectionInfo connectionInfo) {
+    public JobResult validate(SocrataConnectionInfo connectionInfo) {
 
         if(!(connectionInfo.getUrl().startsWith("http://")
                 || connectionInfo.getUrl().startsWith("https://"))) {
-            return JobStatus.INVALID_DOMAIN;
+            return JobResult.of(JobStatus.INVALID_DOMAIN);
         }
         if(datasetID.length() != DATASET_ID_LENGTH) {
-            return JobStatus.INVALID_DATASET_ID;
+            return JobResult.of(JobStatus.INVALID_DATASET_ID);
         }
         if(StringUtils.isBlank(title)) {
-            return JobStatus.MISSING_METADATA_TITLE;
+            return JobResult.of(JobStatus.MISSING_METADATA_TITLE);
         }
 
-        return JobStatus.VALID;
+        return JobResult.of(JobStatus.VALID);
     }
 
-    public JobStatus run() {
+    public JobResult run() {
         SocrataConnectionInfo connectionInfo = userPrefs.getConnectionInfo();
-        JobStatus runStatus = JobStatus.SUCCESS;
+        JobResult runStatus = JobResult.of(JobStatus.SUCCESS);
         String runErrorMessage = null;
-        JobStatus validationStatus = validate(connectionInfo);
+        JobResult validationStatus = validate(connectionInfo);
         //boolean workingCopyCreated = false;
         String workingCopyDatasetId = null;
 
@@ -165,7 +165,7 @@ public class MetadataJob extends Job {
 
                 if (datasetInfo == null) {
                     runErrorMessage = "Dataset with that ID does not exist or you do not have permission to publish to it";
-                    runStatus = JobStatus.PUBLISH_ERROR;
+                    runStatus = JobResult.of(JobStatus.PUBLISH_ERROR);
                 }
                 else {
                     if (datasetInfo.PUBLISHED.equals(datasetInfo.getPublicationStage())) {
@@ -211,15 +211,15 @@ public class MetadataJob extends Job {
             }
             catch (SodaError sodaError) {
                 runErrorMessage = sodaError.getMessage();
-                runStatus = JobStatus.PUBLISH_ERROR;
+                runStatus = JobResult.of(JobStatus.PUBLISH_ERROR);
             }
             catch (InterruptedException intrruptException) {
                 runErrorMessage = intrruptException.getMessage();
-                runStatus = JobStatus.PUBLISH_ERROR;
+                runStatus = JobResult.of(JobStatus.PUBLISH_ERROR);
             }
             catch (Exception other) {
                 runErrorMessage = other.toString() + ": " + other.getMessage() + " \r\n " + ExceptionUtils.getStackTrace(other);
-                runStatus = JobStatus.PUBLISH_ERROR;
+                runStatus = JobResult.of(JobStatus.PUBLISH_ERROR);
             }
             finally {
                 try {
@@ -229,17 +229,17 @@ public class MetadataJob extends Job {
                 }
                 catch(Exception e) {
                     runErrorMessage += " | Unable to publish dataset after updates";
-                    runStatus = JobStatus.PUBLISH_ERROR;
+                    runStatus = JobResult.of(JobStatus.PUBLISH_ERROR);
                 }
             }
         }
 
         String adminEmail = userPrefs.getAdminEmail();
         String logDatasetID = userPrefs.getLogDatasetID();
-        JobStatus logStatus = JobStatus.SUCCESS;
+        JobResult logStatus = JobResult.of(JobStatus.SUCCESS);
+        if(runErrorMessage != null)
+            runStatus = runStatus.withMessage(runErrorMessage);
         if(!logDatasetID.equals("")) {
-            if(runErrorMessage != null)
-                runStatus.setMessage(runErrorMessage);
             logStatus = addLogEntry(logDatasetID, connectionInfo, this, runStatus);
         }
         //Send email if there was an error updating log or target dataset
@@ -267,10 +267,6 @@ public class MetadataJob extends Job {
             }
         }
 
-        // IMPORTANT because setMessage from Logging dataset interferes with enum
-        if(runErrorMessage != null)
-            runStatus.setMessage(runErrorMessage);
-
         return runStatus;
     }
 
@@ -288,8 +284,8 @@ public class MetadataJob extends Job {
     }
 
     //Probably makes sense to make one generic addLogEntry() for all job types
-    public static JobStatus addLogEntry(String logDatasetID, SocrataConnectionInfo connectionInfo,
-                                        MetadataJob job, JobStatus status) {
+    public static JobResult addLogEntry(String logDatasetID, SocrataConnectionInfo connectionInfo,
+                                        MetadataJob job, JobResult status) {
         final Soda2Producer producer = Soda2Producer.newProducer(connectionInfo.getUrl(), connectionInfo.getUser(), connectionInfo.getPassword(), connectionInfo.getToken());
 
         List<Map<String, Object>> upsertObjects = new ArrayList<Map<String, Object>>();
@@ -307,7 +303,7 @@ public class MetadataJob extends Job {
         }
         upsertObjects.add(ImmutableMap.copyOf(newCols));
 
-        JobStatus logStatus = JobStatus.SUCCESS;
+        JobResult logStatus = JobResult.of(JobStatus.SUCCESS);
         String errorMessage = "";
         boolean noPublishExceptions = false;
         try {
@@ -324,8 +320,7 @@ public class MetadataJob extends Job {
             errorMessage = other.toString() + ": " + other.getMessage();
         } finally {
             if(!noPublishExceptions) {
-                logStatus = JobStatus.PUBLISH_ERROR;
-                logStatus.setMessage(errorMessage);
+                logStatus = JobResult.of(JobStatus.PUBLISH_ERROR, errorMessage);
             }
         }
         return logStatus;
@@ -8,6 +8,8 @@ import com.socrata.datasync.PortMethod;
 import com.socrata.datasync.PortUtility;
 import com.socrata.datasync.PublishDataset;
 import com.socrata.datasync.PublishMethod;
+import com.socrata.datasync.RateLimiter;
+import com.socrata.datasync.RequestCompression;
 import com.socrata.datasync.SocrataConnectionInfo;
 import com.socrata.datasync.Utils;
 import com.socrata.datasync.config.controlfile.PortControlFile;
@@ -210,11 +212,11 @@ public class PortJob extends Job {
 
 
 
-    public JobStatus run() {
+    public JobResult run() {
         SocrataConnectionInfo connectionInfo = userPrefs.getConnectionInfo();
 
-        JobStatus runStatus;
-        JobStatus validationStatus = PortJobValidity.validateJobParams(connectionInfo, this);
+        JobResult runStatus;
+        JobResult validationStatus = PortJobValidity.validateJobParams(connectionInfo, this);
         if (validationStatus.isError()) {
             runStatus = validationStatus;
         } else {
@@ -222,9 +224,7 @@ public class PortJob extends Job {
             try {
                 useOldCodePath = !Utils.regionOfDomain(userPrefs, sourceSiteDomain).equals(Utils.regionOfDomain(userPrefs, userPrefs.getDomain()));
             } catch(URISyntaxException | IOException e) {
-                runStatus = JobStatus.PORT_ERROR;
-                runStatus.setMessage(e.getMessage());
-                return runStatus;
+                return JobResult.of(JobStatus.PORT_ERROR, e.getMessage());
             }
 
             // loader "loads" the source dataset metadata and schema
@@ -247,6 +247,9 @@ public class PortJob extends Job {
                 final Soda2Producer streamUpserter = Soda2Producer.newProducer(
                                                                                userPrefs.getDomain(), connectionInfo.getUser(),
                                                                                connectionInfo.getPassword(), connectionInfo.getToken());
+                RateLimiter.get().limit(streamExporter.getHttpLowLevel());
+                RateLimiter.get().limit(streamUpserter.getHttpLowLevel());
+                RequestCompression.get().compress(streamUpserter.getHttpLowLevel());
                 String errorMessage = "";
                 boolean noPortExceptions = false;
                 try {
@@ -263,7 +266,7 @@ public class PortJob extends Job {
                                                  sourceSetID, sinkSetID, PublishMethod.upsert);
                         noPortExceptions = true;
                     } else if (portMethod.equals(PortMethod.copy_data)) {
-                        JobStatus schemaCheck = PortUtility.assertSchemasAreAlike(loader, creator, sourceSetID, sinkSetID);
+                        JobResult schemaCheck = PortUtility.assertSchemasAreAlike(loader, creator, sourceSetID, sinkSetID);
                         if (schemaCheck.isError()) {
                             errorMessage = schemaCheck.getMessage();
                         } else {
@@ -287,10 +290,9 @@ public class PortJob extends Job {
                 } finally {
                     if (noPortExceptions) {
                         // TODO (maybe) more DataPort error checking...?
-                        runStatus = JobStatus.SUCCESS;
+                        runStatus = JobResult.of(JobStatus.SUCCESS);
                     } else {
-                        runStatus = JobStatus.PORT_ERROR;
-                        runStatus.setMessage(errorMessage);
+                        runStatus = JobResult.of(JobStatus.PORT_ERROR, errorMessage);
                     }
                 }
             } else {
@@ -304,16 +306,12 @@ public class PortJob extends Job {
                                                            sourceSetID, destinationDatasetTitle,
                                                            false);
                     } else if (portMethod.equals(PortMethod.copy_data)) {
-                        JobStatus schemaCheck = PortUtility.assertSchemasAreAlike(loader, creator, sourceSetID, sinkSetID);
+                        JobResult schemaCheck = PortUtility.assertSchemasAreAlike(loader, creator, sourceSetID, sinkSetID);
                         if (schemaCheck.isError()) {
-                            runStatus = JobStatus.PORT_ERROR;
-                            runStatus.setMessage(schemaCheck.getMessage());
-                            return runStatus;
+                            return JobResult.of(JobStatus.PORT_ERROR, schemaCheck.getMessage());
                         }
                     } else {
-                        runStatus = JobStatus.PORT_ERROR;
-                        runStatus.setMessage(JobStatus.INVALID_PORT_METHOD.toString());
-                        return runStatus;
+                        return JobResult.of(JobStatus.PORT_ERROR, JobStatus.INVALID_PORT_METHOD.toString());
                     }
 
                     PortControlFile control = new PortControlFile(new URI("https://" + DatasetUtils.getDomainWithoutScheme(sourceSiteDomain)).getHost(),
@@ -328,20 +326,18 @@ public class PortJob extends Job {
 
                     DeltaImporter2Publisher publisher = new DeltaImporter2Publisher(userPrefs, "fixme");
                     runStatus = publisher.copyWithDi2(sinkSetID, control);
-                    if(runStatus == JobStatus.SUCCESS) {
+                    if(runStatus.getStatus() == JobStatus.SUCCESS) {
                         // Urrrrghghghgh
                         Pattern p = Pattern.compile("The new dataset id is (....-....)");
                         Matcher m = p.matcher(runStatus.getMessage());
                         if(m.find()) {
                             sinkSetID = m.group(1);
                         } else {
-                            runStatus = JobStatus.PORT_ERROR;
-                            runStatus.setMessage("Unable to find newly-created dataset");
+                            runStatus = JobResult.of(JobStatus.PORT_ERROR, "Unable to find newly-created dataset");
                         }
                     }
                 } catch(Exception e) {
-                    runStatus = JobStatus.PORT_ERROR;
-                    runStatus.setMessage(e.getMessage());
+                    runStatus = JobResult.of(JobStatus.PORT_ERROR, e.getMessage());
                 }
             }
         }
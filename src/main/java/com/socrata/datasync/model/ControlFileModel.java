@@ -3,6 +3,7 @@ package com.socrata.datasync.model;
 import com.socrata.datasync.config.controlfile.ControlFile;
 import com.socrata.datasync.config.controlfile.LocationColumn;
 import com.socrata.datasync.config.controlfile.SyntheticPointColumn;
+import com.socrata.datasync.job.JobResult;
 import com.socrata.datasync.job.JobStatus;
 import com.socrata.datasync.validation.IntegrationJobValidity;
 import com.socrata.datasync.Utils;
@@ -633,11 +634,11 @@ public class ControlFileModel extends Observable {
     }
 
 
-    public JobStatus validate(){
+    public JobResult validate(){
         if (!rowsContainSameNumberOfColumns())
-            return JobStatus.ROWS_DO_NOT_CONTAIN_SAME_NUMBER_OF_COLUMNS;
+            return JobResult.of(JobStatus.ROWS_DO_NOT_CONTAIN_SAME_NUMBER_OF_COLUMNS);
 
-        JobStatus status = IntegrationJobValidity.checkControl(controlFile,controlFile.getFileTypeControl(),datasetModel.getDatasetInfo(),new File(controlFile.getFileTypeControl().filePath),datasetModel.getDomain());
+        JobResult status = IntegrationJobValidity.checkControl(controlFile,controlFile.getFileTypeControl(),datasetModel.getDatasetInfo(),new File(controlFile.getFileTypeControl().filePath),datasetModel.getDomain());
         if (status.isError()){
             return status;
         }
@@ -646,7 +647,7 @@ public class ControlFileModel extends Observable {
     }
 
     //Sample the rows in the CSV and attempt to parse the columns that represent dates.
-    private JobStatus checkDateTime(){
+    private JobResult checkDateTime(){
         for (int i = 0; i < csvModel.getRowCount(); i++){
             for (int j = 0; j < controlFile.getFileTypeControl().columns.length; j++) {
                 String columnName = controlFile.getFileTypeControl().columns[j];
@@ -658,15 +659,13 @@ public class ControlFileModel extends Observable {
                             fieldType.equals("date")) {
                         Object value = csvModel.getValueAt(i, j);
                         if (!canParseDateTime(value, controlFile.getFileTypeControl().floatingTimestampFormat)) {
-                            JobStatus status = JobStatus.INVALID_DATETIME;
-                            status.setMessage("Cannot parse the datetime value \"" +value.toString()+  "\" in column \"" + columnName+ "\" given the current formatting.  Please check your formatting values under advanced options and try again.");
-                            return status;
+                            return JobResult.of(JobStatus.INVALID_DATETIME, "Cannot parse the datetime value \"" +value.toString()+  "\" in column \"" + columnName+ "\" given the current formatting.  Please check your formatting values under advanced options and try again.");
                         }
                     }
                 }
             }
         }
-        return JobStatus.VALID;
+        return JobResult.of(JobStatus.VALID);
     }
 
     //Blanks and nulls are included as parseable
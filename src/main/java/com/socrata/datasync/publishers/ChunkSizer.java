@@ -0,0 +1,74 @@
+package com.socrata.datasync.publishers;
+
+/**
+ * Decides how many bytes of JSON go in each chunk of a SODA2 upsert, so that chunks of wide rows
+ * don't grow into requests that time out, nor chunks of narrow rows shrink into requests that are
+ * mostly latency.  The budget is tuned as chunks are sent, additive increase, multiplicative
+ * decrease: a chunk the domain took longer than the target to answer, or throttled, halves it, and
+ * one answered within the target adds a fixed step, up to the most allowed.
+ *
+ * Chunks sent at once are measured together; a slow chunk cut before the budget last shrank
+ * doesn't shrink it again, nor a quick one cut before it last grew grow it again.
+ */
+public class ChunkSizer {
+    public static final long MIN_BYTES = 64 * 1024;
+
+    private final long maxBytes;
+    private final long targetMillis;
+    private final long step;
+    private long budget;
+    private long smallest = Long.MAX_VALUE;
+    private long largest = 0;
+    private int chunks = 0;
+
+    /**
+     * @param maxBytes the most bytes of rows in a chunk
+     * @param targetMillis how long a chunk should take to upsert; 0 leaves every chunk at maxBytes
+     */
+    public ChunkSizer(long maxBytes, long targetMillis) {
+        this.maxBytes = Math.max(MIN_BYTES, maxBytes);
+        this.targetMillis = targetMillis;
+        this.step = Math.max(MIN_BYTES, this.maxBytes / 16);
+        this.budget = targetMillis > 0 ? Math.max(MIN_BYTES, this.maxBytes / 8) : this.maxBytes;
+    }
+
+    /**
+     * @return the bytes of rows the next chunk should hold
+     */
+    public synchronized long getBudget() {
+        return budget;
+    }
+
+    /**
+     * Notes how a chunk went and tunes the budget from it.
+     * @param chunkBudget the budget the chunk was cut to
+     * @param bytes the bytes of rows the chunk held
+     * @param millis how long the chunk took, waiting out any throttling included
+     * @param throttled whether the domain asked for the chunk to be sent later
+     */
+    public synchronized void record(long chunkBudget, long bytes, long millis, boolean throttled) {
+        chunks++;
+        smallest = Math.min(smallest, bytes);
+        largest = Math.max(largest, bytes);
+        if (targetMillis <= 0) return;
+        long was = budget;
+        if (throttled || millis > targetMillis) {
+            if (chunkBudget <= budget) budget = Math.max(MIN_BYTES, budget / 2);
+        } else if (chunkBudget >= budget && bytes * 2 >= chunkBudget) {
+            // the last chunk of a file, cut short, says nothing about how large a chunk could be
+            budget = Math.min(maxBytes, budget + step);
+        }
+        if (budget != was) {
+            System.out.println("Chunk size now " + budget / 1024 + " KB (a chunk of " + bytes / 1024 + " KB " +
+                    (throttled ? "was throttled" : "took " + millis + " ms") + ")");
+        }
+    }
+
+    /**
+     * @return the sizes of the chunks sent, for the job's log
+     */
+    public synchronized String summary() {
+        if (chunks == 0) return "No chunks were sent";
+        return chunks + " chunks of " + smallest / 1024 + " KB to " + largest / 1024 + " KB were sent";
+    }
+}
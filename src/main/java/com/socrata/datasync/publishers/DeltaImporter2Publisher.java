@@ -1,5 +1,14 @@
 package com.socrata.datasync.publishers;
 
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.socrata.datasync.Backoff;
+import com.socrata.datasync.HttpMetrics;
+import com.socrata.datasync.RateLimiter;
+import com.socrata.datasync.RequestCompression;
+import com.socrata.datasync.Retrier;
 import com.socrata.datasync.SizeCountingInputStream;
 import com.socrata.datasync.Utils;
 import com.socrata.datasync.HttpUtility;
@@ -9,17 +18,17 @@ import com.socrata.datasync.config.controlfile.FileTypeControl;
 import com.socrata.datasync.config.userpreferences.UserPreferences;
 import com.socrata.datasync.ui.SimpleIntegrationWizard;
 import com.socrata.datasync.deltaimporter2.*;
+import com.socrata.datasync.job.JobResult;
 import com.socrata.datasync.job.JobStatus;
-import com.socrata.ssync.PatchComputer;
 import com.socrata.ssync.SignatureComputer;
 import com.socrata.ssync.SignatureTable;
 import com.socrata.ssync.exceptions.input.InputException;
 import com.socrata.ssync.exceptions.signature.SignatureException;
 import org.apache.commons.io.IOUtils;
 import org.apache.http.*;
-import org.apache.http.client.entity.EntityBuilder;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import com.fasterxml.jackson.core.JsonProcessingException;
@@ -32,15 +41,25 @@ import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.text.ParseException;
-import java.util.Arrays;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class DeltaImporter2Publisher implements AutoCloseable {
 
@@ -52,28 +71,118 @@ public class DeltaImporter2Publisher implements AutoCloseable {
     private static final String logPath = "/log";
     private static final String ssigContentType = "application/x-socrata-ssig";
     private static final String patchExtenstion = ".sdiff";
-    private static final String compressionExtenstion = ".gz";
     private static final String finishedLogKey = "finished";
     private static final String committingLogKey = "committing-job";
     private static final String committedLogKey = "committed-job";
     private static final int httpRetries = 3;
+    private static final int blobPostRetries = 4;
+    private static final int commitThrottledWaits = 20;
     private static final int defaultChunkSize = 1024 * 4000;
+    public static final int DEFAULT_BLOB_UPLOAD_CONCURRENCY = 4;
+    public static final long DEFAULT_SIGNATURE_CACHE_SIZE_MB = 2048;
+    private static final String signatureCacheDirectory = "signatures";
+    private static final String uploadManifestDirectory = "uploads";
+    private static final String publishRecordDirectory = "published";
 
     private static class CompletelyRestartJob extends Exception {}
 
-    private static String domain;
-    private static HttpUtility http;
-    private static URIBuilder baseUri;
-    private static ObjectMapper mapper = new ObjectMapper().enable(DeserializationFeature.ACCEPT_SINGLE_VALUE_AS_ARRAY);
-    private String pathToSignature = null;
-    CloseableHttpResponse signatureResponse = null;
+    private static final ObjectMapper mapper = new ObjectMapper().enable(DeserializationFeature.ACCEPT_SINGLE_VALUE_AS_ARRAY);
+    // The payload that we get back from DI2 may change over time.  Since we are only looking at the delta
+    // section of the logs, they're read without the strict parsing.
+    private static final ObjectMapper lenientMapper = new ObjectMapper()
+            .enable(DeserializationFeature.ACCEPT_SINGLE_VALUE_AS_ARRAY)
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    // Nothing below changes once constructed, and what's kept for the length of a publish is kept
+    // in its locals, so one instance (or many) can publish any number of files at once.
+    private final String domain;
+    private final HttpUtility http;
+    private final URI baseUri;
+    private final int blobUploadConcurrency;
+    private final ChunkBufferPool chunkBuffers;
+    private final SignatureCache signatureCache;
+    private final int compressionThreads;
+    private final PatchCompression configuredCompression;
 
     public DeltaImporter2Publisher(UserPreferences userPrefs, String userAgent) {
-        http = new HttpUtility(userPrefs, true, userAgent);
-        domain = userPrefs.getHost();
-        baseUri = new URIBuilder()
-                .setScheme("https")
-                .setHost(domain);
+        this(userPrefs, userAgent, DEFAULT_BLOB_UPLOAD_CONCURRENCY);
+    }
+
+    /**
+     * @param blobUploadConcurrency the maximum number of diff chunks that may be in flight at once
+     */
+    public DeltaImporter2Publisher(UserPreferences userPrefs, String userAgent, int blobUploadConcurrency) {
+        this(userPrefs, userAgent, blobUploadConcurrency, URI.create("https://" + userPrefs.getHost()));
+    }
+
+    /**
+     * @param baseUri the scheme and authority delta-importer-2 is reached at, e.g. https://opendata.socrata.com
+     */
+    DeltaImporter2Publisher(UserPreferences userPrefs, String userAgent, int blobUploadConcurrency, URI baseUri) {
+        this.http = new HttpUtility(userPrefs, true, userAgent);
+        this.domain = baseUri.getHost();
+        this.baseUri = baseUri;
+        this.blobUploadConcurrency = Math.max(1, blobUploadConcurrency);
+        this.chunkBuffers = new ChunkBufferPool(this.blobUploadConcurrency);
+        this.signatureCache = openSignatureCache(userPrefs);
+        this.compressionThreads = compressionThreads(userPrefs);
+        this.configuredCompression = configuredCompression(userPrefs);
+    }
+
+    /**
+     * @return the compression the user has chosen for patches, or null to have a CompressionPolicy choose
+     */
+    private static PatchCompression configuredCompression(UserPreferences userPrefs) {
+        String configured = userPrefs.getPatchCompression();
+        if (configured == null || configured.trim().isEmpty() || configured.trim().equalsIgnoreCase("auto")) return null;
+        PatchCompression compression = PatchCompression.parse(configured);
+        if (compression == null) System.out.println("Ignoring invalid patch compression '" + configured + "'");
+        return compression;
+    }
+
+    /**
+     * @return the number of threads to gzip patches on; unless the user says otherwise, one per processor
+     */
+    private static int compressionThreads(UserPreferences userPrefs) {
+        String configured = userPrefs.getCompressionThreads();
+        if (configured != null) {
+            try {
+                int threads = Integer.parseInt(configured.trim());
+                if (threads > 0) return threads;
+            } catch (NumberFormatException e) {
+                System.out.println("Ignoring invalid number of compression threads '" + configured + "'");
+            }
+        }
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * @return the local signature cache configured by the user's preferences, or null if it is disabled or unusable
+     */
+    private static SignatureCache openSignatureCache(UserPreferences userPrefs) {
+        long sizeMB = DEFAULT_SIGNATURE_CACHE_SIZE_MB;
+        String configured = userPrefs.getSignatureCacheSizeMB();
+        if (configured != null) {
+            try {
+                sizeMB = Long.parseLong(configured.trim());
+            } catch (NumberFormatException e) {
+                System.out.println("Ignoring invalid signature cache size '" + configured + "'");
+            }
+        }
+        if (sizeMB <= 0) return null;
+        try {
+            return new SignatureCache(Utils.getLocalStateDirectory(signatureCacheDirectory), sizeMB * 1024 * 1024);
+        } catch (IOException e) {
+            System.out.println("Unable to open the local signature cache; signatures will be downloaded: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @return the uri of the given path on the domain; a fresh builder each time, since they aren't thread-safe
+     */
+    private URI uri(String path) throws URISyntaxException {
+        return new URIBuilder(baseUri).setPath(path).build();
     }
 
     @Override
@@ -88,79 +197,182 @@ public class DeltaImporter2Publisher implements AutoCloseable {
      * @param controlFile the control file used to specialize the resulting dataset
      * @return a job status indicating success or failure
      */
-    public JobStatus publishWithDi2OverHttp(String datasetId, final File csvOrTsvFile, ControlFile controlFile) throws
+    public JobResult publishWithDi2OverHttp(String datasetId, final File csvOrTsvFile, ControlFile controlFile) throws
             IOException {
 
         System.out.println("Publishing " + csvOrTsvFile.getName() + " via delta-importer-2 over HTTP");
-        DatasyncDirectory datasyncDir = new DatasyncDirectory(http, domain, datasetId);
-        boolean useCompression = true;
+        // looked up while the directory is listed
+        Future<Integer> chunkSizeLookup = fetchDatasyncChunkSize();
+        DatasyncDirectory datasyncDir = new DatasyncDirectory(http, baseUri, datasetId);
         InputStream previousSignature = null;
         SizeCountingInputStream patch = null;
-        int chunkSize = fetchDatasyncChunkSize();
+        FileChannelSource fileSource = null;
+        ProgressSampler progress = null;
+        File newSignature = null;
+        UploadManifest manifest = null;
+        // read by the progress reporter's thread
+        final AtomicReference<PatchPipeline> pipeline = new AtomicReference<>();
+        String controlDigest = PublishRecord.controlDigest(controlFile);
         String uuid = controlFile.generateAndAddOpaqueUUID();
         int retryCount = 0;
-        String fileExtension = Utils.getFileExtension(csvOrTsvFile.getName());
-        FileTypeControl fileControl = fileExtension.equals("csv") ? controlFile.csv : controlFile.tsv;
-        boolean fileHasBom = Utils.fileStartsWithBom(csvOrTsvFile, fileControl);
-        int bomLength = fileHasBom ? Utils.BOM.getBytes(Utils.getCharset(fileControl)).length : 0;
+        int bomLength = getBomLength(csvOrTsvFile, controlFile);
+        // replacing a dataset with what it already holds changes nothing; appending or deleting it again would
+        boolean replacing = "replace".equalsIgnoreCase(controlFile.action);
 
         do {
             try {
                 // get signature of previous csv/tsv file
-                pathToSignature = datasyncDir.getPathToSignature();
-                previousSignature = getPreviousSignature(pathToSignature);
-
-                final long fileSize = csvOrTsvFile.length() - bomLength;
-                final FileInputStream fileStream = new FileInputStream(csvOrTsvFile);
-                if (fileHasBom)
-                    for (int i=0; i<bomLength; i++)
-                        fileStream.read();
+                String pathToSignature = datasyncDir.getPathToSignature();
+                int chunkSize = awaitChunkSize(chunkSizeLookup);
+                if (replacing && isUnchanged(datasetId, pathToSignature, csvOrTsvFile, bomLength, controlDigest)) {
+                    System.out.println(JobStatus.UNCHANGED.getMessage());
+                    return JobResult.of(JobStatus.UNCHANGED);
+                }
+                previousSignature = getPreviousSignature(datasetId, pathToSignature);
+                if (previousSignature == null) {
+                    // if we have a problem getting the signature, we can still use the null signature,
+                    // but must not give its path as the relativeTo field in the commit
+                    pathToSignature = null;
+                    previousSignature = getNullSignature();
+                }
+                if (signatureCache != null) newSignature = signatureCache.newPendingFile();
 
-                InputStream progressingInputStream = new ProgressingInputStream(fileStream) {
+                fileSource = new FileChannelSource(csvOrTsvFile, bomLength);
+                final long fileSize = fileSource.getSize();
+                progress = new ProgressSampler(fileSource) {
                     @Override
                     protected void progress(long count) {
                         System.out.println("\tRead " + count + " of " + fileSize + " bytes of " + csvOrTsvFile.getName());
-                        int pct = (int) (count*100/fileSize);
+                        int pct = fileSize == 0 ? 100 : (int) (count*100/fileSize);
                         updateStatus("Reading File", pct, true, "");
+                        PatchPipeline current = pipeline.get();
+                        if (current != null) System.out.println(current.report());
                     }
                 };
-                // compute the patch between the csv/tsv file and its previous signature
-                patch = new SizeCountingInputStream(getPatch(progressingInputStream, previousSignature, chunkSize, useCompression));
 
-                // post the patch file in blobby chunks - ewww
-                List<String> blobIds = postPatchBlobs(patch, datasetId, chunkSize);
+                // an earlier attempt at uploading the same patch determines how it is compressed, so its chunks can be reused
+                manifest = UploadManifest.open(Utils.getLocalStateDirectory(uploadManifestDirectory),
+                        datasetId, csvOrTsvFile, pathToSignature, chunkSize);
+                PatchCompression compression = PatchCompression.parse(manifest.compression);
+                if (compression == null) {
+                    compression = choosePatchCompression(csvOrTsvFile, bomLength);
+                    manifest.compression = compression.toString();
+                }
+
+                // compute the patch between the csv/tsv file and its previous signature, digesting the file on the way
+                long uploadStart = System.nanoTime();
+                MessageDigest fileDigest = PublishRecord.newMd5();
+                InputStream digestingSource = new DigestInputStream(fileSource, fileDigest);
+                PatchPipeline patchPipeline = getPatch(digestingSource, previousSignature, chunkSize, compression, newSignature);
+                pipeline.set(patchPipeline);
+                patch = new SizeCountingInputStream(patchPipeline);
+
+                // post the patch file in blobby chunks - ewww - skipping any acknowledged by an earlier attempt
+                List<String> blobIds = postPatchBlobs(patch, datasetId, chunkSize, manifest);
+                System.out.println(patchPipeline.report());
+                long commitStart = System.nanoTime();
 
                 // commit the chunks, thereby applying the diff
                 CommitMessage<ControlFile> commit = new CommitMessage<ControlFile>()
-                        .filename(csvOrTsvFile.getName() + patchExtenstion + (useCompression ? compressionExtenstion : ""))
+                        .filename(csvOrTsvFile.getName() + patchExtenstion + compression.getExtension())
                         .relativeTo(pathToSignature)
                         .chunks(blobIds)
                         .control(controlFile)
                         .expectedSize(patch.getTotal());
                 String jobId = commitStandardJob(commit, datasetId, uuid);
+                manifest.delete();
+                long applyStart = System.nanoTime();
 
-                // return status
-                return getJobStatus(datasetId, jobId);
+                // return status, keeping the signature and digest of what we sent for next time if it was applied
+                JobResult status = getJobStatus(datasetId, jobId)
+                        .withPhase("diff and upload", millisBetween(uploadStart, commitStart))
+                        .withPhase("commit", millisBetween(commitStart, applyStart))
+                        .withPhase("apply", millisBetween(applyStart, System.nanoTime()));
+                if (status.getStatus() == JobStatus.SUCCESS) {
+                    String publishedPath = getPublishedSignaturePath(datasyncDir, pathToSignature);
+                    if (newSignature != null) cacheSignature(patchPipeline, datasetId, publishedPath, newSignature);
+                    if (publishedPath != null)
+                        PublishRecord.save(Utils.getLocalStateDirectory(publishRecordDirectory), datasetId, publishedPath,
+                                fileSize, PublishRecord.hex(fileDigest.digest()), controlDigest);
+                }
+                return status;
             } catch (CompletelyRestartJob e) {
+                // delta-importer-2 refused the chunks it was given; the same patch would be chunked the same
+                // way, so reusing their blob ids would only have it refused again
+                if (manifest != null) manifest.delete();
+                System.out.println("The commit was refused; uploading the whole patch again");
                 retryCount += 1;
             } catch (ParseException | NoSuchAlgorithmException | InputException | URISyntaxException |
                     SignatureException |InterruptedException | HttpException e) {
                 e.printStackTrace();
-                JobStatus jobStatus = JobStatus.PUBLISH_ERROR;
-                jobStatus.setMessage(e.getMessage());
-                return jobStatus;
+                return JobResult.of(JobStatus.PUBLISH_ERROR, e.getMessage());
             } finally {
                 if (previousSignature != null) { previousSignature.close(); }
                 if (patch != null) { patch.close(); }
-                if (signatureResponse != null) { signatureResponse.close(); }
+                if (progress != null) { progress.close(); }
+                if (fileSource != null) { fileSource.close(); }
+                pipeline.set(null);
+                if (newSignature != null) { newSignature.delete(); }
             }
         } while(retryCount < httpRetries);
-        JobStatus jobStatus = JobStatus.PUBLISH_ERROR;
-        jobStatus.setMessage("Couldn't get the request through; too many retries"); // TODO Better message
-        return jobStatus;
+        return JobResult.of(JobStatus.PUBLISH_ERROR, "Couldn't get the request through; too many retries"); // TODO Better message
     }
 
-    public JobStatus copyWithDi2(String datasetId, PortControlFile controlFile) throws IOException {
+    /**
+     * Computes the patch that publishing a csv or tsv file using delta-importer-2 over http would send,
+     * and reports what sending it would cost, without posting or committing anything.
+     * @param datasetId the 4x4 of the dataset that would be replaced
+     * @param csvOrTsvFile the csv or tsv file that would replace the dataset with the given 4x4
+     * @param controlFile the control file that would be used to specialize the resulting dataset
+     * @param previousSignatureFile a local copy of the dataset's latest signature, or null to use the server's
+     * @return the estimate
+     */
+    public PatchEstimate estimatePatchWithDi2(String datasetId, File csvOrTsvFile, ControlFile controlFile,
+                                              File previousSignatureFile) throws IOException {
+        System.out.println("Computing the delta-importer-2 patch for " + csvOrTsvFile.getName() + " without publishing it");
+        InputStream previousSignature = null;
+        FileChannelSource fileSource = null;
+        Future<Integer> chunkSizeLookup = fetchDatasyncChunkSize();
+        try {
+            if (previousSignatureFile != null) {
+                System.out.println("Using the previous signature in " + previousSignatureFile);
+                previousSignature = new FileInputStream(previousSignatureFile);
+            } else {
+                String pathToSignature = new DatasyncDirectory(http, baseUri, datasetId).getPathToSignature();
+                previousSignature = getPreviousSignature(datasetId, pathToSignature);
+                if (previousSignature == null) previousSignature = getNullSignature();
+            }
+            int chunkSize = awaitChunkSize(chunkSizeLookup);
+            int bomLength = getBomLength(csvOrTsvFile, controlFile);
+            PatchCompression compression = choosePatchCompression(csvOrTsvFile, bomLength);
+            fileSource = new FileChannelSource(csvOrTsvFile, bomLength);
+
+            // the patch is measured before compression too, so it's computed uncompressed and compressed while measuring it
+            try (InputStream patch = getPatch(fileSource, previousSignature, chunkSize, PatchCompression.NONE, null)) {
+                PatchEstimate estimate = PatchEstimate.measure(patch, fileSource.getSize(), compression, compressionThreads,
+                        chunkSize, CompressionPolicy.getKnownBandwidth(domain));
+                System.out.println(estimate.report());
+                return estimate;
+            }
+        } catch (ParseException | NoSuchAlgorithmException | InputException | URISyntaxException | SignatureException e) {
+            throw new IOException("Unable to compute the patch: " + e.getMessage(), e);
+        } finally {
+            if (previousSignature != null) { previousSignature.close(); }
+            if (fileSource != null) { fileSource.close(); }
+        }
+    }
+
+    /**
+     * @return the length of the BOM at the start of the file, or 0 if there isn't one
+     */
+    private static int getBomLength(File csvOrTsvFile, ControlFile controlFile) throws IOException {
+        String fileExtension = Utils.getFileExtension(csvOrTsvFile.getName());
+        FileTypeControl fileControl = fileExtension.equals("csv") ? controlFile.csv : controlFile.tsv;
+        boolean fileHasBom = Utils.fileStartsWithBom(csvOrTsvFile, fileControl);
+        return fileHasBom ? Utils.BOM.getBytes(Utils.getCharset(fileControl)).length : 0;
+    }
+
+    public JobResult copyWithDi2(String datasetId, PortControlFile controlFile) throws IOException {
         String uuid = controlFile.generateAndAddOpaqueUUID();
         int retryCount = 0;
         do {
@@ -172,41 +384,124 @@ public class DeltaImporter2Publisher implements AutoCloseable {
                 retryCount += 1;
             } catch(URISyntaxException | InterruptedException | HttpException e) {
                 e.printStackTrace();
-                JobStatus jobStatus = JobStatus.PORT_ERROR;
-                jobStatus.setMessage(e.getMessage());
-                return jobStatus;
+                return JobResult.of(JobStatus.PORT_ERROR, e.getMessage());
             }
         } while(retryCount < httpRetries);
-        JobStatus jobStatus = JobStatus.PORT_ERROR;
-        jobStatus.setMessage("Couldn't get the request through; too many retries"); // TODO Better message
-        return jobStatus;
+        return JobResult.of(JobStatus.PORT_ERROR, "Couldn't get the request through; too many retries"); // TODO Better message
     }
 
 
+    /**
+     * Decides how to compress the patch: as the user has configured, or else by weighing each
+     * compression against a sample of the file and the upload bandwidth last seen to this domain.
+     * Without a measured bandwidth, or for a small file, it sticks with gzip.
+     */
+    private PatchCompression choosePatchCompression(File file, int bomLength) {
+        if (configuredCompression != null) {
+            System.out.println("Compressing the patch with " + configuredCompression + ", as configured");
+            return configuredCompression;
+        }
+        Double bandwidth = CompressionPolicy.getKnownBandwidth(domain);
+        if (bandwidth == null || file.length() < CompressionPolicy.minimumFileSize) {
+            System.out.println("Compressing the patch with " + PatchCompression.GZIP +
+                    (bandwidth == null ? "; no upload bandwidth has been measured to " + domain + " yet" : ""));
+            return PatchCompression.GZIP;
+        }
+        try {
+            CompressionPolicy.Decision decision =
+                    CompressionPolicy.choose(CompressionPolicy.readSample(file, bomLength), bandwidth, compressionThreads);
+            System.out.println(decision.report());
+            return decision.getChoice();
+        } catch (IOException e) {
+            System.out.println("Unable to sample the file for compression; using " + PatchCompression.GZIP + ": " + e.getMessage());
+            return PatchCompression.GZIP;
+        }
+    }
+
+    /**
+     * @return the path of the signature delta-importer-2 stored for the file just published, or null
+     * if it can't be found (including if the latest is still the one the patch was computed against)
+     */
+    private String getPublishedSignaturePath(DatasyncDirectory datasyncDir, String pathToSignature) {
+        try {
+            String newPath = datasyncDir.getPathToSignature();
+            return newPath == null || newPath.equals(pathToSignature) ? null : newPath;
+        } catch (IOException | URISyntaxException | ParseException e) {
+            System.out.println("Unable to find the signature of the published file: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Once the signature stage of the patch pipeline has written out the signature of the file just
+     * published, stores it in the signature cache under the path delta-importer-2 stored its own copy.
+     * Failing to do so only means the next publish downloads the signature.
+     */
+    private void cacheSignature(PatchPipeline patchPipeline, String datasetId, String publishedPath, File signature) throws
+            InterruptedException {
+        try {
+            if (!patchPipeline.awaitSignature() || publishedPath == null) return;
+            signatureCache.put(datasetId, publishedPath, signature);
+            System.out.println("Cached the signature of the published file as " + publishedPath);
+        } catch (IOException e) {
+            System.out.println("Unable to cache the signature of the published file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return whether the file is byte-for-byte the one last published to the dataset, with the same
+     * control file, and nothing has been published to the dataset since.  The file is only read to
+     * digest it if its size matches.
+     */
+    private boolean isUnchanged(String datasetId, String pathToSignature, File csvOrTsvFile, int bomLength,
+                                String controlDigest) throws IOException {
+        PublishRecord last = PublishRecord.load(Utils.getLocalStateDirectory(publishRecordDirectory), datasetId);
+        long fileSize = csvOrTsvFile.length() - bomLength;
+        if (last == null || !last.mightMatch(pathToSignature, fileSize, controlDigest)) return false;
+        System.out.println("The file is the same size as the one last published; checking whether it has changed");
+        try (FileChannelSource source = new FileChannelSource(csvOrTsvFile, bomLength)) {
+            return last.matches(pathToSignature, fileSize, PublishRecord.digest(source), controlDigest);
+        }
+    }
+
     /**
      * Returns an input stream to the signature of the previous version of the dataset to be replaced
-     * NOTE: this has the side-effect of setting pathToSignature to null if the previous signature cannot be gotten.
+     * @param datasetId the 4x4 of the dataset, used to look the signature up in the local cache
      * @param signaturePath the complete path to the signature; i.e. /datasync/id/some-4by4/completed/... or null
-     * @return an input stream to the previous signature (possibly the null signature)
+     * @return an input stream to the previous signature (possibly the null signature), or null if
+     * there is a previous signature but it cannot be gotten
      */
-    private InputStream getPreviousSignature(String signaturePath) throws
+    private InputStream getPreviousSignature(String datasetId, String signaturePath) throws
             IOException, URISyntaxException, NoSuchAlgorithmException {
         System.out.println("Acquiring the previous signature or creating a null signature");
         if(signaturePath == null) {
             // if no previously completed signature, return stream of the null signature
             return getNullSignature();
+        }
+        InputStream cached = signatureCache == null ? null : signatureCache.get(datasetId, signaturePath);
+        if (cached != null) {
+            System.out.println("Using the locally cached copy of " + signaturePath);
+            return cached;
         } else {
             // otherwise, return the completed signature stored by delta-importer-2
-            URI absolutePath = baseUri.setPath(signaturePath).build();
-            signatureResponse = http.get(absolutePath, ssigContentType);
-            int statusCode = signatureResponse.getStatusLine().getStatusCode();
+            URI absolutePath = uri(signaturePath);
+            final CloseableHttpResponse response = http.get(absolutePath, ssigContentType);
+            int statusCode = response.getStatusLine().getStatusCode();
             if (statusCode == HttpStatus.SC_OK || statusCode == HttpStatus.SC_NOT_MODIFIED) {
-                return signatureResponse.getEntity().getContent();
+                // closing the stream releases the response along with it
+                return new FilterInputStream(response.getEntity().getContent()) {
+                    @Override
+                    public void close() throws IOException {
+                        try {
+                            super.close();
+                        } finally {
+                            response.close();
+                        }
+                    }
+                };
             } else {
-                // if we have a problem getting the signature, we can still use the null signature,
-                // but must set the pathToSignature to null for the relativeTo field in the commit
-                pathToSignature = null;
-                return getNullSignature();
+                response.close();
+                return null;
             }
         }
     }
@@ -214,93 +509,247 @@ public class DeltaImporter2Publisher implements AutoCloseable {
 
     /**
      * Computes the diff of the csv or tsv file with the most recent completed signature if there is
-     * one, else with nothing
+     * one, else with nothing.  Reading, diffing and compressing each run on their own thread in a
+     * PatchPipeline, so they overlap with each other and with the upload of the chunks.
      * @param newFile an input stream to the new file that is to replace the old
      * @param previousSignature an input stream to the previous signature
-     * @param compress whether to compress the patch using xz compression
+     * @param compression how to compress the patch
+     * @param newSignature if not null, where to write the signature of the new file
      * @return an input stream containing the possibly compressed patch
      */
-    private InputStream getPatch(InputStream newFile, InputStream previousSignature, int chunkSize, boolean compress) throws
-            SignatureException, IOException, InputException, NoSuchAlgorithmException {
+    private PatchPipeline getPatch(InputStream newFile, InputStream previousSignature, int chunkSize,
+                                   PatchCompression compression, File newSignature) throws
+            SignatureException, IOException, InputException {
         System.out.println("Calculating the diff between the source file and previous signature");
-        BufferedInputStream newStream = new BufferedInputStream(newFile);
         BufferedInputStream previousStream = new BufferedInputStream(previousSignature);
-        if (!compress) {
-            return new PatchComputer.PatchComputerInputStream(newStream, new SignatureTable(previousStream), "MD5", 102400);
-        } else {
-            InputStream patchStream = new PatchComputer.PatchComputerInputStream(newStream, new SignatureTable(previousStream), "MD5", 1024000);
-            return new GZipCompressInputStream(patchStream, 2 * chunkSize);
-            //return new XZCompressInputStream(patchStream, 2 * chunkSize);
-        }
+        return new PatchPipeline(newFile, new SignatureTable(previousStream), chunkSize, compression,
+                compressionThreads, newSignature);
     }
 
-    private int fetchDatasyncChunkSize() {
-        URI versionServicePath;
-        int retryCount = 0;
+    /**
+     * Starts asking delta-importer-2 for the chunk size, on HttpUtility's shared threads, so other
+     * requests can be made while it is answered.
+     */
+    private ListenableFuture<Integer> fetchDatasyncChunkSize() {
+        final URI versionServicePath;
 
         try {
-            versionServicePath = baseUri.setPath(datasyncBasePath + "/version.json").build();
+            versionServicePath = uri(datasyncBasePath + "/version.json");
         } catch (URISyntaxException e) {
             System.out.println("Couldn't construct version.json URI?  Using " + defaultChunkSize + " for the chunk-size");
-            return defaultChunkSize;
+            return Futures.immediateFuture(defaultChunkSize);
         }
 
-        while(true) {
-            try(CloseableHttpResponse response = http.get(versionServicePath, ContentType.APPLICATION_JSON.getMimeType())) {
-                return mapper.readValue(response.getEntity().getContent(), Version.class).maxBlockSize;
-            } catch (Exception e) {
-                retryCount += 1;
-                if(retryCount >= httpRetries) {
-                    // The next step will probably fail too if we can't even hit DI's version service,
-                    // but might as well soldier on regardless.
-                    System.out.println("Unable to detect chunk size; using " + defaultChunkSize);
-                    return defaultChunkSize;
+        return Retrier.get().submit(domain, httpRetries - 1, Backoff.DEFAULT, new Retrier.Attempt<Integer, IOException>() {
+            @Override
+            public Integer run() throws IOException {
+                try (CloseableHttpResponse response = http.get(versionServicePath, ContentType.APPLICATION_JSON.getMimeType())) {
+                    return mapper.readValue(response.getEntity().getContent(), Version.class).maxBlockSize;
                 }
             }
+        }, http.getExecutor());
+    }
+
+    private static long millisBetween(long startNanos, long endNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(endNanos - startNanos);
+    }
+
+    private static int awaitChunkSize(Future<Integer> chunkSize) {
+        try {
+            return chunkSize.get();
+        } catch (ExecutionException | InterruptedException e) {
+            if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+            // The next step will probably fail too if we can't even hit DI's version service,
+            // but might as well soldier on regardless.
+            System.out.println("Unable to detect chunk size; using " + defaultChunkSize);
+            return defaultChunkSize;
         }
     }
 
+
     /**
-     * Chunks up the signature patch file into ~4MB chunks and posts these to delta-importer-2
+     * Chunks up the signature patch file into ~4MB chunks and posts these to delta-importer-2.
+     * Up to blobUploadConcurrency chunks are posted at once; each is retried independently of the others.
+     * Chunks the manifest shows were already acknowledged aren't posted again, and each newly
+     * acknowledged chunk is recorded in it.  Each chunk is read into a buffer from the pool, posted
+     * straight from it, and the buffer returned once the chunk is acknowledged or given up on.
      * @param patchStream an inputStream to the patch
      * @param datasetId the 4x4 of the dataset being patched
-     * @return the list of blobIds corresponding to each successful post
+     * @param manifest the record of the chunks acknowledged so far
+     * @return the list of blobIds corresponding to each successful post, in the order the chunks appear in the patch
      */
-    private List<String> postPatchBlobs(InputStream patchStream, String datasetId, int chunkSize) throws
-            IOException, URISyntaxException, HttpException {
+    private List<String> postPatchBlobs(InputStream patchStream, String datasetId, int chunkSize,
+                                        UploadManifest manifest) throws
+            IOException, URISyntaxException, HttpException, InterruptedException {
         updateStatus("Chunking and posting the diff", 0, false, "");
         System.out.println("Creating the diff...");
 
-        URI postingPath = baseUri.setPath(datasyncPath + "/" + datasetId).build();
-        List<String> blobIds = new LinkedList<>();
-        byte[] bytes = new byte[chunkSize];
-        StatusLine statusLine;
-        int status;
+        URI postingPath = uri(datasyncPath + "/" + datasetId);
+        final Queue<Future<String>> completedUploads = new ConcurrentLinkedQueue<>();
+        final Semaphore window = new Semaphore(blobUploadConcurrency);
+        List<Future<String>> uploads = new ArrayList<>();
         int bytesRead;
+        int skipped = 0;
+        UploadTally tally = new UploadTally();
 
-        while ((bytesRead = Utils.readChunk(patchStream, bytes, 0, bytes.length)) != -1) {
-            System.out.println("\tUploading " + bytesRead + " bytes of the diff");
-            byte[] chunk = bytesRead == bytes.length ? bytes : Arrays.copyOf(bytes, bytesRead);
-            HttpEntity entity = EntityBuilder.create().setBinary(chunk).build();
-            int retries = 0;
-            do {
-                try(CloseableHttpResponse response = http.post(postingPath, entity)) {
-                    statusLine = response.getStatusLine();
-                    status = statusLine.getStatusCode();
-                    if (status != HttpStatus.SC_CREATED) {
-                        retries += 1;
-                    } else {
-                        String blobId = mapper.readValue(response.getEntity().getContent(), BlobId.class).blobId;
-                        blobIds.add(blobId);
+        try {
+            while (true) {
+                // wait for a free slot, surfacing the failure of any upload that has finished in the meantime
+                window.acquire();
+                Future<String> done;
+                while ((done = completedUploads.poll()) != null) awaitBlobId(done);
+
+                byte[] bytes = chunkBuffers.acquire(chunkSize);
+                bytesRead = Utils.readChunk(patchStream, bytes, 0, chunkSize);
+                if (bytesRead == -1) {
+                    chunkBuffers.release(bytes);
+                    window.release();
+                    break;
+                }
+                int index = uploads.size();
+                String uploaded = manifest.blobIdFor(index, bytes, bytesRead);
+                if (uploaded != null) {
+                    chunkBuffers.release(bytes);
+                    uploads.add(Futures.immediateFuture(uploaded));
+                    window.release();
+                    skipped += 1;
+                    continue;
+                }
+                System.out.println("\tUploading " + bytesRead + " bytes of the diff");
+                final BlobPoster poster = new BlobPoster(postingPath, bytes, bytesRead, index, manifest, tally);
+                // posted on HttpUtility's shared threads; a chunk waiting to be retried keeps its slot in the window, but no thread
+                final ListenableFuture<String> upload = Retrier.get().submit(domain, blobPostRetries, Backoff.DEFAULT,
+                        poster, http.getExecutor());
+                upload.addListener(new Runnable() {
+                    @Override
+                    public void run() {
+                        poster.finish();
+                        completedUploads.add(upload);
+                        window.release();
                     }
+                }, MoreExecutors.sameThreadExecutor());
+                uploads.add(upload);
+            }
+            if (skipped > 0) System.out.println("\tSkipped " + skipped + " chunks uploaded by an earlier attempt");
+
+            List<String> blobIds = new ArrayList<>(uploads.size());
+            for (Future<String> upload : uploads) {
+                blobIds.add(awaitBlobId(upload));
+            }
+            recordUploadBandwidth(uploads.size() - skipped, tally);
+            return blobIds;
+        } finally {
+            for (Future<String> upload : uploads) upload.cancel(false);
+            uploads.clear();
+        }
+    }
+
+    /**
+     * Remembers the upload bandwidth seen by this upload, for choosing how to compress the next.  Each
+     * post gets its share of the link while the others are in flight, so the aggregate bandwidth is the
+     * per-post rate times the number of posts that were in flight together.
+     */
+    private void recordUploadBandwidth(int posts, UploadTally tally) {
+        long nanos = tally.nanos.get();
+        if (posts == 0 || nanos == 0L) return;
+        double perPost = tally.bytes.get() * 1e9 / nanos;
+        CompressionPolicy.recordBandwidth(domain, perPost * Math.min(posts, blobUploadConcurrency));
+    }
+
+    /**
+     * The bytes posted by one upload's acknowledged chunks, and the time spent posting them.
+     */
+    private static class UploadTally {
+        final AtomicLong bytes = new AtomicLong();
+        final AtomicLong nanos = new AtomicLong();
+    }
+
+    /**
+     * Posts a single chunk of the patch once; the Retrier retries it if the post fails or isn't
+     * acknowledged with a 201.  The chunk is posted straight from its pooled buffer, which goes back
+     * to the pool once the upload is finished with and no attempt is still reading from it (an
+     * upload cancelled mid-post is finished with before its post is).
+     */
+    private class BlobPoster implements Retrier.Attempt<String, IOException> {
+        private final URI postingPath;
+        private final byte[] chunk;
+        private final int length;
+        private final int index;
+        private final UploadManifest manifest;
+        private final UploadTally tally;
+        private boolean retrying = false;
+        // guarded by this
+        private boolean posting = false;
+        private boolean finished = false;
+
+        BlobPoster(URI postingPath, byte[] chunk, int length, int index, UploadManifest manifest, UploadTally tally) {
+            this.postingPath = postingPath;
+            this.chunk = chunk;
+            this.length = length;
+            this.index = index;
+            this.manifest = manifest;
+            this.tally = tally;
+        }
+
+        @Override
+        public String run() throws IOException {
+            synchronized (this) {
+                if (finished) throw new IOException("The upload of chunk " + index + " was abandoned");
+                posting = true;
+            }
+            try {
+                return post();
+            } finally {
+                synchronized (this) {
+                    posting = false;
+                    if (finished) chunkBuffers.release(chunk);
                 }
-            } while (status != HttpStatus.SC_CREATED && retries < httpRetries);
-            //We hit the max number of retries without success and should throw an exception accordingly.
-            if (retries >= httpRetries) throw new HttpException(statusLine.toString());
-            updateStatus("Uploading file", 0, false, bytesRead + " bytes");
-            System.out.println("\tUploaded " + bytesRead + " bytes");
+            }
+        }
+
+        /**
+         * Called once the upload has succeeded, failed for good or been cancelled.
+         */
+        synchronized void finish() {
+            if (finished) return;
+            finished = true;
+            if (!posting) chunkBuffers.release(chunk);
+        }
+
+        private String post() throws IOException {
+            if (retrying) HttpMetrics.get().recordRetry("POST", postingPath.toString());
+            retrying = true;
+            HttpEntity entity = new ByteArrayEntity(chunk, 0, length);
+            long start = System.nanoTime();
+            try (CloseableHttpResponse response = http.postOnce(postingPath, entity)) {
+                StatusLine statusLine = response.getStatusLine();
+                if (RateLimiter.isThrottled(response))
+                    throw new Retrier.ThrottledException(statusLine.toString(), RateLimiter.retryAfterMillis(response));
+                if (statusLine.getStatusCode() != HttpStatus.SC_CREATED)
+                    throw new Retrier.RetryableException(statusLine.toString());
+                tally.nanos.addAndGet(System.nanoTime() - start);
+                tally.bytes.addAndGet(length);
+                String blobId = mapper.readValue(response.getEntity().getContent(), BlobId.class).blobId;
+                manifest.record(index, chunk, length, blobId);
+                updateStatus("Uploading file", 0, false, length + " bytes");
+                System.out.println("\tUploaded " + length + " bytes");
+                return blobId;
+            }
+        }
+    }
+
+    private static String awaitBlobId(Future<String> upload) throws
+            IOException, HttpException, InterruptedException {
+        try {
+            return upload.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof HttpException) throw (HttpException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IOException(cause);
         }
-        return blobIds;
     }
 
 
@@ -310,36 +759,46 @@ public class DeltaImporter2Publisher implements AutoCloseable {
      * @param datasetId the 4x4 of the dataset to which the blobs belong
      * @return the jobId of the job applying the diff
      */
-    private String commitStandardJob(final CommitMessage<ControlFile> msg, final String datasetId, final String uuid) throws URISyntaxException, IOException, CompletelyRestartJob {
+    private String commitStandardJob(final CommitMessage<ControlFile> msg, final String datasetId, final String uuid) throws URISyntaxException, IOException, CompletelyRestartJob, InterruptedException {
         updateStatus("Commiting the job", 0, false, "");
         System.out.println("Committing the job");
-        final URI committingPath = baseUri.setPath(datasyncPath + "/" + datasetId + commitPath).build();
+        final URI committingPath = uri(datasyncPath + "/" + datasetId + commitPath);
         return commitGenericJob(msg, committingPath, datasetId, uuid);
     }
 
-    private String commitPortJob(final CommitMessage<PortControlFile> msg, final String datasetId, final String uuid) throws URISyntaxException, IOException, CompletelyRestartJob {
+    private String commitPortJob(final CommitMessage<PortControlFile> msg, final String datasetId, final String uuid) throws URISyntaxException, IOException, CompletelyRestartJob, InterruptedException {
         System.out.println("Committing the port job");
-        final URI committingPath = baseUri.setPath(datasyncPath + "/" + datasetId + portPath).build();
+        final URI committingPath = uri(datasyncPath + "/" + datasetId + portPath);
         return commitGenericJob(msg, committingPath, datasetId, uuid);
     }
 
-    private <T> String commitGenericJob(final CommitMessage<T> msg, final URI committingPath, final String datasetId, final String uuid) throws URISyntaxException, IOException, CompletelyRestartJob {
+    private <T> String commitGenericJob(final CommitMessage<T> msg, final URI committingPath, final String datasetId, final String uuid) throws URISyntaxException, IOException, CompletelyRestartJob, InterruptedException {
 
         // This is kinda ugly (kinda?) -- since this request isn't idempotent, we're handling retry logic ourselves
         // with checks to make sure that the request didn't actually go through on a failure.
         class PostStateMachine {
             String jobId = null;
             IOException lastPostException = null;
+            Retrier.ThrottledException throttled = null;
+            boolean compressed = false;
+            boolean refusedCompression = false;
             int retries = 0;
+            int throttledWaits = 0;
 
             void go() throws IOException, URISyntaxException, CompletelyRestartJob {
+                throttled = null;
+                refusedCompression = false;
                 String e = mapper.writeValueAsString(msg);
                 System.out.println(e);
-                StringEntity entity = new StringEntity(e, ContentType.APPLICATION_JSON);
+                // the control file makes the message large, and it gzips well
+                HttpEntity entity = RequestCompression.get().compress(domain, new StringEntity(e, ContentType.APPLICATION_JSON));
+                compressed = RequestCompression.isCompressed(entity);
                 try (CloseableHttpResponse response = doPost(entity)) {
                     if(response == null) handleIOErrorPath();
                     else handleHttpResponsePath(response);
                 }
+                // turned away before being looked at, so it's sent again straight away, uncompressed
+                if (refusedCompression) go();
             }
 
             CloseableHttpResponse doPost(HttpEntity entity) {
@@ -374,7 +833,13 @@ public class DeltaImporter2Publisher implements AutoCloseable {
             void handleHttpResponsePath(CloseableHttpResponse response) throws IOException, URISyntaxException, CompletelyRestartJob {
                 StatusLine statusLine = response.getStatusLine();
                 int status = statusLine.getStatusCode();
-                if (status != HttpStatus.SC_OK) {
+                if (RateLimiter.isThrottled(response)) {
+                    // turned away before being looked at, so it's sent again without counting as a retry
+                    throttled = new Retrier.ThrottledException(statusLine.toString(), RateLimiter.retryAfterMillis(response));
+                    if(throttledWaits++ >= commitThrottledWaits) throw throttled;
+                } else if (compressed && RequestCompression.get().recordResponse(domain, status)) {
+                    refusedCompression = true;
+                } else if (status != HttpStatus.SC_OK) {
                     DI2Error error = null;
                     if(status == HttpStatus.SC_BAD_REQUEST) {
                         try {
@@ -422,99 +887,116 @@ public class DeltaImporter2Publisher implements AutoCloseable {
             }
         }
         PostStateMachine psm = new PostStateMachine();
-        do {
+        psm.go();
+        while (psm.jobId == null) {
+            // the state machine decides when to give up; this only spaces out the attempts it allows
+            long delay;
+            if (psm.throttled != null) {
+                // wait out the Retry-After the RateLimiter is holding the domain back for, backing off if there wasn't one
+                long retryAfter = psm.throttled.getRetryAfterMillis();
+                delay = retryAfter >= 0 ? retryAfter : Backoff.DEFAULT.delayMillis(psm.throttledWaits - 1);
+                System.err.println("Commit throttled: " + psm.throttled.getMessage() + ".  Sending it again in " + delay + " ms");
+            } else {
+                delay = Backoff.DEFAULT.delayMillis(psm.retries);
+                System.err.println("Commit not accepted.  Checking and sending it again in " + delay + " ms");
+            }
+            Thread.sleep(delay);
             psm.go();
-        } while (psm.jobId == null);
+        }
         System.out.println("Diff was successfully committed: job ID is " + psm.jobId);
         return psm.jobId;
     }
 
     /**
-     * Requests the job status for the given jobId associated with given datasetId
+     * Waits for the job with the given jobId associated with given datasetId to finish
      * @param datasetId the 4x4 of the dataset which was (to be) replaced
      * @param jobId the jobId returned from a succesful commit post
      * @return either success or a publish error
      */
-    private JobStatus getJobStatus(String datasetId, String jobId) throws
+    private JobResult getJobStatus(String datasetId, String jobId) throws
             URISyntaxException, IOException, InterruptedException, HttpException {
-        JobStatus jobStatus = null;
-        StatusResponse status = null;
-        StatusLine statusLine = null;
-        URI statusUri = baseUri.setPath(datasyncPath + "/" + datasetId + statusPath + "/" + jobId + ".json").build();
-        URI logUri = baseUri.setPath(datasyncPath + "/" + datasetId + logPath + "/" + jobId + ".json").build();
-        int retries = 0;
-        while (jobStatus == null && retries < httpRetries) {
-            try(CloseableHttpResponse response = http.get(statusUri, ContentType.APPLICATION_JSON.getMimeType())) {
-                statusLine = response.getStatusLine();
-                int statusCode = statusLine.getStatusCode();
-                if (statusCode == HttpStatus.SC_OK) {
-                    retries = 0; // we got one, so reset the retry count.
-                    status = mapper.readValue(IOUtils.toString(response.getEntity().getContent()), StatusResponse.class);
-                    System.out.println("Polling the job status: " + status.english);
-                    if(status.type.equals("read-input-rows")) {
-                        long rows = ((Number)status.data.get("rows")).longValue();
-                        long total = ((Number)status.data.get("total")).longValue();
-                        int percent = (int)(rows * 100 / total);
-                        updateStatus("Reading Rows from File...", percent, true, "");
-                    } else if(status.type.equals("read-dataset-rows")) {
-                        Object rows = status.data.get("rows");
-                        updateStatus("Reading Rows from Dataset...", 0, false, rows + " rows");
-                    } else if(status.type.equals("applying-diff")) {
-                        Object bytes = status.data.get("bytesWritten");
-                        updateStatus("Applying diff...", 0, false, bytes + " bytes");
-                    } else if(status.type.equals("counting-records")) {
-                        Object records = status.data.get("recordsFound");
-                        updateStatus("Counting records...", 0, false, records + " records");
-                    } else if(status.type.equals("computing-upsert")) {
-                        Object inserts = status.data.get("inserts");
-                        Object updates = status.data.get("updates");
-                        Object deletes = status.data.get("deletes");
-                        updateStatus("Counting upsert...", 0, false, inserts + " inserts, " + updates + " updates, " + deletes + " deletes");
-                    } else if(status.type.equals("uploading-upsert")) {
-                        long bytes = ((Number)status.data.get("sentBytes")).longValue();
-                        long total = ((Number)status.data.get("totalBytes")).longValue();
-                        int percent = (int)(bytes * 100 / total);
-                        updateStatus("Uploading Upsert Script...", percent, true, "");
-                    } else if(status.type.equals("storing-completed")) {
-                        long bytes = ((Number)status.data.get("bytesWritten")).longValue();
-                        long total = ((Number)status.data.get("totalBytes")).longValue();
-                        int percent = (int)(bytes * 100 / total);
-                        updateStatus("Storing File...", percent, true, "");
-                    } else if(status.english.startsWith("SUCCESS")) {
-                        updateStatus("Processing...", 0, false, "");
-                        jobStatus = JobStatus.SUCCESS;
-                        break;
-                    } else if(status.english.startsWith("FAILURE")) {
-                        updateStatus("Processing...", 0, false, "");
-                        jobStatus = JobStatus.PUBLISH_ERROR;
-                        break;
-                    } else {
-                        updateStatus(status.english, 0, false, "");
-                    }
-                    Thread.sleep(1000);
-                } else if (statusCode == HttpStatus.SC_BAD_GATEWAY || statusCode == HttpStatus.SC_SERVICE_UNAVAILABLE) {
-                    // No-penalty retry; we're willing to keep doing this forever
-                    Thread.sleep(1000);
-                } else if (statusCode != HttpStatus.SC_NOT_MODIFIED) {
-                    retries += 1;
-                    Thread.sleep(1000);
-                }
-            }
-        }
-        if (jobStatus == null) {
-            throw new HttpException(statusLine.toString());
+        try {
+            return trackJob(datasetId, jobId).get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof HttpException) throw (HttpException) cause;
+            if (cause instanceof IOException) throw (IOException) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IOException(cause);
         }
-        jobStatus.setMessage(status.english + "(jobId:" + jobId + ")");
-        if(!jobStatus.isError()) loadStatusWithCRUD(jobStatus, logUri);
-        return jobStatus;
     }
 
+    /**
+     * Follows the job with the given jobId associated with given datasetId until it finishes,
+     * without holding up the calling thread; progress is reported as it is polled.
+     * @param datasetId the 4x4 of the dataset which was (to be) replaced
+     * @param jobId the jobId returned from a succesful commit post
+     * @return a future completed with either success or a publish error, or failed with an
+     * HttpException if the job's status can't be had
+     */
+    public ListenableFuture<JobResult> trackJob(String datasetId, final String jobId) throws URISyntaxException {
+        URI statusUri = uri(datasyncPath + "/" + datasetId + statusPath + "/" + jobId + ".json");
+        final URI logUri = uri(datasyncPath + "/" + datasetId + logPath + "/" + jobId + ".json");
+        return Futures.transform(JobStatusPoller.get().poll(http, statusUri, statusEvents), new Function<StatusResponse, JobResult>() {
+            @Override
+            public JobResult apply(StatusResponse status) {
+                JobStatus code = status.english.startsWith("SUCCESS") ? JobStatus.SUCCESS : JobStatus.PUBLISH_ERROR;
+                JobResult result = JobResult.of(code, status.english + "(jobId:" + jobId + ")");
+                return result.isError() ? result : loadStatusWithCRUD(result, logUri);
+            }
+        });
+    }
+
+    /**
+     * Reports each new job status as it is polled.
+     */
+    private final JobStatusPoller.Listener statusEvents = new JobStatusPoller.Listener() {
+        @Override
+        public void onStatus(StatusResponse status) {
+            System.out.println("Polling the job status: " + status.english);
+            if(status.type.equals("read-input-rows")) {
+                long rows = ((Number)status.data.get("rows")).longValue();
+                long total = ((Number)status.data.get("total")).longValue();
+                int percent = (int)(rows * 100 / total);
+                updateStatus("Reading Rows from File...", percent, true, "");
+            } else if(status.type.equals("read-dataset-rows")) {
+                Object rows = status.data.get("rows");
+                updateStatus("Reading Rows from Dataset...", 0, false, rows + " rows");
+            } else if(status.type.equals("applying-diff")) {
+                Object bytes = status.data.get("bytesWritten");
+                updateStatus("Applying diff...", 0, false, bytes + " bytes");
+            } else if(status.type.equals("counting-records")) {
+                Object records = status.data.get("recordsFound");
+                updateStatus("Counting records...", 0, false, records + " records");
+            } else if(status.type.equals("computing-upsert")) {
+                Object inserts = status.data.get("inserts");
+                Object updates = status.data.get("updates");
+                Object deletes = status.data.get("deletes");
+                updateStatus("Counting upsert...", 0, false, inserts + " inserts, " + updates + " updates, " + deletes + " deletes");
+            } else if(status.type.equals("uploading-upsert")) {
+                long bytes = ((Number)status.data.get("sentBytes")).longValue();
+                long total = ((Number)status.data.get("totalBytes")).longValue();
+                int percent = (int)(bytes * 100 / total);
+                updateStatus("Uploading Upsert Script...", percent, true, "");
+            } else if(status.type.equals("storing-completed")) {
+                long bytes = ((Number)status.data.get("bytesWritten")).longValue();
+                long total = ((Number)status.data.get("totalBytes")).longValue();
+                int percent = (int)(bytes * 100 / total);
+                updateStatus("Storing File...", percent, true, "");
+            } else if(status.english.startsWith("SUCCESS") || status.english.startsWith("FAILURE")) {
+                updateStatus("Processing...", 0, false, "");
+            } else {
+                updateStatus(status.english, 0, false, "");
+            }
+        }
+    };
+
     private void updateStatus(String loadingLabel, int progressPercent, boolean showProgress, String message) {
         SimpleIntegrationWizard.updateStatus(loadingLabel, progressPercent, showProgress, message);
     }
 
     private Commital getJobCommitment(String datasetId, String uuid) throws URISyntaxException {
-        URI logUri = baseUri.setPath(datasyncPath + "/" + datasetId + logPath + "/index.json").build();
+        URI logUri = uri(datasyncPath + "/" + datasetId + logPath + "/index.json");
         try(CloseableHttpResponse response = http.get(logUri, ContentType.APPLICATION_JSON.getMimeType())) {
             int statusCode = response.getStatusLine().getStatusCode();
             if (statusCode == HttpStatus.SC_OK) {
@@ -540,7 +1022,7 @@ public class DeltaImporter2Publisher implements AutoCloseable {
     }
 
     private Commitment isJobCommitted(String datasetId, String jobId) throws URISyntaxException {
-        URI logUri = baseUri.setPath(datasyncPath + "/" + datasetId + logPath + "/" + jobId + ".json").build();
+        URI logUri = uri(datasyncPath + "/" + datasetId + logPath + "/" + jobId + ".json");
         try(CloseableHttpResponse response = http.get(logUri, ContentType.APPLICATION_JSON.getMimeType())) {
             int statusCode = response.getStatusLine().getStatusCode();
             if (statusCode == HttpStatus.SC_OK) {
@@ -561,27 +1043,25 @@ public class DeltaImporter2Publisher implements AutoCloseable {
     }
 
 
-    private void loadStatusWithCRUD(JobStatus status, URI logUri) {
+    /**
+     * @return the given result with the counts of rows created, updated and deleted from the job's log,
+     * if they can be had
+     */
+    private JobResult loadStatusWithCRUD(JobResult result, URI logUri) {
         try(CloseableHttpResponse response = http.get(logUri, ContentType.APPLICATION_JSON.getMimeType())) {
             int statusCode = response.getStatusLine().getStatusCode();
             if (statusCode == HttpStatus.SC_OK) {
-                // The payload that we get back from DI2 may change over time.  Since we are only looking at the delta
-                // section, disable the strict parsing.
-                mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-                LogItem[] deltaLog = mapper.readValue(response.getEntity().getContent(), LogItem[].class);
+                LogItem[] deltaLog = lenientMapper.readValue(response.getEntity().getContent(), LogItem[].class);
                 LogItem deltas = getLogItem(deltaLog, finishedLogKey);
-                if (deltas != null) {
-                    status.rowsCreated = deltas.getInserted();
-                    status.rowsUpdated = deltas.getUpdated();
-                    status.rowsDeleted = deltas.getDeleted();
-                    status.errors = deltas.getErrors();
-                }
+                if (deltas != null)
+                    return result.withRowCounts(deltas.getInserted(), deltas.getUpdated(), deltas.getDeleted(), deltas.getErrors());
             } else {
                 System.err.println("Unable to parse out CRUD details from logs");
             }
         } catch (IOException e) {
             System.err.println("Unable to parse out CRUD details from logs");
         }
+        return result;
     }
 
     private InputStream getNullSignature() throws IOException, NoSuchAlgorithmException {
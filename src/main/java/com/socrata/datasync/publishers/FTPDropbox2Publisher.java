@@ -2,6 +2,7 @@ package com.socrata.datasync.publishers;
 
 import com.socrata.datasync.HttpUtility;
 import com.socrata.datasync.VersionProvider;
+import com.socrata.datasync.job.JobResult;
 import com.socrata.datasync.job.JobStatus;
 import com.socrata.datasync.SocrataConnectionInfo;
 import com.socrata.datasync.Utils;
@@ -58,18 +59,16 @@ public class FTPDropbox2Publisher {
      * @param datasetId id of the Socrata dataset to publish to
      * @param csvOrTsvFile file to publish containing data in comma- or tab- separated values (CSV or TSV) format
      * @param controlFile Control.json file to configure FTP dropbox v2
-     * @return JobStatus containing success or error information
+     * @return JobResult containing success or error information
      */
-    public static JobStatus publishViaFTPDropboxV2(final UserPreferences userPrefs, final String datasetId,
+    public static JobResult publishViaFTPDropboxV2(final UserPreferences userPrefs, final String datasetId,
                                                    final File csvOrTsvFile, final File controlFile) {
         try {
             InputStream inputControlFile = new FileInputStream(controlFile);
             return publishViaFTPDropboxV2(userPrefs, datasetId, csvOrTsvFile, inputControlFile);
         } catch (Exception e) {
             e.printStackTrace();
-            JobStatus status = JobStatus.PUBLISH_ERROR;
-            status.setMessage("Error uploading control file: " + e.getMessage());
-            return status;
+            return JobResult.of(JobStatus.PUBLISH_ERROR, "Error uploading control file: " + e.getMessage());
         }
     }
 
@@ -81,18 +80,16 @@ public class FTPDropbox2Publisher {
      * @param datasetId id of the Socrata dataset to publish to
      * @param csvOrTsvFile file to publish containing data in comma- or tab- separated values (CSV or TSV) format
      * @param controlFileContent content of Control file to configure FTP dropbox v2
-     * @return JobStatus containing success or error information
+     * @return JobResult containing success or error information
      */
-    public static JobStatus publishViaFTPDropboxV2(final UserPreferences userPrefs, final String datasetId,
+    public static JobResult publishViaFTPDropboxV2(final UserPreferences userPrefs, final String datasetId,
                                                    final File csvOrTsvFile, final String controlFileContent) {
         try {
             InputStream inputControlFile = new ByteArrayInputStream(controlFileContent.getBytes("UTF-8"));
             return publishViaFTPDropboxV2(userPrefs, datasetId, csvOrTsvFile, inputControlFile);
         } catch (Exception e) {
             e.printStackTrace();
-            JobStatus status = JobStatus.PUBLISH_ERROR;
-            status.setMessage("Error uploading control file content: " + e.getMessage());
-            return status;
+            return JobResult.of(JobStatus.PUBLISH_ERROR, "Error uploading control file content: " + e.getMessage());
         }
     }
 
@@ -104,19 +101,18 @@ public class FTPDropbox2Publisher {
      * @param datasetId id of the Socrata dataset to publish to
      * @param csvOrTsvFile file to publish containing data in comma- or tab- separated values (CSV or TSV) format
      * @param inputControlFile  stream of control.json file content
-     * @return JobStatus containing success or error information
+     * @return JobResult containing success or error information
      */
-    private static JobStatus publishViaFTPDropboxV2(final UserPreferences userPrefs, final String datasetId,
+    private static JobResult publishViaFTPDropboxV2(final UserPreferences userPrefs, final String datasetId,
                                                     final File csvOrTsvFile, final InputStream inputControlFile) {
-        JobStatus status = JobStatus.PUBLISH_ERROR;
+        JobResult status = JobResult.of(JobStatus.PUBLISH_ERROR);
 
         String ftpHost;
         try {
             ftpHost = getFTPHost(userPrefs);
         } catch (Exception e) {
             e.printStackTrace();
-            status.setMessage("Error obtaining FTP host: " + e.getMessage());
-            return status;
+            return status.withMessage("Error obtaining FTP host: " + e.getMessage());
         }
 
         FTPSClient ftp = null;
@@ -141,8 +137,7 @@ public class FTPDropbox2Publisher {
                     }
                 }
                 if (++tryCount > maxTries) {
-                    status.setMessage("FTP server refused connection (connection timeout).");
-                    return status;
+                    return status.withMessage("FTP server refused connection (connection timeout).");
                 }
             } while(!connectionSuccessful);
             // END connection retry logic
@@ -174,9 +169,8 @@ public class FTPDropbox2Publisher {
                     boolean datasetDirCreated = ftp.makeDirectory(pathToDatasetDir);
                     if(!datasetDirCreated) {
                         closeFTPConnection(ftp);
-                        status.setMessage("Error creating dataset ID directory at" +
+                        return status.withMessage("Error creating dataset ID directory at" +
                                 " '" + pathToDatasetDir + "': " + ftp.getReplyString());
-                        return status;
                     }
                 }
 
@@ -184,8 +178,7 @@ public class FTPDropbox2Publisher {
                 String controlFileRequestId = setFTPRequestId(ftp, pathToDomainRoot + "/" + FTP_REQUEST_ID_FILENAME);
                 if(controlFileRequestId.startsWith(FAILURE_PREFIX)) {
                     closeFTPConnection(ftp);
-                    status.setMessage("Error setting request Id: " + controlFileRequestId);
-                    return status;
+                    return status.withMessage("Error setting request Id: " + controlFileRequestId);
                 }
                 // for tracking DataSync version
                 recordDataSyncVersion(ftp, pathToDomainRoot + "/" + FTP_DATASYNC_VERSION_FILENAME);
@@ -196,16 +189,14 @@ public class FTPDropbox2Publisher {
                 inputControlFile.close();
                 if(!controlResponse.equals(SUCCESS_PREFIX)) {
                     closeFTPConnection(ftp);
-                    status.setMessage("Error uploading control file: " + controlResponse);
-                    return status;
+                    return status.withMessage("Error uploading control file: " + controlResponse);
                 }
                 // ensure control.json was uploaded without issues
                 String controlFileUploadStatus = pollUploadStatus(
                         ftp, pathToDatasetDir + "/" + FTP_STATUS_FILENAME, controlFileRequestId);
                 if(!controlFileUploadStatus.startsWith(SUCCESS_PREFIX)) {
                     closeFTPConnection(ftp);
-                    status.setMessage("Error uploading control file: " + controlFileUploadStatus);
-                    return status;
+                    return status.withMessage("Error uploading control file: " + controlFileUploadStatus);
                 }
 
                 System.out.println("Publishing entire file via FTPS...");
@@ -213,8 +204,7 @@ public class FTPDropbox2Publisher {
                 String csvOrTsvFileRequestId = setFTPRequestId(ftp, pathToDomainRoot + "/" + FTP_REQUEST_ID_FILENAME);
                 if(csvOrTsvFileRequestId.startsWith(FAILURE_PREFIX)) {
                     closeFTPConnection(ftp);
-                    status.setMessage("Error setting request Id: " + csvOrTsvFileRequestId);
-                    return status;
+                    return status.withMessage("Error setting request Id: " + csvOrTsvFileRequestId);
                 }
 
                 // attempt to gzip CSV/TSV file before uploading
@@ -242,34 +232,29 @@ public class FTPDropbox2Publisher {
                     fileToUpload.delete();
                 if(!dataFileResponse.equals(SUCCESS_PREFIX)) {
                     closeFTPConnection(ftp);
-                    status.setMessage(dataFileResponse);
-                    return status;
+                    return status.withMessage(dataFileResponse);
                 }
 
                 // Poll upload status until complete
                 String dataFileUploadStatus = pollUploadStatus(
                         ftp, pathToDatasetDir + "/" + FTP_STATUS_FILENAME, csvOrTsvFileRequestId);
                 if(!dataFileUploadStatus.startsWith(SUCCESS_PREFIX)) {
-                    status.setMessage(dataFileUploadStatus);
-                    return status;
+                    return status.withMessage(dataFileUploadStatus);
                 }
             } else {
-                status.setMessage("FTP server refused connection (check your username and password).");
-                return status;
+                return status.withMessage("FTP server refused connection (check your username and password).");
             }
         } catch(IOException e) {
             e.printStackTrace();
-            status.setMessage("FTP error: " + e.getMessage());
-            return status;
+            return status.withMessage("FTP error: " + e.getMessage());
         } catch (NoSuchAlgorithmException e) {
             e.printStackTrace();
-            status.setMessage("Java error: " + e.getMessage());
-            return status;
+            return status.withMessage("Java error: " + e.getMessage());
         } finally {
             if(ftp != null)
                 closeFTPConnection(ftp);
         }
-        return JobStatus.SUCCESS;
+        return JobResult.of(JobStatus.SUCCESS);
     }
 
     /**
@@ -4,6 +4,7 @@ import com.socrata.datasync.SocrataConnectionInfo;
 import com.socrata.datasync.config.userpreferences.UserPreferences;
 import com.socrata.datasync.imports2.*;
 import com.socrata.datasync.job.GISJob;
+import com.socrata.datasync.job.JobResult;
 import com.socrata.datasync.job.JobStatus;
 import com.socrata.datasync.HttpUtility;
 
@@ -31,7 +32,7 @@ public class GISPublisher {
     private static final Logger logging = Logger.getLogger(GISJob.class.getName());
     private static String ticket = "";
 
-    public static JobStatus replaceGeo(File file,
+    public static JobResult replaceGeo(File file,
                                        SocrataConnectionInfo connectionInfo,
                                        String datasetID,
                                        Map<String, String> layerMap,
@@ -42,13 +43,11 @@ public class GISPublisher {
             return replaceGeoFile(blueprint, file, userPrefs, connectionInfo, datasetID, layerMap);
         } catch (IOException e) {
             String message = e.getMessage();
-            JobStatus status = JobStatus.PUBLISH_ERROR;
-            status.setMessage(message);
-            return status;
+            return JobResult.of(JobStatus.PUBLISH_ERROR, message);
         }
     }
 
-    private static JobStatus replaceGeoFile(Blueprint blueprint,
+    private static JobResult replaceGeoFile(Blueprint blueprint,
                                             File file,
                                             UserPreferences userPrefs,
                                             SocrataConnectionInfo connectionInfo,
@@ -58,9 +57,7 @@ public class GISPublisher {
             if (blueprint.getError() != null) {
                 String message = blueprint.getError().getMessage();
                 System.out.println(message);
-                JobStatus status = JobStatus.PUBLISH_ERROR;
-                status.setMessage(message);
-                return status;
+                return JobResult.of(JobStatus.PUBLISH_ERROR, message);
             }
 
             ObjectMapper mapper = new ObjectMapper();
@@ -78,9 +75,7 @@ public class GISPublisher {
             return postReplaceGeoFile(uri, connectionInfo, userPrefs);
         } catch (IOException e) {
             String message = e.getMessage();
-            JobStatus status = JobStatus.PUBLISH_ERROR;
-            status.setMessage(message);
-            return status;
+            return JobResult.of(JobStatus.PUBLISH_ERROR, message);
         }
     }
 
@@ -92,7 +87,7 @@ public class GISPublisher {
         }
     }
 
-    private static JobStatus postReplaceGeoFile(URI uri,
+    private static JobResult postReplaceGeoFile(URI uri,
                                                 SocrataConnectionInfo connectionInfo,
                                                 UserPreferences userPrefs) {
         HttpUtility httpUtility = new HttpUtility(userPrefs, true, 3, 2);
@@ -111,10 +106,8 @@ public class GISPublisher {
             boolean error = (boolean) resJson.get("error");
 
             if (error) {
-                JobStatus s = JobStatus.PUBLISH_ERROR;
                 String error_message = (String) resJson.get("message");
-                s.setMessage(error_message);
-                return s;
+                return JobResult.of(JobStatus.PUBLISH_ERROR, error_message);
             }
 
             ticket = resJson.get("ticket").toString();
@@ -127,13 +120,11 @@ public class GISPublisher {
             }
         } catch (IOException | ParseException e) {
             String message = e.getMessage();
-            JobStatus status = JobStatus.PUBLISH_ERROR;
-            status.setMessage(message);
-            return status;
+            return JobResult.of(JobStatus.PUBLISH_ERROR, message);
         }
     }
 
-    private static JobStatus pollForStatus(String ticket, UserPreferences userPrefs, SocrataConnectionInfo connectionInfo, boolean complete) throws InterruptedException {
+    private static JobResult pollForStatus(String ticket, UserPreferences userPrefs, SocrataConnectionInfo connectionInfo, boolean complete) throws InterruptedException {
         if (!complete) {
             URI status_url = makeUri(connectionInfo.getUrl(), "status", ticket);
             String[] status = getStatus(status_url, userPrefs);
@@ -141,19 +132,17 @@ public class GISPublisher {
             Thread.sleep(1000);
 
             if (status[0].equals("Complete")) {
-                return JobStatus.SUCCESS;
+                return JobResult.of(JobStatus.SUCCESS);
             }
 
             if (status[0].equals("Error")) {
-                JobStatus s = JobStatus.PUBLISH_ERROR;
-                s.setMessage(status[1]);
-                return s;
+                return JobResult.of(JobStatus.PUBLISH_ERROR, status[1]);
             }
 
             pollForStatus(ticket, userPrefs, connectionInfo, false);
         }
 
-        return JobStatus.SUCCESS;
+        return JobResult.of(JobStatus.SUCCESS);
     }
 
     private static String[] getStatus(URI uri,
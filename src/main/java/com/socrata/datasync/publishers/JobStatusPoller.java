@@ -0,0 +1,206 @@
+package com.socrata.datasync.publishers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.socrata.datasync.HttpUtility;
+import org.apache.http.Header;
+import org.apache.http.HttpException;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.entity.ContentType;
+import org.apache.http.message.BasicHeader;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Polls delta-importer-2 job statuses until the jobs finish, without tying up a thread per job:
+ * each poll is a task on a small shared scheduler whose request is made on HttpUtility's shared
+ * threads, so the scheduler's threads only ever wait for the next poll to be due, and one of them
+ * can follow hundreds of jobs at once.  Each job is polled with a conditional GET against the ETag of the last status seen,
+ * and the delay between polls grows while the status stays the same, whether the server says so
+ * with a 304 or, lacking ETags, sends the same status again (with jitter, so many jobs started
+ * together don't poll in lockstep), going back to the shortest as soon as it changes.
+ *
+ * Every publisher in the process shares the instance from {@link #get}, whose one thread follows
+ * all their jobs; each poll is made with the HttpUtility, and so the credentials, of the job's own
+ * publisher.
+ */
+public class JobStatusPoller implements AutoCloseable {
+    public static final long DEFAULT_INITIAL_DELAY_MS = 500;
+    public static final long DEFAULT_MAX_DELAY_MS = 30000;
+    private static final double backoffFactor = 1.5;
+    private static final int httpRetries = 3;
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final JobStatusPoller instance = new JobStatusPoller(1, DEFAULT_INITIAL_DELAY_MS, DEFAULT_MAX_DELAY_MS);
+
+    /**
+     * Told of each new status of a job as it is seen, including the final one; a status the same as
+     * the last isn't told again.
+     */
+    public interface Listener {
+        void onStatus(StatusResponse status);
+    }
+
+    private final ScheduledExecutorService scheduler;
+    private final long initialDelayMs;
+    private final long maxDelayMs;
+    private final Random random = new Random();
+
+    /**
+     * @return the poller shared by the whole process, which is never closed
+     */
+    public static JobStatusPoller get() {
+        return instance;
+    }
+
+    /**
+     * @param threads the number of threads polls are scheduled on
+     * @param initialDelayMs the delay between polls after the status changes
+     * @param maxDelayMs the longest the delay between polls grows to while the status doesn't change
+     */
+    public JobStatusPoller(int threads, long initialDelayMs, long maxDelayMs) {
+        this.scheduler = Executors.newScheduledThreadPool(threads,
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("Job status poller %d").build());
+        this.initialDelayMs = initialDelayMs;
+        this.maxDelayMs = maxDelayMs;
+    }
+
+    /**
+     * Starts following a job.
+     * @param http the HttpUtility to poll with
+     * @param statusUri the uri of the job's status, i.e. /datasync/id/{4x4}/status/{jobId}.json
+     * @param listener told of each new status, on one of HttpUtility's threads; may be null
+     * @return a future completed with the job's final status (whose english begins with SUCCESS or
+     * FAILURE), or failed with an HttpException if the status can't be had
+     */
+    public ListenableFuture<StatusResponse> poll(HttpUtility http, URI statusUri, Listener listener) {
+        Poll poll = new Poll(http, statusUri, listener);
+        scheduler.execute(poll);
+        return poll.result;
+    }
+
+    /**
+     * Stops polling; only for a poller of one's own, not the shared one.
+     */
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * @return the delay before the next poll, given the delay before the last one: backoffFactor
+     * times as long, up to maxDelayMs
+     */
+    long nextDelay(long lastDelay) {
+        return Math.min(maxDelayMs, Math.max(initialDelayMs, (long) (lastDelay * backoffFactor)));
+    }
+
+    /**
+     * @return somewhere between half and all of the given delay
+     */
+    long jitter(long delay) {
+        synchronized (random) {
+            return delay / 2 + (long) (random.nextDouble() * (delay - delay / 2));
+        }
+    }
+
+    private static boolean sameStatus(StatusResponse a, StatusResponse b) {
+        return a != null && b != null && Objects.equals(a.type, b.type) && Objects.equals(a.english, b.english) &&
+                Objects.equals(a.data, b.data);
+    }
+
+    private class Poll implements Runnable, FutureCallback<CloseableHttpResponse> {
+        private final HttpUtility http;
+        private final URI statusUri;
+        private final Listener listener;
+        private final SettableFuture<StatusResponse> result = SettableFuture.create();
+        private String etag = null;
+        private StatusResponse last = null;
+        private long delay = 0;
+        private int retries = 0;
+
+        Poll(HttpUtility http, URI statusUri, Listener listener) {
+            this.http = http;
+            this.statusUri = statusUri;
+            this.listener = listener;
+        }
+
+        @Override
+        public void run() {
+            if (result.isCancelled()) return;
+            Header[] conditions = etag == null ? new Header[0] :
+                    new Header[] { new BasicHeader(HttpHeaders.IF_NONE_MATCH, etag) };
+            Futures.addCallback(http.getAsync(statusUri, ContentType.APPLICATION_JSON.getMimeType(), conditions), this);
+        }
+
+        @Override
+        public void onSuccess(CloseableHttpResponse response) {
+            try (CloseableHttpResponse closing = response) {
+                int statusCode = response.getStatusLine().getStatusCode();
+                if (statusCode == HttpStatus.SC_OK) {
+                    retries = 0; // we got one, so reset the retry count.
+                    StatusResponse status = mapper.readValue(response.getEntity().getContent(), StatusResponse.class);
+                    Header newEtag = response.getFirstHeader(HttpHeaders.ETAG);
+                    etag = newEtag == null ? null : newEtag.getValue();
+                    boolean changed = !sameStatus(last, status);
+                    last = status;
+                    if (changed && listener != null) listener.onStatus(status);
+                    if (status.english != null &&
+                            (status.english.startsWith("SUCCESS") || status.english.startsWith("FAILURE"))) {
+                        result.set(status);
+                        return;
+                    }
+                    delay = changed ? initialDelayMs : nextDelay(delay);
+                } else if (statusCode == HttpStatus.SC_NOT_MODIFIED) {
+                    retries = 0;
+                    delay = nextDelay(delay);
+                } else if (statusCode == HttpStatus.SC_BAD_GATEWAY || statusCode == HttpStatus.SC_SERVICE_UNAVAILABLE) {
+                    // No-penalty retry; we're willing to keep doing this forever
+                    delay = nextDelay(delay);
+                } else if (++retries >= httpRetries) {
+                    result.setException(new HttpException(response.getStatusLine().toString()));
+                    return;
+                } else {
+                    delay = nextDelay(delay);
+                }
+            } catch (IOException e) {
+                onFailure(e);
+                return;
+            } catch (RuntimeException e) {
+                result.setException(e);
+                return;
+            }
+            scheduleNext();
+        }
+
+        @Override
+        public void onFailure(Throwable t) {
+            if (!(t instanceof IOException) || ++retries >= httpRetries) {
+                result.setException(t);
+                return;
+            }
+            delay = nextDelay(delay);
+            scheduleNext();
+        }
+
+        private void scheduleNext() {
+            try {
+                scheduler.schedule(this, jitter(delay), TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                result.setException(new IOException("Stopped polling " + statusUri + "; the poller was closed"));
+            }
+        }
+    }
+}
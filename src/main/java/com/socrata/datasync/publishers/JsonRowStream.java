@@ -0,0 +1,86 @@
+package com.socrata.datasync.publishers;
+
+import au.com.bytecode.opencsv.CSVReader;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The records remaining in a CSV reader as the JSON array of rows SODA2 upserts and replaces take,
+ * converted only as the stream is read.  Unlike {@link JsonRows}, which holds a whole chunk, at most
+ * a buffer's worth of rows is held at once, so a file of any size is sent in constant memory.
+ * Closing the stream closes the reader.
+ */
+class JsonRowStream extends InputStream {
+    private static final int bufferSize = 64 * 1024;
+
+    private final CSVReader reader;
+    private final SerializedString[] fieldNames;
+    private final JsonRows.Buffer buffer = new JsonRows.Buffer();
+    private final JsonGenerator generator;
+    private int position = 0;
+    private boolean ended = false;
+    private long rows = 0;
+
+    /**
+     * @param headers the field name of each column, in the order they appear in the records
+     */
+    JsonRowStream(CSVReader reader, String[] headers) throws IOException {
+        this.reader = reader;
+        this.fieldNames = JsonRows.fieldNames(headers);
+        generator = JsonRows.factory.createGenerator(buffer);
+        generator.writeStartArray();
+    }
+
+    /**
+     * @return the number of rows read from the reader so far
+     */
+    long getRows() {
+        return rows;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        while (position == buffer.size()) {
+            if (ended) return -1;
+            fill();
+        }
+        int copied = buffer.copy(position, b, off, len);
+        position += copied;
+        return copied;
+    }
+
+    /**
+     * Replaces the rows already read with as many more as fill the buffer.
+     */
+    private void fill() throws IOException {
+        buffer.reset();
+        position = 0;
+        while (buffer.size() < bufferSize) {
+            String[] record = reader.readNext();
+            if (record == null) {
+                generator.writeEndArray();
+                generator.close();
+                ended = true;
+                return;
+            }
+            JsonRows.writeRow(generator, fieldNames, record);
+            rows++;
+            generator.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,149 @@
+package com.socrata.datasync.publishers;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A chunk of CSV records as the JSON array of rows SODA2 upserts and replaces take, written
+ * straight from the records as they're parsed rather than by way of a map per row.  Each column's
+ * field name is encoded once, and empty cells are left out as they're come to.  The chunk is kept
+ * as UTF-8, a fraction of the size of the rows as maps, so that a request that has to be sent
+ * again (e.g. because it was throttled) can be; the buffer is reused from one chunk to the next.
+ */
+class JsonRows {
+    static final JsonFactory factory = new JsonFactory();
+
+    private final SerializedString[] fieldNames;
+    private final Buffer buffer = new Buffer();
+    private JsonGenerator generator = null;
+    private int size = 0;
+    private boolean finished = false;
+
+    static class Buffer extends ByteArrayOutputStream {
+        Buffer() {
+            super(64 * 1024);
+        }
+
+        InputStream open() {
+            return new ByteArrayInputStream(buf, 0, count);
+        }
+
+        /**
+         * Copies up to len of the bytes written, starting at the given one.
+         * @return the number copied
+         */
+        int copy(int from, byte[] to, int off, int len) {
+            int copied = Math.min(len, count - from);
+            System.arraycopy(buf, from, to, off, copied);
+            return copied;
+        }
+    }
+
+    /**
+     * @param headers the field name of each column, in the order they appear in the records
+     */
+    JsonRows(String[] headers) {
+        fieldNames = fieldNames(headers);
+    }
+
+    static SerializedString[] fieldNames(String[] headers) {
+        SerializedString[] fieldNames = new SerializedString[headers.length];
+        for (int i = 0; i < headers.length; i++) fieldNames[i] = new SerializedString(headers[i]);
+        return fieldNames;
+    }
+
+    /**
+     * Writes a record as a row, leaving out its empty cells and any beyond the last field name.
+     */
+    static void writeRow(JsonGenerator generator, SerializedString[] fieldNames, String[] record) throws IOException {
+        generator.writeStartObject();
+        int columns = Math.min(record.length, fieldNames.length);
+        for (int i = 0; i < columns; i++) {
+            String value = record[i];
+            // exclude empty csv cell value
+            if (value == null || value.isEmpty()) continue;
+            generator.writeFieldName(fieldNames[i]);
+            generator.writeString(value);
+        }
+        generator.writeEndObject();
+    }
+
+    /**
+     * Adds a record as a row, leaving out its empty cells and any beyond the last header.
+     */
+    void add(String[] record) throws IOException {
+        if (finished) throw new IllegalStateException("Rows can't be added to a finished chunk");
+        if (generator == null) start();
+        writeRow(generator, fieldNames, record);
+        size++;
+    }
+
+    /**
+     * @return the number of rows in the chunk
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the bytes of the rows added so far
+     */
+    long bytes() {
+        return buffer.size() + (generator == null || finished ? 0 : generator.getOutputBuffered());
+    }
+
+    /**
+     * @return roughly the bytes a record takes as a row, without writing it
+     */
+    static int sizeOf(SerializedString[] fieldNames, String[] record) {
+        int size = 3;
+        int columns = Math.min(record.length, fieldNames.length);
+        for (int i = 0; i < columns; i++) {
+            String value = record[i];
+            if (value == null || value.isEmpty()) continue;
+            // the quotes around each, the colon between and the comma after
+            size += fieldNames[i].charLength() + value.length() + 6;
+        }
+        return size;
+    }
+
+    /**
+     * Ends the array of rows; no more can be added until the chunk is cleared.
+     */
+    void finish() throws IOException {
+        if (finished) return;
+        if (generator == null) start();
+        generator.writeEndArray();
+        generator.close();
+        finished = true;
+    }
+
+    /**
+     * @return the finished chunk as a JSON array of rows; it may be read any number of times
+     */
+    InputStream open() throws IOException {
+        finish();
+        return buffer.open();
+    }
+
+    /**
+     * Empties the chunk, keeping its buffer for the next.
+     */
+    void clear() {
+        buffer.reset();
+        generator = null;
+        size = 0;
+        finished = false;
+    }
+
+    private void start() throws IOException {
+        generator = factory.createGenerator(buffer);
+        generator.writeStartArray();
+    }
+}
@@ -0,0 +1,242 @@
+package com.socrata.datasync.publishers;
+
+import au.com.bytecode.opencsv.CSVReader;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.socrata.api.Soda2Producer;
+import com.socrata.exceptions.SodaError;
+import com.socrata.model.UpsertError;
+import com.socrata.model.UpsertResult;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Upserts the rows of a file over SODA2 several chunks at a time.  The calling thread parses the
+ * file and deals each row to one of a number of partitions by the hash of its row identifier;
+ * each partition's chunks are upserted in order by a thread of its own.  So every row with a
+ * given identifier goes to the same thread, which upserts them in the order they appear in the
+ * file, and the last of them wins just as it would were the file upserted a chunk at a time.
+ *
+ * Rows with no identifier (e.g. when the dataset has none, so every row is appended) are dealt
+ * out in turn.  Each thread writes its chunks' records as JSON itself, into a buffer it reuses.
+ * Given a {@link ChunkSizer}, each chunk is cut to the budget of bytes it sets when the chunk is
+ * begun, rather than to a number of rows.  At most a couple of chunks wait for each partition, so the parser is held back
+ * rather than the file being read into memory when the upserts can't keep up.
+ */
+class PartitionedUpsert {
+    private static final int queuedChunksPerPartition = 2;
+    private static final Chunk END = new Chunk(0, 0);
+
+    private final Soda2Producer producer;
+    private final String id;
+    private final String rowIdentifierName;
+    private final int numRowsPerChunk;
+    private final int partitions;
+    private final int lineIndexOffset;
+    private ChunkSizer chunkSizer = null;
+
+    private final List<BlockingQueue<Chunk>> queues = new ArrayList<>();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private final AtomicInteger chunksUploaded = new AtomicInteger();
+    private final AtomicLong rowsCreated = new AtomicLong();
+    private final AtomicLong rowsUpdated = new AtomicLong();
+    private final AtomicLong rowsDeleted = new AtomicLong();
+    private final List<UpsertError> errors = Collections.synchronizedList(new ArrayList<UpsertError>());
+
+    /**
+     * Records bound for one partition, and where in the file each came from.
+     */
+    private static class Chunk {
+        final List<String[]> rows;
+        int[] fileRows;
+        long budget;
+        long bytes = 0;
+        int number;
+
+        Chunk(int size, long budget) {
+            rows = new ArrayList<>(size);
+            fileRows = new int[size];
+            this.budget = budget;
+        }
+
+        void add(String[] row, int fileRow, int bytes) {
+            if (rows.size() == fileRows.length) fileRows = Arrays.copyOf(fileRows, Math.max(16, fileRows.length * 2));
+            fileRows[rows.size()] = fileRow;
+            rows.add(row);
+            this.bytes += bytes;
+        }
+    }
+
+    /**
+     * @param rowIdentifierName the field name of the dataset's row identifier, or :id if it has none
+     * @param partitions the number of chunks upserted at once
+     * @param lineIndexOffset what to add to a row's index among the file's rows to get its line number
+     */
+    PartitionedUpsert(Soda2Producer producer, String id, String rowIdentifierName, int numRowsPerChunk,
+                      int partitions, int lineIndexOffset) {
+        this.producer = producer;
+        this.id = id;
+        this.rowIdentifierName = rowIdentifierName;
+        this.numRowsPerChunk = numRowsPerChunk;
+        this.partitions = partitions;
+        this.lineIndexOffset = lineIndexOffset;
+        for (int i = 0; i < partitions; i++)
+            queues.add(new ArrayBlockingQueue<Chunk>(queuedChunksPerPartition));
+    }
+
+    /**
+     * Has chunks cut to the budget of bytes the given sizer sets, and tells it how each went.
+     */
+    PartitionedUpsert sizedBy(ChunkSizer chunkSizer) {
+        this.chunkSizer = chunkSizer;
+        return this;
+    }
+
+    /**
+     * Upserts the rows remaining in the reader.
+     * @return the rows created, updated and deleted by every chunk, and the errors of them all,
+     * each indexed by its row's position among the rows of the file
+     */
+    UpsertResult run(CSVReader reader, final String[] headers) throws IOException, SodaError, InterruptedException {
+        ExecutorService workers = Executors.newFixedThreadPool(partitions,
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("SODA2 upsert %d").build());
+        try {
+            List<Future<Void>> finished = new ArrayList<>();
+            for (final BlockingQueue<Chunk> queue : queues) {
+                finished.add(workers.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        upsertChunks(queue, new JsonRows(headers));
+                        return null;
+                    }
+                }));
+            }
+            parse(reader, headers);
+            for (BlockingQueue<Chunk> queue : queues) queue.put(END);
+            for (Future<Void> f : finished) await(f);
+        } finally {
+            workers.shutdownNow();
+        }
+        rethrow(failure.get());
+
+        List<UpsertError> allErrors = new ArrayList<>(errors);
+        Collections.sort(allErrors, new Comparator<UpsertError>() {
+            @Override
+            public int compare(UpsertError a, UpsertError b) {
+                return a.getIndex() < b.getIndex() ? -1 : a.getIndex() == b.getIndex() ? 0 : 1;
+            }
+        });
+        return new UpsertResult(rowsCreated.get(), rowsUpdated.get(), rowsDeleted.get(), allErrors);
+    }
+
+    private void parse(CSVReader reader, String[] headers) throws IOException, InterruptedException {
+        System.out.println("Publishing file in chunks via HTTP, " + partitions + " at a time...");
+        SerializedString[] fieldNames = JsonRows.fieldNames(headers);
+        List<Chunk> filling = new ArrayList<>(partitions);
+        for (int i = 0; i < partitions; i++) filling.add(newChunk());
+        int rowIdColumn = Arrays.asList(headers).indexOf(rowIdentifierName);
+        int chunksSent = 0;
+        int fileRow = 0;
+        String[] line;
+        // a failed upsert ends the publish, so there's no point reading any further
+        while (failure.get() == null && (line = reader.readNext()) != null) {
+            int partition = partitionOf(line, rowIdColumn, fileRow);
+            Chunk chunk = filling.get(partition);
+            chunk.add(line, fileRow, chunkSizer == null ? 0 : JsonRows.sizeOf(fieldNames, line));
+            fileRow++;
+            if (chunkSizer == null ? chunk.rows.size() == numRowsPerChunk : chunk.bytes >= chunk.budget) {
+                chunk.number = ++chunksSent;
+                queues.get(partition).put(chunk);
+                filling.set(partition, newChunk());
+            }
+        }
+        for (int partition = 0; partition < partitions; partition++) {
+            Chunk chunk = filling.get(partition);
+            if (chunk.rows.isEmpty()) continue;
+            chunk.number = ++chunksSent;
+            queues.get(partition).put(chunk);
+        }
+    }
+
+    private Chunk newChunk() {
+        if (chunkSizer == null) return new Chunk(numRowsPerChunk, 0);
+        // the sizer says nothing of how many rows will fit, so the chunk grows to hold them
+        return new Chunk(16, chunkSizer.getBudget());
+    }
+
+    private int partitionOf(String[] line, int rowIdColumn, int fileRow) {
+        // an empty cell is left out of the row, so it has no identifier either
+        String rowId = rowIdColumn >= 0 && rowIdColumn < line.length ? line[rowIdColumn] : null;
+        int hash = rowId == null || rowId.isEmpty() ? fileRow : rowId.hashCode();
+        return (hash & Integer.MAX_VALUE) % partitions;
+    }
+
+    /**
+     * Upserts the chunks of one partition in the order they arrive, until told there are no more.
+     * Once any chunk has failed, the rest are only drained, so the parser is never left waiting.
+     */
+    private void upsertChunks(BlockingQueue<Chunk> queue, JsonRows json) throws InterruptedException {
+        Chunk chunk;
+        while ((chunk = queue.take()) != END) {
+            if (failure.get() != null) continue;
+            try {
+                json.clear();
+                for (String[] row : chunk.rows) json.add(row);
+                record(chunk, Soda2Publisher.send(producer, id, json, false, chunkSizer, chunk.budget));
+            } catch (IOException | SodaError | RuntimeException e) {
+                failure.compareAndSet(null, e);
+            }
+        }
+    }
+
+    private void record(Chunk chunk, UpsertResult result) {
+        rowsCreated.addAndGet(result.getRowsCreated());
+        rowsUpdated.addAndGet(result.getRowsUpdated());
+        rowsDeleted.addAndGet(result.getRowsDeleted());
+        int uploaded = chunksUploaded.incrementAndGet();
+        for (UpsertError err : result.getErrors()) {
+            int index = err.getIndex();
+            // the chunk's rows are scattered through the file, so the error is placed by the row's own position
+            int fileRow = index >= 0 && index < chunk.rows.size() ? chunk.fileRows[index] : index;
+            errors.add(new UpsertError(err.getError(), fileRow, err.getPrimaryKey()));
+            System.err.println("Error uploading chunk " + chunk.number + ": " + err.getError() +
+                    " (line " + (fileRow + lineIndexOffset) + " of file)");
+        }
+        System.out.println("Chunk " + chunk.number + " uploaded (" + uploaded + " so far): " + result.getRowsCreated() +
+                " rows created; " + result.getRowsUpdated() + " rows updated; " + result.getRowsDeleted() +
+                " rows deleted; " + result.errorCount() + " rows omitted");
+    }
+
+    private static void await(Future<Void> f) throws IOException, SodaError, InterruptedException {
+        try {
+            f.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof InterruptedException) throw (InterruptedException) e.getCause();
+            rethrow(e.getCause());
+        }
+    }
+
+    private static void rethrow(Throwable cause) throws IOException, SodaError {
+        if (cause == null) return;
+        if (cause instanceof IOException) throw (IOException) cause;
+        if (cause instanceof SodaError) throw (SodaError) cause;
+        if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+        if (cause instanceof Error) throw (Error) cause;
+        throw new IOException(cause);
+    }
+}
@@ -2,25 +2,38 @@ package com.socrata.datasync.publishers;
 
 import au.com.bytecode.opencsv.CSVReader;
 import com.google.common.collect.ImmutableMap;
+import com.socrata.api.HttpLowLevel;
 import com.socrata.api.Soda2Producer;
 import com.socrata.api.SodaDdl;
+import com.socrata.datasync.Backoff;
 import com.socrata.datasync.PublishMethod;
+import com.socrata.datasync.RateLimiter;
+import com.socrata.datasync.RequestCompression;
+import com.socrata.datasync.Retrier;
 import com.socrata.datasync.Utils;
 import com.socrata.exceptions.SodaError;
 import com.socrata.model.UpsertError;
 import com.socrata.model.UpsertResult;
 import com.socrata.model.importer.Column;
 import com.socrata.model.importer.Dataset;
-import org.apache.commons.lang3.StringUtils;
+import org.glassfish.jersey.client.ClientProperties;
+import org.glassfish.jersey.client.RequestEntityProcessing;
+
+import javax.ws.rs.client.Client;
 
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class Soda2Publisher {
+    public static final int DEFAULT_UPSERT_CONCURRENCY = 4;
 
     private Soda2Publisher() {
         throw new AssertionError("Never instantiate utility classes!");
@@ -56,7 +69,7 @@ public class Soda2Publisher {
                 upsertObjectsChunk.add(ImmutableMap.of(rowIdentifierName, (Object) currLine[0], ":deleted", Boolean.TRUE));
             }
             if(upsertObjectsChunk.size() == numRowsPerChunk || currLine == null) {
-                UpsertResult chunkResult = producer.upsert(id, upsertObjectsChunk);
+                UpsertResult chunkResult = send(producer, id, upsertObjectsChunk, false);
                 totalRowsDeleted += chunkResult.getRowsDeleted();
 
                 if(chunkResult.errorCount() > 0) {
@@ -82,6 +95,8 @@ public class Soda2Publisher {
      * Publishes the given csvOrTsvFile via SODA 2 replace or upsert/append. Publishes in chunks if using
      * upsert/append and numRowsPerChunk > 0 (all data will be upserted in one chunk if numRowsPerChunk == 0)
      * where each chunk contains numRowsPerChunk rows. Chunking is useful when uploading very large CSV files.
+     * A replace is sent as a single request, converted from the file as it's sent rather than read into
+     * memory first.
      *
      * @param method to use to publish (upsert, append, or replace; delete not allowed)
      * @param id dataset ID to publish to
@@ -100,6 +115,37 @@ public class Soda2Publisher {
                                                final PublishMethod method, final String id, final File csvOrTsvFile,
                                                int numRowsPerChunk, final boolean containsHeaderRow)
             throws IOException, SodaError, InterruptedException
+    {
+        return publishViaSoda2(producer, ddl, method, id, csvOrTsvFile, numRowsPerChunk, containsHeaderRow, 1);
+    }
+
+    /**
+     * As above, but when upserting or appending in chunks, up to upsertConcurrency chunks are upserted
+     * at once.  Rows are dealt to the chunks by their row identifier, so rows with the same identifier
+     * are still upserted in the order they appear in the file; errors are indexed by the row's
+     * position among the rows of the file, whichever chunk it went in.
+     * @param upsertConcurrency the most chunks upserted at once; 1 upserts them one after another
+     */
+    public static UpsertResult publishViaSoda2(Soda2Producer producer, SodaDdl ddl,
+                                               final PublishMethod method, final String id, final File csvOrTsvFile,
+                                               int numRowsPerChunk, final boolean containsHeaderRow,
+                                               int upsertConcurrency)
+            throws IOException, SodaError, InterruptedException
+    {
+        return publishViaSoda2(producer, ddl, method, id, csvOrTsvFile, numRowsPerChunk, containsHeaderRow,
+                upsertConcurrency, null);
+    }
+
+    /**
+     * As above, but when upserting or appending in chunks, each chunk holds as many rows as fit the
+     * budget of bytes the chunkSizer sets, tuned as chunks are sent, rather than numRowsPerChunk.
+     * @param chunkSizer the budget of each chunk, or null to chunk by numRowsPerChunk
+     */
+    public static UpsertResult publishViaSoda2(Soda2Producer producer, SodaDdl ddl,
+                                               final PublishMethod method, final String id, final File csvOrTsvFile,
+                                               int numRowsPerChunk, final boolean containsHeaderRow,
+                                               int upsertConcurrency, ChunkSizer chunkSizer)
+            throws IOException, SodaError, InterruptedException
     {
         // If doing a replace force it to upload all data as a single chunk
         if(method.equals(PublishMethod.replace)) {
@@ -107,7 +153,6 @@ public class Soda2Publisher {
             numRowsPerChunk = 0;
         }
 
-        List<Map<String, Object>> upsertObjectsChunk = new ArrayList<Map<String, Object>>();
         int totalRowsCreated = 0;
         int totalRowsUpdated = 0;
         int totalRowsDeleted = 0;
@@ -141,35 +186,51 @@ public class Soda2Publisher {
             }
         }
 
+        if (headers != null && method.equals(PublishMethod.replace)) {
+            reader.close();
+            System.out.println("Publishing entire file via HTTP...");
+            return replaceStreamed(producer, id, csvOrTsvFile, columnDelimiter, containsHeaderRow, headers);
+        }
+
+        boolean upserting = method.equals(PublishMethod.upsert) || method.equals(PublishMethod.append);
+        if (headers != null && upserting && numRowsPerChunk > 0 && upsertConcurrency > 1) {
+            int lineIndexOffset = (containsHeaderRow) ? 2 : 1;
+            try {
+                return new PartitionedUpsert(producer, id, getDatasetRowId(ddl, id), numRowsPerChunk,
+                        upsertConcurrency, lineIndexOffset).sizedBy(chunkSizer).run(reader, headers);
+            } finally {
+                reader.close();
+                if (chunkSizer != null) System.out.println(chunkSizer.summary());
+            }
+        }
+        if (numRowsPerChunk == 0) chunkSizer = null;
+
         if (headers != null) {
+            // the records are written straight into the body of the request, with no map per row
+            JsonRows upsertObjectsChunk = new JsonRows(headers);
+            int rowsUploaded = 0;
+            long chunkBudget = chunkSizer == null ? 0 : chunkSizer.getBudget();
             String[] currLine;
             do {
                 currLine = reader.readNext();
-                ImmutableMap.Builder<String, Object> builder = ImmutableMap.builder();
                 if(currLine != null) {
-                    for (int i=0; i<currLine.length; i++) {
-                        if (i < headers.length) {
-                            // exclude empty csv cell value
-                            if (!StringUtils.isEmpty(currLine[i])) {
-                                builder.put(headers[i], currLine[i]);
-                            }
-                        }
-                    }
-                    upsertObjectsChunk.add(builder.build());
+                    upsertObjectsChunk.add(currLine);
                 }
-                if(upsertObjectsChunk.size() == numRowsPerChunk || currLine == null) {
+                boolean chunkFull = chunkSizer == null ? upsertObjectsChunk.size() == numRowsPerChunk :
+                        upsertObjectsChunk.bytes() >= chunkBudget;
+                if(chunkFull || currLine == null) {
                     if(numRowsPerChunk == 0) {
                         System.out.println("Publishing entire file via HTTP...");
                     } else {
-                        System.out.println("Publishing file in chunks via HTTP (" + numUploadedChunks * numRowsPerChunk + " rows uploaded so far)...");
+                        System.out.println("Publishing file in chunks via HTTP (" + rowsUploaded + " rows uploaded so far)...");
                     }
 
                     // upsert or replace current chunk
                     UpsertResult chunkResult;
                     if(method.equals(PublishMethod.upsert) || method.equals(PublishMethod.append)) {
-                        chunkResult = producer.upsert(id, upsertObjectsChunk);
+                        chunkResult = send(producer, id, upsertObjectsChunk, false, chunkSizer, chunkBudget);
                     } else if(method.equals(PublishMethod.replace)) {
-                        chunkResult = producer.replace(id, upsertObjectsChunk);
+                        chunkResult = send(producer, id, upsertObjectsChunk, true, null, 0);
                     } else {
                         reader.close();
                         throw new IllegalArgumentException("Error performing publish: "
@@ -186,7 +247,7 @@ public class Soda2Publisher {
                                 int lineIndexOffset = (containsHeaderRow) ? 2 : 1;
                                 System.err.println("Error uploading chunk " + numUploadedChunks + ": " +
                                         upsertErr.getError() + " (line " +
-                                        (upsertErr.getIndex() + lineIndexOffset + ((numUploadedChunks-1) * numRowsPerChunk)) + " of file)");
+                                        (upsertErr.getIndex() + lineIndexOffset + rowsUploaded) + " of file)");
                             }
                         }
                         upsertErrors.addAll(chunkResult.getErrors());
@@ -198,9 +259,12 @@ public class Soda2Publisher {
                                 " rows deleted; " + chunkResult.errorCount() + " rows omitted");
                     }
 
+                    rowsUploaded += upsertObjectsChunk.size();
                     upsertObjectsChunk.clear();
+                    if (chunkSizer != null) chunkBudget = chunkSizer.getBudget();
                 }
             } while(currLine != null);
+            if (chunkSizer != null) System.out.println(chunkSizer.summary());
         }
         reader.close();
         return new UpsertResult(
@@ -223,6 +287,30 @@ public class Soda2Publisher {
         return publishViaSoda2(producer, ddl, PublishMethod.upsert, id, file, numRowsPerChunk, containsHeaderRow);
     }
 
+    /**
+     * As above, upserting up to upsertConcurrency chunks at once.
+     */
+    public static UpsertResult appendUpsert(Soda2Producer producer, SodaDdl ddl,
+                                            final String id, final File file,
+                                            int numRowsPerChunk, boolean containsHeaderRow, int upsertConcurrency)
+            throws SodaError, InterruptedException, IOException
+    {
+        return publishViaSoda2(producer, ddl, PublishMethod.upsert, id, file, numRowsPerChunk, containsHeaderRow,
+                upsertConcurrency);
+    }
+
+    /**
+     * As above, each chunk holding as many rows as fit the budget the chunkSizer sets.
+     */
+    public static UpsertResult appendUpsert(Soda2Producer producer, SodaDdl ddl,
+                                            final String id, final File file, int numRowsPerChunk,
+                                            boolean containsHeaderRow, int upsertConcurrency, ChunkSizer chunkSizer)
+            throws SodaError, InterruptedException, IOException
+    {
+        return publishViaSoda2(producer, ddl, PublishMethod.upsert, id, file, numRowsPerChunk, containsHeaderRow,
+                upsertConcurrency, chunkSizer);
+    }
+
 
     /**
      * This is a new replace function that does not need a working copy.
@@ -245,5 +333,130 @@ public class Soda2Publisher {
         }
         return rowIdentifierName;
     }
+
+    /**
+     * Upserts or replaces a chunk of rows, waiting out any throttling of it by the domain and then
+     * sending it again, rather than failing.  A chunk the domain refuses for being gzipped is sent
+     * again uncompressed.
+     */
+    static UpsertResult send(final Soda2Producer producer, final String id,
+                             final List<Map<String, Object>> rows, final boolean replace)
+            throws IOException, SodaError
+    {
+        return send(producer, id, new Request() {
+            @Override
+            public UpsertResult run() throws SodaError, InterruptedException {
+                return replace ? producer.replace(id, rows) : producer.upsert(id, rows);
+            }
+        });
+    }
+
+    /**
+     * As above, sending rows already written as JSON, and noting how long they took to the chunkSizer.
+     * @param chunkSizer what the rows' budget came from, or null if they weren't cut to one
+     * @param chunkBudget the budget the rows were cut to
+     */
+    static UpsertResult send(final Soda2Producer producer, final String id, final JsonRows rows,
+                             final boolean replace, ChunkSizer chunkSizer, long chunkBudget)
+            throws IOException, SodaError
+    {
+        AtomicBoolean throttled = new AtomicBoolean(false);
+        long start = System.nanoTime();
+        UpsertResult result = send(producer, id, new Request() {
+            @Override
+            public UpsertResult run() throws SodaError, InterruptedException, IOException {
+                // a fresh stream over the chunk each time, so it can be sent again
+                try (InputStream body = rows.open()) {
+                    return replace ? producer.replaceStream(id, HttpLowLevel.JSON_TYPE, body) :
+                            producer.upsertStream(id, HttpLowLevel.JSON_TYPE, body);
+                }
+            }
+        }, throttled);
+        if (chunkSizer != null) {
+            chunkSizer.record(chunkBudget, rows.bytes(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                    throttled.get());
+        }
+        return result;
+    }
+
+    /**
+     * Replaces the rows of the dataset with those of the file, streaming them to the domain as JSON.
+     * The request body is sent chunked, so neither the rows nor the body is ever held in memory;
+     * should the request have to be sent again, the file is read again from the start.
+     */
+    static UpsertResult replaceStreamed(final Soda2Producer producer, final String id, final File csvOrTsvFile,
+                                        final char columnDelimiter, final boolean containsHeaderRow,
+                                        final String[] headers)
+            throws IOException, SodaError
+    {
+        // HttpURLConnection otherwise buffers the whole body so as to send its length; the producer
+        // is the caller's, so its other requests are left as they were once the replace is done
+        Client client = producer.getHttpLowLevel().getClient();
+        Object processing = client.getConfiguration().getProperty(ClientProperties.REQUEST_ENTITY_PROCESSING);
+        client.property(ClientProperties.REQUEST_ENTITY_PROCESSING, RequestEntityProcessing.CHUNKED);
+        try {
+            return send(producer, id, new Request() {
+                @Override
+                public UpsertResult run() throws SodaError, InterruptedException, IOException {
+                    CSVReader reader = new CSVReader(new FileReader(csvOrTsvFile), columnDelimiter);
+                    try (InputStream body = new JsonRowStream(reader, headers)) {
+                        if (containsHeaderRow) reader.readNext();
+                        return producer.replaceStream(id, HttpLowLevel.JSON_TYPE, body);
+                    }
+                }
+            });
+        } finally {
+            client.property(ClientProperties.REQUEST_ENTITY_PROCESSING, processing);
+        }
+    }
+
+    private interface Request {
+        UpsertResult run() throws SodaError, InterruptedException, IOException;
+    }
+
+    private static UpsertResult send(Soda2Producer producer, String id, Request request)
+            throws IOException, SodaError
+    {
+        return send(producer, id, request, null);
+    }
+
+    /**
+     * @param throttled if given, set should the domain throttle the request; not by it being sent again
+     *                  uncompressed, which says nothing about how hard the domain is being pushed
+     */
+    private static UpsertResult send(final Soda2Producer producer, final String id, final Request request,
+                                     final AtomicBoolean throttled)
+            throws IOException, SodaError
+    {
+        final String host = producer.getHttpLowLevel().uriBuilder().build().getHost();
+        try {
+            return Retrier.get().call(host, 0, Backoff.DEFAULT, new Retrier.Attempt<UpsertResult, SodaError>() {
+                @Override
+                public UpsertResult run() throws SodaError, IOException {
+                    boolean compressed = RequestCompression.get().shouldCompress(host);
+                    try {
+                        return request.run();
+                    } catch (SodaError e) {
+                        if (RateLimiter.isThrottled(e.getStatus(), false)) {
+                            if (throttled != null) throttled.set(true);
+                            throw RateLimiter.retryable(e);
+                        }
+                        // the refusal was noted when it came back, so this time it goes uncompressed
+                        if (compressed && !RequestCompression.get().shouldCompress(host)) return run();
+                        throw e;
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted while publishing to " + id);
+                    }
+                }
+            });
+        } catch (Retrier.ThrottledException e) {
+            if (e.getCause() instanceof SodaError) throw (SodaError) e.getCause();
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while publishing to " + id);
+        }
+    }
 }
 
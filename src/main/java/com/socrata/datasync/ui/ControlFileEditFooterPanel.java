@@ -1,6 +1,6 @@
 package com.socrata.datasync.ui;
 
-import com.socrata.datasync.job.JobStatus;
+import com.socrata.datasync.job.JobResult;
 import com.socrata.datasync.model.ControlFileModel;
 import com.socrata.model.importer.Column;
 
@@ -33,7 +33,7 @@ public class ControlFileEditFooterPanel extends JPanel {
         okButton.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                JobStatus status = model.validate();
+                JobResult status = model.validate();
 
                 // If the job is in an error state, then show the error to the user, and drop them back in the
                 // control file editor to fix it.  Otherwise, close the window.
@@ -4,7 +4,7 @@ import com.socrata.datasync.PublishMethod;
 import com.socrata.datasync.Utils;
 import com.socrata.datasync.config.userpreferences.UserPreferencesJava;
 import com.socrata.datasync.job.GISJob;
-import com.socrata.datasync.job.JobStatus;
+import com.socrata.datasync.job.JobResult;
 import com.socrata.datasync.model.ControlFileModel;
 import com.socrata.datasync.model.DatasetModel;
 import com.socrata.datasync.validation.GISJobValidity;
@@ -138,7 +138,7 @@ public class GISJobTab implements JobTab {
         return jobPanel;
     }
 
-    public JobStatus runJobNow() {
+    public JobResult runJobNow() {
 
         GISJob jobToRun = new GISJob();
         jobToRun.setDatasetID(datasetIDTextField.getText());
@@ -9,6 +9,7 @@ import com.socrata.datasync.job.IntegrationJob;
 import com.socrata.datasync.config.userpreferences.UserPreferences;
 import com.socrata.datasync.config.userpreferences.UserPreferencesJava;
 import com.socrata.datasync.job.IntegrationJob;
+import com.socrata.datasync.job.JobResult;
 import com.socrata.datasync.job.JobStatus;
 import com.socrata.datasync.model.ControlFileModel;
 import com.socrata.datasync.model.DatasetModel;
@@ -305,11 +306,9 @@ public class IntegrationJobTab implements JobTab {
         return jobPanel;
     }
 
-    public JobStatus runJobNow() {
+    public JobResult runJobNow() {
         if (controlFileModel == null || controlFileModel.validate().isError()) {
-            JobStatus noControlFile = JobStatus.INVALID_PUBLISH_METHOD;
-            noControlFile.setMessage("We aren't quite ready to upload.  Click the \"Map Fields\" button to set the mappings for your CSV");
-            return noControlFile;
+            return JobResult.of(JobStatus.INVALID_PUBLISH_METHOD, "We aren't quite ready to upload.  Click the \"Map Fields\" button to set the mappings for your CSV");
         }
         IntegrationJob jobToRun = new IntegrationJob();
         jobToRun.setDatasetID(datasetIDTextField.getText());
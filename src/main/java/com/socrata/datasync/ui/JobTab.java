@@ -1,6 +1,6 @@
 package com.socrata.datasync.ui;
 
-import com.socrata.datasync.job.JobStatus;
+import com.socrata.datasync.job.JobResult;
 
 import javax.swing.*;
 
@@ -12,7 +12,7 @@ public interface JobTab {
 
     public JPanel getTabPanel();
 
-    public JobStatus runJobNow();
+    public JobResult runJobNow();
 
     public void saveJob();
 
@@ -1,7 +1,7 @@
 package com.socrata.datasync.ui;
 
 import com.socrata.datasync.*;
-import com.socrata.datasync.job.JobStatus;
+import com.socrata.datasync.job.JobResult;
 import com.socrata.datasync.job.MetadataJob;
 
 import javax.swing.*;
@@ -224,7 +224,7 @@ public class MetadataJobTab implements JobTab {
         return jobPanel;
     }
 
-    public JobStatus runJobNow() {
+    public JobResult runJobNow() {
         populateJobFromFields();
         return metadataJob.run();
     }
@@ -1,7 +1,7 @@
 package com.socrata.datasync.ui;
 
 import com.socrata.datasync.Utils;
-import com.socrata.datasync.job.JobStatus;
+import com.socrata.datasync.job.JobResult;
 import com.socrata.datasync.DatasetUtils;
 import com.socrata.datasync.PortMethod;
 import com.socrata.datasync.PublishDataset;
@@ -215,7 +215,7 @@ public class PortJobTab implements JobTab {
         return jobPanel;
     }
 
-    public JobStatus runJobNow() {
+    public JobResult runJobNow() {
         PortJob jobToRun = new PortJob();
         jobToRun.setPortMethod((PortMethod) portMethodComboBox
                 .getSelectedItem());
@@ -233,7 +233,7 @@ public class PortJobTab implements JobTab {
             jobToRun.setSinkSetID(sinkSetIDTextField.getText());
         }
 
-        JobStatus status = jobToRun.run();
+        JobResult status = jobToRun.run();
         if (!status.isError()) {
             sinkSetIDTextField.setText(jobToRun.getSinkSetID());
         }
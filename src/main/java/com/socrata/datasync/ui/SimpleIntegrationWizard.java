@@ -10,6 +10,7 @@ import javax.swing.filechooser.FileNameExtensionFilter;
 import com.socrata.datasync.*;
 import com.socrata.datasync.job.IntegrationJob;
 import com.socrata.datasync.job.Job;
+import com.socrata.datasync.job.JobResult;
 import com.socrata.datasync.job.JobStatus;
 import com.socrata.datasync.job.MetadataJob;
 import com.socrata.datasync.job.PortJob;
@@ -115,6 +116,7 @@ public class SimpleIntegrationWizard {
     private SimpleIntegrationWizard() {
         // load user preferences (saved locally)
         userPrefs = new UserPreferencesJava();
+        HttpUtility.configure(userPrefs);
 
         // Build GUI
         frame = new JFrame(TITLE);
@@ -273,7 +275,7 @@ public class SimpleIntegrationWizard {
 
     private class RunJobWorker extends SwingWorker<Void, String> {
         private JobTab jobTabToRun;
-        private JobStatus jobStatus;
+        private JobResult jobStatus;
 
         public RunJobWorker(JobTab jobTabToRun){
             loadingNoticePanel.setVisible(true);
@@ -290,13 +292,11 @@ public class SimpleIntegrationWizard {
             try {
                 jobStatus = jobTabToRun.runJobNow();
             } catch (OutOfMemoryError err) {
-                jobStatus = JobStatus.PUBLISH_ERROR;
-                jobStatus.setMessage("Error: ran out of memory " +
+                jobStatus = JobResult.of(JobStatus.PUBLISH_ERROR, "Error: ran out of memory " +
                         "(try decreasing the chunking size and/or threshold by going to Edit -> Preferences)");
             } catch (Exception e) {
                 e.printStackTrace();
-                jobStatus = JobStatus.PUBLISH_ERROR;
-                jobStatus.setMessage("Unexpected error: " + e);
+                jobStatus = JobResult.of(JobStatus.PUBLISH_ERROR, "Unexpected error: " + e);
             } catch (Error e) {
                 e.printStackTrace();
                 throw e;
@@ -1,6 +1,6 @@
 package com.socrata.datasync.ui;
 
-import com.socrata.datasync.job.JobStatus;
+import com.socrata.datasync.job.JobResult;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
@@ -43,7 +43,7 @@ public class ValidationInfoPanel extends JPanel {
         this.setVisible(false);
     }
 
-    public void displayStatus(JobStatus status){
+    public void displayStatus(JobResult status){
         if (status.isError())
             displayError(status.getMessage());
         else
@@ -5,6 +5,7 @@ import com.socrata.datasync.SocrataConnectionInfo;
 import com.socrata.datasync.Utils;
 import com.socrata.datasync.config.CommandLineOptions;
 import com.socrata.datasync.job.GISJob;
+import com.socrata.datasync.job.JobResult;
 import com.socrata.datasync.job.JobStatus;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.io.FilenameUtils;
@@ -33,35 +34,33 @@ public class GISJobValidity {
     }
 
     /**
-     * @return an error JobStatus if any input is invalid, otherwise JobStatus.VALID
+     * @return an error JobResult if any input is invalid, otherwise one of JobStatus.VALID
      */
-    public static JobStatus validateJobParams(SocrataConnectionInfo connectionInfo, GISJob job) {
+    public static JobResult validateJobParams(SocrataConnectionInfo connectionInfo, GISJob job) {
         if (connectionInfo.getUrl().equals("") || connectionInfo.getUrl().equals("https://")) {
-            return JobStatus.INVALID_DOMAIN;
+            return JobResult.of(JobStatus.INVALID_DOMAIN);
         }
 
         if (!Utils.uidIsValid(job.getDatasetID())) {
-            return JobStatus.INVALID_DATASET_ID;
+            return JobResult.of(JobStatus.INVALID_DATASET_ID);
         }
 
         String fileToPublish = job.getFileToPublish();
         if (fileToPublish.equals("")) {
-            return JobStatus.MISSING_FILE_TO_PUBLISH;
+            return JobResult.of(JobStatus.MISSING_FILE_TO_PUBLISH);
         }
 
         File publishFile = new File(fileToPublish);
         if (!publishFile.exists() || publishFile.isDirectory()) {
-            JobStatus errorStatus = JobStatus.FILE_TO_PUBLISH_DOESNT_EXIST;
-            errorStatus.setMessage(fileToPublish + ": File to publish does not exist");
-            return errorStatus;
+            return JobResult.of(JobStatus.FILE_TO_PUBLISH_DOESNT_EXIST, fileToPublish + ": File to publish does not exist");
         }
 
         String fileExtension = FilenameUtils.getExtension(fileToPublish);
         if (!allowedGeoFileToPublishExtensions.contains(fileExtension)) {
-            return JobStatus.FILE_TO_PUBLISH_INVALID_GIS_FORMAT;
+            return JobResult.of(JobStatus.FILE_TO_PUBLISH_INVALID_GIS_FORMAT);
         }
 
-        return JobStatus.VALID;
+        return JobResult.of(JobStatus.VALID);
     }
 
     /**
@@ -69,13 +68,13 @@ public class GISJobValidity {
      * so that we replace existing layers where possible instead of creating new ones and changing
      * the 4x4 / API endpoint of the dataset.
      */
-    public static JobStatus validateLayerMapping(GISJob job) {
+    public static JobResult validateLayerMapping(GISJob job) {
         try {
             job.initializeLayerMapping();
-            return JobStatus.VALID;
+            return JobResult.of(JobStatus.VALID);
         } catch (IllegalArgumentException e) {
             // This means getDatasetInfo was unable to parse the response into a GeoDataset object.
-            return JobStatus.NOT_A_GEO_DATASET;
+            return JobResult.of(JobStatus.NOT_A_GEO_DATASET);
         } catch (Exception e) {
             // If something unexpected went wrong,
             // Throw it so it can be debugged
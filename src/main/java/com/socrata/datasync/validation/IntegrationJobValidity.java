@@ -11,6 +11,7 @@ import com.socrata.datasync.config.controlfile.FileTypeControl;
 import com.socrata.datasync.config.controlfile.LocationColumn;
 import com.socrata.datasync.config.userpreferences.UserPreferences;
 import com.socrata.datasync.job.IntegrationJob;
+import com.socrata.datasync.job.JobResult;
 import com.socrata.datasync.job.JobStatus;
 import com.socrata.model.importer.Dataset;
 import org.apache.commons.cli.CommandLine;
@@ -53,33 +54,37 @@ public class IntegrationJobValidity {
                 validatePublishViaFtpArg(cmd, options) &&
                 validatePublishViaDi2HttpArg(cmd, options) &&
                 validatePathToControlFileArg(cmd, options) &&
-                validateProxyArgs(cmd, options);
+                validateProxyArgs(cmd, options) &&
+                validateBlobUploadConcurrencyArg(cmd, options) &&
+                validateDryRunArgs(cmd, options);
     }
 
     /**
-     * @return an error JobStatus if any input is invalid, otherwise JobStatus.VALID
+     * @return an error JobResult if any input is invalid, otherwise one of JobStatus.VALID
      */
-    public static JobStatus validateJobParams(UserPreferences userPrefs, IntegrationJob job) {
+    public static JobResult validateJobParams(UserPreferences userPrefs, IntegrationJob job) {
+        // only a delta-importer-2 publish can be estimated; any other would go ahead and publish
+        if(job.getDryRun() && !job.getPublishViaDi2Http())
+            return JobResult.of(JobStatus.INVALID_DRY_RUN);
+
         if(userPrefs.getConnectionInfo().getUrl().equals("") || userPrefs.getConnectionInfo().getUrl().equals("https://"))
-            return JobStatus.INVALID_DOMAIN;
+            return JobResult.of(JobStatus.INVALID_DOMAIN);
 
         if(!Utils.uidIsValid(job.getDatasetID()))
-            return JobStatus.INVALID_DATASET_ID;
+            return JobResult.of(JobStatus.INVALID_DATASET_ID);
 
         String fileToPublish = job.getFileToPublish();
         if(fileToPublish.equals(""))
-            return JobStatus.MISSING_FILE_TO_PUBLISH;
+            return JobResult.of(JobStatus.MISSING_FILE_TO_PUBLISH);
 
         File publishFile = new File(fileToPublish);
         if(!publishFile.exists() || publishFile.isDirectory()) {
-            JobStatus errorStatus = JobStatus.FILE_TO_PUBLISH_DOESNT_EXIST;
-            errorStatus.setMessage(fileToPublish + ": File to publish does not exist");
-            return errorStatus;
+            return JobResult.of(JobStatus.FILE_TO_PUBLISH_DOESNT_EXIST, fileToPublish + ": File to publish does not exist");
         }
 
         String fileExtension = Utils.getFileExtension(fileToPublish);
         if(!allowedFileToPublishExtensions.contains(fileExtension))
-            return JobStatus.FILE_TO_PUBLISH_INVALID_TABULAR_FORMAT;
+            return JobResult.of(JobStatus.FILE_TO_PUBLISH_INVALID_TABULAR_FORMAT);
 
         Dataset schema;
         try {
@@ -97,11 +102,11 @@ public class IntegrationJobValidity {
                 //See if it was passed on the command line
                 if (action == null)
                     action = job.getPublishMethod().name();
-                JobStatus actionOkay = checkAction(action, job, schema);
+                JobResult actionOkay = checkAction(action, job, schema);
                 if (actionOkay.isError())
                     return actionOkay;
 
-                JobStatus controlOkay = checkControl(control,fileControl,schema,publishFile,userPrefs.getConnectionInfo().getUrl());
+                JobResult controlOkay = checkControl(control,fileControl,schema,publishFile,userPrefs.getConnectionInfo().getUrl());
                 if (controlOkay.isError())
                     return controlOkay;
 
@@ -109,48 +114,42 @@ public class IntegrationJobValidity {
         } catch (Exception e) {
             // Not going to fail jobs on the validation check
         }
-        return JobStatus.VALID;
+        return JobResult.of(JobStatus.VALID);
     }
 
-    public static JobStatus checkControl(ControlFile control,FileTypeControl fileControl, Dataset schema, File publishFile, String urlBase){
+    public static JobResult checkControl(ControlFile control,FileTypeControl fileControl, Dataset schema, File publishFile, String urlBase){
 
         String fileExtension = Utils.getFileExtension(publishFile.getAbsolutePath());
 
 
         if (fileControl == null && !control.action.equalsIgnoreCase(PublishMethod.delete.name())) {
-            JobStatus noFileTypeContent = JobStatus.PUBLISH_ERROR;
-            noFileTypeContent.setMessage("The control file for '" + publishFile.getName() +
+            return JobResult.of(JobStatus.PUBLISH_ERROR, "The control file for '" + publishFile.getName() +
                     "' requires that the '" + fileExtension + "' option be filled in");
-            return noFileTypeContent;
         }
 
         try {
             String[] headers = getHeaders(fileControl, publishFile);
             if (headers == null) {
-                JobStatus noHeaders = JobStatus.PUBLISH_ERROR;
-                noHeaders.setMessage("Headers must be specified in one of " + publishFile.getName() + " or the control file using 'columns'");
-                return noHeaders;
+                return JobResult.of(JobStatus.PUBLISH_ERROR, "Headers must be specified in one of " + publishFile.getName() + " or the control file using 'columns'");
             }
 
             PublishMethod method = PublishMethod.valueOf(control.action.toLowerCase());
-            JobStatus csvDatasetAgreement = checkColumnAgreement(fileControl, method, schema, headers ,publishFile.getName());
+            JobResult csvDatasetAgreement = checkColumnAgreement(fileControl, method, schema, headers ,publishFile.getName());
             if (csvDatasetAgreement.isError())
                 return csvDatasetAgreement;
 
-            JobStatus controlHeaderAgreement = checkControlAgreement(fileControl, schema, headers, publishFile.getName());
+            JobResult controlHeaderAgreement = checkControlAgreement(fileControl, schema, headers, publishFile.getName());
             if (controlHeaderAgreement.isError())
                 return controlHeaderAgreement;
 
-            JobStatus controlSensibility = validateControlFile(fileControl, urlBase);
+            JobResult controlSensibility = validateControlFile(fileControl, urlBase);
             if (controlSensibility.isError())
                 return controlSensibility;
         }
         catch (IOException e){
-            JobStatus cannotConnect = JobStatus.PUBLISH_ERROR;
-            cannotConnect.setMessage("Cannot determine the headers for dataset: " + schema.getId());
-            return cannotConnect;
+            return JobResult.of(JobStatus.PUBLISH_ERROR, "Cannot determine the headers for dataset: " + schema.getId());
         }
-        return JobStatus.VALID;
+        return JobResult.of(JobStatus.VALID);
 
     }
 
@@ -234,6 +233,48 @@ public class IntegrationJobValidity {
         return true;
     }
 
+    private static boolean validateBlobUploadConcurrencyArg(CommandLine cmd, CommandLineOptions options) {
+        String concurrency = cmd.getOptionValue(options.BLOB_UPLOAD_CONCURRENCY_FLAG);
+        if (concurrency == null)
+            return true;
+
+        try {
+            if (Integer.parseInt(concurrency) > 0)
+                return true;
+        } catch (NumberFormatException e) {
+            // fall through to the error below
+        }
+        System.err.println("Invalid argument: -buc,--" + options.BLOB_UPLOAD_CONCURRENCY_FLAG + " must be a positive integer");
+        return false;
+    }
+
+    private static boolean validateDryRunArgs(CommandLine cmd, CommandLineOptions options) {
+        String dryRun = cmd.getOptionValue(options.DRY_RUN_FLAG);
+        String previousSignature = cmd.getOptionValue(options.PREVIOUS_SIGNATURE_FLAG);
+        if (dryRun != null && !dryRun.equalsIgnoreCase("true") && !dryRun.equalsIgnoreCase("false")) {
+            System.err.println("Invalid argument: -dr,--" + options.DRY_RUN_FLAG + " must be 'true' or 'false'");
+            return false;
+        }
+        boolean dryRunning = dryRun != null && dryRun.equalsIgnoreCase("true");
+        String publishingWithDi2 = cmd.getOptionValue(options.PUBLISH_VIA_DI2_FLAG);
+        if (dryRunning && (publishingWithDi2 == null || !publishingWithDi2.equalsIgnoreCase("true"))) {
+            System.err.println("A dry run can only be done when -ph,--" + options.PUBLISH_VIA_DI2_FLAG + " is set to 'true'");
+            return false;
+        }
+        if (previousSignature != null) {
+            if (!dryRunning) {
+                System.err.println("-psig,--" + options.PREVIOUS_SIGNATURE_FLAG + " may only be given when " +
+                        "-dr,--" + options.DRY_RUN_FLAG + " is set to 'true'");
+                return false;
+            }
+            if (!new File(previousSignature).isFile()) {
+                System.err.println("Invalid argument: the signature " + previousSignature + " does not exist");
+                return false;
+            }
+        }
+        return true;
+    }
+
     private static boolean validateHeaderRowArg(CommandLine cmd, CommandLineOptions options) {
         String haveHeader = cmd.getOptionValue(options.HAS_HEADER_ROW_FLAG);
         String publishingWithDi2 = cmd.getOptionValue(options.PUBLISH_VIA_DI2_FLAG);
@@ -350,22 +391,22 @@ public class IntegrationJobValidity {
         }
     }
 
-    private static JobStatus validateControlFile(FileTypeControl fileControl, String urlBase) {
+    private static JobResult validateControlFile(FileTypeControl fileControl, String urlBase) {
 
-        if (fileControl == null) return JobStatus.VALID;
+        if (fileControl == null) return JobResult.of(JobStatus.VALID);
 
-        JobStatus goodTimestampFormats = checkTimeFormattingValidity(fileControl);
+        JobResult goodTimestampFormats = checkTimeFormattingValidity(fileControl);
         if (goodTimestampFormats.isError())
             return goodTimestampFormats;
 
-        JobStatus goodEncoding = checkEncodingValidity(fileControl, urlBase);
+        JobResult goodEncoding = checkEncodingValidity(fileControl, urlBase);
         if (goodEncoding.isError())
             return goodEncoding;
 
-        return JobStatus.VALID;
+        return JobResult.of(JobStatus.VALID);
     }
 
-    private static JobStatus checkAction(String action, IntegrationJob job, Dataset schema) {
+    private static JobResult checkAction(String action, IntegrationJob job, Dataset schema) {
         StringBuilder methods = new StringBuilder();
         boolean okAction = false;
         for (PublishMethod m : PublishMethod.values()) {
@@ -374,39 +415,31 @@ public class IntegrationJobValidity {
                 okAction = true;
         }
         if (!okAction) {
-            JobStatus status = JobStatus.PUBLISH_ERROR;
-            status.setMessage("Unknown Publish Method: " +
+            return JobResult.of(JobStatus.PUBLISH_ERROR, "Unknown Publish Method: " +
                     "The control file must specify the publishing method via the 'action' option as one of: \n" +
                     methods.toString());
-            return status;
         }
         if (!PublishMethod.replace.name().equalsIgnoreCase(action) && job.getPublishViaFTP()) {
-            JobStatus status = JobStatus.PUBLISH_ERROR;
-            status.setMessage("FTP does not currently support upsert, append or delete");
-            return status;
+            return JobResult.of(JobStatus.PUBLISH_ERROR, "FTP does not currently support upsert, append or delete");
         }
         PublishMethod publishMethod = job.getPublishMethod();
         if (publishMethod != null && !action.equalsIgnoreCase(publishMethod.name())) {
-            JobStatus status = JobStatus.PUBLISH_ERROR;
-            status.setMessage("Conflicting Publish Methods: " +
+            return JobResult.of(JobStatus.PUBLISH_ERROR, "Conflicting Publish Methods: " +
                     "The publish method selected was '" + publishMethod.name() +
                     "', but the 'action' option in the control file specifies the publish method as '" + action + ".");
-            return status;
         }
         String rowIdentifier = DatasetUtils.getRowIdentifierName(schema);
         if (rowIdentifier == null && PublishMethod.delete.name().equalsIgnoreCase(action)) {
-            JobStatus status = JobStatus.PUBLISH_ERROR;
-            status.setMessage("Dataset Requirement Unfulfilled: " +
+            return JobResult.of(JobStatus.PUBLISH_ERROR, "Dataset Requirement Unfulfilled: " +
                     "To delete from a dataset, a row identifier must be set. Dataset '" + schema.getId() +
                     "' does not have a row identifier set");
-            return status;
         }
-        return JobStatus.VALID;
+        return JobResult.of(JobStatus.VALID);
     }
 
-    private static JobStatus checkTimeFormattingValidity(FileTypeControl fileControl) {
+    private static JobResult checkTimeFormattingValidity(FileTypeControl fileControl) {
         if (!fileControl.hasTimestampFormatting())
-            return JobStatus.VALID;
+            return JobResult.of(JobStatus.VALID);
 
         Set<String> timeFormats = fileControl.lookupTimestampFormatting();
         DateTimeFormatter formatter;
@@ -415,25 +448,23 @@ public class IntegrationJobValidity {
                 continue;
             try { formatter = DateTimeFormat.forPattern(format); }
             catch (IllegalArgumentException e) {
-                JobStatus status = JobStatus.PUBLISH_ERROR;
-                status.setMessage("Unsupported Date Time Format: The time format '" + format +
+                return JobResult.of(JobStatus.PUBLISH_ERROR, "Unsupported Date Time Format: The time format '" + format +
                         "' specified in the control file is not a valid pattern." +
                         "\nPlease consult " + jodaLink + " for more information");
-                return status;
             }
         }
 
-        return JobStatus.VALID;
+        return JobResult.of(JobStatus.VALID);
     }
 
-    private static JobStatus checkEncodingValidity(FileTypeControl fileControl, String urlBase) {
+    private static JobResult checkEncodingValidity(FileTypeControl fileControl, String urlBase) {
         if (!fileControl.hasEncoding())
-            return JobStatus.VALID;
+            return JobResult.of(JobStatus.VALID);
 
         String encoding = fileControl.encoding;
         if (encoding.equalsIgnoreCase("ISO-8859-1") ||
                 encoding.equalsIgnoreCase("UTF-8"))
-            return JobStatus.VALID;
+            return JobResult.of(JobStatus.VALID);
 
         HttpUtility http = new HttpUtility();
         String charsetUri = urlBase + charsetsPath;
@@ -448,15 +479,13 @@ public class IntegrationJobValidity {
                 }
             }
             if (!encodingFound) {
-                JobStatus status = JobStatus.PUBLISH_ERROR;
-                status.setMessage("Unsupported Encoding: The encoding '" + encoding + "' in the control file is not supported." +
+                return JobResult.of(JobStatus.PUBLISH_ERROR, "Unsupported Encoding: The encoding '" + encoding + "' in the control file is not supported." +
                         "\nPlease consult " + charsetUri + " for a listing of supported encodings");
-                return status;
             }
         } catch (Exception e) {
             // no reason to fail jobs because of encoding check
         }
-        return JobStatus.VALID;
+        return JobResult.of(JobStatus.VALID);
     }
 
     /**
@@ -471,9 +500,9 @@ public class IntegrationJobValidity {
      * @param csvFilename the file name, for printing purposes.
      * @return
      */
-    private static JobStatus checkControlAgreement(FileTypeControl fileControl, Dataset schema, String[] headers, String csvFilename) {
+    private static JobResult checkControlAgreement(FileTypeControl fileControl, Dataset schema, String[] headers, String csvFilename) {
 
-        if (schema == null || fileControl == null || !fileControl.hasSyntheticLocations()) return JobStatus.VALID;
+        if (schema == null || fileControl == null || !fileControl.hasSyntheticLocations()) return JobResult.of(JobStatus.VALID);
 
         Map<String, LocationColumn> syntheticLocations = fileControl.syntheticLocations;
         for (String field : syntheticLocations.keySet()) {     // O(N) N = 1,2 (small, probably)
@@ -494,19 +523,17 @@ public class IntegrationJobValidity {
                 }
             }
             if (locationInFile) {
-                JobStatus status = JobStatus.PUBLISH_ERROR;
-                status.setMessage("Ambiguous Column Name: Synthetic location '" + field + "' specified in the control file may conflict with '" +
+                return JobResult.of(JobStatus.PUBLISH_ERROR, "Ambiguous Column Name: Synthetic location '" + field + "' specified in the control file may conflict with '" +
                         field + "' provided in '" + csvFilename + "'." +
                         "\nPlease ensure '" + field + "' is not currently mapped to fields in the CSV.");
-                return status;
             }
 
             //The documentation says that this should work, so I'm commenting it out
 
 //            for (int i = 0; i < componentsInFile.length; i++) {
 //                if (!componentsInFile[i]) {
-//                    JobStatus status = JobStatus.PUBLISH_ERROR;
-//                    status.setMessage("Synthetic Location Not Found: The synthetic location column '" + field +
+//                    JobResult status = JobResult.of(JobStatus.PUBLISH_ERROR);
+//                    status = status.withMessage("Synthetic Location Not Found: The synthetic location column '" + field +
 //                            "' references a component '" + locationComponents[i] + "' which is not present in '" +
 //                            csvFilename + "'." +
 //                            "\nPlease check your control file to ensure that the column name is spelled correctly, " +
@@ -514,12 +541,12 @@ public class IntegrationJobValidity {
 //                    return status;
 //                }
 //            }
-            JobStatus typesSupported = locationTypesSupported(field, location, DatasetUtils.getDatasetTypeMapping(schema));
+            JobResult typesSupported = locationTypesSupported(field, location, DatasetUtils.getDatasetTypeMapping(schema));
             if (typesSupported.isError())
                 return typesSupported;
         }
 
-        return JobStatus.VALID;
+        return JobResult.of(JobStatus.VALID);
     }
 
     /**
@@ -528,7 +555,7 @@ public class IntegrationJobValidity {
      * @param typeMapping a map from dataset column field names to their type
      * @return true if each component column has a supported type; false if any have an unsupported type
      */
-    private static JobStatus locationTypesSupported(String locationName, LocationColumn location, Map<String,String> typeMapping) {
+    private static JobResult locationTypesSupported(String locationName, LocationColumn location, Map<String,String> typeMapping) {
         Map<String,String> componentColumns = location.findComponentColumns();
         for (String component : componentColumns.keySet()){
             String fieldname = componentColumns.get(component);
@@ -540,7 +567,7 @@ public class IntegrationJobValidity {
             }
             String unsupportedType = getUnsupportedType(fieldname, supportedTypes, typeMapping);
             if (unsupportedType != null) {
-                JobStatus status = JobStatus.PUBLISH_ERROR;
+                JobResult status = JobResult.of(JobStatus.PUBLISH_ERROR);
                 StringBuilder message = new StringBuilder("Unsupported Datatype: " + Utils.capitalizeFirstLetter(component) + " component  '" +
                         locationName + "' is of type '" + unsupportedType + "'; " + component + " components require ");
                 if (supportedTypes.length == 1) message.append(" a ");
@@ -550,11 +577,10 @@ public class IntegrationJobValidity {
                 message.append(" column");
                 if (supportedTypes.length > 1) message.append('s');
                 message.append(".\nPlease specify a column that matches a supported type.");
-                status.setMessage(message.toString());
-                return status;
+                return status.withMessage(message.toString());
             }
         }
-        return  JobStatus.VALID;
+        return  JobResult.of(JobStatus.VALID);
     }
 
     /**
@@ -584,11 +610,11 @@ public class IntegrationJobValidity {
      * @param csvFilename the file name, for printing purposes.
      * @return
      */
-    private static JobStatus checkColumnAgreement(FileTypeControl fileControl, PublishMethod method, Dataset schema, String[] headers, String csvFilename) {
+    private static JobResult checkColumnAgreement(FileTypeControl fileControl, PublishMethod method, Dataset schema, String[] headers, String csvFilename) {
 
         String[] ignoredColumns = fileControl.ignoreColumns;
 
-        if (schema == null) return JobStatus.VALID;
+        if (schema == null) return JobResult.of(JobStatus.VALID);
 
         String rowIdentifier = DatasetUtils.getRowIdentifierName(schema);
         Set<String> columnNames = DatasetUtils.getFieldNamesSet(schema);
@@ -599,13 +625,11 @@ public class IntegrationJobValidity {
             if (field.equalsIgnoreCase(rowIdentifier)) headerHasRowId = true;
 
             if (!columnNames.contains(field)) {
-                JobStatus status = JobStatus.PUBLISH_ERROR;
-                status.setMessage("Extra Columns Specified: File '" + csvFilename + "' contains column '" + field +
+                return JobResult.of(JobStatus.PUBLISH_ERROR, "Extra Columns Specified: File '" + csvFilename + "' contains column '" + field +
                         "', but dataset '" + schema.getId() + "' does not." +
                         "\nPlease check that your headers are using the field name rather than the human readable name." +
                         "\nConsider using 'ignoreColumns' in the control file if '" + field +
                         "' should not be included in the dataset");
-                return status;
             } else {
                 columnNames.remove(field);
             }
@@ -630,7 +654,7 @@ public class IntegrationJobValidity {
 
         if (columnNames.size() > 0 && method.equals(PublishMethod.replace)) {
             if (rowIdentifier == null) {
-                JobStatus status = JobStatus.MISSING_COLUMNS;
+                JobResult status = JobResult.of(JobStatus.MISSING_COLUMNS);
                 StringBuilder message = new StringBuilder("Missing Fields: Dataset " + schema.getId() +
                         " contains the following field(s) that are not mapped: ");//available in '" + csvFilename + "': ");
                 boolean writtenFirstValue = false;
@@ -642,16 +666,13 @@ public class IntegrationJobValidity {
                         writtenFirstValue = true;
                     }
                 }
-                status.setMessage(message.toString());
-                return status;
+                return status.withMessage(message.toString());
             } else if (!headerHasRowId) {
-                JobStatus status = JobStatus.PUBLISH_ERROR;
-                status.setMessage("Missing Row Identifier: Dataset '" + schema.getId() + "' contains a row identifier in column '" + rowIdentifier +
+                return JobResult.of(JobStatus.PUBLISH_ERROR, "Missing Row Identifier: Dataset '" + schema.getId() + "' contains a row identifier in column '" + rowIdentifier +
                         "'. This column must be present in '" + csvFilename + "'.");
-                return status;
             }
         }
-        return JobStatus.VALID;
+        return JobResult.of(JobStatus.VALID);
     }
 
     private static boolean isNullOrFalse(String s) {
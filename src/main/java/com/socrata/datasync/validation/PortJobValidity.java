@@ -5,6 +5,7 @@ import com.socrata.datasync.PublishMethod;
 import com.socrata.datasync.SocrataConnectionInfo;
 import com.socrata.datasync.Utils;
 import com.socrata.datasync.config.CommandLineOptions;
+import com.socrata.datasync.job.JobResult;
 import com.socrata.datasync.job.JobStatus;
 import com.socrata.datasync.job.PortJob;
 import org.apache.commons.cli.CommandLine;
@@ -21,21 +22,21 @@ public class PortJobValidity {
                 validateDestinationDomainArg(cmd);
     }
 
-    public static JobStatus validateJobParams(SocrataConnectionInfo connectionInfo, PortJob job) {
+    public static JobResult validateJobParams(SocrataConnectionInfo connectionInfo, PortJob job) {
         if (connectionInfo.getUrl().equals("") || connectionInfo.getUrl().equals("https://"))
-            return JobStatus.INVALID_DOMAIN;
+            return JobResult.of(JobStatus.INVALID_DOMAIN);
 
         if (!Utils.uidIsValid(job.getSourceSetID()))
-            return JobStatus.INVALID_DATASET_ID;
+            return JobResult.of(JobStatus.INVALID_DATASET_ID);
 
         if (job.getPortMethod().equals(PortMethod.copy_data) && !Utils.uidIsValid(job.getSinkSetID()))
-            return JobStatus.INVALID_DATASET_ID;
+            return JobResult.of(JobStatus.INVALID_DATASET_ID);
 
         if (job.getSourceSiteDomain().equals("") || job.getSourceSiteDomain().equals("https://"))
-            return JobStatus.INVALID_DOMAIN;
+            return JobResult.of(JobStatus.INVALID_DOMAIN);
 
         if (job.getSinkSiteDomain().equals("") || job.getSinkSiteDomain().equals("https://"))
-            return JobStatus.INVALID_DOMAIN;
+            return JobResult.of(JobStatus.INVALID_DOMAIN);
 
         boolean okayMethod = false;
         for (PortMethod method : PortMethod.values()) {
@@ -43,13 +44,13 @@ public class PortJobValidity {
                 okayMethod = true;
         }
         if (!okayMethod)
-            return JobStatus.INVALID_PORT_METHOD;
+            return JobResult.of(JobStatus.INVALID_PORT_METHOD);
 
         if (!job.getPublishMethod().equals(PublishMethod.upsert)
                 && !job.getPublishMethod().equals(PublishMethod.replace))
-            return JobStatus.INVALID_PUBLISH_METHOD;
+            return JobResult.of(JobStatus.INVALID_PUBLISH_METHOD);
 
-        return JobStatus.SUCCESS;
+        return JobResult.of(JobStatus.SUCCESS);
     }
 
     private static boolean validateDestinationDomainArg(CommandLine cmd) {
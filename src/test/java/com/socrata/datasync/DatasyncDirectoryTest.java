@@ -49,4 +49,17 @@ public class DatasyncDirectoryTest extends TestBase {
         TestCase.assertEquals(mostRecent3, dd.findMostRecentContent(listing3, hourDf));
         TestCase.assertEquals(mostRecent4, dd.findMostRecentContent(listing4, hourDf));
     }
+
+    @Test
+    public void testFindMostRecentByNumbers() throws ParseException, UnsupportedEncodingException {
+        TestCase.assertNull(DatasyncDirectory.findMostRecent(null));
+        TestCase.assertNull(DatasyncDirectory.findMostRecent(new ArrayList<String>()));
+        TestCase.assertEquals("2015/", DatasyncDirectory.findMostRecent(Arrays.asList("2013/", "2015/", "2014/")));
+        TestCase.assertEquals("11/", DatasyncDirectory.findMostRecent(Arrays.asList("2/", "11/", "06/")));
+        // hours are compared as a 24-hour clock
+        TestCase.assertEquals("13:00:00.001-filename.ssig", DatasyncDirectory.findMostRecent(Arrays.asList(
+                "12%3A59%3A59.999-filename.ssig", "13%3A00%3A00.001-filename.ssig", "01%3A00%3A00.000-filename.ssig")));
+        TestCase.assertEquals("21:01:34.999-file-name.ssig", DatasyncDirectory.findMostRecent(Arrays.asList(
+                "05%3A10%3A50.546-filename.ssig", "21%3A01%3A34.999-file-name.ssig", "21%3A01%3A34.998-filename.ssig")));
+    }
 }
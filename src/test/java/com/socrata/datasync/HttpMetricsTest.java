@@ -0,0 +1,102 @@
+package com.socrata.datasync;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import junit.framework.TestCase;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.util.EntityUtils;
+import org.junit.Test;
+
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+public class HttpMetricsTest {
+
+    @Test
+    public void testNamesEndpoints() {
+        TestCase.assertEquals("blob", HttpMetrics.endpointOf("POST", "/datasync/id/abcd-1234"));
+        TestCase.assertEquals("commit", HttpMetrics.endpointOf("POST", "https://x.org/datasync/id/abcd-1234/commit"));
+        TestCase.assertEquals("status", HttpMetrics.endpointOf("GET", "/datasync/id/abcd-1234/status/j.json"));
+        TestCase.assertEquals("ls", HttpMetrics.endpointOf("GET", "/datasync/id/abcd-1234/completed/2014/6/"));
+        TestCase.assertEquals("signature",
+                HttpMetrics.endpointOf("HEAD", "/datasync/id/abcd-1234/completed/2014/6/3/signatures/02:32:42.567-f.ssig"));
+        TestCase.assertEquals("views", HttpMetrics.endpointOf("GET", "/api/views/abcd-1234"));
+        TestCase.assertEquals("imports2", HttpMetrics.endpointOf("POST", "/api/imports2?method=scanShape"));
+        TestCase.assertEquals("upsert", HttpMetrics.endpointOf("POST", "/resource/abcd-1234.json"));
+        TestCase.assertEquals("other", HttpMetrics.endpointOf("GET", "https://api.github.com"));
+    }
+
+    @Test
+    public void testHistogramQuantiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        TestCase.assertEquals(0.0, histogram.getQuantileMillis(0.5));
+        for (int i = 0; i < 90; i++) histogram.record(TimeUnit.MILLISECONDS.toNanos(3));
+        for (int i = 0; i < 9; i++) histogram.record(TimeUnit.MILLISECONDS.toNanos(400));
+        histogram.record(TimeUnit.SECONDS.toNanos(200));
+        TestCase.assertEquals(100, histogram.getCount());
+        TestCase.assertEquals(5.0, histogram.getQuantileMillis(0.5));
+        TestCase.assertEquals(500.0, histogram.getQuantileMillis(0.95));
+        TestCase.assertEquals(200000.0, histogram.getQuantileMillis(1.0));
+    }
+
+    @Test
+    public void testRecordsRequests() throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/api/views/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try (InputStream in = exchange.getRequestBody()) {
+                    while (in.read() != -1) { }
+                }
+                byte[] body = "{\"id\":\"abcd-1234\"}".getBytes("UTF-8");
+                exchange.sendResponseHeaders(exchange.getRequestMethod().equals("GET") ? 200 : 404, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+                exchange.close();
+            }
+        });
+        server.start();
+        try {
+            URI uri = URI.create("http://localhost:" + server.getAddress().getPort() + "/api/views/abcd-1234");
+            EndpointMetrics views = HttpMetrics.get().forEndpoint("views");
+            long requests = views.getRequests();
+            long bytesIn = views.getBytesIn();
+            long bytesOut = views.getBytesOut();
+
+            HttpUtility http = new HttpUtility();
+            try (CloseableHttpResponse response = http.get(uri, "application/json")) {
+                TestCase.assertEquals("{\"id\":\"abcd-1234\"}", EntityUtils.toString(response.getEntity()));
+            }
+            try (CloseableHttpResponse response = http.post(uri,
+                    new ByteArrayEntity(new byte[100], ContentType.APPLICATION_OCTET_STREAM))) {
+                EntityUtils.consume(response.getEntity());
+            }
+
+            TestCase.assertEquals(requests + 2, views.getRequests());
+            TestCase.assertEquals(bytesIn + 36, views.getBytesIn());
+            TestCase.assertEquals(bytesOut + 100, views.getBytesOut());
+            TestCase.assertTrue(views.getStatusCodeCounts().get(200) >= 1);
+            TestCase.assertTrue(views.getStatusCodeCounts().get(404) >= 1);
+
+            ObjectName name = new ObjectName("com.socrata.datasync:type=HttpEndpoint,name=views");
+            TestCase.assertEquals(views.getRequests(),
+                    ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Requests"));
+
+            String text = HttpMetrics.get().toPrometheus();
+            TestCase.assertTrue(text.contains("datasync_http_responses_total{endpoint=\"views\",code=\"404\"}"));
+            TestCase.assertTrue(text.contains("datasync_http_request_duration_seconds_bucket{endpoint=\"views\",le=\"+Inf\"}"));
+        } finally {
+            server.stop(0);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.socrata.datasync;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import junit.framework.TestCase;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RateLimiterTest {
+
+    private static long millisSince(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    private static HttpResponse response(int status, String retryAfter) {
+        HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, status, "");
+        if (retryAfter != null) response.setHeader("Retry-After", retryAfter);
+        return response;
+    }
+
+    @Test
+    public void testRequestsBeyondTheBurstWaitTheirTurn() throws Exception {
+        RateLimiter limiter = new RateLimiter(10);
+        long start = System.nanoTime();
+        for (int i = 0; i < 10; i++) limiter.acquire("a.example.com");
+        TestCase.assertTrue(millisSince(start) < 100);
+        for (int i = 0; i < 5; i++) limiter.acquire("a.example.com");
+        // the five after the first second's worth come 100ms apart
+        TestCase.assertTrue(millisSince(start) >= 350);
+        // other domains have their own tokens
+        start = System.nanoTime();
+        limiter.acquire("b.example.com");
+        TestCase.assertTrue(millisSince(start) < 50);
+    }
+
+    @Test
+    public void testThrottlingSlowsAndPausesTheDomain() throws Exception {
+        RateLimiter limiter = new RateLimiter(10);
+        limiter.recordResponse("c.example.com", response(429, "1"));
+        TestCase.assertEquals(5.0, limiter.getRate("c.example.com"));
+        long start = System.nanoTime();
+        limiter.acquire("c.example.com");
+        TestCase.assertTrue(millisSince(start) >= 900);
+
+        // a 503 only counts as throttling if it says when to come back
+        limiter.recordResponse("c.example.com", response(503, null));
+        TestCase.assertEquals(5.0, limiter.getRate("c.example.com"));
+
+        // accepted requests bring the rate back up, but no further than the ceiling
+        for (int i = 0; i < 1000; i++) limiter.recordResponse("c.example.com", response(200, null));
+        TestCase.assertEquals(10.0, limiter.getRate("c.example.com"));
+    }
+
+    @Test
+    public void testRetryAfterIsParsed() {
+        TestCase.assertEquals(2000, RateLimiter.parseRetryAfter("2"));
+        long fromDate = RateLimiter.parseRetryAfter(DateUtils.formatDate(new Date(System.currentTimeMillis() + 10000)));
+        TestCase.assertTrue(fromDate > 8000 && fromDate <= 10000);
+        TestCase.assertEquals(0, RateLimiter.parseRetryAfter(DateUtils.formatDate(new Date(0))));
+        TestCase.assertEquals(-1, RateLimiter.parseRetryAfter("soon"));
+    }
+
+    @Test
+    public void testThrottlingDoesntSpendRetries() throws Exception {
+        // no retries at all in the budget, and none allowed
+        Retrier retrier = new Retrier(new RetryBudget(0.0, 0, 0), 1, 60000);
+        final AtomicInteger attempts = new AtomicInteger();
+        String result = retrier.call("d.example.com", 0, new Backoff(10, 2.0, 40), new Retrier.Attempt<String, IOException>() {
+            @Override
+            public String run() throws IOException {
+                if (attempts.incrementAndGet() <= 3) throw new Retrier.ThrottledException("429 Too Many Requests", 20);
+                return "ok";
+            }
+        });
+        TestCase.assertEquals("ok", result);
+        TestCase.assertEquals(4, attempts.get());
+        TestCase.assertEquals(CircuitBreaker.State.CLOSED, retrier.breakerFor("d.example.com").getState());
+    }
+
+    @Test
+    public void testHttpUtilityWaitsOutThrottling() throws Exception {
+        final AtomicInteger requests = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/busy", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                if (requests.incrementAndGet() == 1) {
+                    exchange.getResponseHeaders().set("Retry-After", "1");
+                    exchange.sendResponseHeaders(429, -1);
+                } else {
+                    exchange.sendResponseHeaders(200, -1);
+                }
+                exchange.close();
+            }
+        });
+        server.start();
+        try {
+            // no retries of failures, which a throttled request isn't
+            HttpUtility http = new HttpUtility(null, false, 1, 0.01);
+            long start = System.nanoTime();
+            try (CloseableHttpResponse response = http.get(
+                    URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/busy"), "text/plain")) {
+                TestCase.assertEquals(200, response.getStatusLine().getStatusCode());
+            }
+            TestCase.assertEquals(2, requests.get());
+            TestCase.assertTrue(millisSince(start) >= 900);
+        } finally {
+            server.stop(0);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.socrata.datasync;
+
+import com.socrata.api.Soda2Producer;
+import com.socrata.exceptions.SodaError;
+import com.socrata.model.UpsertResult;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import junit.framework.TestCase;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+public class RequestCompressionTest {
+    private HttpServer server;
+    private volatile boolean acceptsGzip = true;
+    private final List<String> encodings = Collections.synchronizedList(new ArrayList<String>());
+    private final List<String> bodies = Collections.synchronizedList(new ArrayList<String>());
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/resource", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String encoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+                encodings.add(String.valueOf(encoding));
+                InputStream body = exchange.getRequestBody();
+                if ("gzip".equals(encoding)) {
+                    if (!acceptsGzip) {
+                        respond(exchange, 415, "{\"code\":\"unsupported\",\"message\":\"Unsupported Content-Encoding\"}");
+                        return;
+                    }
+                    body = new GZIPInputStream(body);
+                }
+                bodies.add(IOUtils.toString(body, "UTF-8"));
+                respond(exchange, 200, "{\"rows_created\":1,\"rows_updated\":0,\"rows_deleted\":0}");
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    private static void respond(HttpExchange exchange, int code, String body) throws IOException {
+        byte[] bytes = body.getBytes("UTF-8");
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(code, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private Soda2Producer producer(RequestCompression compression) {
+        Soda2Producer producer = Soda2Producer.newProducer(
+                "http://localhost:" + server.getAddress().getPort(), "someone@example.com", "secret", "token");
+        compression.compress(producer.getHttpLowLevel());
+        return producer;
+    }
+
+    private static List<Map<String, Object>> rows() {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (int i = 0; i < 100; i++)
+            rows.add(Collections.<String, Object>singletonMap("name", "row " + i));
+        return rows;
+    }
+
+    @Test
+    public void testUpsertsAreGzipped() throws Exception {
+        UpsertResult result = producer(new RequestCompression(RequestCompression.Mode.auto)).upsert("abcd-1234", rows());
+        TestCase.assertEquals(1, result.getRowsCreated());
+        TestCase.assertEquals(Collections.singletonList("gzip"), encodings);
+        TestCase.assertTrue(bodies.get(0).contains("\"row 99\""));
+    }
+
+    @Test
+    public void testDomainsRefusingGzipAreSentPlainBodies() throws Exception {
+        acceptsGzip = false;
+        RequestCompression compression = new RequestCompression(RequestCompression.Mode.auto);
+        Soda2Producer producer = producer(compression);
+        String host = "localhost";
+        try {
+            producer.upsert("abcd-1234", rows());
+            TestCase.fail("the gzipped upsert should have been refused");
+        } catch (SodaError e) {
+            TestCase.assertEquals(415, e.getStatus());
+        }
+        TestCase.assertFalse(compression.shouldCompress(host));
+        producer.upsert("abcd-1234", rows());
+        TestCase.assertEquals(2, encodings.size());
+        TestCase.assertEquals("null", encodings.get(1));
+        TestCase.assertTrue(bodies.get(0).contains("\"row 99\""));
+        // other domains are still sent gzipped bodies
+        TestCase.assertTrue(compression.shouldCompress("example.com"));
+    }
+
+    @Test
+    public void testConfiguredModesOverrideNegotiation() {
+        RequestCompression compression = new RequestCompression(RequestCompression.Mode.auto);
+        compression.setMode("none");
+        TestCase.assertFalse(compression.shouldCompress("example.com"));
+        compression.setMode("gzip");
+        TestCase.assertFalse(compression.recordResponse("example.com", 415));
+        TestCase.assertTrue(compression.shouldCompress("example.com"));
+        compression.setMode("sometimes");
+        TestCase.assertEquals(RequestCompression.Mode.none, compression.getMode());
+    }
+
+    @Test
+    public void testEntitiesAreCompressedAsTheyreWritten() throws Exception {
+        RequestCompression compression = new RequestCompression(RequestCompression.Mode.auto);
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 1000; i++) json.append("{\"name\":\"row ").append(i).append("\"},");
+        json.append("{}]");
+        StringEntity plain = new StringEntity(json.toString(), ContentType.APPLICATION_JSON);
+        HttpEntity entity = compression.compress("example.com", plain);
+        TestCase.assertTrue(RequestCompression.isCompressed(entity));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        entity.writeTo(out);
+        TestCase.assertTrue(out.size() * 5 < plain.getContentLength());
+        TestCase.assertEquals(json.toString(), IOUtils.toString(new GZIPInputStream(
+                new ByteArrayInputStream(out.toByteArray())), "UTF-8"));
+
+        compression.setMode("none");
+        TestCase.assertFalse(RequestCompression.isCompressed(compression.compress("example.com", plain)));
+    }
+}
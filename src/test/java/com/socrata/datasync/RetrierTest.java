@@ -0,0 +1,114 @@
+package com.socrata.datasync;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RetrierTest {
+    private static final Backoff quick = new Backoff(10, 2.0, 40);
+
+    private static Retrier.Attempt<String, IOException> failing(final AtomicInteger attempts, final int failures) {
+        return new Retrier.Attempt<String, IOException>() {
+            @Override
+            public String run() throws IOException {
+                if (attempts.incrementAndGet() <= failures) throw new Retrier.RetryableException("503 Service Unavailable");
+                return "ok";
+            }
+        };
+    }
+
+    @Test
+    public void testBackoffIsJitteredAndCapped() {
+        Backoff backoff = new Backoff(1000, 3.5, 30000);
+        TestCase.assertEquals(1000, backoff.ceilingMillis(0));
+        TestCase.assertEquals(12250, backoff.ceilingMillis(2));
+        TestCase.assertEquals(30000, backoff.ceilingMillis(5));
+        for (int i = 0; i < 100; i++) {
+            long delay = backoff.delayMillis(2);
+            TestCase.assertTrue(delay >= 6125 && delay <= 12250);
+        }
+    }
+
+    @Test
+    public void testRetriesUntilSuccess() throws Exception {
+        Retrier retrier = new Retrier(new RetryBudget(0.2, 10, 100), 5, 60000);
+        AtomicInteger attempts = new AtomicInteger();
+        TestCase.assertEquals("ok", retrier.call("a.example.com", 3, quick, failing(attempts, 2)));
+        TestCase.assertEquals(3, attempts.get());
+        TestCase.assertEquals(CircuitBreaker.State.CLOSED, retrier.breakerFor("a.example.com").getState());
+    }
+
+    @Test
+    public void testBudgetCapsRetries() throws Exception {
+        Retrier retrier = new Retrier(new RetryBudget(0.0, 2, 2), 100, 60000);
+        AtomicInteger attempts = new AtomicInteger();
+        try {
+            retrier.call("b.example.com", 10, quick, failing(attempts, 10));
+            TestCase.fail("the budget should have run out");
+        } catch (Retrier.RetryableException e) {
+            // the first attempt and the two retries the reserve allows
+            TestCase.assertEquals(3, attempts.get());
+        }
+    }
+
+    @Test
+    public void testOpenBreakerFailsFast() throws Exception {
+        Retrier retrier = new Retrier(new RetryBudget(1.0, 100, 100), 3, 100);
+        AtomicInteger attempts = new AtomicInteger();
+        try {
+            retrier.call("c.example.com", 10, quick, failing(attempts, 10));
+            TestCase.fail("the breaker should have opened");
+        } catch (Retrier.RetryableException e) {
+            TestCase.assertEquals(3, attempts.get());
+        }
+        try {
+            retrier.call("c.example.com", 10, quick, failing(attempts, 10));
+            TestCase.fail("requests should fail without being made");
+        } catch (Retrier.CircuitOpenException e) {
+            TestCase.assertEquals(3, attempts.get());
+        }
+        // other hosts are unaffected
+        TestCase.assertEquals("ok", retrier.call("d.example.com", 0, quick, failing(new AtomicInteger(), 0)));
+
+        // once open long enough, a successful trial closes it
+        Thread.sleep(150);
+        TestCase.assertEquals("ok", retrier.call("c.example.com", 0, quick, failing(attempts, 0)));
+        TestCase.assertEquals(CircuitBreaker.State.CLOSED, retrier.breakerFor("c.example.com").getState());
+    }
+
+    @Test
+    public void testAsyncRetriesDontHoldTheThread() throws Exception {
+        Retrier retrier = new Retrier(new RetryBudget(0.2, 10, 100), 5, 60000);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            AtomicInteger slowAttempts = new AtomicInteger();
+            ListenableFuture<String> slow = retrier.submit("e.example.com", 1,
+                    new Backoff(500, 1.0, 500), failing(slowAttempts, 1), executor);
+            // runs on the only thread while the first waits to be retried
+            ListenableFuture<String> fast = retrier.submit("f.example.com", 0, quick,
+                    failing(new AtomicInteger(), 0), executor);
+            TestCase.assertEquals("ok", fast.get(200, TimeUnit.MILLISECONDS));
+            TestCase.assertFalse(slow.isDone());
+            TestCase.assertEquals("ok", slow.get(2, TimeUnit.SECONDS));
+            TestCase.assertEquals(2, slowAttempts.get());
+
+            ListenableFuture<String> failed = retrier.submit("g.example.com", 1, quick,
+                    failing(new AtomicInteger(), 5), executor);
+            try {
+                failed.get(2, TimeUnit.SECONDS);
+                TestCase.fail("retries should have run out");
+            } catch (ExecutionException e) {
+                TestCase.assertTrue(e.getCause() instanceof Retrier.RetryableException);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
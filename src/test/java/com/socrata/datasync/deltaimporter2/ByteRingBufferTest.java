@@ -0,0 +1,146 @@
+package com.socrata.datasync.deltaimporter2;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+public class ByteRingBufferTest {
+
+    private interface Finisher {
+        void finish(OutputStream sink) throws IOException;
+    }
+
+    /**
+     * Writes data into sink from another thread in randomly sized pieces, while reading it back out
+     * of source in randomly sized pieces.
+     * @return the bytes read
+     */
+    private static byte[] transfer(final byte[] data, final OutputStream sink, InputStream source,
+                                   final Finisher finisher) throws Exception {
+        Thread writer = new Thread() {
+            @Override
+            public void run() {
+                Random rng = new Random(1);
+                try {
+                    int off = 0;
+                    while (off < data.length) {
+                        int n = rng.nextInt(10) == 0 ? 1 : Math.min(data.length - off, 1 + rng.nextInt(20000));
+                        if (n == 1) sink.write(data[off]); else sink.write(data, off, n);
+                        off += n;
+                    }
+                    finisher.finish(sink);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        writer.start();
+
+        Random rng = new Random(2);
+        // one spare byte, so the final read asking for more than is left sees end-of-stream
+        byte[] result = new byte[data.length + 1];
+        int off = 0;
+        int n;
+        while (true) {
+            if (rng.nextInt(10) == 0) {
+                int b = source.read();
+                if (b == -1) break;
+                result[off++] = (byte) b;
+            } else {
+                n = source.read(result, off, Math.max(1, Math.min(result.length - off, 1 + rng.nextInt(30000))));
+                if (n == -1) break;
+                off += n;
+            }
+        }
+        writer.join();
+        TestCase.assertEquals(data.length, off);
+        return Arrays.copyOf(result, off);
+    }
+
+    private static byte[] randomData(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+
+    @Test
+    public void testStressAgainstPipedStreams() throws Exception {
+        byte[] data = randomData(32 * 1024 * 1024 + 17);
+
+        for (int round = 0; round < 3; round++) {
+            final ByteRingBuffer ring = new ByteRingBuffer(64 * 1024);
+            long start = System.nanoTime();
+            byte[] viaRing = transfer(data, ring.sink(), ring.source(), new Finisher() {
+                public void finish(OutputStream sink) { ring.finish(); }
+            });
+            long ringNanos = System.nanoTime() - start;
+            TestCase.assertTrue(Arrays.equals(data, viaRing));
+
+            PipedInputStream pipedSource = new PipedInputStream(64 * 1024);
+            PipedOutputStream pipedSink = new PipedOutputStream(pipedSource);
+            start = System.nanoTime();
+            byte[] viaPipe = transfer(data, pipedSink, pipedSource, new Finisher() {
+                public void finish(OutputStream sink) throws IOException { sink.close(); }
+            });
+            long pipeNanos = System.nanoTime() - start;
+            TestCase.assertTrue(Arrays.equals(data, viaPipe));
+
+            System.out.println(String.format("32MB through a 64K buffer: ring %d ms, piped %d ms",
+                    ringNanos / 1000000, pipeNanos / 1000000));
+        }
+    }
+
+    @Test
+    public void testTinyBufferWrapsCorrectly() throws Exception {
+        byte[] data = randomData(1024 * 1024);
+        final ByteRingBuffer ring = new ByteRingBuffer(7);
+        byte[] result = transfer(data, ring.sink(), ring.source(), new Finisher() {
+            public void finish(OutputStream sink) { ring.finish(); }
+        });
+        TestCase.assertTrue(Arrays.equals(data, result));
+    }
+
+    @Test
+    public void testWriterFailureReachesReaderAfterData() throws Exception {
+        ByteRingBuffer ring = new ByteRingBuffer(1024);
+        ring.sink().write(new byte[] { 1, 2, 3 });
+        ring.fail(new IOException("disk on fire"));
+        byte[] buffer = new byte[10];
+        TestCase.assertEquals(3, ring.source().read(buffer));
+        try {
+            ring.source().read(buffer);
+            TestCase.fail("Expected the writer's failure");
+        } catch (IOException e) {
+            TestCase.assertEquals("disk on fire", e.getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void testClosingReaderUnblocksWriter() throws Exception {
+        final ByteRingBuffer ring = new ByteRingBuffer(16);
+        final IOException[] failure = new IOException[1];
+        Thread writer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    ring.sink().write(new byte[1000]);
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            }
+        };
+        writer.start();
+        Thread.sleep(100);
+        ring.source().close();
+        writer.join(5000);
+        TestCase.assertFalse(writer.isAlive());
+        TestCase.assertNotNull(failure[0]);
+    }
+}
@@ -0,0 +1,45 @@
+package com.socrata.datasync.deltaimporter2;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+public class ChunkBufferPoolTest {
+
+    @Test
+    public void testReturnedBuffersAreReused() {
+        ChunkBufferPool pool = new ChunkBufferPool(2);
+        for (int chunk = 0; chunk < 1000; chunk++) {
+            byte[] first = pool.acquire(1024);
+            byte[] second = pool.acquire(1024);
+            TestCase.assertNotSame(first, second);
+            pool.release(first);
+            pool.release(second);
+        }
+        TestCase.assertEquals(2, pool.getAllocations());
+    }
+
+    @Test
+    public void testOnlySoManyBuffersAreKept() {
+        ChunkBufferPool pool = new ChunkBufferPool(1);
+        byte[] first = pool.acquire(16);
+        byte[] second = pool.acquire(16);
+        pool.release(first);
+        pool.release(second);
+        TestCase.assertSame(first, pool.acquire(16));
+        pool.acquire(16);
+        TestCase.assertEquals(3, pool.getAllocations());
+    }
+
+    @Test
+    public void testBuffersTooSmallForTheChunkSizeAreDropped() {
+        ChunkBufferPool pool = new ChunkBufferPool(2);
+        byte[] small = pool.acquire(16);
+        pool.release(small);
+        byte[] large = pool.acquire(64);
+        TestCase.assertEquals(64, large.length);
+        pool.release(large);
+        // a larger buffer does for a smaller chunk
+        TestCase.assertSame(large, pool.acquire(32));
+        TestCase.assertEquals(2, pool.getAllocations());
+    }
+}
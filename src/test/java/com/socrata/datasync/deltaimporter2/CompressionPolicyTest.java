@@ -0,0 +1,47 @@
+package com.socrata.datasync.deltaimporter2;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class CompressionPolicyTest {
+
+    private static byte[] csvLikeSample() {
+        Random rng = new Random(3);
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < 1024 * 1024) {
+            sb.append(rng.nextInt(100000)).append(",Some Street,").append(rng.nextInt(50)).append(",2015-06-0")
+              .append(rng.nextInt(9) + 1).append("T00:00:00,\"a description, quoted\"\n");
+        }
+        return sb.toString().getBytes();
+    }
+
+    @Test
+    public void testFastLinkPrefersLittleOrNoCompression() throws Exception {
+        // a link faster than any compressor can keep up with
+        CompressionPolicy.Decision decision = CompressionPolicy.choose(csvLikeSample(), 1e12, 1);
+        TestCase.assertEquals(PatchCompression.NONE, decision.getChoice());
+    }
+
+    @Test
+    public void testSlowLinkPrefersCompression() throws Exception {
+        // 100 KB/s: every compressor outruns the link, so the smallest output wins
+        CompressionPolicy.Decision decision = CompressionPolicy.choose(csvLikeSample(), 100 * 1024, 1);
+        TestCase.assertTrue(decision.getChoice().getType() != PatchCompression.Type.NONE);
+        TestCase.assertTrue(decision.getThroughput(decision.getChoice()) >= decision.getThroughput(PatchCompression.GZIP));
+        TestCase.assertTrue(decision.getEstimatedSavings() >= 0.0);
+        TestCase.assertTrue(decision.report().contains(decision.getChoice().toString()));
+    }
+
+    @Test
+    public void testCompressionNamesRoundTrip() {
+        for (PatchCompression compression : PatchCompression.candidates()) {
+            TestCase.assertEquals(compression, PatchCompression.parse(compression.toString()));
+        }
+        TestCase.assertEquals(PatchCompression.GZIP, PatchCompression.parse("gzip"));
+        TestCase.assertEquals(".xz", PatchCompression.parse("XZ").getExtension());
+        TestCase.assertNull(PatchCompression.parse("gzip-12"));
+        TestCase.assertNull(PatchCompression.parse("zstd"));
+    }
+}
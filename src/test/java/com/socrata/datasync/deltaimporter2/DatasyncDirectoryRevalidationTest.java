@@ -0,0 +1,131 @@
+package com.socrata.datasync.deltaimporter2;
+
+import com.socrata.datasync.HttpUtility;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Looks for the most recent signature in a local stand-in for the datasync directory tree, which
+ * answers conditional gets of listings that haven't changed with 304 Not Modified.
+ */
+public class DatasyncDirectoryRevalidationTest {
+    private static final String base = "/datasync/id/abcd-1234/";
+
+    private HttpServer server;
+    private HttpUtility http;
+    private File home;
+    private String originalHome;
+    // the entries of each directory, and each signature that exists, by path
+    private final Map<String, String> listings = new ConcurrentHashMap<>();
+    // each request made, as its method, path and the status it was answered with
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+
+    @Before
+    public void setUp() throws IOException {
+        home = Files.createTempDirectory("datasync-home").toFile();
+        originalHome = System.getProperty("user.home");
+        System.setProperty("user.home", home.getAbsolutePath());
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/datasync", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String path = exchange.getRequestURI().getPath();
+                String listing = listings.get(path);
+                String etag = listing == null ? null : "\"" + Integer.toHexString(listing.hashCode()) + "\"";
+                int status;
+                if (listing == null) {
+                    status = 404;
+                } else if (exchange.getRequestMethod().equals("HEAD")) {
+                    status = 200;
+                } else if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    status = 304;
+                } else {
+                    status = 200;
+                }
+                requests.add(exchange.getRequestMethod() + " " + path + " " + status);
+                if (etag != null) exchange.getResponseHeaders().set("ETag", etag);
+                byte[] body = status == 200 && exchange.getRequestMethod().equals("GET") ?
+                        listing.getBytes("UTF-8") : new byte[0];
+                exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+                if (body.length > 0) {
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write(body);
+                    }
+                }
+                exchange.close();
+            }
+        });
+        server.start();
+        http = new HttpUtility();
+
+        listings.put(base + "completed/", "[\"2014/\",\"2015/\"]");
+        listings.put(base + "completed/2015/", "[\"6/\",\"11/\"]");
+        listings.put(base + "completed/2015/11/", "[\"3/\"]");
+        listings.put(base + "completed/2015/11/3/signatures/", "[\"02:32:42.567-a.ssig\"]");
+        listings.put(base + "completed/2015/11/3/signatures/02:32:42.567-a.ssig", "");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        http.close();
+        server.stop(0);
+        System.setProperty("user.home", originalHome);
+        FileUtils.deleteDirectory(home);
+    }
+
+    private DatasyncDirectory directory() {
+        return new DatasyncDirectory(http, URI.create("http://localhost:" + server.getAddress().getPort()), "abcd-1234");
+    }
+
+    private int count(String suffix) {
+        int n = 0;
+        for (String request : new ArrayList<>(requests)) if (request.endsWith(suffix)) n++;
+        return n;
+    }
+
+    @Test
+    public void testAnUnchangedTreeIsOnlyRevalidated() throws Exception {
+        String expected = base + "completed/2015/11/3/signatures/02:32:42.567-a.ssig";
+        TestCase.assertEquals(expected, directory().getPathToSignature());
+        TestCase.assertEquals(4, count(" 200"));
+
+        requests.clear();
+        TestCase.assertEquals(expected, directory().getPathToSignature());
+        // every listing on the path answered Not Modified, and the signature was still there
+        TestCase.assertEquals(4, count(" 304"));
+        TestCase.assertEquals(1, requests.size() - 4);
+        TestCase.assertEquals(1, count("-a.ssig 200"));
+    }
+
+    @Test
+    public void testANewerSignatureIsFound() throws Exception {
+        directory().getPathToSignature();
+        listings.put(base + "completed/2015/11/3/signatures/", "[\"02:32:42.567-a.ssig\",\"14:00:00.000-b.ssig\"]");
+        listings.put(base + "completed/2015/11/3/signatures/14:00:00.000-b.ssig", "");
+
+        requests.clear();
+        TestCase.assertEquals(base + "completed/2015/11/3/signatures/14:00:00.000-b.ssig",
+                directory().getPathToSignature());
+        // the walk reused the listings revalidated along the way rather than fetching them again
+        TestCase.assertEquals(5, requests.size());
+    }
+}
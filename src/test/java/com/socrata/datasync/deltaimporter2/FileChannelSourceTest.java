@@ -0,0 +1,131 @@
+package com.socrata.datasync.deltaimporter2;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class FileChannelSourceTest {
+
+    private static File tempFile(byte[] contents) throws IOException {
+        File f = File.createTempFile("source", ".csv");
+        f.deleteOnExit();
+        try (OutputStream out = new FileOutputStream(f)) {
+            out.write(contents);
+        }
+        return f;
+    }
+
+    private static byte[] readAll(InputStream in, int bufferSize) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[bufferSize];
+        int n;
+        while ((n = in.read(buffer)) != -1) out.write(buffer, 0, n);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testReadsFromTheStartPosition() throws IOException {
+        byte[] contents = new byte[100000];
+        new Random(1).nextBytes(contents);
+        File f = tempFile(contents);
+        // a small window, so that reads span several
+        try (FileChannelSource source = new FileChannelSource(f, 3, 4096)) {
+            TestCase.assertEquals(contents.length - 3, source.getSize());
+            TestCase.assertEquals(contents[3] & 0xff, source.read());
+            byte[] rest = readAll(source, 1000);
+            TestCase.assertTrue(Arrays.equals(Arrays.copyOfRange(contents, 4, contents.length), rest));
+            TestCase.assertEquals(contents.length - 3, source.getCount());
+            TestCase.assertEquals(-1, source.read());
+        }
+    }
+
+    @Test
+    public void testSkip() throws IOException {
+        byte[] contents = new byte[10000];
+        new Random(2).nextBytes(contents);
+        try (FileChannelSource source = new FileChannelSource(tempFile(contents), 0, 1024)) {
+            source.read(new byte[10]);
+            TestCase.assertEquals(5000, source.skip(5000));
+            TestCase.assertEquals(contents[5010] & 0xff, source.read());
+            TestCase.assertEquals(10000 - 5011, source.skip(20000));
+            TestCase.assertEquals(-1, source.read());
+        }
+    }
+
+    @Test
+    public void testSamplerReportsFromItsOwnThread() throws Exception {
+        byte[] contents = new byte[50000];
+        final Thread reader = Thread.currentThread();
+        final CountDownLatch reported = new CountDownLatch(1);
+        final long[] seen = new long[1];
+        try (FileChannelSource source = new FileChannelSource(tempFile(contents), 0)) {
+            ProgressSampler sampler = new ProgressSampler(source, 10) {
+                @Override
+                protected void progress(long count) {
+                    TestCase.assertNotSame(reader, Thread.currentThread());
+                    seen[0] = count;
+                    reported.countDown();
+                }
+            };
+            try {
+                readAll(source, 8192);
+                TestCase.assertTrue(reported.await(10, TimeUnit.SECONDS));
+                TestCase.assertEquals(contents.length, seen[0]);
+            } finally {
+                sampler.close();
+            }
+        }
+    }
+
+    @Test
+    public void testThroughputAgainstAFileInputStream() throws IOException {
+        File f = File.createTempFile("large", ".csv");
+        f.deleteOnExit();
+        byte[] row = "12345,some text in a column,2014-06-03T02:32:42,-122.4194,37.7749\n".getBytes("UTF-8");
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(f), 1 << 20)) {
+            for (long written = 0; written < 64L * 1024 * 1024; written += row.length) out.write(row);
+        }
+
+        // the previous chain: a FileInputStream, a byte at a time past the BOM, and timekeeping on every read
+        long start = System.nanoTime();
+        long streamCount = 0;
+        try (InputStream in = new FileInputStream(f)) {
+            for (int i = 0; i < 3; i++) in.read();
+            byte[] buffer = new byte[256 * 1024];
+            int n;
+            long lastSentAt = 0;
+            while ((n = in.read(buffer)) != -1) {
+                streamCount += n;
+                long now = System.currentTimeMillis();
+                if (now >= lastSentAt + 5000) lastSentAt = now;
+            }
+        }
+        long streamNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        long channelCount;
+        try (FileChannelSource in = new FileChannelSource(f, 3)) {
+            byte[] buffer = new byte[256 * 1024];
+            while (in.read(buffer) != -1) { }
+            channelCount = in.getCount();
+        }
+        long channelNanos = System.nanoTime() - start;
+
+        TestCase.assertEquals(streamCount, channelCount);
+        System.out.println(String.format("64MB read: FileChannelSource %d ms, FileInputStream %d ms",
+                channelNanos / 1000000, streamNanos / 1000000));
+        f.delete();
+    }
+}
@@ -0,0 +1,79 @@
+package com.socrata.datasync.deltaimporter2;
+
+import junit.framework.TestCase;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+public class ParallelGZIPOutputStreamTest {
+
+    private static byte[] compressibleData(int size) {
+        Random rng = new Random(size);
+        byte[] data = new byte[size];
+        String[] words = { "alpha,", "beta,", "gamma\n", "1234,", "delta-importer,", "\"quoted, field\"," };
+        int i = 0;
+        while (i < size) {
+            byte[] word = words[rng.nextInt(words.length)].getBytes();
+            int n = Math.min(word.length, size - i);
+            System.arraycopy(word, 0, data, i, n);
+            i += n;
+        }
+        return data;
+    }
+
+    private static byte[] parallelGzip(byte[] data, int threads, int blockSize) throws Exception {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (ParallelGZIPOutputStream gzip = new ParallelGZIPOutputStream(compressed, threads, 6, blockSize)) {
+            // uneven writes, so blocks are filled across write calls
+            int off = 0;
+            Random rng = new Random(0);
+            while (off < data.length) {
+                int n = Math.min(data.length - off, 1 + rng.nextInt(50000));
+                gzip.write(data, off, n);
+                off += n;
+            }
+        }
+        return compressed.toByteArray();
+    }
+
+    private static byte[] gunzip(byte[] compressed) throws Exception {
+        return IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(compressed)));
+    }
+
+    @Test
+    public void testOutputIsAValidGzipStream() throws Exception {
+        int blockSize = 64 * 1024;
+        for (int size : new int[] { 0, 1, blockSize - 1, blockSize, blockSize + 1, 10 * blockSize + 12345 }) {
+            byte[] data = compressibleData(size);
+            for (int threads : new int[] { 1, 4 }) {
+                byte[] roundTripped = gunzip(parallelGzip(data, threads, blockSize));
+                TestCase.assertTrue("size=" + size + " threads=" + threads, Arrays.equals(data, roundTripped));
+            }
+        }
+    }
+
+    @Test
+    public void testIncompressibleDataRoundTrips() throws Exception {
+        byte[] data = new byte[3 * 1024 * 1024 + 7];
+        new Random(1).nextBytes(data);
+        TestCase.assertTrue(Arrays.equals(data, gunzip(parallelGzip(data, 3, ParallelGZIPOutputStream.DEFAULT_BLOCK_SIZE))));
+    }
+
+    @Test
+    public void testCompressionIsCloseToSerialGzip() throws Exception {
+        byte[] data = compressibleData(8 * 1024 * 1024);
+        ByteArrayOutputStream serial = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(serial)) {
+            gzip.write(data);
+        }
+        byte[] parallel = parallelGzip(data, 4, ParallelGZIPOutputStream.DEFAULT_BLOCK_SIZE);
+        // priming each block with its predecessor's tail keeps the cost of splitting to a few percent
+        TestCase.assertTrue(parallel.length + " vs " + serial.size(), parallel.length < serial.size() * 1.05);
+    }
+}
@@ -0,0 +1,66 @@
+package com.socrata.datasync.deltaimporter2;
+
+import com.socrata.ssync.PatchComputer;
+import com.socrata.ssync.SignatureComputer;
+import com.socrata.ssync.SignatureTable;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+public class PatchEstimateTest {
+
+    private static byte[] patchOf(byte[] oldData, byte[] newData) throws Exception {
+        ByteArrayOutputStream sig = new ByteArrayOutputStream();
+        SignatureComputer.compute("MD5", "MD5", 10240, new ByteArrayInputStream(oldData), sig);
+        ByteArrayOutputStream patch = new ByteArrayOutputStream();
+        PatchComputer.compute(new ByteArrayInputStream(newData),
+                new SignatureTable(new ByteArrayInputStream(sig.toByteArray())), "MD5", 1024000, patch);
+        return patch.toByteArray();
+    }
+
+    @Test
+    public void testMeasuresAnAppend() throws Exception {
+        Random rng = new Random(7);
+        byte[] oldData = new byte[2 * 1024 * 1024];
+        rng.nextBytes(oldData);
+        byte[] newData = Arrays.copyOf(oldData, oldData.length + 300000);
+        // the appended rows compress well, unlike the rest
+        Arrays.fill(newData, oldData.length, newData.length, (byte) 'x');
+        byte[] patch = patchOf(oldData, newData);
+
+        PatchEstimate estimate = PatchEstimate.measure(new ByteArrayInputStream(patch), newData.length,
+                PatchCompression.GZIP, 2, 100000, 1024.0 * 1024);
+        TestCase.assertEquals(patch.length, estimate.getPatchSize());
+        // the old file's partial last block can't be matched either
+        TestCase.assertTrue(estimate.getLiteralBytes() >= 300000 && estimate.getLiteralBytes() < 300000 + 10240);
+        TestCase.assertTrue(estimate.getMatchRatio() > 0.85 && estimate.getMatchRatio() < 0.9);
+        TestCase.assertTrue(estimate.getCompressedSize() < estimate.getPatchSize());
+        TestCase.assertEquals((estimate.getCompressedSize() + 99999) / 100000, estimate.getChunkCount());
+        TestCase.assertEquals(estimate.getCompressedSize() / (1024.0 * 1024), estimate.getEstimatedUploadSeconds(), 1e-9);
+    }
+
+    @Test
+    public void testReorderedRowsDefeatTheDiff() throws Exception {
+        Random rng = new Random(8);
+        byte[] oldData = new byte[1024 * 1024];
+        rng.nextBytes(oldData);
+        // shifting every 100 bytes against the signature's 10K blocks leaves nothing to match
+        byte[] newData = new byte[oldData.length];
+        for (int row = 0; row < oldData.length / 100; row++) {
+            int from = ((row * 37) % (oldData.length / 100)) * 100;
+            System.arraycopy(oldData, from, newData, row * 100, 100);
+        }
+        byte[] patch = patchOf(oldData, newData);
+
+        PatchEstimate estimate = PatchEstimate.measure(new ByteArrayInputStream(patch), newData.length,
+                PatchCompression.NONE, 1, 100000, null);
+        TestCase.assertTrue(estimate.getMatchRatio() < 0.05);
+        TestCase.assertEquals(estimate.getPatchSize(), estimate.getCompressedSize());
+        TestCase.assertNull(estimate.getEstimatedUploadSeconds());
+        TestCase.assertTrue(estimate.report().contains("unknown time"));
+    }
+}
@@ -0,0 +1,139 @@
+package com.socrata.datasync.deltaimporter2;
+
+import com.socrata.ssync.PatchComputer;
+import com.socrata.ssync.SignatureComputer;
+import com.socrata.ssync.SignatureTable;
+import junit.framework.TestCase;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.tukaani.xz.XZInputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+public class PatchPipelineTest {
+
+    private static byte[] signatureOf(byte[] data) throws Exception {
+        ByteArrayOutputStream sig = new ByteArrayOutputStream();
+        SignatureComputer.compute("MD5", "MD5", 10240, new ByteArrayInputStream(data), sig);
+        return sig.toByteArray();
+    }
+
+    private static byte[] expectedPatch(byte[] newData, byte[] signature) throws Exception {
+        ByteArrayOutputStream patch = new ByteArrayOutputStream();
+        PatchComputer.compute(new ByteArrayInputStream(newData),
+                new SignatureTable(new ByteArrayInputStream(signature)), "MD5", 1024000, patch);
+        return patch.toByteArray();
+    }
+
+    @Test
+    public void testPipelineProducesSamePatchAsPatchComputer() throws Exception {
+        Random rng = new Random(42);
+        byte[] oldData = new byte[3 * 1024 * 1024];
+        rng.nextBytes(oldData);
+        byte[] newData = Arrays.copyOf(oldData, oldData.length + 500000);
+        for (int i = 0; i < 1000; i++) newData[rng.nextInt(oldData.length)] = (byte) i;
+        byte[] signature = signatureOf(oldData);
+        byte[] expected = expectedPatch(newData, signature);
+
+        PatchCompression[] compressions = { PatchCompression.NONE, PatchCompression.GZIP, PatchCompression.GZIP,
+                new PatchCompression(PatchCompression.Type.XZ, 0) };
+        int[] threadCounts = { 1, 1, 4, 1 };
+        byte[] parallelGzipped = null;
+        for (int i = 0; i < compressions.length; i++) {
+            PatchCompression compression = compressions[i];
+            PatchPipeline pipeline = new PatchPipeline(new ByteArrayInputStream(newData),
+                    new SignatureTable(new ByteArrayInputStream(signature)), 1024 * 1024,
+                    compression, threadCounts[i], null);
+            byte[] output;
+            try {
+                output = IOUtils.toByteArray(pipeline);
+            } finally {
+                pipeline.close();
+            }
+            InputStream decompressed;
+            switch (compression.getType()) {
+                case GZIP: decompressed = new GZIPInputStream(new ByteArrayInputStream(output)); break;
+                case XZ: decompressed = new XZInputStream(new ByteArrayInputStream(output)); break;
+                default: decompressed = new ByteArrayInputStream(output);
+            }
+            TestCase.assertTrue(compression + " on " + threadCounts[i], Arrays.equals(expected, IOUtils.toByteArray(decompressed)));
+            // the compressed patch mustn't depend on the number of threads, or a resumed upload couldn't reuse its chunks
+            if (compression.getType() == PatchCompression.Type.GZIP) {
+                if (parallelGzipped == null) parallelGzipped = output;
+                else TestCase.assertTrue(Arrays.equals(parallelGzipped, output));
+            }
+
+            StageStats chunk = pipeline.getStageStats().get(pipeline.getStageStats().size() - 1);
+            TestCase.assertEquals(output.length, chunk.getBytes());
+            TestCase.assertEquals(newData.length, pipeline.getStageStats().get(0).getBytes());
+        }
+    }
+
+    @Test
+    public void testSignatureOfNewFileIsWritten() throws Exception {
+        Random rng = new Random(7);
+        byte[] newData = new byte[2 * 1024 * 1024 + 123];
+        rng.nextBytes(newData);
+        File target = File.createTempFile("pipeline", ".ssig");
+        target.deleteOnExit();
+
+        PatchPipeline pipeline = new PatchPipeline(new ByteArrayInputStream(newData),
+                new SignatureTable(new ByteArrayInputStream(signatureOf(new byte[0]))), 1024 * 1024,
+                PatchCompression.GZIP, 1, target);
+        try {
+            IOUtils.toByteArray(pipeline);
+        } finally {
+            pipeline.close();
+        }
+        TestCase.assertTrue(pipeline.awaitSignature());
+        try (InputStream written = new FileInputStream(target)) {
+            TestCase.assertTrue(Arrays.equals(signatureOf(newData), IOUtils.toByteArray(written)));
+        }
+    }
+
+    @Test
+    public void testFailureInSourceIsPropagated() throws Exception {
+        InputStream failing = new InputStream() {
+            int remaining = 100000;
+            @Override
+            public int read() throws IOException {
+                if (remaining-- <= 0) throw new IOException("disk on fire");
+                return 'x';
+            }
+        };
+        PatchPipeline pipeline = new PatchPipeline(failing,
+                new SignatureTable(new ByteArrayInputStream(signatureOf(new byte[0]))), 64 * 1024, true);
+        try {
+            IOUtils.toByteArray(pipeline);
+            TestCase.fail("Expected the read failure to reach the consumer");
+        } catch (IOException e) {
+            Throwable cause = e;
+            while (cause.getCause() != null) cause = cause.getCause();
+            TestCase.assertEquals("disk on fire", cause.getMessage());
+        } finally {
+            pipeline.close();
+        }
+    }
+
+    @Test
+    public void testClosingEarlyStopsTheStages() throws Exception {
+        byte[] data = new byte[8 * 1024 * 1024];
+        new Random(1).nextBytes(data);
+        PatchPipeline pipeline = new PatchPipeline(new ByteArrayInputStream(data),
+                new SignatureTable(new ByteArrayInputStream(signatureOf(new byte[0]))), 64 * 1024, false);
+        TestCase.assertTrue(pipeline.read(new byte[1024], 0, 1024) > 0);
+        pipeline.close();
+        Thread.sleep(500);
+        for (Thread t : Thread.getAllStackTraces().keySet()) {
+            TestCase.assertFalse(t.getName(), t.getName().startsWith("Patch ") && t.isAlive());
+        }
+    }
+}
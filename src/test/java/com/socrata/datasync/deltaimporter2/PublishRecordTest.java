@@ -0,0 +1,54 @@
+package com.socrata.datasync.deltaimporter2;
+
+import com.socrata.datasync.config.controlfile.ControlFile;
+import com.socrata.datasync.config.controlfile.FileTypeControl;
+import junit.framework.TestCase;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+
+public class PublishRecordTest {
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("published", "");
+        directory.delete();
+        directory.mkdirs();
+        directory.deleteOnExit();
+    }
+
+    @Test
+    public void testMatchesOnlyTheSamePublish() throws IOException {
+        String md5 = PublishRecord.digest(new ByteArrayInputStream("a,b,c\n1,2,3\n".getBytes("UTF-8")));
+        TestCase.assertNull(PublishRecord.load(directory, "abcd-1234"));
+        PublishRecord.save(directory, "abcd-1234", "/sig/1", 12, md5, "control");
+
+        PublishRecord record = PublishRecord.load(directory, "abcd-1234");
+        TestCase.assertTrue(record.matches("/sig/1", 12, md5, "control"));
+        TestCase.assertTrue(record.mightMatch("/sig/1", 12, "control"));
+        // something else has been published since
+        TestCase.assertFalse(record.matches("/sig/2", 12, md5, "control"));
+        TestCase.assertFalse(record.matches(null, 12, md5, "control"));
+        TestCase.assertFalse(record.mightMatch("/sig/1", 13, "control"));
+        TestCase.assertFalse(record.matches("/sig/1", 12, md5, "other control"));
+        String changed = PublishRecord.digest(new ByteArrayInputStream("a,b,c\n1,2,4\n".getBytes("UTF-8")));
+        TestCase.assertFalse(record.matches("/sig/1", 12, changed, "control"));
+    }
+
+    @Test
+    public void testControlDigestIgnoresTheOpaqueId() throws IOException {
+        ControlFile control = new ControlFile("Replace", null, new FileTypeControl(), null, null);
+        String before = PublishRecord.controlDigest(control);
+        String uuid = control.generateAndAddOpaqueUUID();
+        TestCase.assertEquals(before, PublishRecord.controlDigest(control));
+        TestCase.assertEquals(uuid, control.opaque);
+
+        control.action = "Append";
+        TestCase.assertFalse(before.equals(PublishRecord.controlDigest(control)));
+    }
+}
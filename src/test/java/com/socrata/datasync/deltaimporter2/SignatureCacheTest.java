@@ -0,0 +1,93 @@
+package com.socrata.datasync.deltaimporter2;
+
+import junit.framework.TestCase;
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+public class SignatureCacheTest {
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("signature-cache", "");
+        directory.delete();
+        directory.mkdirs();
+        directory.deleteOnExit();
+    }
+
+    private static File write(SignatureCache cache, int size, byte fill) throws IOException {
+        File pending = cache.newPendingFile();
+        byte[] bytes = new byte[size];
+        Arrays.fill(bytes, fill);
+        try (FileOutputStream out = new FileOutputStream(pending)) {
+            out.write(bytes);
+        }
+        return pending;
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        try {
+            return IOUtils.toByteArray(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testEntryIsOnlyUsedForMatchingPath() throws IOException {
+        SignatureCache cache = new SignatureCache(directory, 1024 * 1024);
+        cache.put("abcd-1234", "/datasync/id/abcd-1234/completed/a.ssig", write(cache, 100, (byte) 1));
+
+        TestCase.assertNull(cache.get("abcd-1234", "/datasync/id/abcd-1234/completed/b.ssig"));
+        TestCase.assertNull(cache.get("wxyz-9876", "/datasync/id/abcd-1234/completed/a.ssig"));
+        byte[] cached = read(cache.get("abcd-1234", "/datasync/id/abcd-1234/completed/a.ssig"));
+        TestCase.assertEquals(100, cached.length);
+        TestCase.assertEquals(1, cached[0]);
+
+        // a later put replaces the dataset's entry
+        cache.put("abcd-1234", "/datasync/id/abcd-1234/completed/b.ssig", write(cache, 50, (byte) 2));
+        TestCase.assertNull(cache.get("abcd-1234", "/datasync/id/abcd-1234/completed/a.ssig"));
+        TestCase.assertEquals(50, read(cache.get("abcd-1234", "/datasync/id/abcd-1234/completed/b.ssig")).length);
+        TestCase.assertEquals(50, cache.size());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntriesAreEvicted() throws Exception {
+        SignatureCache cache = new SignatureCache(directory, 250);
+        cache.put("aaaa-1111", "a", write(cache, 100, (byte) 1));
+        Thread.sleep(5);
+        cache.put("bbbb-2222", "b", write(cache, 100, (byte) 2));
+        Thread.sleep(5);
+        read(cache.get("aaaa-1111", "a"));
+        Thread.sleep(5);
+        cache.put("cccc-3333", "c", write(cache, 100, (byte) 3));
+
+        TestCase.assertNull(cache.get("bbbb-2222", "b"));
+        TestCase.assertNotNull(cache.get("aaaa-1111", "a"));
+        TestCase.assertNotNull(cache.get("cccc-3333", "c"));
+        TestCase.assertEquals(200, cache.size());
+    }
+
+    @Test
+    public void testCorruptEntriesAreEvicted() throws IOException {
+        SignatureCache cache = new SignatureCache(directory, 1024 * 1024);
+        cache.put("aaaa-1111", "a", write(cache, 100, (byte) 1));
+        cache.put("bbbb-2222", "b", write(cache, 100, (byte) 2));
+
+        try (RandomAccessFile f = new RandomAccessFile(new File(directory, "aaaa-1111.ssig"), "rw")) {
+            f.write(42);
+        }
+        TestCase.assertEquals(Arrays.asList("aaaa-1111"), cache.verify());
+        TestCase.assertNull(cache.get("aaaa-1111", "a"));
+        TestCase.assertNotNull(cache.get("bbbb-2222", "b"));
+    }
+}
@@ -0,0 +1,125 @@
+package com.socrata.datasync.deltaimporter2;
+
+import junit.framework.TestCase;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+public class UploadManifestTest {
+
+    private File directory;
+    private File source;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("uploads", "");
+        directory.delete();
+        directory.mkdirs();
+        directory.deleteOnExit();
+        source = File.createTempFile("source", ".csv");
+        source.deleteOnExit();
+        try (FileOutputStream out = new FileOutputStream(source)) {
+            out.write("a,b,c\n1,2,3\n".getBytes("UTF-8"));
+        }
+    }
+
+    @Test
+    public void testAcknowledgedChunksSurviveARestart() {
+        byte[] first = "first chunk".getBytes();
+        byte[] second = "second chunk".getBytes();
+        UploadManifest manifest = UploadManifest.open(directory, "abcd-1234", source, "/sig", 1024);
+        TestCase.assertNull(manifest.blobIdFor(0, first, first.length));
+        manifest.record(0, first, first.length, "blob-0");
+        manifest.record(1, second, second.length, "blob-1");
+
+        UploadManifest resumed = UploadManifest.open(directory, "abcd-1234", source, "/sig", 1024);
+        TestCase.assertEquals("blob-0", resumed.blobIdFor(0, first, first.length));
+        TestCase.assertEquals("blob-1", resumed.blobIdFor(1, second, second.length));
+        // a different chunk at a known position, or a position past the end, must be uploaded
+        TestCase.assertNull(resumed.blobIdFor(0, second, second.length));
+        TestCase.assertNull(resumed.blobIdFor(2, first, first.length));
+    }
+
+    @Test
+    public void testCompressionIsRemembered() {
+        byte[] chunk = "chunk".getBytes();
+        UploadManifest manifest = UploadManifest.open(directory, "abcd-1234", source, "/sig", 1024);
+        TestCase.assertNull(manifest.compression);
+        manifest.compression = "xz-3";
+        manifest.record(0, chunk, chunk.length, "blob-0");
+        TestCase.assertEquals("xz-3", UploadManifest.open(directory, "abcd-1234", source, "/sig", 1024).compression);
+    }
+
+    @Test
+    public void testManifestIsDiscardedWhenThePatchWouldDiffer() {
+        byte[] chunk = "chunk".getBytes();
+        UploadManifest.open(directory, "abcd-1234", source, "/sig", 1024).record(0, chunk, chunk.length, "blob-0");
+
+        TestCase.assertNull(UploadManifest.open(directory, "abcd-1234", source, "/other-sig", 1024)
+                .blobIdFor(0, chunk, chunk.length));
+        TestCase.assertNull(UploadManifest.open(directory, "abcd-1234", source, "/sig", 2048)
+                .blobIdFor(0, chunk, chunk.length));
+    }
+
+    @Test
+    public void testDeleteForgetsTheUpload() {
+        byte[] chunk = "chunk".getBytes();
+        UploadManifest manifest = UploadManifest.open(directory, "abcd-1234", source, null, 1024);
+        manifest.record(0, chunk, chunk.length, "blob-0");
+        manifest.delete();
+        TestCase.assertNull(UploadManifest.open(directory, "abcd-1234", source, null, 1024)
+                .blobIdFor(0, chunk, chunk.length));
+    }
+
+    @Test
+    public void testEachChunkIsAppendedAsALine() throws IOException {
+        byte[] chunk = "chunk".getBytes();
+        UploadManifest manifest = UploadManifest.open(directory, "abcd-1234", source, "/sig", 1024);
+        File location = new File(directory, "abcd-1234.json");
+        manifest.record(0, chunk, chunk.length, "blob-0");
+        long afterOne = location.length();
+        manifest.record(1, chunk, chunk.length, "blob-1");
+        long afterTwo = location.length();
+        manifest.record(2, chunk, chunk.length, "blob-2");
+        // every chunk's record costs the same, however many came before it
+        TestCase.assertEquals(afterTwo - afterOne, location.length() - afterTwo);
+    }
+
+    @Test
+    public void testARecordCutShortIsSkipped() throws IOException {
+        byte[] first = "first chunk".getBytes();
+        byte[] second = "second chunk".getBytes();
+        UploadManifest manifest = UploadManifest.open(directory, "abcd-1234", source, "/sig", 1024);
+        manifest.record(0, first, first.length, "blob-0");
+        manifest.record(1, second, second.length, "blob-1");
+        // as though the process were killed writing the second record
+        File location = new File(directory, "abcd-1234.json");
+        try (RandomAccessFile file = new RandomAccessFile(location, "rw")) {
+            file.setLength(file.length() - 10);
+        }
+
+        UploadManifest resumed = UploadManifest.open(directory, "abcd-1234", source, "/sig", 1024);
+        TestCase.assertEquals("blob-0", resumed.blobIdFor(0, first, first.length));
+        TestCase.assertNull(resumed.blobIdFor(1, second, second.length));
+        resumed.record(1, second, second.length, "blob-1b");
+        resumed.record(2, first, first.length, "blob-2");
+
+        UploadManifest again = UploadManifest.open(directory, "abcd-1234", source, "/sig", 1024);
+        TestCase.assertEquals("blob-0", again.blobIdFor(0, first, first.length));
+        TestCase.assertEquals("blob-2", again.blobIdFor(2, first, first.length));
+    }
+
+    @Test
+    public void testChunksAcknowledgedAfterADeleteArentRecorded() {
+        byte[] chunk = "chunk".getBytes();
+        UploadManifest manifest = UploadManifest.open(directory, "abcd-1234", source, null, 1024);
+        manifest.record(0, chunk, chunk.length, "blob-0");
+        manifest.delete();
+        manifest.record(1, chunk, chunk.length, "blob-1");
+        TestCase.assertFalse(new File(directory, "abcd-1234.json").exists());
+    }
+}
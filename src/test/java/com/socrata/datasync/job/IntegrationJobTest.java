@@ -147,9 +147,9 @@ public class IntegrationJobTest extends TestBase {
         jobToRun.setPublishMethod(PublishMethod.replace);
         jobToRun.setFileToPublishHasHeaderRow(true);
         jobToRun.setPublishViaFTP(false);
-        JobStatus status = jobToRun.run();
+        JobResult status = jobToRun.run();
         TestCase.assertEquals(false, jobToRun.getPublishViaFTP());
-        TestCase.assertEquals(JobStatus.SUCCESS, status);
+        TestCase.assertEquals(JobStatus.SUCCESS, status.getStatus());
         TestCase.assertFalse(status.isError());
         TestCase.assertEquals(2, getTotalRows(UNITTEST_DATASET_ID));
     }
@@ -161,8 +161,8 @@ public class IntegrationJobTest extends TestBase {
         jobToRun.setFileToPublish("src/test/resources/datasync_unit_test_two_rows.csv");
         jobToRun.setPublishMethod(PublishMethod.replace);
         jobToRun.setFileToPublishHasHeaderRow(true);
-        JobStatus status = jobToRun.run();
-        TestCase.assertEquals(JobStatus.INVALID_DATASET_ID, status);
+        JobResult status = jobToRun.run();
+        TestCase.assertEquals(JobStatus.INVALID_DATASET_ID, status.getStatus());
         TestCase.assertTrue(status.isError());
     }
 
@@ -174,8 +174,8 @@ public class IntegrationJobTest extends TestBase {
         jobToRun.setPublishMethod(PublishMethod.upsert);
         jobToRun.setFileToPublishHasHeaderRow(true);
         jobToRun.setPublishViaFTP(false);
-        JobStatus status = jobToRun.run();
-        TestCase.assertEquals(JobStatus.PUBLISH_ERROR, status);
+        JobResult status = jobToRun.run();
+        TestCase.assertEquals(JobStatus.PUBLISH_ERROR, status.getStatus());
         TestCase.assertTrue(status.isError());
         TestCase.assertTrue(status.getMessage().endsWith(") to a calendar_date. Unknown date format 'invalid'. (line 3 of file) \n"));
 //        TestCase.assertEquals("FAILURE: Processing datasync_unit_test_invalid_date.csv failed: Value in column \"date\" uninterpretable as calendar_date in input at record 2: \"invalid\"\n", status.getMessage());
@@ -0,0 +1,50 @@
+package com.socrata.datasync.job;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+public class JobResultTest {
+
+    @Test
+    public void testMessagesArentSharedBetweenResults() {
+        JobResult first = JobResult.of(JobStatus.PUBLISH_ERROR, "first job's problem");
+        JobResult second = JobResult.of(JobStatus.PUBLISH_ERROR, "second job's problem");
+        TestCase.assertEquals("first job's problem", first.getMessage());
+        TestCase.assertEquals("second job's problem", second.getMessage());
+        // nor does either change the status's own message
+        TestCase.assertEquals(JobStatus.PUBLISH_ERROR.getMessage(), JobResult.of(JobStatus.PUBLISH_ERROR).getMessage());
+        TestCase.assertTrue(first.isError());
+        TestCase.assertFalse(JobResult.of(JobStatus.SUCCESS).isError());
+    }
+
+    @Test
+    public void testWithersLeaveTheOriginalAlone() {
+        JobResult success = JobResult.of(JobStatus.SUCCESS);
+        JobResult counted = success.withRowCounts(3, 2, 1, 0).withPhase("publish", 40).withPhase("logging", 5);
+        TestCase.assertNull(success.getRowsCreated());
+        TestCase.assertTrue(success.getPhaseMillis().isEmpty());
+
+        TestCase.assertEquals(JobStatus.SUCCESS, counted.getStatus());
+        TestCase.assertEquals(Integer.valueOf(3), counted.getRowsCreated());
+        TestCase.assertEquals(Integer.valueOf(2), counted.getRowsUpdated());
+        TestCase.assertEquals(Integer.valueOf(1), counted.getRowsDeleted());
+        TestCase.assertEquals(Integer.valueOf(0), counted.getErrors());
+        TestCase.assertEquals(Arrays.asList("publish", "logging"), new ArrayList<>(counted.getPhaseMillis().keySet()));
+        TestCase.assertEquals(Long.valueOf(40), counted.getPhaseMillis().get("publish"));
+
+        // a message added later keeps what was already recorded
+        JobResult messaged = counted.withMessage("done");
+        TestCase.assertEquals("done", messaged.getMessage());
+        TestCase.assertEquals(Integer.valueOf(3), messaged.getRowsCreated());
+        TestCase.assertEquals(counted.getPhaseMillis(), messaged.getPhaseMillis());
+        TestCase.assertEquals(JobStatus.SUCCESS.getMessage(), counted.getMessage());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testPhasesCantBeChanged() {
+        JobResult.of(JobStatus.SUCCESS).withPhase("publish", 1).getPhaseMillis().put("other", 2L);
+    }
+}
@@ -77,21 +77,21 @@ public class MetadataJobTest extends TestBase {
 		//Base Validation
 		metadataJob.setDatasetID(UNITTEST_DATASET_ID);
 		metadataJob.setTitle(RESET_TITLE);
-		TestCase.assertEquals(JobStatus.VALID, metadataJob.validate(prefs.getConnectionInfo()));
+		TestCase.assertEquals(JobStatus.VALID, metadataJob.validate(prefs.getConnectionInfo()).getStatus());
 		
 		//Invalid Domain
 		prefs.saveDomain(INVALID_DOMAIN);
-		TestCase.assertEquals(JobStatus.INVALID_DOMAIN, metadataJob.validate(prefs.getConnectionInfo()));
+		TestCase.assertEquals(JobStatus.INVALID_DOMAIN, metadataJob.validate(prefs.getConnectionInfo()).getStatus());
 		prefs.saveDomain(DOMAIN);
 		
 		//Invalid Dataset ID
 		metadataJob.setDatasetID(INVALID_DATASET_ID);
-		TestCase.assertEquals(JobStatus.INVALID_DATASET_ID, metadataJob.validate(prefs.getConnectionInfo()));
+		TestCase.assertEquals(JobStatus.INVALID_DATASET_ID, metadataJob.validate(prefs.getConnectionInfo()).getStatus());
 		metadataJob.setDatasetID(UNITTEST_DATASET_ID);
 		
 		//Invalid Title
 		metadataJob.setTitle("");
-		TestCase.assertEquals(JobStatus.MISSING_METADATA_TITLE, metadataJob.validate(prefs.getConnectionInfo()));
+		TestCase.assertEquals(JobStatus.MISSING_METADATA_TITLE, metadataJob.validate(prefs.getConnectionInfo()).getStatus());
 		metadataJob.setTitle(RESET_TITLE);
 	}
 	
@@ -103,8 +103,8 @@ public class MetadataJobTest extends TestBase {
 		setUpdatedMetadataJob(metadataJob);
 		
 		//Update metadata based on resource file
-		JobStatus runResults = metadataJob.run();
-		TestCase.assertEquals(JobStatus.SUCCESS, runResults);
+		JobResult runResults = metadataJob.run();
+		TestCase.assertEquals(JobStatus.SUCCESS, runResults.getStatus());
 		
 		//Load current metadata
 		String result = metadataJob.loadCurrentMetadata();
@@ -115,8 +115,8 @@ public class MetadataJobTest extends TestBase {
 		
 		//Reset metadata based on reset resource file
 		setResetMetadataJob(metadataJob);
-		JobStatus resetResults = metadataJob.run();
-		TestCase.assertEquals(JobStatus.SUCCESS, resetResults);
+		JobResult resetResults = metadataJob.run();
+		TestCase.assertEquals(JobStatus.SUCCESS, resetResults.getStatus());
 	}
 	
 	@Test
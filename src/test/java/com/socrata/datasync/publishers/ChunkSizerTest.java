@@ -0,0 +1,173 @@
+package com.socrata.datasync.publishers;
+
+import com.socrata.api.Soda2Producer;
+import com.socrata.datasync.PublishMethod;
+import com.socrata.datasync.RequestCompression;
+import com.socrata.model.UpsertResult;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import junit.framework.TestCase;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+public class ChunkSizerTest {
+    private static final long MB = 1024 * 1024;
+
+    @Test
+    public void testQuickChunksGrowTheBudgetAStepAtATime() {
+        ChunkSizer sizer = new ChunkSizer(16 * MB, 1000);
+        TestCase.assertEquals(2 * MB, sizer.getBudget());
+        sizer.record(2 * MB, 2 * MB, 100, false);
+        TestCase.assertEquals(3 * MB, sizer.getBudget());
+        for (int i = 0; i < 100; i++) sizer.record(sizer.getBudget(), sizer.getBudget(), 100, false);
+        TestCase.assertEquals(16 * MB, sizer.getBudget());
+    }
+
+    @Test
+    public void testSlowOrThrottledChunksHalveTheBudget() {
+        ChunkSizer sizer = new ChunkSizer(16 * MB, 1000);
+        sizer.record(2 * MB, 2 * MB, 5000, false);
+        TestCase.assertEquals(MB, sizer.getBudget());
+        sizer.record(MB, MB, 10, true);
+        TestCase.assertEquals(MB / 2, sizer.getBudget());
+        for (int i = 0; i < 100; i++) sizer.record(sizer.getBudget(), sizer.getBudget(), 5000, false);
+        TestCase.assertEquals(ChunkSizer.MIN_BYTES, sizer.getBudget());
+    }
+
+    @Test
+    public void testChunksCutToAnEarlierBudgetDontTuneItTwice() {
+        ChunkSizer sizer = new ChunkSizer(16 * MB, 1000);
+        // several chunks of 2 MB were in flight when the first came back slow
+        sizer.record(2 * MB, 2 * MB, 5000, false);
+        sizer.record(2 * MB, 2 * MB, 5000, false);
+        sizer.record(2 * MB, 2 * MB, 5000, false);
+        TestCase.assertEquals(MB, sizer.getBudget());
+        // nor does a quick chunk grow it from before it last grew, or the short last chunk of a file
+        sizer.record(MB, MB, 10, false);
+        sizer.record(MB, MB, 10, false);
+        TestCase.assertEquals(2 * MB, sizer.getBudget());
+        sizer.record(2 * MB, 1024, 10, false);
+        TestCase.assertEquals(2 * MB, sizer.getBudget());
+        TestCase.assertEquals("6 chunks of 1 KB to 2048 KB were sent", sizer.summary());
+    }
+
+    @Test
+    public void testUntunedBudgetsStayAtTheMost() {
+        ChunkSizer sizer = new ChunkSizer(4 * MB, 0);
+        TestCase.assertEquals(4 * MB, sizer.getBudget());
+        sizer.record(4 * MB, 4 * MB, 60000, true);
+        TestCase.assertEquals(4 * MB, sizer.getBudget());
+    }
+
+    @Test
+    public void testUpsertsAreChunkedByBytes() throws Exception {
+        File file = File.createTempFile("upsert", ".csv");
+        file.deleteOnExit();
+        try (Writer out = new FileWriter(file)) {
+            out.write("id,text\n");
+            StringBuilder wide = new StringBuilder();
+            for (int i = 0; i < 1000; i++) wide.append('w');
+            for (int row = 0; row < 2000; row++) out.write(row + "," + wide + "\n");
+        }
+
+        final List<Integer> bodies = Collections.synchronizedList(new ArrayList<Integer>());
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/resource", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] body = IOUtils.toByteArray(exchange.getRequestBody());
+                bodies.add(body.length);
+                int rows = new String(body, "UTF-8").split("\"id\"").length - 1;
+                byte[] response = ("{\"rows_created\":" + rows + ",\"rows_updated\":0,\"rows_deleted\":0}")
+                        .getBytes("UTF-8");
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, response.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(response);
+                }
+            }
+        });
+        server.start();
+        try {
+            Soda2Producer producer = Soda2Producer.newProducer("http://localhost:" + server.getAddress().getPort(),
+                    "someone@example.com", "secret", "token");
+            ChunkSizer sizer = new ChunkSizer(ChunkSizer.MIN_BYTES * 4, 0);
+            // ten rows a chunk were asked for, but that many fit the budget many times over
+            UpsertResult result = Soda2Publisher.publishViaSoda2(producer, null, PublishMethod.upsert, "abcd-1234",
+                    file, 10, true, 1, sizer);
+            TestCase.assertEquals(2000, result.getRowsCreated());
+            // 2 MB of rows, a quarter MB at a time
+            TestCase.assertEquals(8, bodies.size());
+            for (int i = 0; i < bodies.size() - 1; i++) {
+                TestCase.assertTrue(bodies.get(i) >= ChunkSizer.MIN_BYTES * 4);
+                TestCase.assertTrue(bodies.get(i) < ChunkSizer.MIN_BYTES * 4 + 1100);
+            }
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    /**
+     * Sends a chunk to a stand-in that refuses it once with the given status, and then accepts it.
+     * @return the sizer's budget afterwards
+     */
+    private static long budgetAfterARefusal(int status) throws Exception {
+        final Queue<Integer> statuses = new ConcurrentLinkedQueue<>(Arrays.asList(status, 200));
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/resource", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                IOUtils.toByteArray(exchange.getRequestBody());
+                int answer = statuses.poll();
+                byte[] response = (answer == 200 ? "{\"rows_created\":1,\"rows_updated\":0,\"rows_deleted\":0}" :
+                        "{\"code\":\"refused\",\"message\":\"refused\"}").getBytes("UTF-8");
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(answer, response.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(response);
+                }
+            }
+        });
+        server.start();
+        try {
+            Soda2Producer producer = Soda2Producer.newProducer("http://localhost:" + server.getAddress().getPort(),
+                    "someone@example.com", "secret", "token");
+            RequestCompression.get().compress(producer.getHttpLowLevel());
+            ChunkSizer sizer = new ChunkSizer(16 * MB, 60000);
+            JsonRows rows = new JsonRows(new String[]{"id"});
+            rows.add(new String[]{"1"});
+            UpsertResult result = Soda2Publisher.send(producer, "abcd-1234", rows, false, sizer, sizer.getBudget());
+            TestCase.assertEquals(1, result.getRowsCreated());
+            TestCase.assertTrue(statuses.isEmpty());
+            return sizer.getBudget();
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void testOnlyThrottlingShrinksTheBudget() throws Exception {
+        RequestCompression.get().setMode("auto");
+        try {
+            // refused for being gzipped, and sent again uncompressed
+            TestCase.assertEquals(2 * MB, budgetAfterARefusal(RequestCompression.SC_UNSUPPORTED_MEDIA_TYPE));
+        } finally {
+            RequestCompression.get().setMode("none");
+        }
+        TestCase.assertEquals(MB, budgetAfterARefusal(429));
+    }
+}
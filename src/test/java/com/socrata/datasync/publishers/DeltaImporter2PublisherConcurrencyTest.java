@@ -0,0 +1,216 @@
+package com.socrata.datasync.publishers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.socrata.datasync.HttpUtility;
+import com.socrata.datasync.SocrataConnectionInfo;
+import com.socrata.datasync.config.controlfile.ControlFile;
+import com.socrata.datasync.config.controlfile.FileTypeControl;
+import com.socrata.datasync.config.userpreferences.UserPreferencesLib;
+import com.socrata.datasync.job.JobResult;
+import com.socrata.datasync.job.JobStatus;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Runs many publishes at once, each to its own dataset, against a local stand-in for
+ * delta-importer-2, and checks that none of them commits another's chunks.
+ */
+public class DeltaImporter2PublisherConcurrencyTest {
+    private static final int datasets = 12;
+    private static final int chunkSize = 1024;
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private HttpServer server;
+    private ExecutorService serverThreads;
+    private File home;
+    private String originalHome;
+
+    // what the stand-in was sent: each blob by its id, and each dataset's commit
+    private final ConcurrentMap<String, byte[]> blobs = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, String> blobDatasets = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Map<String, Object>> commits = new ConcurrentHashMap<>();
+    private final AtomicInteger blobCounter = new AtomicInteger();
+
+    @Before
+    public void setUp() throws IOException {
+        // so the signature cache, manifests and publish records of the run go somewhere disposable
+        home = Files.createTempDirectory("datasync-home").toFile();
+        originalHome = System.getProperty("user.home");
+        System.setProperty("user.home", home.getAbsolutePath());
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/datasync", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    route(exchange);
+                } catch (RuntimeException e) {
+                    respond(exchange, 500, e.toString());
+                }
+            }
+        });
+        serverThreads = Executors.newCachedThreadPool();
+        server.setExecutor(serverThreads);
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.stop(0);
+        serverThreads.shutdownNow();
+        System.setProperty("user.home", originalHome);
+        FileUtils.deleteDirectory(home);
+    }
+
+    private static void respond(HttpExchange exchange, int code, String body) throws IOException {
+        byte[] bytes = body.getBytes("UTF-8");
+        exchange.sendResponseHeaders(code, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+        exchange.close();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void route(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        boolean post = exchange.getRequestMethod().equals("POST");
+        InputStream requestBody = exchange.getRequestBody();
+        if ("gzip".equals(exchange.getRequestHeaders().getFirst("Content-Encoding")))
+            requestBody = new GZIPInputStream(requestBody);
+        byte[] body = IOUtils.toByteArray(requestBody);
+        if (path.equals("/datasync/version.json")) {
+            respond(exchange, 200, "{\"max-block-size\":" + chunkSize + "}");
+            return;
+        }
+        String[] parts = path.substring("/datasync/id/".length()).split("/");
+        String datasetId = parts[0];
+        if (post && parts.length == 1) {
+            String blobId = datasetId + "-blob-" + blobCounter.incrementAndGet();
+            blobs.put(blobId, body);
+            blobDatasets.put(blobId, datasetId);
+            respond(exchange, 201, "{\"blobId\":\"" + blobId + "\"}");
+        } else if (post && parts[1].equals("commit")) {
+            commits.put(datasetId, mapper.readValue(body, Map.class));
+            respond(exchange, 200, "{\"jobId\":\"job-" + datasetId + "\"}");
+        } else if (parts[1].equals("status")) {
+            respond(exchange, 200, "{\"type\":\"finished\",\"english\":\"SUCCESS\",\"data\":{}}");
+        } else {
+            // the completed directory (empty, so there's no previous signature) and the logs
+            respond(exchange, 200, "[]");
+        }
+    }
+
+    private static File csvFor(File dir, String datasetId) throws IOException {
+        StringBuilder csv = new StringBuilder("id,dataset,value\n");
+        for (int row = 0; row < 500; row++)
+            csv.append(row).append(',').append(datasetId).append(',').append(row * 31 % 97).append('\n');
+        File file = new File(dir, datasetId + ".csv");
+        FileUtils.writeStringToFile(file, csv.toString(), "UTF-8");
+        return file;
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testConcurrentPublishesKeepToTheirOwnDatasets() throws Exception {
+        UserPreferencesLib prefs = new UserPreferencesLib() {
+            // rather than the app token official builds are given
+            @Override
+            public SocrataConnectionInfo getConnectionInfo() {
+                return new SocrataConnectionInfo(getDomain(), getUsername(), getPassword()) {
+                    @Override
+                    public String getToken() { return "test-token"; }
+                };
+            }
+        }
+                .domain("http://localhost:" + server.getAddress().getPort())
+                .username("someone@example.com")
+                .password("secret")
+                .patchCompression("none")
+                .httpRequestsPerSecond("100000");
+        HttpUtility.configure(prefs);
+        URI base = URI.create("http://localhost:" + server.getAddress().getPort());
+        // jobs share a publisher, and publishers share the process's job status poller
+        final DeltaImporter2Publisher[] publishers = {
+                new DeltaImporter2Publisher(prefs, "datasync-test", 4, base),
+                new DeltaImporter2Publisher(prefs, "datasync-test", 4, base)
+        };
+        ExecutorService jobs = Executors.newFixedThreadPool(datasets);
+        try {
+            final CountDownLatch start = new CountDownLatch(1);
+            List<Future<JobResult>> results = new ArrayList<>();
+            for (int i = 0; i < datasets; i++) {
+                final String datasetId = String.format("ds%02d-test", i);
+                final File csv = csvFor(home, datasetId);
+                final DeltaImporter2Publisher publisher = publishers[i % publishers.length];
+                results.add(jobs.submit(new Callable<JobResult>() {
+                    @Override
+                    public JobResult call() throws Exception {
+                        FileTypeControl ftc = new FileTypeControl().hasHeaderRow(true);
+                        ControlFile control = new ControlFile("Replace", null, ftc, null, true);
+                        start.await();
+                        return publisher.publishWithDi2OverHttp(datasetId, csv, control);
+                    }
+                }));
+            }
+            start.countDown();
+            for (Future<JobResult> result : results)
+                TestCase.assertEquals(JobStatus.SUCCESS, result.get(60, TimeUnit.SECONDS).getStatus());
+            int pollerThreads = 0;
+            for (Thread thread : Thread.getAllStackTraces().keySet())
+                if (thread.getName().startsWith("Job status poller")) pollerThreads++;
+            TestCase.assertEquals(1, pollerThreads);
+        } finally {
+            jobs.shutdownNow();
+            for (DeltaImporter2Publisher publisher : publishers) publisher.close();
+        }
+
+        TestCase.assertEquals(datasets, commits.size());
+        for (Map.Entry<String, Map<String, Object>> commit : commits.entrySet()) {
+            String datasetId = commit.getKey();
+            List<String> chunks = (List<String>) commit.getValue().get("chunks");
+            TestCase.assertTrue(chunks.size() > 1);
+            // every chunk committed was posted to this dataset, and together they are the patch of its file
+            ByteArrayOutputStream patch = new ByteArrayOutputStream();
+            for (String blobId : chunks) {
+                TestCase.assertEquals(datasetId, blobDatasets.get(blobId));
+                patch.write(blobs.get(blobId));
+            }
+            TestCase.assertEquals(((Number) commit.getValue().get("expectedSize")).longValue(), patch.size());
+            TestCase.assertNull(commit.getValue().get("relativeTo"));
+            String text = patch.toString("UTF-8");
+            TestCase.assertTrue(text.contains("499," + datasetId + ","));
+            for (String other : commits.keySet())
+                if (!other.equals(datasetId)) TestCase.assertFalse(text.contains("," + other + ","));
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package com.socrata.datasync.publishers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.socrata.datasync.HttpUtility;
+import com.socrata.datasync.SocrataConnectionInfo;
+import com.socrata.datasync.config.controlfile.ControlFile;
+import com.socrata.datasync.config.controlfile.FileTypeControl;
+import com.socrata.datasync.config.userpreferences.UserPreferencesLib;
+import com.socrata.datasync.job.JobResult;
+import com.socrata.datasync.job.JobStatus;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Publishes against a local stand-in for delta-importer-2 that answers the posts of a patch's
+ * chunks slowly and out of order, and checks how the window of concurrent posts behaves.
+ */
+public class DeltaImporter2PublisherUploadTest {
+    private static final int chunkSize = 1024;
+    private static final int window = 4;
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private HttpServer server;
+    private ExecutorService serverThreads;
+    private File home;
+    private String originalHome;
+
+    // what the stand-in was sent: each blob by its id, each dataset's commit, and every post's body in arrival order
+    private final ConcurrentMap<String, byte[]> blobs = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Map<String, Object>> commits = new ConcurrentHashMap<>();
+    private final List<byte[]> posted = Collections.synchronizedList(new ArrayList<byte[]>());
+    // the order posts were answered in, each by the number it was given as it arrived
+    private final List<Integer> answered = Collections.synchronizedList(new ArrayList<Integer>());
+    private final AtomicInteger blobCounter = new AtomicInteger();
+    private int inFlight = 0;
+    private int mostInFlight = 0;
+    // the number of the post to fail once, or 0 for none
+    private volatile int failingPost = 0;
+    // whether the next commit is refused as naming a chunk that doesn't exist
+    private final AtomicBoolean refuseCommit = new AtomicBoolean(false);
+    // how many more commits are throttled, with a Retry-After of no time at all
+    private final AtomicInteger throttleCommits = new AtomicInteger();
+    private final AtomicInteger commitCount = new AtomicInteger();
+
+    @Before
+    public void setUp() throws IOException {
+        home = Files.createTempDirectory("datasync-home").toFile();
+        originalHome = System.getProperty("user.home");
+        System.setProperty("user.home", home.getAbsolutePath());
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/datasync", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    route(exchange);
+                } catch (RuntimeException | InterruptedException e) {
+                    respond(exchange, 500, e.toString());
+                }
+            }
+        });
+        serverThreads = Executors.newCachedThreadPool();
+        server.setExecutor(serverThreads);
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.stop(0);
+        serverThreads.shutdownNow();
+        System.setProperty("user.home", originalHome);
+        FileUtils.deleteDirectory(home);
+    }
+
+    private static void respond(HttpExchange exchange, int code, String body) throws IOException {
+        byte[] bytes = body.getBytes("UTF-8");
+        exchange.sendResponseHeaders(code, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+        exchange.close();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void route(HttpExchange exchange) throws IOException, InterruptedException {
+        String path = exchange.getRequestURI().getPath();
+        boolean post = exchange.getRequestMethod().equals("POST");
+        InputStream requestBody = exchange.getRequestBody();
+        if ("gzip".equals(exchange.getRequestHeaders().getFirst("Content-Encoding")))
+            requestBody = new GZIPInputStream(requestBody);
+        byte[] body = IOUtils.toByteArray(requestBody);
+        if (path.equals("/datasync/version.json")) {
+            respond(exchange, 200, "{\"max-block-size\":" + chunkSize + "}");
+            return;
+        }
+        String[] parts = path.substring("/datasync/id/".length()).split("/");
+        String datasetId = parts[0];
+        if (post && parts.length == 1) {
+            postBlob(exchange, datasetId, body);
+        } else if (post && parts[1].equals("commit")) {
+            commitCount.incrementAndGet();
+            if (refuseCommit.compareAndSet(true, false)) {
+                respond(exchange, 400, "{\"type\":\"non-existant-chunk\",\"data\":{}}");
+                return;
+            }
+            if (throttleCommits.getAndDecrement() > 0) {
+                exchange.getResponseHeaders().set("Retry-After", "0");
+                respond(exchange, 429, "slow down");
+                return;
+            }
+            commits.put(datasetId, mapper.readValue(body, Map.class));
+            respond(exchange, 200, "{\"jobId\":\"job-" + datasetId + "\"}");
+        } else if (parts[1].equals("status")) {
+            respond(exchange, 200, "{\"type\":\"finished\",\"english\":\"SUCCESS\",\"data\":{}}");
+        } else {
+            respond(exchange, 200, "[]");
+        }
+    }
+
+    /**
+     * Answers each post after a delay that's shorter the later it arrived among those in flight,
+     * so that posts are answered out of the order they were made.
+     */
+    private void postBlob(HttpExchange exchange, String datasetId, byte[] body) throws IOException, InterruptedException {
+        int number = blobCounter.incrementAndGet();
+        posted.add(body);
+        synchronized (this) {
+            mostInFlight = Math.max(mostInFlight, ++inFlight);
+        }
+        try {
+            Thread.sleep(10 + 15 * (window - number % window));
+            if (number == failingPost) {
+                respond(exchange, 500, "try again");
+                return;
+            }
+            String blobId = datasetId + "-blob-" + number;
+            blobs.put(blobId, body);
+            answered.add(number);
+            respond(exchange, 201, "{\"blobId\":\"" + blobId + "\"}");
+        } finally {
+            synchronized (this) {
+                inFlight--;
+            }
+        }
+    }
+
+    private static File csvFor(File dir, String datasetId) throws IOException {
+        StringBuilder csv = new StringBuilder("id,dataset,value\n");
+        for (int row = 0; row < 1500; row++)
+            csv.append(row).append(',').append(datasetId).append(',').append(row * 31 % 97).append('\n');
+        File file = new File(dir, datasetId + ".csv");
+        FileUtils.writeStringToFile(file, csv.toString(), "UTF-8");
+        return file;
+    }
+
+    private DeltaImporter2Publisher publisher(int concurrency) {
+        UserPreferencesLib prefs = new UserPreferencesLib() {
+            @Override
+            public SocrataConnectionInfo getConnectionInfo() {
+                return new SocrataConnectionInfo(getDomain(), getUsername(), getPassword()) {
+                    @Override
+                    public String getToken() { return "test-token"; }
+                };
+            }
+        }
+                .domain("http://localhost:" + server.getAddress().getPort())
+                .username("someone@example.com")
+                .password("secret")
+                .patchCompression("none")
+                .httpRequestsPerSecond("100000");
+        HttpUtility.configure(prefs);
+        URI base = URI.create("http://localhost:" + server.getAddress().getPort());
+        return new DeltaImporter2Publisher(prefs, "datasync-test", concurrency, base);
+    }
+
+    private void publish(int concurrency, String datasetId, String fileName) throws IOException {
+        try (DeltaImporter2Publisher publisher = publisher(concurrency)) {
+            FileTypeControl ftc = new FileTypeControl().hasHeaderRow(true);
+            ControlFile control = new ControlFile("Replace", null, ftc, null, true);
+            JobResult result = publisher.publishWithDi2OverHttp(datasetId, csvFor(home, fileName), control);
+            TestCase.assertEquals(JobStatus.SUCCESS, result.getStatus());
+        }
+    }
+
+    /**
+     * @return the patch committed to the dataset, its chunks put together in the order committed
+     */
+    @SuppressWarnings("unchecked")
+    private byte[] committedPatch(String datasetId) throws IOException {
+        ByteArrayOutputStream patch = new ByteArrayOutputStream();
+        for (String blobId : (List<String>) commits.get(datasetId).get("chunks")) patch.write(blobs.get(blobId));
+        return patch.toByteArray();
+    }
+
+    @Test
+    public void testChunksArePostedWithinTheWindowAndCommittedInPatchOrder() throws Exception {
+        // the same file, posted a chunk at a time, gives the patch to expect
+        publish(1, "serial-test", "same");
+        byte[] expected = committedPatch("serial-test");
+        TestCase.assertEquals(1, mostInFlight);
+        int serialPosts = blobCounter.get();
+        TestCase.assertTrue(serialPosts > window * 3);
+
+        mostInFlight = 0;
+        answered.clear();
+        publish(window, "window-test", "same");
+        TestCase.assertTrue(mostInFlight > 1);
+        TestCase.assertTrue(mostInFlight <= window);
+
+        // later posts were answered before earlier ones, yet the chunks were committed in the order of the patch
+        List<Integer> order = new ArrayList<>(answered);
+        List<Integer> sorted = new ArrayList<>(order);
+        Collections.sort(sorted);
+        TestCase.assertFalse(order.equals(sorted));
+        TestCase.assertTrue(Arrays.equals(expected, committedPatch("window-test")));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testAFailedChunkIsRetriedOnItsOwn() throws Exception {
+        failingPost = 3;
+        publish(window, "retry-test", "retry-test");
+
+        // one commit, with one blob per chunk; the failed chunk was posted again, and nothing else was
+        TestCase.assertEquals(1, commits.size());
+        List<String> chunks = (List<String>) commits.get("retry-test").get("chunks");
+        TestCase.assertEquals(chunks.size() + 1, posted.size());
+        TestCase.assertEquals(chunks.size() + 1, blobCounter.get());
+        byte[] failed = posted.get(failingPost - 1);
+        int postsOfFailed = 0;
+        for (byte[] body : new ArrayList<>(posted)) if (Arrays.equals(failed, body)) postsOfFailed++;
+        TestCase.assertEquals(2, postsOfFailed);
+        TestCase.assertNull(blobs.get("retry-test-blob-" + failingPost));
+        String text = new String(committedPatch("retry-test"), "UTF-8");
+        TestCase.assertTrue(text.contains("1499,retry-test,"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testARefusedCommitUploadsThePatchAgain() throws Exception {
+        refuseCommit.set(true);
+        publish(window, "restart-test", "restart-test");
+
+        // the blobs named by the refused commit were forgotten, so every chunk was posted again
+        TestCase.assertEquals(2, commitCount.get());
+        List<String> chunks = (List<String>) commits.get("restart-test").get("chunks");
+        TestCase.assertEquals(chunks.size() * 2, blobCounter.get());
+        for (String blobId : chunks)
+            TestCase.assertTrue(Integer.parseInt(blobId.substring("restart-test-blob-".length())) > chunks.size());
+        String text = new String(committedPatch("restart-test"), "UTF-8");
+        TestCase.assertTrue(text.contains("1499,restart-test,"));
+    }
+
+    @Test
+    public void testAThrottledCommitIsSentAgainWithoutUsingUpItsRetries() throws Exception {
+        // more throttled answers than the commit has retries; none of them is counted as one
+        throttleCommits.set(5);
+        long start = System.currentTimeMillis();
+        publish(window, "throttle-test", "throttle-test");
+
+        TestCase.assertEquals(6, commitCount.get());
+        TestCase.assertEquals(1, commits.size());
+        TestCase.assertTrue(commits.containsKey("throttle-test"));
+        // each wait was the Retry-After asked for, not a backoff
+        TestCase.assertTrue(System.currentTimeMillis() - start < 5000);
+    }
+}
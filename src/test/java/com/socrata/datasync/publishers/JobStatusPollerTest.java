@@ -0,0 +1,165 @@
+package com.socrata.datasync.publishers;
+
+import com.socrata.datasync.HttpUtility;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import junit.framework.TestCase;
+import org.apache.http.HttpException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class JobStatusPollerTest {
+
+    private HttpServer server;
+    private HttpUtility http;
+    private JobStatusPoller poller;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.start();
+        http = new HttpUtility();
+        poller = new JobStatusPoller(1, 10, 40);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        poller.close();
+        http.close();
+        server.stop(0);
+    }
+
+    private URI serve(String path, HttpHandler handler) {
+        server.createContext(path, handler);
+        return URI.create("http://localhost:" + server.getAddress().getPort() + path);
+    }
+
+    private static void respond(HttpExchange exchange, int code, String etag, String body) throws IOException {
+        if (etag != null) exchange.getResponseHeaders().set("ETag", etag);
+        if (body == null) {
+            exchange.sendResponseHeaders(code, -1);
+        } else {
+            byte[] bytes = body.getBytes("UTF-8");
+            exchange.sendResponseHeaders(code, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+        exchange.close();
+    }
+
+    @Test
+    public void testPollsConditionallyUntilFinished() throws Exception {
+        final AtomicInteger polls = new AtomicInteger();
+        final List<String> conditions = Collections.synchronizedList(new ArrayList<String>());
+        URI uri = serve("/status/job.json", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                int n = polls.incrementAndGet();
+                conditions.add(exchange.getRequestHeaders().getFirst("If-None-Match"));
+                if (n == 1) {
+                    respond(exchange, 200, "\"a\"", "{\"type\":\"applying-diff\",\"english\":\"Applying\",\"data\":{}}");
+                } else if (n < 4) {
+                    respond(exchange, 304, "\"a\"", null);
+                } else {
+                    respond(exchange, 200, "\"b\"", "{\"type\":\"finished\",\"english\":\"SUCCESS\",\"data\":{}}");
+                }
+            }
+        });
+
+        final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+        StatusResponse status = poller.poll(http, uri, new JobStatusPoller.Listener() {
+            @Override
+            public void onStatus(StatusResponse status) {
+                events.add(status.type);
+            }
+        }).get(10, TimeUnit.SECONDS);
+
+        TestCase.assertEquals("SUCCESS", status.english);
+        TestCase.assertEquals(4, polls.get());
+        // unchanged statuses aren't reported again
+        TestCase.assertEquals(2, events.size());
+        TestCase.assertEquals("applying-diff", events.get(0));
+        TestCase.assertNull(conditions.get(0));
+        TestCase.assertEquals("\"a\"", conditions.get(1));
+        TestCase.assertEquals("\"a\"", conditions.get(3));
+    }
+
+    @Test
+    public void testGivesUpAfterRepeatedErrors() throws Exception {
+        URI uri = serve("/status/broken.json", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                respond(exchange, 500, null, null);
+            }
+        });
+        try {
+            poller.poll(http, uri, null).get(10, TimeUnit.SECONDS);
+            TestCase.fail("polling a failing status should fail");
+        } catch (ExecutionException e) {
+            TestCase.assertTrue(e.getCause() instanceof HttpException);
+        }
+    }
+
+    @Test
+    public void testBackoffIsBoundedAndJittered() {
+        long delay = 0;
+        for (int i = 0; i < 20; i++) {
+            delay = poller.nextDelay(delay);
+            TestCase.assertTrue(delay >= 10 && delay <= 40);
+            long jittered = poller.jitter(delay);
+            TestCase.assertTrue(jittered >= delay / 2 && jittered <= delay);
+        }
+        TestCase.assertEquals(40, delay);
+    }
+
+    @Test
+    public void testPollsBackOffWhileAStatusWithoutAnETagIsUnchanged() throws Exception {
+        final List<Long> arrivals = Collections.synchronizedList(new ArrayList<Long>());
+        URI uri = serve("/status/no-etag.json", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                arrivals.add(System.nanoTime());
+                if (arrivals.size() < 12) {
+                    respond(exchange, 200, null, "{\"type\":\"applying-diff\",\"english\":\"Applying\",\"data\":{}}");
+                } else {
+                    respond(exchange, 200, null, "{\"type\":\"finished\",\"english\":\"SUCCESS\",\"data\":{}}");
+                }
+            }
+        });
+
+        final AtomicInteger events = new AtomicInteger();
+        JobStatusPoller slowing = new JobStatusPoller(1, 10, 400);
+        try {
+            slowing.poll(http, uri, new JobStatusPoller.Listener() {
+                @Override
+                public void onStatus(StatusResponse status) {
+                    events.incrementAndGet();
+                }
+            }).get(30, TimeUnit.SECONDS);
+        } finally {
+            slowing.close();
+        }
+
+        TestCase.assertEquals(12, arrivals.size());
+        // the same status sent again is neither reported again nor polled for as often
+        TestCase.assertEquals(2, events.get());
+        long firstGaps = arrivals.get(3) - arrivals.get(0);
+        long lastGaps = arrivals.get(11) - arrivals.get(8);
+        TestCase.assertTrue(lastGaps > firstGaps * 4);
+        TestCase.assertTrue(lastGaps >= TimeUnit.MILLISECONDS.toNanos(3 * 150));
+    }
+}
@@ -0,0 +1,44 @@
+package com.socrata.datasync.publishers;
+
+import au.com.bytecode.opencsv.CSVReader;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+
+/**
+ * Streams ever larger files, noting the most heap in use while each is read.  Were the rows held
+ * until the end, the heap would grow with the file by tens of megabytes.  What the heap does depends
+ * on the collector, so this isn't a test run with the build (surefire only picks up *Test classes);
+ * run its main method by hand on the test classpath.
+ */
+public class JsonRowStreamHeapBenchmark {
+    private static final String[] headers = {"id", "name", "description", "amount"};
+
+    public static void main(String[] args) throws Exception {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        int rows = 25000;
+        // the largest file is sixteen times the smallest, and tens of megabytes as JSON
+        for (int run = 0; run < 3; run++, rows *= 4) {
+            System.gc();
+            long before = memory.getHeapMemoryUsage().getUsed();
+            InputStream stream = new JsonRowStream(new CSVReader(new JsonRowStreamTest.GeneratedCsv(rows)), headers);
+            JsonParser parser = JsonRows.factory.createParser(stream);
+            long parsed = 0;
+            long peak = 0;
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                if (token == JsonToken.END_OBJECT && ++parsed % (rows / 4) == 0) {
+                    System.gc();
+                    peak = Math.max(peak, memory.getHeapMemoryUsage().getUsed() - before);
+                }
+            }
+            long bytes = parser.getCurrentLocation().getByteOffset();
+            parser.close();
+            System.out.println(parsed + " rows (" + bytes / 1024 + " KB of JSON): heap grew by at most " +
+                    peak / 1024 + " KB");
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.socrata.datasync.publishers;
+
+import au.com.bytecode.opencsv.CSVReader;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.socrata.api.Soda2Producer;
+import com.socrata.datasync.PublishMethod;
+import com.socrata.model.UpsertResult;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import junit.framework.TestCase;
+import org.apache.commons.io.IOUtils;
+import org.glassfish.jersey.client.ClientProperties;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Map;
+
+public class JsonRowStreamTest {
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final String[] headers = {"id", "name", "description", "amount"};
+
+    /**
+     * A CSV file of the given number of rows, made up as it's read rather than held in memory.
+     */
+    static class GeneratedCsv extends Reader {
+        private final int rows;
+        private int row = 0;
+        private String line = "";
+        private int position = 0;
+
+        GeneratedCsv(int rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) {
+            if (position == line.length()) {
+                if (row == rows) return -1;
+                line = row + ",name " + row + ",\"a longer description, with a comma, of row " + row + "\"," +
+                        (row % 2 == 0 ? "" : String.valueOf(row * 3)) + "\n";
+                position = 0;
+                row++;
+            }
+            int read = Math.min(len, line.length() - position);
+            line.getChars(position, position + read, cbuf, off);
+            position += read;
+            return read;
+        }
+
+        @Override
+        public void close() {}
+    }
+
+    @Test
+    public void testStreamMatchesAChunkOfTheSameRows() throws Exception {
+        StringBuilder csv = new StringBuilder();
+        for (int i = 0; i < 5000; i++) csv.append(i).append(",x").append(i).append(",,\"q\"\"uote\"\n");
+
+        JsonRows chunk = new JsonRows(headers);
+        CSVReader records = new CSVReader(new StringReader(csv.toString()));
+        String[] record;
+        while ((record = records.readNext()) != null) chunk.add(record);
+
+        JsonRowStream stream = new JsonRowStream(new CSVReader(new StringReader(csv.toString())), headers);
+        String streamed = IOUtils.toString(stream, "UTF-8");
+        TestCase.assertEquals(IOUtils.toString(chunk.open(), "UTF-8"), streamed);
+        TestCase.assertEquals(5000, stream.getRows());
+        TestCase.assertEquals(-1, stream.read());
+    }
+
+    @Test
+    public void testEmptyFilesAreAnEmptyArray() throws Exception {
+        JsonRowStream stream = new JsonRowStream(new CSVReader(new StringReader("")), headers);
+        TestCase.assertEquals("[]", IOUtils.toString(stream, "UTF-8"));
+    }
+
+    @Test
+    public void testReplacesAreStreamedFromTheFile() throws Exception {
+        File file = File.createTempFile("replace", ".csv");
+        file.deleteOnExit();
+        try (Writer out = new FileWriter(file)) {
+            out.write("id, name, description ,amount\n");
+            IOUtils.copy(new GeneratedCsv(20000), out);
+        }
+
+        final String[] transferEncoding = new String[1];
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/resource", new HttpHandler() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public void handle(HttpExchange exchange) throws IOException {
+                transferEncoding[0] = exchange.getRequestHeaders().getFirst("Transfer-Encoding");
+                List<Map<String, Object>> rows = mapper.readValue(exchange.getRequestBody(), List.class);
+                boolean trimmed = "a longer description, with a comma, of row 7".equals(rows.get(7).get("description"));
+                byte[] body = ("{\"rows_created\":" + (trimmed ? rows.size() : -1) +
+                        ",\"rows_updated\":0,\"rows_deleted\":0}").getBytes("UTF-8");
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+        });
+        server.start();
+        try {
+            Soda2Producer producer = Soda2Producer.newProducer("http://localhost:" + server.getAddress().getPort(),
+                    "someone@example.com", "secret", "token");
+            UpsertResult result = Soda2Publisher.publishViaSoda2(producer, null, PublishMethod.replace, "abcd-1234",
+                    file, 0, true);
+            TestCase.assertEquals(20000, result.getRowsCreated());
+            TestCase.assertEquals("chunked", transferEncoding[0]);
+            // the producer's other requests are sent as they were
+            TestCase.assertNull(producer.getHttpLowLevel().getClient().getConfiguration()
+                    .getProperty(ClientProperties.REQUEST_ENTITY_PROCESSING));
+        } finally {
+            server.stop(0);
+        }
+    }
+}
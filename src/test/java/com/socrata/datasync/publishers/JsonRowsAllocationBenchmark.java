@@ -0,0 +1,78 @@
+package com.socrata.datasync.publishers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.commons.lang3.StringUtils;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares the bytes allocated turning chunks of rows of a wide file into request bodies: as a map
+ * per row, serialized by an ObjectMapper as the Soda2Producer did before, and as {@link JsonRows},
+ * which the upserts reuse from one chunk to the next.  The records are parsed beforehand, and the
+ * body written nowhere, since both ways share the cost of either.  Only what this thread allocates
+ * is counted, so the collector doesn't change the figures, but the JIT does; like
+ * {@link JsonRowStreamHeapBenchmark} it isn't a test run with the build, so run its main method by
+ * hand on the test classpath.
+ */
+public class JsonRowsAllocationBenchmark {
+    private static final int columns = 200;
+    private static final int rows = 5000;
+    private static final int runs = 10;
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    public static void main(String[] args) throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+
+        String[] headers = new String[columns];
+        for (int c = 0; c < columns; c++) headers[c] = "column_" + c;
+        List<String[]> records = new ArrayList<>();
+        for (int r = 0; r < rows; r++) {
+            String[] record = new String[columns];
+            for (int c = 0; c < columns; c++) record[c] = c % 5 == 4 ? "" : "value " + r + "." + c;
+            records.add(record);
+        }
+
+        long mapBytes = Long.MAX_VALUE;
+        long jsonBytes = Long.MAX_VALUE;
+        long firstJsonBytes = 0;
+        JsonRows json = new JsonRows(headers);
+        // the first runs warm up the JIT; the least allocated by each is kept
+        for (int run = 0; run < runs; run++) {
+            long start = threads.getThreadAllocatedBytes(thread);
+            List<Map<String, Object>> chunk = new ArrayList<>();
+            for (String[] record : records) chunk.add(toRow(headers, record));
+            mapper.writeValue(new NullOutputStream(), chunk);
+            mapBytes = Math.min(mapBytes, threads.getThreadAllocatedBytes(thread) - start);
+
+            start = threads.getThreadAllocatedBytes(thread);
+            json.clear();
+            for (String[] record : records) json.add(record);
+            IOUtils.copy(json.open(), new NullOutputStream());
+            long allocated = threads.getThreadAllocatedBytes(thread) - start;
+            // the first chunk grows the buffer the rest are written into
+            if (run == 0) firstJsonBytes = allocated;
+            else jsonBytes = Math.min(jsonBytes, allocated);
+        }
+        System.out.println("A chunk of " + rows + " rows of " + columns + " columns allocated " + mapBytes / 1024 +
+                " KB as maps, and as JsonRows " + firstJsonBytes / 1024 + " KB the first time and " +
+                jsonBytes / 1024 + " KB after");
+    }
+
+    /**
+     * A row as the map the Soda2Producer was given, leaving out its empty cells.
+     */
+    private static Map<String, Object> toRow(String[] headers, String[] line) {
+        ImmutableMap.Builder<String, Object> builder = ImmutableMap.builder();
+        for (int i = 0; i < line.length && i < headers.length; i++) {
+            if (!StringUtils.isEmpty(line[i])) builder.put(headers[i], line[i]);
+        }
+        return builder.build();
+    }
+}
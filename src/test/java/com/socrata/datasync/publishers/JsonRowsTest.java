@@ -0,0 +1,72 @@
+package com.socrata.datasync.publishers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import junit.framework.TestCase;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+
+public class JsonRowsTest {
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> read(InputStream in) throws Exception {
+        try {
+            return mapper.readValue(in, List.class);
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testRecordsAreWrittenAsRows() throws Exception {
+        JsonRows rows = new JsonRows(new String[]{"id", "name", "notes"});
+        rows.add(new String[]{"1", "Zoë \"Z\" Smith", "line one\nline two"});
+        rows.add(new String[]{"2", "", null});
+        rows.add(new String[]{"3", "Al", "x", "beyond the headers"});
+        rows.add(new String[]{"4"});
+        TestCase.assertEquals(4, rows.size());
+
+        List<Map<String, Object>> read = read(rows.open());
+        TestCase.assertEquals(4, read.size());
+        TestCase.assertEquals("Zoë \"Z\" Smith", read.get(0).get("name"));
+        TestCase.assertEquals("line one\nline two", read.get(0).get("notes"));
+        // empty cells are left out, as are cells with no header
+        TestCase.assertEquals(1, read.get(1).size());
+        TestCase.assertEquals(3, read.get(2).size());
+        TestCase.assertEquals(1, read.get(3).size());
+        TestCase.assertEquals("4", read.get(3).get("id"));
+    }
+
+    @Test
+    public void testFinishedChunksCanBeReadAgain() throws Exception {
+        JsonRows rows = new JsonRows(new String[]{"id"});
+        rows.add(new String[]{"1"});
+        String first = IOUtils.toString(rows.open(), "UTF-8");
+        TestCase.assertEquals("[{\"id\":\"1\"}]", first);
+        TestCase.assertEquals(first, IOUtils.toString(rows.open(), "UTF-8"));
+        try {
+            rows.add(new String[]{"2"});
+            TestCase.fail("rows shouldn't be added to a finished chunk");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testClearedChunksAreReused() throws Exception {
+        JsonRows rows = new JsonRows(new String[]{"id"});
+        TestCase.assertEquals("[]", IOUtils.toString(rows.open(), "UTF-8"));
+        rows.clear();
+        rows.add(new String[]{"1"});
+        rows.add(new String[]{"2"});
+        rows.open().close();
+        rows.clear();
+        TestCase.assertEquals(0, rows.size());
+        rows.add(new String[]{"3"});
+        TestCase.assertEquals("[{\"id\":\"3\"}]", IOUtils.toString(rows.open(), "UTF-8"));
+    }
+}
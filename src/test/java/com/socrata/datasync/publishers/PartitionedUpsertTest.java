@@ -0,0 +1,171 @@
+package com.socrata.datasync.publishers;
+
+import au.com.bytecode.opencsv.CSVReader;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.socrata.api.Soda2Producer;
+import com.socrata.exceptions.SodaError;
+import com.socrata.model.UpsertError;
+import com.socrata.model.UpsertResult;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import junit.framework.TestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+
+public class PartitionedUpsertTest {
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private HttpServer server;
+    private volatile boolean failUpserts = false;
+    // every row upserted, in the order they arrived, and how many requests were ever in flight at once
+    private final List<Map<String, Object>> upserted = Collections.synchronizedList(new ArrayList<Map<String, Object>>());
+    private final Set<Integer> concurrentRequests = Collections.synchronizedSet(new HashSet<Integer>());
+    private int inFlight = 0;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/resource", new HttpHandler() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public void handle(HttpExchange exchange) throws IOException {
+                synchronized (PartitionedUpsertTest.this) {
+                    concurrentRequests.add(++inFlight);
+                }
+                try {
+                    if (failUpserts) {
+                        respond(exchange, 500, "{\"code\":\"internal\",\"message\":\"broken\"}");
+                        return;
+                    }
+                    List<Map<String, Object>> rows = mapper.readValue(exchange.getRequestBody(), List.class);
+                    Thread.sleep(20);
+                    int created = 0;
+                    StringBuilder errors = new StringBuilder();
+                    for (int i = 0; i < rows.size(); i++) {
+                        Map<String, Object> row = rows.get(i);
+                        if ("bad".equals(row.get("value"))) {
+                            if (errors.length() > 0) errors.append(',');
+                            errors.append("{\"error\":\"bad value\",\"input_index\":").append(i)
+                                    .append(",\"primary_key\":\"").append(row.get("id")).append("\"}");
+                        } else {
+                            upserted.add(row);
+                            created++;
+                        }
+                    }
+                    respond(exchange, 200, "{\"rows_created\":" + created + ",\"rows_updated\":0,\"rows_deleted\":0," +
+                            "\"errors\":[" + errors + "]}");
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                } finally {
+                    synchronized (PartitionedUpsertTest.this) {
+                        inFlight--;
+                    }
+                }
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    private static void respond(HttpExchange exchange, int code, String body) throws IOException {
+        byte[] bytes = body.getBytes("UTF-8");
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(code, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private Soda2Producer producer() {
+        return Soda2Producer.newProducer("http://localhost:" + server.getAddress().getPort(),
+                "someone@example.com", "secret", "token");
+    }
+
+    @Test
+    public void testRowsWithTheSameIdAreUpsertedInFileOrder() throws Exception {
+        StringBuilder csv = new StringBuilder();
+        // each of 20 ids appears ten times, its value counting up
+        for (int version = 0; version < 10; version++)
+            for (int id = 0; id < 20; id++)
+                csv.append(id).append(',').append(version == 4 && id == 7 ? "bad" : String.valueOf(version)).append('\n');
+
+        UpsertResult result = new PartitionedUpsert(producer(), "abcd-1234", "id", 5, 4, 2)
+                .run(new CSVReader(new StringReader(csv.toString())), new String[]{"id", "value"});
+
+        TestCase.assertEquals(199, result.getRowsCreated());
+        TestCase.assertEquals(199, upserted.size());
+        TestCase.assertTrue(concurrentRequests.size() > 1);
+        // the one bad row is reported at its own position in the file, however the rows were dealt out
+        TestCase.assertEquals(1, result.errorCount());
+        UpsertError error = result.getErrors().get(0);
+        TestCase.assertEquals(4 * 20 + 7, error.getIndex());
+        TestCase.assertEquals("7", error.getPrimaryKey());
+
+        // the upserts of any one id arrive in the order they appear in the file
+        Map<String, Integer> lastVersion = new HashMap<>();
+        for (Map<String, Object> row : new ArrayList<>(upserted)) {
+            String id = (String) row.get("id");
+            int version = Integer.parseInt((String) row.get("value"));
+            Integer last = lastVersion.put(id, version);
+            TestCase.assertTrue(last == null || last < version);
+        }
+        TestCase.assertEquals(20, lastVersion.size());
+        for (Integer last : lastVersion.values()) TestCase.assertEquals(Integer.valueOf(9), last);
+    }
+
+    @Test
+    public void testChunksAreCutToTheSizersBudget() throws Exception {
+        StringBuilder csv = new StringBuilder();
+        for (int version = 0; version < 10; version++)
+            for (int id = 0; id < 2000; id++)
+                csv.append(id).append(',').append(version).append('\n');
+
+        ChunkSizer sizer = new ChunkSizer(ChunkSizer.MIN_BYTES, 60000);
+        UpsertResult result = new PartitionedUpsert(producer(), "abcd-1234", "id", 10, 3, 2).sizedBy(sizer)
+                .run(new CSVReader(new StringReader(csv.toString())), new String[]{"id", "value"});
+
+        TestCase.assertEquals(20000, result.getRowsCreated());
+        // some 500 KB of rows, 64 KB at a time, rather than ten rows at a time
+        int chunks = Integer.parseInt(sizer.summary().split(" ")[0]);
+        TestCase.assertTrue(sizer.summary(), chunks >= 8 && chunks <= 12);
+        Map<String, Integer> lastVersion = new HashMap<>();
+        for (Map<String, Object> row : new ArrayList<>(upserted)) {
+            Integer last = lastVersion.put((String) row.get("id"), Integer.parseInt((String) row.get("value")));
+            TestCase.assertTrue(last == null || last < Integer.parseInt((String) row.get("value")));
+        }
+    }
+
+    @Test
+    public void testAFailedChunkFailsThePublish() throws Exception {
+        failUpserts = true;
+        StringBuilder csv = new StringBuilder();
+        for (int id = 0; id < 1000; id++) csv.append(id).append(",x\n");
+        try {
+            new PartitionedUpsert(producer(), "abcd-1234", "id", 10, 3, 2)
+                    .run(new CSVReader(new StringReader(csv.toString())), new String[]{"id", "value"});
+            TestCase.fail("the upsert should have failed");
+        } catch (SodaError e) {
+            TestCase.assertEquals(500, e.getStatus());
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.socrata.datasync.utilities;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.socrata.datasync.HttpUtility;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import junit.framework.TestCase;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.ResponseHandler;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class HttpUtilityAsyncTest {
+    private static final long responseDelayMillis = 300;
+
+    private HttpServer server;
+    private ExecutorService serverThreads;
+    private URI slowUri;
+    private URI echoUri;
+
+    private static final ResponseHandler<String> bodyHandler = new ResponseHandler<String>() {
+        @Override
+        public String handleResponse(HttpResponse response) throws IOException {
+            return EntityUtils.toString(response.getEntity());
+        }
+    };
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/slow", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    Thread.sleep(responseDelayMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                respond(exchange, "slow");
+            }
+        });
+        server.createContext("/echo", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try (InputStream in = exchange.getRequestBody()) {
+                    byte[] buffer = new byte[1024];
+                    StringBuilder body = new StringBuilder();
+                    int n;
+                    while ((n = in.read(buffer)) != -1) body.append(new String(buffer, 0, n, "UTF-8"));
+                    respond(exchange, body.toString());
+                }
+            }
+        });
+        serverThreads = Executors.newCachedThreadPool();
+        server.setExecutor(serverThreads);
+        server.start();
+        String base = "http://localhost:" + server.getAddress().getPort();
+        slowUri = URI.create(base + "/slow");
+        echoUri = URI.create(base + "/echo");
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        serverThreads.shutdownNow();
+    }
+
+    private static void respond(HttpExchange exchange, String text) throws IOException {
+        byte[] body = text.getBytes("UTF-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+        exchange.close();
+    }
+
+    @Test
+    public void testRequestsAreMadeConcurrentlyWithoutTheCaller() throws Exception {
+        HttpUtility http = new HttpUtility();
+        // so that starting the shared threads isn't timed
+        TestCase.assertEquals("", http.postAsync(echoUri, new StringEntity(""), bodyHandler).get(5, TimeUnit.SECONDS));
+        long start = System.nanoTime();
+        List<ListenableFuture<String>> responses = new ArrayList<>();
+        for (int i = 0; i < 8; i++) responses.add(http.getAsync(slowUri, "text/plain", bodyHandler));
+        // none has been answered by the time they've all been sent
+        TestCase.assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(responseDelayMillis));
+        for (ListenableFuture<String> response : responses)
+            TestCase.assertEquals("slow", response.get(5, TimeUnit.SECONDS));
+        // all eight were waited for together, not one after another
+        TestCase.assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(4 * responseDelayMillis));
+        TestCase.assertEquals(0, HttpUtility.getPoolStats().getLeased());
+    }
+
+    @Test
+    public void testCallbacksGetTheResponse() throws Exception {
+        HttpUtility http = new HttpUtility();
+        final CountDownLatch called = new CountDownLatch(1);
+        final AtomicReference<String> body = new AtomicReference<>();
+        final AtomicReference<String> thread = new AtomicReference<>();
+        Futures.addCallback(http.postAsync(echoUri, new StringEntity("hello")), new FutureCallback<CloseableHttpResponse>() {
+            @Override
+            public void onSuccess(CloseableHttpResponse response) {
+                try (CloseableHttpResponse closing = response) {
+                    body.set(EntityUtils.toString(closing.getEntity()));
+                    thread.set(Thread.currentThread().getName());
+                } catch (IOException e) {
+                    body.set(e.toString());
+                }
+                called.countDown();
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                body.set(t.toString());
+                called.countDown();
+            }
+        });
+        TestCase.assertTrue(called.await(5, TimeUnit.SECONDS));
+        TestCase.assertEquals("hello", body.get());
+        TestCase.assertTrue(thread.get().startsWith("HTTP engine"));
+    }
+
+    @Test
+    public void testFailuresFailTheFuture() throws Exception {
+        HttpUtility http = new HttpUtility(null, false, 1, 0.01);
+        server.stop(0);
+        try {
+            http.getAsync(slowUri, "text/plain", bodyHandler).get(5, TimeUnit.SECONDS);
+            TestCase.fail("nothing is listening");
+        } catch (ExecutionException e) {
+            TestCase.assertTrue(e.getCause() instanceof IOException);
+        }
+    }
+}
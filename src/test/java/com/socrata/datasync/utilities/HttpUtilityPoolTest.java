@@ -0,0 +1,87 @@
+package com.socrata.datasync.utilities;
+
+import com.socrata.datasync.HttpUtility;
+import com.socrata.datasync.RequestCompression;
+import com.socrata.datasync.config.userpreferences.UserPreferencesLib;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import junit.framework.TestCase;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+public class HttpUtilityPoolTest {
+
+    private HttpServer server;
+    private URI uri;
+    private final Set<Integer> clientPorts = Collections.synchronizedSet(new HashSet<Integer>());
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/ping", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                clientPorts.add(exchange.getRemoteAddress().getPort());
+                byte[] body = "pong".getBytes("UTF-8");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+                exchange.close();
+            }
+        });
+        server.start();
+        uri = URI.create("http://localhost:" + server.getAddress().getPort() + "/ping");
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    private static String ping(HttpUtility http, URI uri) throws IOException {
+        try (CloseableHttpResponse response = http.get(uri, "text/plain")) {
+            return EntityUtils.toString(response.getEntity());
+        }
+    }
+
+    @Test
+    public void testInstancesShareConnections() throws IOException {
+        for (int i = 0; i < 3; i++) {
+            HttpUtility http = new HttpUtility();
+            TestCase.assertEquals("pong", ping(http, uri));
+            // closing an instance leaves the pooled connection for the next
+            http.close();
+        }
+        TestCase.assertEquals(1, clientPorts.size());
+        TestCase.assertEquals(0, HttpUtility.getPoolStats().getLeased());
+    }
+
+    @Test
+    public void testOnlyConfiguringResizesThePool() throws IOException {
+        UserPreferencesLib prefs = new UserPreferencesLib().httpMaxConnections("48").httpMaxConnectionsPerRoute("12")
+                .requestCompression("auto");
+        HttpUtility.configure(new UserPreferencesLib());
+        new HttpUtility(prefs, false).close();
+        TestCase.assertEquals(64, HttpUtility.getPoolStats().getMax());
+        TestCase.assertEquals(RequestCompression.Mode.none, RequestCompression.get().getMode());
+
+        HttpUtility.configure(prefs);
+        TestCase.assertEquals(48, HttpUtility.getPoolStats().getMax());
+        TestCase.assertEquals(RequestCompression.Mode.auto, RequestCompression.get().getMode());
+        HttpUtility.configure(new UserPreferencesLib());
+        TestCase.assertEquals(64, HttpUtility.getPoolStats().getMax());
+    }
+}
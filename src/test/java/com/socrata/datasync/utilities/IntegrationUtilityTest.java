@@ -4,6 +4,7 @@ import com.socrata.api.Soda2Producer;
 import com.socrata.api.SodaDdl;
 import com.socrata.datasync.DatasetUtils;
 import com.socrata.datasync.config.userpreferences.UserPreferencesJava;
+import com.socrata.datasync.job.JobResult;
 import com.socrata.datasync.job.JobStatus;
 import com.socrata.datasync.SocrataConnectionInfo;
 import com.socrata.datasync.TestBase;
@@ -293,7 +294,7 @@ public class IntegrationUtilityTest extends TestBase {
         UpsertResult result = new UpsertResult(1, 1, 1, new ArrayList<UpsertError>());
         SocrataConnectionInfo connectionInfo = new SocrataConnectionInfo(DOMAIN, USERNAME, PASSWORD, API_KEY);
         String logPublishingErrorMessage = job.addLogEntry(
-                UNITTEST_LOG_DATASET_ID, connectionInfo, job, JobStatus.INVALID_DATASET_ID, result);
+                UNITTEST_LOG_DATASET_ID, connectionInfo, job, JobResult.of(JobStatus.INVALID_DATASET_ID), result);
 
         TestCase.assertEquals(null, logPublishingErrorMessage);
         TestCase.assertEquals(2, getTotalRows(UNITTEST_LOG_DATASET_ID));
@@ -305,7 +306,7 @@ public class IntegrationUtilityTest extends TestBase {
         UpsertResult result = new UpsertResult(1, 1, 1, new ArrayList<UpsertError>());
         SocrataConnectionInfo connectionInfo = new SocrataConnectionInfo(DOMAIN, USERNAME, PASSWORD, API_KEY);
         String logPublishingErrorMessage = job.addLogEntry(
-                "xxxx-xxxx", connectionInfo, job, JobStatus.SUCCESS, result);
+                "xxxx-xxxx", connectionInfo, job, JobResult.of(JobStatus.SUCCESS), result);
 
         TestCase.assertEquals("Not found", logPublishingErrorMessage);
     }
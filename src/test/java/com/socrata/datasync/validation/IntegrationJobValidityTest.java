@@ -0,0 +1,29 @@
+package com.socrata.datasync.validation;
+
+import com.socrata.datasync.PublishMethod;
+import com.socrata.datasync.config.userpreferences.UserPreferencesLib;
+import com.socrata.datasync.job.IntegrationJob;
+import com.socrata.datasync.job.JobStatus;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+public class IntegrationJobValidityTest {
+
+    @Test
+    public void testDryRunsAreRefusedUnlessPublishingViaDi2() {
+        UserPreferencesLib prefs = new UserPreferencesLib().domain("https://");
+        IntegrationJob job = new IntegrationJob(prefs);
+        job.setDatasetID("abcd-1234");
+        job.setFileToPublish("src/test/resources/datasync_unit_test_two_rows.csv");
+        job.setPublishMethod(PublishMethod.replace);
+        job.setDryRun(true);
+        job.setPublishViaFTP(true);
+        TestCase.assertEquals(JobStatus.INVALID_DRY_RUN, IntegrationJobValidity.validateJobParams(prefs, job).getStatus());
+        job.setPublishViaFTP(false);
+        TestCase.assertEquals(JobStatus.INVALID_DRY_RUN, IntegrationJobValidity.validateJobParams(prefs, job).getStatus());
+
+        // past the dry run check, on to the others
+        job.setPublishViaDi2Http(true);
+        TestCase.assertEquals(JobStatus.INVALID_DOMAIN, IntegrationJobValidity.validateJobParams(prefs, job).getStatus());
+    }
+}